@@ -0,0 +1,150 @@
+package daikon.benchmarks;
+
+import daikon.DynamicConstants;
+import daikon.PptSliceEquality;
+import daikon.PptTopLevel;
+import daikon.ValueTuple;
+import daikon.inv.Invariant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of adding samples to a program point, on synthetic program points (see {@link
+ * SyntheticPpts}) with 10, 100, and 1000 variables.
+ */
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class AddSampleBenchmark {
+
+  /** The number of samples added by {@link #add_bottom_up}. */
+  private static final int SAMPLES = 200;
+
+  /** The number of samples that {@link Warm} adds before it is measured. */
+  private static final int WARM_SAMPLES = 50;
+
+  /** A new program point, to which no sample has been added. */
+  @State(Scope.Thread)
+  public static class Fresh {
+
+    /** The number of variables of the program point. */
+    @Param({"10", "100", "1000"})
+    public int num_vars;
+
+    /** The program point. */
+    PptTopLevel ppt;
+
+    /** The samples to add. */
+    ValueTuple[] samples = new ValueTuple[SAMPLES];
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      ppt = SyntheticPpts.point(num_vars);
+      for (int i = 0; i < SAMPLES; i++) {
+        samples[i] = SyntheticPpts.sample(ppt, i);
+      }
+    }
+  }
+
+  /**
+   * A program point to which some samples have been added, so that its equality sets, dynamic
+   * constants, and invariants have settled. Adding more of the same samples changes none of them.
+   */
+  @State(Scope.Thread)
+  public static class Warm {
+
+    /** The number of variables of the program point. */
+    @Param({"10", "100", "1000"})
+    public int num_vars;
+
+    /** The program point. */
+    PptTopLevel ppt;
+
+    /** The samples that were added, which are added again. */
+    ValueTuple[] samples = new ValueTuple[WARM_SAMPLES];
+
+    /** The index of the next sample to add. */
+    int next = 0;
+
+    @Setup
+    public void setup() {
+      ppt = SyntheticPpts.point(num_vars);
+      for (int i = 0; i < WARM_SAMPLES; i++) {
+        samples[i] = SyntheticPpts.sample(ppt, i);
+        ppt.add_bottom_up(samples[i], 1);
+      }
+    }
+
+    /** Returns the next sample. */
+    ValueTuple next_sample() {
+      ValueTuple vt = samples[next];
+      next = (next + 1) % WARM_SAMPLES;
+      return vt;
+    }
+  }
+
+  /**
+   * Adds samples to a new program point: instantiating its invariants on the first sample, and
+   * then falsifying many of them and unsuppressing others.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OperationsPerInvocation(SAMPLES)
+  @Warmup(iterations = 5)
+  @Measurement(iterations = 20)
+  public PptTopLevel add_bottom_up(Fresh f) {
+    for (ValueTuple vt : f.samples) {
+      f.ppt.add_bottom_up(vt, 1);
+    }
+    return f.ppt;
+  }
+
+  /**
+   * Adds a sample to a program point whose invariants have settled, so that it falsifies none of
+   * them, as happens for most samples late in a run.
+   */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @Warmup(iterations = 3, time = 2)
+  @Measurement(iterations = 5, time = 2)
+  public @Nullable Set<Invariant> add_bottom_up_settled(Warm w) {
+    return w.ppt.add_bottom_up(w.next_sample(), 1);
+  }
+
+  /** Adds a sample to the equality sets of a program point, without splitting any. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @Warmup(iterations = 3, time = 2)
+  @Measurement(iterations = 5, time = 2)
+  public List<Invariant> equality_add(Warm w) {
+    PptSliceEquality equality_view = w.ppt.equality_view;
+    assert equality_view != null;
+    return equality_view.add(w.next_sample(), 1);
+  }
+
+  /** Adds a sample to the dynamic constants of a program point, without changing them. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @Warmup(iterations = 3, time = 2)
+  @Measurement(iterations = 5, time = 2)
+  public DynamicConstants dynamic_constants_add(Warm w) {
+    DynamicConstants constants = w.ppt.constants;
+    assert constants != null;
+    constants.add(w.next_sample(), 1);
+    return constants;
+  }
+}
@@ -0,0 +1,60 @@
+package daikon.benchmarks;
+
+import daikon.PptTopLevel;
+import daikon.inv.Invariant;
+import daikon.inv.OutputFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of formatting invariants for output. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FormatBenchmark {
+
+  /** The output format. */
+  @Param({"DAIKON", "JAVA", "JML"})
+  public String format;
+
+  /** The parsed output format. */
+  private OutputFormat output_format;
+
+  /** The invariants to format: all those of a synthetic program point. */
+  private Invariant[] invs;
+
+  /** The index of the next invariant to format. */
+  private int next = 0;
+
+  @Setup
+  public void setup() {
+    output_format = OutputFormat.valueOf(format);
+    PptTopLevel ppt = SyntheticPpts.point(30);
+    for (int i = 0; i < 100; i++) {
+      ppt.add_bottom_up(SyntheticPpts.sample(ppt, i), 1);
+    }
+    List<Invariant> all = ppt.getInvariants();
+    invs = all.toArray(new Invariant[0]);
+  }
+
+  /** Formats one invariant; each call formats the next invariant of the program point. */
+  @Benchmark
+  public String format() {
+    Invariant inv = invs[next];
+    next = (next + 1) % invs.length;
+    return inv.format_using(output_format);
+  }
+}
@@ -0,0 +1,66 @@
+package daikon.benchmarks;
+
+import daikon.PptMap;
+import daikon.PptTopLevel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of computing the invariants of a program point from those of its children in the
+ * program point hierarchy: here, a combined exit point from two numbered exit points.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class MergeBenchmark {
+
+  /** The number of samples added to each numbered exit point. */
+  private static final int SAMPLES = 100;
+
+  /** A method whose numbered exit points have samples, but whose combined exit has none. */
+  @State(Scope.Thread)
+  public static class Method {
+
+    /** The number of variables of each program point. */
+    @Param({"10", "100", "1000"})
+    public int num_vars;
+
+    /** The combined exit point. */
+    PptTopLevel exit;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      PptMap map = SyntheticPpts.method(num_vars);
+      for (String suffix : new String[] {":::EXIT22", ":::EXIT25"}) {
+        PptTopLevel ppt = map.get(SyntheticPpts.METHOD + suffix);
+        assert ppt != null;
+        // Give the exits different samples, so that their invariants differ
+        int offset = suffix.endsWith("22") ? 0 : SAMPLES / 2;
+        for (int i = 0; i < SAMPLES; i++) {
+          ppt.add_bottom_up(SyntheticPpts.sample(ppt, offset + i), 1);
+        }
+      }
+      exit = map.get(SyntheticPpts.METHOD + ":::EXIT");
+      assert exit != null && exit.children.size() == 2;
+    }
+  }
+
+  @Benchmark
+  public PptTopLevel mergeInvs(Method m) {
+    m.exit.mergeInvs();
+    return m.exit;
+  }
+}
@@ -0,0 +1,121 @@
+package daikon.benchmarks;
+
+import daikon.FileIO;
+import daikon.PptMap;
+import daikon.ProglangType;
+import daikon.ValueTuple;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of reading a data trace file. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+  /** The number of distinct inputs that each benchmark cycles through. */
+  private static final int INPUTS = 64;
+
+  /** Values of one representation type, as they appear in a data trace file. */
+  @State(Scope.Thread)
+  public static class Values {
+
+    /** The representation type. */
+    @Param({"int", "double", "java.lang.String", "int[]"})
+    public String rep_type;
+
+    /** The parsed representation type. */
+    ProglangType type;
+
+    /** The values to parse. */
+    String[] values = new String[INPUTS];
+
+    /** The index of the next value to parse. */
+    int next = 0;
+
+    @Setup
+    public void setup() {
+      type = ProglangType.rep_parse(rep_type);
+      for (int i = 0; i < INPUTS; i++) {
+        long value = SyntheticPpts.value(i, i * 37);
+        switch (rep_type) {
+          case "int":
+            values[i] = String.valueOf(value);
+            break;
+          case "double":
+            values[i] = String.valueOf(value / 7.0);
+            break;
+          case "java.lang.String":
+            values[i] = "\"value " + value + "\\n\"";
+            break;
+          default:
+            values[i] = "[" + value + " " + (value + 1) + " " + i + " " + (i % 3) + "]";
+            break;
+        }
+      }
+    }
+  }
+
+  /** Samples of {@link SyntheticPpts#POINT}, as they appear in a data trace file. */
+  @State(Scope.Thread)
+  public static class Records {
+
+    /** The number of variables of the program point. */
+    @Param({"10", "100", "1000"})
+    public int num_vars;
+
+    /** The state of the parser. */
+    FileIO.ParseState state;
+
+    /** The samples. */
+    String[] records = new String[INPUTS];
+
+    /** The index of the next sample to parse. */
+    int next = 0;
+
+    @Setup
+    public void setup() {
+      PptMap ppts = SyntheticPpts.point_map(num_vars);
+      state =
+          new FileIO.ParseState(
+              "benchmark.dtrace", new LineNumberReader(new StringReader("")), false, ppts);
+      for (int i = 0; i < INPUTS; i++) {
+        records[i] = SyntheticPpts.record(num_vars, i);
+      }
+    }
+  }
+
+  /** Parses a value, as {@link FileIO} does for each variable of a sample. */
+  @Benchmark
+  public Object parse_value(Values v) {
+    String value = v.values[v.next++ % INPUTS];
+    return v.type.parse_value(value, null, "benchmark.dtrace");
+  }
+
+  /**
+   * Reads a sample. This includes {@code FileIO.read_vals_and_mods_from_trace_file}, which parses
+   * the value and modified bit of each variable, and little else.
+   */
+  @Benchmark
+  public ValueTuple read_sample(Records r) throws IOException {
+    r.state.reader = new LineNumberReader(new StringReader(r.records[r.next++ % INPUTS]));
+    FileIO.read_data_trace_record_setstate(r.state);
+    assert r.state.vt != null;
+    return r.state.vt;
+  }
+}
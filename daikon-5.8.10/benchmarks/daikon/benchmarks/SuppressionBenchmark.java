@@ -0,0 +1,80 @@
+package daikon.benchmarks;
+
+import daikon.PptSlice;
+import daikon.PptTopLevel;
+import daikon.ValueTuple;
+import daikon.inv.Invariant;
+import daikon.inv.InvariantStatus;
+import daikon.suppress.NIS;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of creating the invariants that a falsified invariant no longer suppresses (see
+ * {@link NIS}).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 50)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class SuppressionBenchmark {
+
+  /** The number of samples added before the sample that falsifies invariants. */
+  private static final int WARM_SAMPLES = 12;
+
+  /**
+   * A program point, and a sample that falsifies some of its invariants, including some that
+   * suppress others. The falsified invariants have been marked as such, but not yet removed, as
+   * when {@link PptTopLevel#add_bottom_up} calls {@link NIS#process_falsified_invs}.
+   */
+  @State(Scope.Thread)
+  public static class Falsified {
+
+    /** The number of variables of the program point. */
+    @Param({"10", "100", "1000"})
+    public int num_vars;
+
+    /** The program point. */
+    PptTopLevel ppt;
+
+    /** The sample that falsified the invariants. */
+    ValueTuple vt;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+      NIS.new_invs.clear();
+      ppt = SyntheticPpts.point(num_vars);
+      for (int i = 0; i < WARM_SAMPLES; i++) {
+        ppt.add_bottom_up(SyntheticPpts.sample(ppt, i), 1);
+      }
+      // Far enough from the first samples to break the linear relations between them
+      vt = SyntheticPpts.sample(ppt, 400);
+      for (PptSlice slice : ppt.views_iterable()) {
+        for (Invariant inv : slice.invs) {
+          if (inv.add_sample(vt, 1) == InvariantStatus.FALSIFIED) {
+            inv.falsify();
+          }
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public List<Invariant> process_falsified_invs(Falsified f) {
+    NIS.process_falsified_invs(f.ppt, f.vt);
+    return NIS.new_invs;
+  }
+}
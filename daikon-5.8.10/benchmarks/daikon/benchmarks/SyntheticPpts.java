@@ -0,0 +1,241 @@
+package daikon.benchmarks;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import daikon.Daikon;
+import daikon.FileIO;
+import daikon.PptMap;
+import daikon.PptRelation;
+import daikon.PptTopLevel;
+import daikon.ValueTuple;
+import daikon.VarInfo;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.checkerframework.checker.interning.qual.Interned;
+import org.plumelib.util.Intern;
+
+/**
+ * Builds synthetic program points, and samples for them, for the benchmarks.
+ *
+ * <p>Variable {@code x}<i>i</i> is an {@code int}. Its value in each sample follows one of {@link
+ * #PATTERNS} patterns, chosen by <i>i</i> modulo {@link #PATTERNS}: one is constant, and the others
+ * vary in ways that some invariants (equalities, linear relations, bounds) describe and others do
+ * not. Variables that follow the same pattern are always equal, so however many variables a program
+ * point has, it has at most {@link #PATTERNS} equality sets, and the number of slices stays
+ * bounded. That is also the shape of real program points with many variables, where most variables
+ * are equal to, or a constant offset of, a few others.
+ */
+final class SyntheticPpts {
+
+  /** This is a static class. */
+  private SyntheticPpts() {
+    throw new Error("do not instantiate");
+  }
+
+  /** The number of distinct patterns of values. */
+  static final int PATTERNS = 24;
+
+  /** The name of the program point created by {@link #point}. */
+  static final String POINT = "bench.C.point():::POINT";
+
+  /** The name of the method whose program points are created by {@link #method}. */
+  static final String METHOD = "bench.C.method()";
+
+  /** True once {@link #init} has run. */
+  private static boolean initialized = false;
+
+  /** Sets up Daikon's global state, as Daikon does before it reads any samples. */
+  static synchronized void init() {
+    if (!initialized) {
+      Daikon.setup_proto_invs();
+      Daikon.setup_NISuppression();
+      initialized = true;
+    }
+  }
+
+  /**
+   * Creates a program point {@link #POINT} of type {@code point}, ready to receive samples.
+   *
+   * @param num_vars the number of variables
+   * @return the program point
+   */
+  static PptTopLevel point(int num_vars) {
+    PptTopLevel ppt = point_map(num_vars).get(POINT);
+    assert ppt != null;
+    return ppt;
+  }
+
+  /**
+   * Creates a map that holds the program point {@link #POINT}, ready to receive samples.
+   *
+   * @param num_vars the number of variables
+   * @return the map
+   */
+  static PptMap point_map(int num_vars) {
+    init();
+    PptMap map = read_decls(decls(num_vars, new String[] {POINT}, new String[] {"point"}));
+    for (PptTopLevel ppt : map.pptIterable()) {
+      Daikon.init_ppt(ppt, map);
+    }
+    return map;
+  }
+
+  /**
+   * Creates the entry and two numbered exits of a method, the combined exit that is their parent,
+   * and the hierarchy that relates them, ready to receive samples.
+   *
+   * @param num_vars the number of variables, all of which are parameters
+   * @return the program points
+   */
+  static PptMap method(int num_vars) {
+    init();
+    PptMap map =
+        read_decls(
+            decls(
+                num_vars,
+                new String[] {METHOD + ":::ENTER", METHOD + ":::EXIT22", METHOD + ":::EXIT25"},
+                new String[] {"enter", "subexit", "subexit"}));
+    Daikon.create_combined_exits(map);
+    for (PptTopLevel ppt : map.pptIterable()) {
+      Daikon.init_ppt(ppt, map);
+    }
+    PptRelation.init_hierarchy_new(map);
+    return map;
+  }
+
+  /**
+   * Returns the declarations of some program points.
+   *
+   * @param num_vars the number of variables of each program point
+   * @param names the names of the program points
+   * @param types the types of the program points
+   * @return the text of a declaration file
+   */
+  private static String decls(int num_vars, String[] names, String[] types) {
+    StringBuilder decls = new StringBuilder();
+    decls.append("decl-version 2.0\nvar-comparability none\n\n");
+    for (int p = 0; p < names.length; p++) {
+      decls.append("ppt ").append(names[p]).append('\n');
+      decls.append("ppt-type ").append(types[p]).append('\n');
+      for (int i = 0; i < num_vars; i++) {
+        decls.append("variable x").append(i).append('\n');
+        decls.append("  var-kind variable\n  dec-type int\n  rep-type int\n");
+        if (!types[p].equals("point")) {
+          decls.append("  flags is_param\n");
+        }
+      }
+      decls.append('\n');
+    }
+    return decls.toString();
+  }
+
+  /**
+   * Reads declarations.
+   *
+   * @param decls the text of a declaration file
+   * @return the declared program points
+   */
+  private static PptMap read_decls(String decls) {
+    try {
+      File file = File.createTempFile("SyntheticPpts", ".decls");
+      try {
+        Files.write(file.toPath(), decls.getBytes(UTF_8));
+        FileIO.resetNewDeclFormat();
+        return FileIO.read_declaration_files(Collections.singleton(file));
+      } finally {
+        Files.delete(file.toPath());
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the value of a variable in a sample.
+   *
+   * @param var the index of the variable
+   * @param sample the index of the sample
+   * @return the value of {@code x}<i>var</i> in the sample
+   */
+  static long value(int var, int sample) {
+    int pattern = var % PATTERNS;
+    switch (pattern) {
+      case 0:
+        return 7;
+      case 1:
+        return sample;
+      case 2:
+        return 2L * sample + 1;
+      case 3:
+        return sample % 5;
+      case 4:
+        return -sample;
+      case 5:
+        return ((long) sample * sample) % 97;
+      default:
+        return ((long) sample * (pattern + 3) + pattern) % 1000;
+    }
+  }
+
+  /**
+   * Returns the index of the trace variable that a variable is based on: {@code x}<i>i</i> and
+   * {@code orig(x}<i>i</i>{@code )} both return <i>i</i>.
+   *
+   * @param vi a variable
+   * @return the index in its name
+   */
+  private static int var_index(VarInfo vi) {
+    String name = vi.name();
+    int start = name.indexOf('x') + 1;
+    int end = start;
+    while (end < name.length() && Character.isDigit(name.charAt(end))) {
+      end++;
+    }
+    return Integer.parseInt(name.substring(start, end));
+  }
+
+  /**
+   * Returns a sample for a program point, including the values of any orig variables, which are
+   * the same as the values of the variables they are based on.
+   *
+   * @param ppt the program point
+   * @param sample the index of the sample
+   * @return the sample, with interned values, as it would be passed to {@link
+   *     PptTopLevel#add_bottom_up}
+   */
+  static ValueTuple sample(PptTopLevel ppt, int sample) {
+    int size = ppt.var_infos.length - ppt.num_static_constant_vars;
+    @Interned Object[] vals = new @Interned Object[size];
+    int[] mods = new int[size];
+    for (VarInfo vi : ppt.var_infos) {
+      if (vi.is_static_constant) {
+        continue;
+      }
+      vals[vi.value_index] = Intern.internedLong(value(var_index(vi), sample));
+      mods[vi.value_index] = ValueTuple.MODIFIED;
+    }
+    return new ValueTuple(vals, mods);
+  }
+
+  /**
+   * Returns the text of a sample for {@link #POINT}, as it appears in a data trace file.
+   *
+   * @param num_vars the number of variables
+   * @param sample the index of the sample
+   * @return the record for the sample, ending with a blank line
+   */
+  static String record(int num_vars, int sample) {
+    StringBuilder record = new StringBuilder();
+    record.append(POINT).append('\n');
+    for (int i = 0; i < num_vars; i++) {
+      record.append('x').append(i).append('\n');
+      record.append(value(i, sample)).append('\n');
+      record.append("1\n");
+    }
+    record.append('\n');
+    return record.toString();
+  }
+}
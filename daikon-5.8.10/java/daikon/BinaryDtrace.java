@@ -0,0 +1,856 @@
+package daikon;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.checkerframework.checker.interning.qual.Interned;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.plumelib.util.FilesPlume;
+import org.plumelib.util.Intern;
+
+/**
+ * A binary encoding of data trace files. {@link FileIO} reads a file in this format wherever it
+ * reads a {@code .dtrace} file; the format is recognized by the first bytes of the file, so the
+ * file name still needs to contain {@code .dtrace}. A binary trace is much smaller than the
+ * equivalent text, and reading it requires no parsing: each sample names its program point by a
+ * number, its variables are implicit, and its values are stored as raw primitives.
+ *
+ * <p>A binary trace file starts with the bytes of {@link #MAGIC} and a version number (currently
+ * {@link #VERSION}). Records follow, each starting with a one-byte tag:
+ *
+ * <dl>
+ *   <dt>{@link #TEXT}
+ *   <dd>A string in the {@code .dtrace} text format. Declarations and comments are stored this
+ *       way, as is any sample that has no binary encoding.
+ *   <dt>{@link #PPT}
+ *   <dd>The name of a program point, the number of its variables, and the name and {@linkplain
+ *       #kind kind} of each variable, in the order in which their values appear in samples.
+ *       Program points are numbered in the order of their PPT records, starting at 0. The PPT
+ *       record precedes the first sample of the program point, but the program point must have
+ *       been declared elsewhere, as for a text trace.
+ *   <dt>{@link #SAMPLE}
+ *   <dd>The number of a program point; its invocation nonce plus 1, or 0 if there is none; the
+ *       modified bit of each variable (0, 1, or 2, as in a text trace), packed four to a byte with
+ *       the first variable in the low-order bits; and the value of each variable whose modified
+ *       bit is not 2.
+ * </dl>
+ *
+ * <p>Numbers other than values are unsigned LEB128 integers. Names and strings are a number of
+ * bytes and the bytes of their UTF-8 encoding; a string value stores the number of bytes plus 1,
+ * or 0 for null. Integral and floating-point values are 8 bytes each, in little-endian order. An
+ * array is its number of elements followed by the elements.
+ *
+ * <p>{@link daikon.tools.DtraceToBinary} converts a text trace to this format, and Chicory writes
+ * it directly when given the {@code --dtrace-binary} option.
+ */
+public final class BinaryDtrace {
+
+  /** This is a static class. */
+  private BinaryDtrace() {
+    throw new Error("do not instantiate");
+  }
+
+  /** The first bytes of a binary trace file. No text trace file starts with a zero byte. */
+  static final byte[] MAGIC = {0, 'D', 'T', 'B'};
+
+  /** The version of the format that is written, and the only version that can be read. */
+  static final int VERSION = 1;
+
+  /** Tag of a record that holds text in the {@code .dtrace} format. */
+  static final int TEXT = 1;
+
+  /** Tag of a record that describes the variables of a program point. */
+  static final int PPT = 2;
+
+  /** Tag of a record that holds a sample. */
+  static final int SAMPLE = 3;
+
+  /** Kind of a variable whose values are {@code Long}s. */
+  public static final int INT = 0;
+
+  /** Kind of a variable whose values are {@code Double}s. */
+  public static final int DOUBLE = 1;
+
+  /** Kind of a variable whose values are {@code String}s. */
+  public static final int STRING = 2;
+
+  /** Kind of a variable whose values are {@code long[]}s. */
+  public static final int INT_ARRAY = 3;
+
+  /** Kind of a variable whose values are {@code double[]}s. */
+  public static final int DOUBLE_ARRAY = 4;
+
+  /** Kind of a variable whose values are {@code String[]}s. */
+  public static final int STRING_ARRAY = 5;
+
+  /**
+   * Returns how the values of variables of the given type are encoded.
+   *
+   * @param rep_type the representation type of a variable, as in {@link VarInfo#rep_type}
+   * @return one of {@link #INT}, {@link #DOUBLE}, {@link #STRING}, {@link #INT_ARRAY}, {@link
+   *     #DOUBLE_ARRAY}, or {@link #STRING_ARRAY}, or -1 if the values have no binary encoding
+   */
+  public static int kind(ProglangType rep_type) {
+    String base = rep_type.base();
+    boolean integral =
+        (base == ProglangType.BASE_INT)
+            || (base == ProglangType.BASE_BOOLEAN)
+            || (base == ProglangType.BASE_CHAR);
+    if (rep_type.dimensions() == 0) {
+      if (integral) {
+        return INT;
+      } else if (base == ProglangType.BASE_DOUBLE) {
+        return DOUBLE;
+      } else if (base == ProglangType.BASE_STRING) {
+        return STRING;
+      }
+    } else if (rep_type.dimensions() == 1) {
+      // ProglangType.parse_value reads arrays of only these element types.
+      if (base == ProglangType.BASE_INT) {
+        return INT_ARRAY;
+      } else if (base == ProglangType.BASE_DOUBLE) {
+        return DOUBLE_ARRAY;
+      } else if (base == ProglangType.BASE_STRING) {
+        return STRING_ARRAY;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns true if the given file is a binary trace file. Returns false for a file that does not
+   * exist or cannot be read, so that it is reported by the text reader.
+   *
+   * @param filename the name of a file, which is decompressed if it ends in {@code .gz}
+   * @return true if the file starts with {@link #MAGIC}
+   */
+  public static boolean is_binary_file(String filename) {
+    byte[] start = new byte[MAGIC.length];
+    try (InputStream in = FilesPlume.newFileInputStream(new File(filename))) {
+      int n = 0;
+      while (n < start.length) {
+        int read = in.read(start, n, start.length - n);
+        if (read < 0) {
+          return false;
+        }
+        n += read;
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(start, MAGIC);
+  }
+
+  /**
+   * The program point and variables that a {@link #PPT} record describes, or that the samples of
+   * an {@link InProcessDtrace} share. {@link FileIO} records here how it maps the variables to
+   * those of the declared program point.
+   */
+  static final class PptFormat {
+
+    /** The name of the program point. */
+    final String name;
+
+    /** The names of the variables, in the order of their values in a sample. */
+    final String[] var_names;
+
+    /** The {@linkplain #kind kind} of each variable. */
+    final int[] kinds;
+
+    /** Scratch space for the modified bits of a sample. */
+    final int[] mods;
+
+    /** True once {@link #ppt} and {@link #vars} have been set. */
+    boolean resolved = false;
+
+    /** The declared program point, or null if its samples are skipped. */
+    @Nullable PptTopLevel ppt = null;
+
+    /** The declared variable of each variable, or null if its values are skipped. */
+    @Nullable VarInfo @Nullable [] vars = null;
+
+    /**
+     * Creates a description of a program point.
+     *
+     * @param name the name of the program point
+     * @param var_names the names of its variables
+     * @param kinds the kind of each variable
+     */
+    PptFormat(String name, String[] var_names, int[] kinds) {
+      this.name = name;
+      this.var_names = var_names;
+      this.kinds = kinds;
+      this.mods = new int[kinds.length];
+    }
+  }
+
+  /** Reads the records of a binary trace file. See {@link FileIO#read_data_trace_record}. */
+  public static final class Reader implements Closeable {
+
+    /** The input. */
+    private final InputStream in;
+
+    /** Bytes read from {@link #in}. Those from {@link #pos} to {@link #limit} are not yet used. */
+    private byte[] buffer = new byte[1 << 16];
+
+    /** {@link #buffer}, for reading little-endian primitives. */
+    private ByteBuffer view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+
+    /** The index in {@link #buffer} of the next byte to be used. */
+    private int pos = 0;
+
+    /** The number of bytes in {@link #buffer}. */
+    private int limit = 0;
+
+    /** The number of records that have been read. */
+    private long records = 0;
+
+    /** The program points described by the PPT records that have been read, indexed by number. */
+    final List<PptFormat> ppts = new ArrayList<>();
+
+    /**
+     * Opens a binary trace file for reading.
+     *
+     * @param filename the name of the file, which is decompressed if it ends in {@code .gz}
+     * @throws IOException if the file cannot be read
+     */
+    public Reader(String filename) throws IOException {
+      in = FilesPlume.newFileInputStream(new File(filename));
+      need(MAGIC.length + 1);
+      for (byte b : MAGIC) {
+        if (buffer[pos++] != b) {
+          throw new Daikon.UserError(filename + " is not a binary data trace file");
+        }
+      }
+      int version = buffer[pos++];
+      if (version != VERSION) {
+        throw new Daikon.UserError(
+            "Cannot read version " + version + " of the binary data trace format in " + filename);
+      }
+    }
+
+    /**
+     * Makes at least the given number of bytes available at {@link #pos}.
+     *
+     * @param n the number of bytes
+     * @return false if the input ends first
+     */
+    private boolean fill(int n) throws IOException {
+      if (limit - pos >= n) {
+        return true;
+      }
+      if (n > buffer.length) {
+        buffer = Arrays.copyOf(buffer, Math.max(n, 2 * buffer.length));
+        view = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+      }
+      System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+      limit -= pos;
+      pos = 0;
+      while (limit < n) {
+        int read = in.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+          return false;
+        }
+        limit += read;
+      }
+      return true;
+    }
+
+    /**
+     * Makes at least the given number of bytes available at {@link #pos}.
+     *
+     * @param n the number of bytes
+     * @throws EOFException if the input ends first
+     */
+    private void need(int n) throws IOException {
+      if (!fill(n)) {
+        throw new EOFException("Binary data trace file ends in the middle of a record");
+      }
+    }
+
+    /**
+     * Reads the tag of the next record.
+     *
+     * @return {@link #TEXT}, {@link #PPT}, {@link #SAMPLE}, or another tag if the file is
+     *     malformed; or -1 at the end of the file
+     */
+    int read_tag() throws IOException {
+      if (!fill(1)) {
+        return -1;
+      }
+      records++;
+      return buffer[pos++] & 0xFF;
+    }
+
+    /** Returns the number of records that have been read. */
+    public long records() {
+      return records;
+    }
+
+    /** Reads an unsigned LEB128 number. */
+    long read_number() throws IOException {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        need(1);
+        byte b = buffer[pos++];
+        result |= (long) (b & 0x7F) << shift;
+        if (b >= 0) {
+          return result;
+        }
+      }
+      throw new IOException("Malformed number in binary data trace file");
+    }
+
+    /** Reads a number that is a count of elements or bytes. */
+    int read_count() throws IOException {
+      long count = read_number();
+      if (count > Integer.MAX_VALUE - 8) {
+        throw new IOException("Bad count " + count + " in binary data trace file");
+      }
+      return (int) count;
+    }
+
+    /**
+     * Reads the given number of bytes as UTF-8.
+     *
+     * @param length the number of bytes
+     */
+    private String read_utf8(int length) throws IOException {
+      need(length);
+      String result = new String(buffer, pos, length, UTF_8);
+      pos += length;
+      return result;
+    }
+
+    /** Reads the text of a {@link #TEXT} record, after its tag. */
+    String read_text() throws IOException {
+      return read_utf8(read_count());
+    }
+
+    /** Reads a {@link #PPT} record, after its tag, and adds it to {@link #ppts}. */
+    void read_ppt() throws IOException {
+      String name = read_utf8(read_count());
+      int num_vars = read_count();
+      String[] var_names = new String[num_vars];
+      int[] kinds = new int[num_vars];
+      for (int i = 0; i < num_vars; i++) {
+        var_names[i] = read_utf8(read_count());
+        need(1);
+        kinds[i] = buffer[pos++];
+        if (kinds[i] < INT || kinds[i] > STRING_ARRAY) {
+          throw new IOException(
+              "Bad kind " + kinds[i] + " of variable " + var_names[i] + " of " + name);
+        }
+      }
+      ppts.add(new PptFormat(name, var_names, kinds));
+    }
+
+    /**
+     * Reads the program point number at the start of a {@link #SAMPLE} record, after its tag.
+     *
+     * @return the description of the program point
+     */
+    PptFormat read_sample_ppt() throws IOException {
+      long number = read_number();
+      if (number >= ppts.size()) {
+        throw new IOException("Sample of undescribed program point number " + number);
+      }
+      return ppts.get((int) number);
+    }
+
+    /**
+     * Reads the invocation nonce of a sample.
+     *
+     * @return the nonce, or null if the sample has none
+     */
+    @Nullable Integer read_nonce() throws IOException {
+      long code = read_number();
+      return (code == 0) ? null : Integer.valueOf((int) (code - 1));
+    }
+
+    /**
+     * Reads the modified bits of a sample into {@code format.mods}.
+     *
+     * @param format the program point of the sample
+     */
+    void read_mods(PptFormat format) throws IOException {
+      int[] mods = format.mods;
+      need((mods.length + 3) / 4);
+      for (int i = 0; i < mods.length; i++) {
+        mods[i] = (buffer[pos + (i >> 2)] >> ((i & 3) * 2)) & 3;
+      }
+      pos += (mods.length + 3) / 4;
+    }
+
+    /** Reads an 8-byte little-endian integer. */
+    private long read_long() throws IOException {
+      need(8);
+      long result = view.getLong(pos);
+      pos += 8;
+      return result;
+    }
+
+    /** Reads a string, which may be null. */
+    private @Nullable String read_string() throws IOException {
+      int length = read_count();
+      return (length == 0) ? null : read_utf8(length - 1);
+    }
+
+    /**
+     * Reads a value.
+     *
+     * @param kind the kind of the variable
+     * @return the interned value, as {@link ProglangType#parse_value} would return it
+     */
+    @Nullable @Interned Object read_value(int kind) throws IOException {
+      switch (kind) {
+        case INT:
+          return ValueTuple.internedLong(read_long());
+        case DOUBLE:
+          return ValueTuple.internedDouble(Double.longBitsToDouble(read_long()));
+        case STRING:
+          {
+            String result = read_string();
+            return (result == null) ? null : result.intern();
+          }
+        case INT_ARRAY:
+          {
+            long[] result = new long[read_count()];
+            for (int i = 0; i < result.length; i++) {
+              result[i] = read_long();
+            }
+            return Intern.intern(result);
+          }
+        case DOUBLE_ARRAY:
+          {
+            double[] result = new double[read_count()];
+            for (int i = 0; i < result.length; i++) {
+              result[i] = Double.longBitsToDouble(read_long());
+            }
+            return Intern.intern(result);
+          }
+        case STRING_ARRAY:
+          {
+            @Nullable String[] result = new @Nullable String[read_count()];
+            for (int i = 0; i < result.length; i++) {
+              result[i] = read_string();
+            }
+            @SuppressWarnings("interning") // internStrings interns the elements in place
+            @Interned String[] interned = Intern.internStrings(result);
+            return Intern.intern(interned);
+          }
+        default:
+          throw new Error("Bad kind " + kind);
+      }
+    }
+
+    /**
+     * Skips a value.
+     *
+     * @param kind the kind of the variable
+     */
+    void skip_value(int kind) throws IOException {
+      switch (kind) {
+        case INT:
+        case DOUBLE:
+          need(8);
+          pos += 8;
+          break;
+        case STRING:
+          read_string();
+          break;
+        case INT_ARRAY:
+        case DOUBLE_ARRAY:
+          {
+            int length = read_count();
+            need(8 * length);
+            pos += 8 * length;
+            break;
+          }
+        case STRING_ARRAY:
+          {
+            int length = read_count();
+            for (int i = 0; i < length; i++) {
+              read_string();
+            }
+            break;
+          }
+        default:
+          throw new Error("Bad kind " + kind);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  /**
+   * Receives samples as values, rather than as text. A sample is given by calling {@link
+   * #start_sample}, then {@link #add_value} for each variable in the order of the declaration, then
+   * {@link #end_sample}. Implemented by {@link Writer} and by {@link InProcessDtrace.Writer}.
+   */
+  public interface SampleWriter {
+
+    /**
+     * Starts a sample.
+     *
+     * @param ppt_name the name of the program point
+     * @param nonce the invocation nonce, or null if there is none
+     */
+    void start_sample(String ppt_name, @Nullable Integer nonce);
+
+    /**
+     * Adds the value of the next variable to the current sample.
+     *
+     * @param var_name the name of the variable
+     * @param rep_type the representation type of the variable, as in {@link VarInfo#rep_type}; its
+     *     {@linkplain BinaryDtrace#kind kind} must not be -1
+     * @param value the value, as returned by {@link ProglangType#parse_value} or {@link
+     *     ProglangType#parse_value_uninterned}, or null if it is nonsensical
+     * @param mod the modified bit: {@link ValueTuple#UNMODIFIED}, {@link ValueTuple#MODIFIED}, or
+     *     {@link ValueTuple#MISSING_NONSENSICAL}
+     */
+    void add_value(String var_name, ProglangType rep_type, @Nullable Object value, int mod);
+
+    /**
+     * Ends the current sample and passes it on.
+     *
+     * @throws IOException if the sample cannot be passed on
+     */
+    void end_sample() throws IOException;
+  }
+
+  /**
+   * Writes a binary trace file. Text, such as declarations, is written with {@link #write_text} or
+   * through {@link #text_writer}. Samples are written as described for {@link SampleWriter}.
+   */
+  public static final class Writer implements SampleWriter, Closeable {
+
+    /** The output. */
+    private final OutputStream out;
+
+    /** Text that has been written through {@link #text_writer} but not yet output. */
+    private final StringBuilder pending_text = new StringBuilder();
+
+    /** The number of each program point that has had a {@link #PPT} record. */
+    private final HashMap<String, Integer> ppt_numbers = new HashMap<>();
+
+    /** The number of variables of each program point, indexed by number. */
+    private final List<Integer> ppt_sizes = new ArrayList<>();
+
+    /** The name of the program point of the current sample, or null between samples. */
+    private @Nullable String ppt_name = null;
+
+    /** The number of the program point of the current sample, or -1 if it is new. */
+    private int ppt_number = -1;
+
+    /** The nonce of the current sample, encoded as in a {@link #SAMPLE} record. */
+    private long nonce_code = 0;
+
+    /** The number of variables of the current sample that have been added. */
+    private int num_vars = 0;
+
+    /** The names of the variables of the current sample, if its program point is new. */
+    private final List<String> var_names = new ArrayList<>();
+
+    /** The kinds of the variables of the current sample, if its program point is new. */
+    private final List<Integer> var_kinds = new ArrayList<>();
+
+    /** The packed modified bits of the current sample. */
+    private byte[] mods = new byte[16];
+
+    /** The encoded values of the current sample. */
+    private ByteBuffer values = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+
+    /** The encoding of a record, before it is output. */
+    private ByteBuffer record = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Starts a binary trace file.
+     *
+     * @param out where to write the file; should be buffered
+     * @throws IOException if the output cannot be written
+     */
+    public Writer(OutputStream out) throws IOException {
+      this.out = out;
+      out.write(MAGIC);
+      out.write(VERSION);
+    }
+
+    /**
+     * Writes text in the {@code .dtrace} format, such as declarations.
+     *
+     * @param text the text
+     * @throws IOException if the output cannot be written
+     */
+    public void write_text(String text) throws IOException {
+      flush_text();
+      byte[] bytes = text.getBytes(UTF_8);
+      record.clear();
+      record = put_number(record, TEXT);
+      record = put_number(record, bytes.length);
+      out.write(record.array(), 0, record.position());
+      out.write(bytes);
+    }
+
+    /** Writes the text that was written through {@link #text_writer} but not yet output. */
+    private void flush_text() throws IOException {
+      if (pending_text.length() > 0) {
+        String text = pending_text.toString();
+        pending_text.setLength(0);
+        write_text(text);
+      }
+    }
+
+    /**
+     * Returns a writer for text in the {@code .dtrace} format. The text is output before the next
+     * sample, or when the writer or this is flushed or closed.
+     *
+     * @return a writer for text
+     */
+    public TextWriter text_writer() {
+      return new TextWriter();
+    }
+
+    /** Text output to a binary trace file. See {@link #text_writer}. */
+    public final class TextWriter extends java.io.Writer {
+
+      /** Creates a writer of text. */
+      private TextWriter() {}
+
+      @Override
+      public void write(char[] cbuf, int off, int len) {
+        pending_text.append(cbuf, off, len);
+      }
+
+      @Override
+      public void write(String str, int off, int len) {
+        pending_text.append(str, off, off + len);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        Writer.this.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        Writer.this.close();
+      }
+    }
+
+    @Override
+    public void start_sample(String ppt_name, @Nullable Integer nonce) {
+      assert this.ppt_name == null : "sample of " + this.ppt_name + " was not ended";
+      this.ppt_name = ppt_name;
+      Integer number = ppt_numbers.get(ppt_name);
+      ppt_number = (number == null) ? -1 : number;
+      nonce_code = (nonce == null) ? 0 : (nonce.intValue() & 0xFFFFFFFFL) + 1;
+      num_vars = 0;
+      var_names.clear();
+      var_kinds.clear();
+      values.clear();
+    }
+
+    @Override
+    public void add_value(
+        String var_name, ProglangType rep_type, @Nullable Object value, int mod) {
+      assert ppt_name != null : "add_value called outside a sample";
+      int kind = kind(rep_type);
+      if (kind < 0) {
+        throw new IllegalArgumentException(
+            "Variable " + var_name + " of type " + rep_type + " has no binary encoding");
+      }
+      if (ppt_number < 0) {
+        var_names.add(var_name);
+        var_kinds.add(kind);
+      }
+      if (value == null) {
+        mod = ValueTuple.MISSING_NONSENSICAL;
+      }
+      if ((num_vars & 3) == 0) {
+        if ((num_vars >> 2) == mods.length) {
+          mods = Arrays.copyOf(mods, 2 * mods.length);
+        }
+        mods[num_vars >> 2] = 0;
+      }
+      mods[num_vars >> 2] |= (byte) (mod << ((num_vars & 3) * 2));
+      num_vars++;
+      if (value != null) {
+        put_value(kind, value);
+      }
+    }
+
+    /**
+     * Encodes a value into {@link #values}.
+     *
+     * @param kind the kind of the variable
+     * @param value the value
+     */
+    private void put_value(int kind, Object value) {
+      switch (kind) {
+        case INT:
+          values = room(values, 8).putLong(((Long) value).longValue());
+          break;
+        case DOUBLE:
+          values = room(values, 8).putDouble(((Double) value).doubleValue());
+          break;
+        case STRING:
+          values = put_string(values, (String) value);
+          break;
+        case INT_ARRAY:
+          {
+            long[] array = (long[]) value;
+            values = room(put_number(values, array.length), 8 * array.length);
+            for (long elt : array) {
+              values.putLong(elt);
+            }
+            break;
+          }
+        case DOUBLE_ARRAY:
+          {
+            double[] array = (double[]) value;
+            values = room(put_number(values, array.length), 8 * array.length);
+            for (double elt : array) {
+              values.putDouble(elt);
+            }
+            break;
+          }
+        case STRING_ARRAY:
+          {
+            @Nullable String[] array = (@Nullable String[]) value;
+            values = put_number(values, array.length);
+            for (String elt : array) {
+              values = put_string(values, elt);
+            }
+            break;
+          }
+        default:
+          throw new Error("Bad kind " + kind);
+      }
+    }
+
+    @Override
+    public void end_sample() throws IOException {
+      assert ppt_name != null : "end_sample called outside a sample";
+      flush_text();
+      if (ppt_number < 0) {
+        ppt_number = ppt_sizes.size();
+        ppt_numbers.put(ppt_name, ppt_number);
+        ppt_sizes.add(num_vars);
+        record.clear();
+        record = put_number(record, PPT);
+        record = put_name(record, ppt_name);
+        record = put_number(record, num_vars);
+        for (int i = 0; i < num_vars; i++) {
+          record = put_name(record, var_names.get(i));
+          record = room(record, 1).put(var_kinds.get(i).byteValue());
+        }
+        out.write(record.array(), 0, record.position());
+      } else if (ppt_sizes.get(ppt_number) != num_vars) {
+        throw new IllegalStateException(
+            "Sample of " + ppt_name + " has " + num_vars + " variables, previously "
+                + ppt_sizes.get(ppt_number));
+      }
+      record.clear();
+      record = put_number(record, SAMPLE);
+      record = put_number(record, ppt_number);
+      record = put_number(record, nonce_code);
+      int mods_length = (num_vars + 3) / 4;
+      record = room(record, mods_length).put(mods, 0, mods_length);
+      out.write(record.array(), 0, record.position());
+      out.write(values.array(), 0, values.position());
+      ppt_name = null;
+    }
+
+    /**
+     * Flushes the output, including any text written through {@link #text_writer}.
+     *
+     * @throws IOException if the output cannot be written
+     */
+    public void flush() throws IOException {
+      flush_text();
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush_text();
+      out.close();
+    }
+  }
+
+  /**
+   * Returns a buffer with room for the given number of bytes after its position.
+   *
+   * @param buffer a buffer
+   * @param n the number of bytes
+   * @return {@code buffer}, or a larger copy of it
+   */
+  private static ByteBuffer room(ByteBuffer buffer, int n) {
+    if (buffer.remaining() >= n) {
+      return buffer;
+    }
+    ByteBuffer result =
+        ByteBuffer.allocate(Math.max(2 * buffer.capacity(), buffer.position() + n))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    result.put(buffer.array(), 0, buffer.position());
+    return result;
+  }
+
+  /**
+   * Appends an unsigned LEB128 number to a buffer.
+   *
+   * @param buffer a buffer
+   * @param number a non-negative number
+   * @return {@code buffer}, or a larger copy of it that holds the number
+   */
+  private static ByteBuffer put_number(ByteBuffer buffer, long number) {
+    buffer = room(buffer, 10);
+    while ((number & ~0x7FL) != 0) {
+      buffer.put((byte) ((number & 0x7F) | 0x80));
+      number >>>= 7;
+    }
+    return buffer.put((byte) number);
+  }
+
+  /**
+   * Appends the length and UTF-8 bytes of a name to a buffer.
+   *
+   * @param buffer a buffer
+   * @param name a name
+   * @return {@code buffer}, or a larger copy of it that holds the name
+   */
+  private static ByteBuffer put_name(ByteBuffer buffer, String name) {
+    byte[] bytes = name.getBytes(UTF_8);
+    return room(put_number(buffer, bytes.length), bytes.length).put(bytes);
+  }
+
+  /**
+   * Appends a string value, which may be null, to a buffer.
+   *
+   * @param buffer a buffer
+   * @param value a string, or null
+   * @return {@code buffer}, or a larger copy of it that holds the value
+   */
+  private static ByteBuffer put_string(ByteBuffer buffer, @Nullable String value) {
+    if (value == null) {
+      return put_number(buffer, 0);
+    }
+    byte[] bytes = value.getBytes(UTF_8);
+    return room(put_number(buffer, bytes.length + 1L), bytes.length).put(bytes);
+  }
+}
@@ -47,6 +47,10 @@ public class Chicory {
   @Option("File in which to put dtrace output")
   public static @MonotonicNonNull File dtrace_file = null;
 
+  /** Write the dtrace file in binary form. */
+  @Option("Write the dtrace file in the binary form that Daikon reads fastest")
+  public static boolean dtrace_binary = false;
+
   /** Decl formatted file containing comparability information. */
   @Option("Decl formatted file containing comparability information")
   public static @Nullable File comparability_file = null;
@@ -67,11 +71,19 @@ public class Chicory {
   @Option("Send trace information to Daikon over a socket")
   public static boolean daikon_online = false;
 
+  /**
+   * Run Daikon on a thread of the target program, and pass it the trace information directly,
+   * without a trace file or a socket. Daikon finishes when the target program exits.
+   */
+  @Option("Run Daikon within the target program, without a trace file")
+  public static boolean daikon_in_process = false;
+
   /**
    * Specifies Daikon arguments to be used if Daikon is run on a generated trace file {@code
-   * --daikon} or online via a socket {@code --daikon-online}.
+   * --daikon}, online via a socket {@code --daikon-online}, or within the target program {@code
+   * --daikon-in-process}.
    */
-  @Option("Specify Daikon arguments for either --daikon or --daikon-online")
+  @Option("Specify Daikon arguments for --daikon, --daikon-online, or --daikon-in-process")
   public static String daikon_args = "";
 
   // Should perhaps permit specifying the heap for the target program and
@@ -104,6 +116,22 @@ public class Chicory {
   @Option("Number of calls after which sampling will begin")
   public static int sample_start = 0;
 
+  /**
+   * When this option is chosen, Chicory will record the first sample-cnt calls of each method, and
+   * after that the n'th call with probability sample-cnt/n. If sample-cnt is 0, then this kind of
+   * sampling is not done.
+   */
+  @Option("Number of calls of each method in its sampling reservoir")
+  public static int sample_reservoir = 0;
+
+  /**
+   * The maximum number of records that Chicory writes per second, over all methods. A call that is
+   * recorded counts as two records, one at its entry and one at its exit. The calls over the budget
+   * are not traced at all. If the budget is 0, then there is no limit.
+   */
+  @Option("Maximum number of records written per second")
+  public static int sample_budget = 0;
+
   /** Treat classes that match the regex as boot classes (do not instrument). */
   @Option("Treat classes that match the regex as boot classes (do not instrument)")
   public static @Nullable Pattern boot_classes = null;
@@ -238,8 +266,25 @@ public class Chicory {
       options.printUsage();
       System.exit(1);
     }
-    if (!daikon_args.trim().isEmpty() && !(daikon || daikon_online)) {
-      System.out.printf("may not specify daikon-args without either daikon or daikon-onlne%n");
+    if (dtrace_binary && daikon_online) {
+      System.out.printf("may not specify both dtrace-binary and daikon-online%n");
+      options.printUsage();
+      System.exit(1);
+    }
+    if (daikon_in_process && (daikon || daikon_online || dtrace_binary)) {
+      System.out.printf(
+          "may not specify daikon-in-process with daikon, daikon-online, or dtrace-binary%n");
+      options.printUsage();
+      System.exit(1);
+    }
+    if (sample_start < 0 || sample_reservoir < 0 || sample_budget < 0) {
+      System.out.printf("sample-start, sample-reservoir, and sample-budget must not be negative%n");
+      options.printUsage();
+      System.exit(1);
+    }
+    if (!daikon_args.trim().isEmpty() && !(daikon || daikon_online || daikon_in_process)) {
+      System.out.printf(
+          "may not specify daikon-args without daikon, daikon-onlne, or daikon-in-process%n");
       options.printUsage();
       System.exit(1);
     }
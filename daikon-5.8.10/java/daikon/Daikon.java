@@ -252,6 +252,29 @@ public final class Daikon {
    */
   public static boolean dkconfig_print_sample_totals = false;
 
+  /**
+   * Integer. The number of threads that merge the invariants of the program point hierarchy. If
+   * greater than 1, independent parts of the hierarchy are merged concurrently. The result is the
+   * same as with one thread. Ignored if {@code daikon.PptTopLevel.remove_merged_invs} is set.
+   */
+  public static int dkconfig_merge_threads = 1;
+
+  /**
+   * Integer. The number of threads that process the program points after the data trace files have
+   * been read: dynamic constants, equality sets, and implications are post-processed at several
+   * program points concurrently. The result is the same as with one thread.
+   */
+  public static int dkconfig_postprocess_threads = 1;
+
+  /**
+   * Boolean. Controls whether the time taken by each phase of processing after the data trace files
+   * have been read is printed at the end of processing.
+   */
+  public static boolean dkconfig_print_phase_metrics = false;
+
+  /** The phases of processing after the data trace files were read, in the order they ran. */
+  public static List<PhaseMetrics> phase_metrics = new ArrayList<>();
+
   // All these variables really need to be organized better.
 
   public static final String lineSep = Global.lineSep;
@@ -374,6 +397,11 @@ public final class Daikon {
   // file.
   public static @Nullable File inv_file;
 
+  // Whether to serialize the invariants to a file named after the first
+  // dtrace file when no -o option is given.  InferenceServer clears this,
+  // since its clients read the printed invariants instead.
+  static boolean write_default_inv_file = true;
+
   // Whether we want the memory monitor activated
   private static boolean use_mem_monitor = false;
 
@@ -502,6 +530,7 @@ public final class Daikon {
           "    java daikon.Daikon [flags...] files...",
           "  Each file is a declaration file or a data trace file; the file type",
           "  is determined by the file name (containing \".decls\" or \".dtrace\").",
+          "  A \".csv\" file is read as a data trace over a single program point.",
           "  For a list of flags, see the Daikon manual, which appears in the ",
           "  Daikon distribution and also at http://plse.cs.washington.edu/daikon/.");
 
@@ -647,7 +676,7 @@ public final class Daikon {
 
   /**
    * The arguments to daikon.Daikon are file names. Declaration file names end in ".decls", and data
-   * trace file names end in ".dtrace".
+   * trace file names end in ".dtrace" (or ".csv", for a trace over a single program point).
    */
   public static void main(final String[] args) {
     try {
@@ -704,65 +733,13 @@ public final class Daikon {
 
     // Read command line options
     FileOptions files = read_options(args, usage);
-    Set<File> decls_files = files.decls;
     Set<String> dtrace_files = files.dtrace;
-    Set<File> spinfo_files = files.spinfo;
-    Set<File> map_files = files.map;
-    if (server_dir == null && (decls_files.size() == 0) && (dtrace_files.size() == 0)) {
+    if (server_dir == null && (files.decls.size() == 0) && (dtrace_files.size() == 0)) {
       System.out.println("No .decls or .dtrace files specified");
       throw new Daikon.UserError("No .decls or .dtrace files specified");
     }
 
-    // Never disable splitting for csharp format.
-    if (Daikon.dkconfig_undo_opts && Daikon.output_format != OutputFormat.CSHARPCONTRACT) {
-      PptSplitter.dkconfig_disable_splitting = true;
-    }
-
-    if (Daikon.dkconfig_quiet) {
-      Daikon.dkconfig_progress_delay = -1;
-    }
-    if (System.console() == null) {
-      // not connected to a terminal
-      Daikon.dkconfig_progress_delay = -1;
-    }
-
-    // Set up debug traces; note this comes after reading command line options.
-    LogHelper.setupLogs(Global.debugAll ? LogHelper.FINE : LogHelper.INFO);
-
-    if (!noversion_output) {
-      if (!Daikon.dkconfig_quiet) System.out.println(release_string);
-    }
-
-    // figure out which algorithm to use in NIS to process suppressions
-    if (NIS.dkconfig_suppression_processor == SuppressionProcessor.HYBRID) {
-      NIS.hybrid_method = true;
-    } else {
-      if (NIS.dkconfig_suppression_processor == SuppressionProcessor.ANTECEDENT) {
-        NIS.antecedent_method = true;
-        NIS.hybrid_method = false;
-      } else {
-        assert (NIS.dkconfig_suppression_processor == SuppressionProcessor.FALSIFIED);
-        NIS.antecedent_method = false;
-        NIS.hybrid_method = false;
-      }
-    }
-
-    // Create the list of all invariant types
-    setup_proto_invs();
-
-    if (PrintInvariants.print_discarded_invariants) {
-      DiscReasonMap.initialize();
-    }
-
-    fileio_progress = new FileIOProgress();
-    fileio_progress.start();
-
-    // Load declarations and splitters
-    load_spinfo_files(spinfo_files);
-    all_ppts = load_decls_files(decls_files);
-    load_map_files(map_files);
-
-    all_ppts.trimToSize();
+    setup(files);
 
     // Only for assertion checks
     isInferencing = true;
@@ -887,6 +864,18 @@ public final class Daikon {
     }
     if (dkconfig_print_sample_totals) {
       System.out.println(FileIO.samples_processed + " samples processed");
+      if (PptTopLevel.dkconfig_convergence_samples > 0) {
+        int skipped = 0;
+        for (PptTopLevel ppt : all_ppts.ppt_all_iterable()) {
+          skipped += ppt.num_skipped_samples();
+        }
+        System.out.println(skipped + " samples skipped by converged program points");
+      }
+    }
+    if (dkconfig_print_phase_metrics) {
+      for (PhaseMetrics metrics : phase_metrics) {
+        System.out.println(metrics);
+      }
     }
 
     // print statistics concerning what invariants are printed
@@ -902,6 +891,71 @@ public final class Daikon {
     }
   }
 
+  /**
+   * Sets up everything that precedes reading the data trace files: the invariant prototypes, the
+   * splitters, and the program points of the declaration files, which become {@link #all_ppts}.
+   * Called after the command-line options have been read.
+   *
+   * @param files the files named on the command line
+   */
+  @EnsuresNonNull("fileio_progress")
+  static void setup(FileOptions files) {
+    Set<File> decls_files = files.decls;
+    Set<File> spinfo_files = files.spinfo;
+    Set<File> map_files = files.map;
+
+    // Never disable splitting for csharp format.
+    if (Daikon.dkconfig_undo_opts && Daikon.output_format != OutputFormat.CSHARPCONTRACT) {
+      PptSplitter.dkconfig_disable_splitting = true;
+    }
+
+    if (Daikon.dkconfig_quiet) {
+      Daikon.dkconfig_progress_delay = -1;
+    }
+    if (System.console() == null) {
+      // not connected to a terminal
+      Daikon.dkconfig_progress_delay = -1;
+    }
+
+    // Set up debug traces; note this comes after reading command line options.
+    LogHelper.setupLogs(Global.debugAll ? LogHelper.FINE : LogHelper.INFO);
+
+    if (!noversion_output) {
+      if (!Daikon.dkconfig_quiet) System.out.println(release_string);
+    }
+
+    // figure out which algorithm to use in NIS to process suppressions
+    if (NIS.dkconfig_suppression_processor == SuppressionProcessor.HYBRID) {
+      NIS.hybrid_method = true;
+    } else {
+      if (NIS.dkconfig_suppression_processor == SuppressionProcessor.ANTECEDENT) {
+        NIS.antecedent_method = true;
+        NIS.hybrid_method = false;
+      } else {
+        assert (NIS.dkconfig_suppression_processor == SuppressionProcessor.FALSIFIED);
+        NIS.antecedent_method = false;
+        NIS.hybrid_method = false;
+      }
+    }
+
+    // Create the list of all invariant types
+    setup_proto_invs();
+
+    if (PrintInvariants.print_discarded_invariants) {
+      DiscReasonMap.initialize();
+    }
+
+    fileio_progress = new FileIOProgress();
+    fileio_progress.start();
+
+    // Load declarations and splitters
+    load_spinfo_files(spinfo_files);
+    all_ppts = load_decls_files(decls_files);
+    load_map_files(map_files);
+
+    all_ppts.trimToSize();
+  }
+
   /** Cleans up static variables so that mainHelper can be called more than once. */
   @SuppressWarnings("nullness") // reinitialization
   public static void cleanup() {
@@ -939,8 +993,15 @@ public final class Daikon {
     var_omit_regexp = null;
     server_dir = null;
     use_mem_monitor = false;
+    ppt_max_name = null;
+    userDefinedInvariants.clear();
+    spinfoFiles.clear();
+    Invariant.invariantEnabledDefault = true;
 
     proto_invs.clear();
+
+    FileIO.cleanup();
+    NIS.cleanup();
   }
 
   // Structure for return value of read_options.
@@ -973,7 +1034,8 @@ public final class Daikon {
     // same type) are gratuitously processed in a different order than they
     // were supplied on the command line.
     HashSet<File> decl_files = new LinkedHashSet<>();
-    HashSet<String> dtrace_files = new LinkedHashSet<>(); // file names or "-" or "+"
+    // file names or "-" or "+" or InProcessDtrace.NAME
+    HashSet<String> dtrace_files = new LinkedHashSet<>();
     HashSet<File> spinfo_files = new LinkedHashSet<>();
     HashSet<File> map_files = new LinkedHashSet<>();
 
@@ -1059,7 +1121,7 @@ public final class Daikon {
                 }
                 if (filename.indexOf(".decls") != -1) {
                   decl_files.add(file);
-                } else if (filename.indexOf(".dtrace") != -1) {
+                } else if (filename.indexOf(".dtrace") != -1 || FileIO.is_csv_file(filename)) {
                   dtrace_files.add(filename);
                 } else if (filename.indexOf(".spinfo") != -1) {
                   spinfo_files.add(file);
@@ -1361,7 +1423,7 @@ public final class Daikon {
     // processing only to bail out at the end.
     for (int i = g.getOptind(); i < args.length; i++) {
       String filename = args[i];
-      if (filename.equals("-") || filename.equals("+")) {
+      if (filename.equals("-") || filename.equals("+") || filename.equals(InProcessDtrace.NAME)) {
         dtrace_files.add(filename);
         continue;
       }
@@ -1376,17 +1438,20 @@ public final class Daikon {
       // (eg, a date or ".gz").
       if (filename.indexOf(".decls") != -1) {
         decl_files.add(file);
-      } else if (filename.indexOf(".dtrace") != -1) {
+      } else if (filename.indexOf(".dtrace") != -1 || FileIO.is_csv_file(filename)) {
         dtrace_files.add(filename);
         // Always output an invariant file by default, even if none is
         // specified on the command line.
-        if (inv_file == null) {
+        if (inv_file == null && write_default_inv_file) {
           String basename;
           // This puts the .inv file in the current directory.
           basename = new File(filename).getName();
           // This puts the .inv file in the same directory as the .dtrace file.
           // basename = filename;
           int base_end = basename.indexOf(".dtrace");
+          if (base_end == -1) {
+            base_end = basename.indexOf(".csv");
+          }
           String inv_filename = basename.substring(0, base_end) + ".inv.gz";
 
           inv_file = new File(inv_filename);
@@ -1757,6 +1822,11 @@ public final class Daikon {
    */
   public static void createUpperPpts(PptMap all_ppts) {
 
+    if (dkconfig_merge_threads > 1 && !PptTopLevel.dkconfig_remove_merged_invs) {
+      ParallelMerge.merge(all_ppts, dkconfig_merge_threads);
+      return;
+    }
+
     // Process each ppt that doesn't have a parent
     // (mergeInvs is called on a root, and recursively processes children)
     for (PptTopLevel ppt : all_ppts.pptIterable()) {
@@ -2340,68 +2410,81 @@ public final class Daikon {
     // System.exit(0);
 
     // Postprocessing
+    postprocess_data(all_ppts);
+  }
 
-    debugProgress.fine("Create Combined Exits ... ");
-    startTime = System.nanoTime();
-    create_combined_exits(all_ppts);
-    long duration = System.nanoTime() - startTime;
-    debugProgress.fine(
-        "Create Combined Exits ... done [" + TimeUnit.NANOSECONDS.toSeconds(duration) + "]");
+  /**
+   * The processing that follows reading the data trace files: creates the combined exits and the
+   * program point hierarchy, merges the invariants of the hierarchy, and post-processes dynamic
+   * constants, equality sets, and implications. The time taken by each phase is recorded in
+   * {@link #phase_metrics}.
+   *
+   * @param all_ppts the program points, to which samples have been added
+   */
+  @RequiresNonNull("fileio_progress")
+  static void postprocess_data(PptMap all_ppts) {
+    phase_metrics.clear();
+
+    ParallelPostProcess.time(
+        "Create Combined Exits", all_ppts.size(), 1, () -> create_combined_exits(all_ppts));
+
+    // Create the ternary slices of program points that saw fewer samples than the prefilter
+    // collects
+    if (PptTopLevel.dkconfig_ternary_prefilter_samples > 0) {
+      ParallelPostProcess.run(
+          "Ternary Slices", all_ppts.ppt_all_iterable(), PptTopLevel::instantiate_ternary_views);
+    }
 
     // Post process dynamic constants
     if (DynamicConstants.dkconfig_use_dynamic_constant_optimization) {
-      debugProgress.fine("Constant Post Processing ... ");
-      startTime = System.nanoTime();
-      for (PptTopLevel ppt : all_ppts.ppt_all_iterable()) {
-        if (ppt.constants != null) ppt.constants.post_process();
-      }
-      duration = System.nanoTime() - startTime;
-      debugProgress.fine(
-          "Constant Post Processing ... done [" + TimeUnit.NANOSECONDS.toSeconds(duration) + "]");
+      ParallelPostProcess.run(
+          "Constant Post Processing",
+          all_ppts.ppt_all_iterable(),
+          ppt -> {
+            if (ppt.constants != null) ppt.constants.post_process();
+          });
     }
 
     // Initialize the partial order hierarchy
-    debugProgress.fine("Init Hierarchy ... ");
-    startTime = System.nanoTime();
     assert FileIO.new_decl_format != null
         : "@AssumeAssertion(nullness): read data, so new_decl_format is set";
-    if (FileIO.new_decl_format) {
-      PptRelation.init_hierarchy_new(all_ppts);
-    } else {
-      PptRelation.init_hierarchy(all_ppts);
-    }
-    duration = System.nanoTime() - startTime;
-    debugProgress.fine(
-        "Init Hierarchy ... done [" + TimeUnit.NANOSECONDS.toSeconds(duration) + "]");
+    boolean new_decl_format = FileIO.new_decl_format;
+    ParallelPostProcess.time(
+        "Init Hierarchy",
+        all_ppts.size(),
+        1,
+        () -> {
+          if (new_decl_format) {
+            PptRelation.init_hierarchy_new(all_ppts);
+          } else {
+            PptRelation.init_hierarchy(all_ppts);
+          }
+        });
 
     // Calculate invariants at all non-leaf ppts
     if (use_dataflow_hierarchy) {
-      debugProgress.fine("createUpperPpts ... ");
-      startTime = System.nanoTime();
+      int merge_threads = PptTopLevel.dkconfig_remove_merged_invs ? 1 : dkconfig_merge_threads;
       // calculates invariants; does not actually create any ppts
-      createUpperPpts(all_ppts);
-      duration = System.nanoTime() - startTime;
-      debugProgress.fine(
-          "createUpperPpts ... done [" + TimeUnit.NANOSECONDS.toSeconds(duration) + "]");
+      ParallelPostProcess.time(
+          "createUpperPpts",
+          all_ppts.size(),
+          Math.max(1, merge_threads),
+          () -> createUpperPpts(all_ppts));
     }
 
     // Equality data for each PptTopLevel.
     if (Daikon.use_equality_optimization && !Daikon.dkconfig_undo_opts) {
-      debugProgress.fine("Equality Post Process ... ");
-      startTime = System.nanoTime();
-      for (PptTopLevel ppt : all_ppts.ppt_all_iterable()) {
-        // ppt.equality_view can be null here
-        ppt.postProcessEquality();
-      }
-      duration = System.nanoTime() - startTime;
-      debugProgress.fine(
-          "Equality Post Process ... done [" + TimeUnit.NANOSECONDS.toSeconds(duration) + "]");
+      // ppt.equality_view can be null here
+      ParallelPostProcess.run(
+          "Equality Post Process",
+          all_ppts.ppt_all_iterable(),
+          PptTopLevel::postProcessEquality);
     }
 
     // undo optimizations; results in a more redundant but more complete
     // set of invariants
     if (Daikon.dkconfig_undo_opts) {
-      undoOpts(all_ppts);
+      ParallelPostProcess.time("Undo Optimizations", all_ppts.size(), 1, () -> undoOpts(all_ppts));
     }
 
     // Debug print information about equality sets
@@ -2416,17 +2499,15 @@ public final class Daikon {
     isInferencing = false;
 
     // Add implications
-    startTime = System.nanoTime();
     fileio_progress.clear();
     if (!PptSplitter.dkconfig_disable_splitting) {
-      debugProgress.fine("Adding Implications ... ");
-      for (PptTopLevel ppt : all_ppts.pptIterable()) {
-        // debugProgress.fine ("  Adding implications for " + ppt.name);
-        ppt.addImplications();
-      }
-      duration = System.nanoTime() - startTime;
-      debugProgress.fine(
-          "Time spent adding implications: " + TimeUnit.NANOSECONDS.toSeconds(duration));
+      // The implications at a program point are formed from its conditional program points, and
+      // those at a combined exit also from its numbered exits.
+      ParallelPostProcess.run(
+          "Adding Implications",
+          all_ppts.pptIterable(),
+          PptTopLevel::implication_sources,
+          PptTopLevel::addImplications);
     }
   }
 
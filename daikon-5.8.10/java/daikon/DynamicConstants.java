@@ -13,6 +13,8 @@ import daikon.inv.unary.sequence.OneOfSequence;
 import daikon.inv.unary.string.OneOfString;
 import daikon.inv.unary.stringsequence.OneOfStringSequence;
 import daikon.suppress.NIS;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -33,6 +35,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.checker.nullness.qual.RequiresNonNull;
 import org.checkerframework.dataflow.qual.Pure;
 import org.checkerframework.dataflow.qual.SideEffectFree;
+import org.plumelib.util.Intern;
 
 /**
  * Class that implements dynamic constants optimization. This optimization doesn't instantiate
@@ -101,6 +104,29 @@ public class DynamicConstants implements Serializable {
 
   List<Constant> all_list = new ArrayList<>();
 
+  // The following arrays let add check whether anything changed in tight
+  // loops over the value indices of the sample, without touching the
+  // Constant objects.  They are rebuilt by index_slots whenever con_list or
+  // missing_list changes.
+
+  /**
+   * The value index of each element of con_list, in the same order, or -1 for a static constant
+   * (which never changes).
+   */
+  private transient int[] con_slots = new int[0];
+
+  /** The value of each element of con_list, in the same order. */
+  private transient @Interned Object[] con_vals = new Object[0];
+
+  /**
+   * The value index of each element of missing_list, in the same order, or -1 for a static
+   * constant (which is never missing).
+   */
+  private transient int[] missing_slots = new int[0];
+
+  /** The variable of each element of missing_list, in the same order. */
+  private transient VarInfo[] missing_vars = new VarInfo[0];
+
   /** Program point of these constants. */
   PptTopLevel ppt;
 
@@ -130,7 +156,11 @@ public class DynamicConstants implements Serializable {
      */
     public @MonotonicNonNull @Interned Object val = null;
 
-    /** The sample count of the constant. */
+    /**
+     * The sample count of the constant. While the variable is constant, this is not updated on
+     * every sample; DynamicConstants brings it up to date (it is the sample count of the program
+     * point) before it is used.
+     */
     public int count = 0;
 
     /** The variable that has this value. */
@@ -274,6 +304,54 @@ public class DynamicConstants implements Serializable {
       missing_list.add(c);
     }
     all_vars = all_list.toArray(new Constant[all_list.size()]);
+    index_slots();
+  }
+
+  /**
+   * Re-interns the values of the constants, which samples are compared to by reference, and
+   * rebuilds the arrays that mirror con_list and missing_list, which are not serialized.
+   */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    for (Constant con : all_list) {
+      if (con.val instanceof String[]) {
+        // Intern.intern requires the elements to be interned already
+        con.val = Intern.intern(Intern.internStrings((String[]) con.val));
+      } else if (con.val != null) {
+        con.val = Intern.intern(con.val);
+      }
+    }
+    index_slots();
+  }
+
+  /** Rebuilds the arrays that mirror con_list and missing_list. */
+  private void index_slots() {
+    con_slots = new int[con_list.size()];
+    con_vals = new Object[con_list.size()];
+    for (int k = 0; k < con_slots.length; k++) {
+      Constant con = con_list.get(k);
+      assert con.val != null;
+      con_slots[k] = con.vi.is_static_constant ? -1 : con.vi.value_index;
+      con_vals[k] = con.val;
+    }
+    missing_slots = new int[missing_list.size()];
+    missing_vars = new VarInfo[missing_list.size()];
+    for (int k = 0; k < missing_slots.length; k++) {
+      VarInfo vi = missing_list.get(k).vi;
+      missing_slots[k] = vi.is_static_constant ? -1 : vi.value_index;
+      missing_vars[k] = vi;
+    }
+  }
+
+  /**
+   * Sets the count of each constant to the sample count of the program point, which it is equal to
+   * (since variables only become constant at the first sample); add does not update the counts on
+   * each sample.
+   */
+  private void update_counts() {
+    for (Constant con : con_list) {
+      con.count = sample_cnt;
+    }
   }
 
   /**
@@ -289,6 +367,14 @@ public class DynamicConstants implements Serializable {
 
     // System.out.println("DynamicConstants.add : " + vt.toString(ppt.var_infos));
 
+    // Usually nothing changes, and only the sample count (and therefore the
+    // count of each constant) goes up.
+    if (!would_change(vt) && !Debug.logDetail()) {
+      sample_cnt += count;
+      return;
+    }
+    update_counts();
+
     List<Constant> non_missing = new ArrayList<>();
     List<Constant> non_con = new ArrayList<>();
 
@@ -380,9 +466,12 @@ public class DynamicConstants implements Serializable {
     }
 
     sample_cnt += count;
+    index_slots();
 
     // Create slices over newly non-constant and non-missing variables
-    instantiate_new_views(non_con, non_missing);
+    if (!non_con.isEmpty() || !non_missing.isEmpty()) {
+      instantiate_new_views(non_con, non_missing);
+    }
 
     // Turn off previously_constant on all newly non-constants
     for (Constant con : non_con) {
@@ -401,6 +490,40 @@ public class DynamicConstants implements Serializable {
     }
   }
 
+  /**
+   * Returns true if {@link #add} would change which variables are constant or always missing, and
+   * therefore create new slices. Otherwise, adding the sample only updates the counts of the
+   * constants. Does not change this.
+   *
+   * @param vt the sample
+   * @return true if adding the sample would change the set of constant or missing variables
+   */
+  public boolean would_change(ValueTuple vt) {
+    @Nullable @Interned Object[] vals = vt.vals;
+    int[] mods = vt.mods;
+    int[] con_slots = this.con_slots;
+    @Interned Object[] con_vals = this.con_vals;
+    for (int k = 0; k < con_slots.length; k++) {
+      int slot = con_slots[k];
+      if (slot >= 0 && (missing(mods[slot]) || vals[slot] != con_vals[k])) {
+        return true;
+      }
+    }
+    int[] missing_slots = this.missing_slots;
+    for (int k = 0; k < missing_slots.length; k++) {
+      int slot = missing_slots[k];
+      if ((slot < 0 || !missing(mods[slot])) && !missing_vars[k].missingOutOfBounds()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Returns whether a modified bit indicates a missing value. */
+  private static boolean missing(int mod) {
+    return ((mod == ValueTuple.MISSING_FLOW) || (mod == ValueTuple.MISSING_NONSENSICAL));
+  }
+
   /** Returns whether the specified variable is missing in this ValueTuple. */
   private boolean missing(VarInfo vi, ValueTuple vt) {
 
@@ -529,7 +652,9 @@ public class DynamicConstants implements Serializable {
     // Create any ternary invariants that are suppressed when one
     // of the variables is a constant.  Currently, only LinearTernary
     // falls into this list (It is suppressed by (x = C) && (Ay + Bz = D))
-    if (NIS.dkconfig_enabled) instantiate_constant_suppressions(noncons, all_list);
+    if (NIS.dkconfig_enabled && !ppt.defers_ternary_slices()) {
+      instantiate_constant_suppressions(noncons, all_list);
+    }
   }
 
   /**
@@ -629,8 +754,14 @@ public class DynamicConstants implements Serializable {
 
     // Ternary slices/invariants.  Note that if a variable is in both
     // leader lists, it is only added when it is in order (to prevent
-    // creating the slice twice).
+    // creating the slice twice).  If the prefilter is still collecting
+    // samples, the ternary slices are created later, over all variables
+    // (see PptTopLevel.instantiate_ternary_views).
+    int room = ppt.defers_ternary_slices() ? 0 : ppt.ternary_slice_room();
     for (Constant con1 : leaders1) {
+      if (room == 0) {
+        break;
+      }
       for (Constant con2 : leaders2) {
         if ((con2.vi.varinfo_index < con1.vi.varinfo_index) && leaders1.contains(con2)) {
           continue;
@@ -647,8 +778,14 @@ public class DynamicConstants implements Serializable {
             continue;
           }
 
+          if (room == 0) {
+            break;
+          }
           PptSlice3 slice3 = new PptSlice3(ppt, con_arr[0].vi, con_arr[1].vi, con_arr[2].vi);
           slice3.instantiate_invariants();
+          if (slice3.invs.size() > 0) {
+            room--;
+          }
           if ((con_arr[0].count > 0) && (con_arr[1].count > 0) && (con_arr[2].count > 0)) {
             assert con_arr[0].val != null
                 : "@AssumeAssertion(nullness): dependent: val != null when count>0";
@@ -801,6 +938,7 @@ public class DynamicConstants implements Serializable {
     }
 
     // Consider all of the ternary slices with one new non-constant
+    int room = ppt.ternary_slice_room();
     for (int i = 0; i < new_leaders.size(); i++) {
       Constant con1 = new_leaders.get(i);
       assert con1.val != null : "@AssumeAssertion(nullness)";
@@ -825,7 +963,14 @@ public class DynamicConstants implements Serializable {
             continue;
           }
 
-          // Find the ternary slice and create it if it is not there
+          // Find the ternary slice and create it if it is not there, unless
+          // the program point has as many ternary slices as it may
+          if (ppt.findSlice_unordered(con1.vi, con2.vi, con3.vi) == null) {
+            if (room == 0) {
+              continue;
+            }
+            room--;
+          }
           PptSlice slice = ppt.get_or_instantiate_slice(con1.vi, con2.vi, con3.vi);
 
           // Create the LinearTernary invariant from the LinearBinary
@@ -965,6 +1110,7 @@ public class DynamicConstants implements Serializable {
    * match previous behavior, this is what we will do for now.
    */
   public void post_process() {
+    update_counts();
 
     // if requested, don't create any post-processed invariants
     if (no_post_process) {
@@ -1003,6 +1149,7 @@ public class DynamicConstants implements Serializable {
       con.previously_constant = true;
     }
     con_list = new ArrayList<Constant>();
+    index_slots();
 
     // Don't do anything with variables that have always been missing.  They
     // should have no invariants over them.
@@ -1034,6 +1181,7 @@ public class DynamicConstants implements Serializable {
    */
   @RequiresNonNull("daikon.suppress.NIS.suppressor_proto_invs")
   public List<PptSlice> create_constant_invs() {
+    update_counts();
 
     // Turn off track logging so that we don't get voluminous messages
     // each time this is called
@@ -1161,6 +1309,7 @@ public class DynamicConstants implements Serializable {
       c.checkRep();
       if (missing) missing_list.add(c);
     }
+    index_slots();
   }
 
   /** Creates OneOf invariants for each constant. */
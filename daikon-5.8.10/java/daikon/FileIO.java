@@ -11,6 +11,7 @@ import static daikon.tools.nullness.NullnessUtil.castNonNullDeep;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import daikon.config.Configuration;
+import daikon.derive.Derivation;
 import daikon.derive.ValueAndModified;
 import daikon.diff.InvMap;
 import daikon.inv.Invariant;
@@ -26,6 +27,7 @@ import java.io.ObjectInputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.net.ServerSocket;
 import java.net.Socket;
@@ -44,8 +46,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.StringJoiner;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 import org.checkerframework.checker.interning.qual.Interned;
 import org.checkerframework.checker.interning.qual.UsesObjectEquals;
@@ -137,6 +141,38 @@ public final class FileIO {
    */
   public static boolean dkconfig_read_samples_only = false;
 
+  /**
+   * Integer. The number of threads that add samples to program points. If greater than 1, the
+   * samples of different methods are processed concurrently, while the trace file is read by a
+   * single thread. A data trace file that contains only one method (such as a csv file) is not
+   * processed any faster.
+   */
+  public static int dkconfig_inference_threads = 1;
+
+  /**
+   * Integer. The number of threads that parse a data trace file. If greater than 1, one thread
+   * reads the file (decompressing it if necessary) while the others parse the values of its
+   * samples, and the samples are processed in the order of the file. Has no effect on declaration
+   * files, binary trace files, or input that is not read from a file.
+   */
+  public static int dkconfig_parse_threads = 1;
+
+  /**
+   * Integer. The number of samples of a program point that are read before they are added to its
+   * invariants. The samples of such a block are added together (see {@link
+   * PptTopLevel#add_bottom_up_block}), which is faster for program points with many numeric
+   * variables and gives the same invariants. If 0 or 1, each sample is added as soon as it is read.
+   */
+  public static int dkconfig_sample_block_size = 0;
+
+  /**
+   * Boolean. If true, consecutive identical samples of a program point are added to its invariants
+   * by a single call with their number as the count (see {@link
+   * PptTopLevel#add_bottom_up_later}), which gives the same invariants. This is faster for data,
+   * such as tables exported from event logs, that contain many repeated rows.
+   */
+  public static boolean dkconfig_fold_duplicate_samples = false;
+
   /**
    * Boolean. When true, don't print a warning about unmatched procedure entries, which are ignored
    * by Daikon (unless the {@code --nohierarchy} command-line argument is provided).
@@ -160,6 +196,26 @@ public final class FileIO {
    */
   public static long dkconfig_dtrace_line_count = 0;
 
+  /**
+   * String. Name of the single program point that is created when a {@code .csv} file is read
+   * directly. This matches the name used by {@code convertcsv.pl}.
+   */
+  public static String dkconfig_csv_ppt_name = "aprogram.point:::POINT";
+
+  /**
+   * String. Behavior for missing (empty or all-blank) values when a {@code .csv} file is read
+   * directly. "old" uses the last non-missing value of the variable, "zero" uses zero (or the
+   * empty string, for strings), and "nonsensical" makes the value nonsensical. These match the
+   * {@code -m} options of {@code convertcsv.pl}.
+   */
+  public static String dkconfig_csv_missing = "old";
+
+  /**
+   * String. The field separator used when a {@code .csv} file is read directly. Only the first
+   * character is used; "\t" (that is, a backslash followed by t) means a tab.
+   */
+  public static String dkconfig_csv_delimiter = ",";
+
   /** True if declaration records are in the new format -- that is, decl-version 2.0. */
   // Set by read_decl_version; by read_data_trace_record if the file is non-empty;
   // by read_serialized_pptmap; and by InvMap.readObject.
@@ -191,6 +247,10 @@ public final class FileIO {
   // modified since this program point was last executed.
   static HashMap<PptTopLevel, String[]> ppt_to_value_reps = new HashMap<>();
 
+  // Like ppt_to_value_reps, for binary trace files: the (interned) old
+  // values of the variables, or null for values that were nonsensical.
+  static HashMap<PptTopLevel, @Nullable Object[]> ppt_to_values = new HashMap<>();
+
   // For debugging purposes: printing out a modified trace file with
   // changed modbits.
   private static boolean to_write_nonce = false;
@@ -980,7 +1040,60 @@ public final class FileIO {
       throws IOException {
 
     Processor processor = new Processor();
-    read_data_trace_files(files, all_ppts, processor, true);
+    use_sample_blocks =
+        ((dkconfig_sample_block_size > 1 || dkconfig_fold_duplicate_samples)
+            && !PrintInvariants.print_discarded_invariants);
+    try {
+      if (dkconfig_inference_threads <= 1 || PrintInvariants.print_discarded_invariants) {
+        read_data_trace_files(files, all_ppts, processor, true);
+      } else {
+        ParallelInference workers = new ParallelInference(dkconfig_inference_threads);
+        parallel_inference = workers;
+        try {
+          read_data_trace_files(files, all_ppts, processor, true);
+          workers.finish();
+        } finally {
+          workers.shutdown();
+          parallel_inference = null;
+        }
+      }
+      if (use_sample_blocks) {
+        flush_samples(all_ppts);
+      }
+    } finally {
+      use_sample_blocks = false;
+    }
+  }
+
+  /**
+   * If non-null, the threads that add samples to program points. Set only while {@link
+   * #read_data_trace_files(Collection,PptMap)} is running.
+   */
+  private static @Nullable ParallelInference parallel_inference = null;
+
+  /**
+   * If true, samples are added to program points later, in blocks of {@link
+   * #dkconfig_sample_block_size} or as runs of duplicates (see {@link
+   * PptTopLevel#add_bottom_up_later}). Set only while {@link
+   * #read_data_trace_files(Collection,PptMap)} is running.
+   */
+  private static boolean use_sample_blocks = false;
+
+  /**
+   * Adds every sample that has been read, but not yet added to its program point.
+   *
+   * @param all_ppts the program points
+   */
+  @SuppressWarnings("nullness:contracts.precondition")
+  private static void flush_samples(PptMap all_ppts) {
+    if (parallel_inference != null) {
+      parallel_inference.finish();
+    }
+    if (use_sample_blocks) {
+      for (PptTopLevel ppt : all_ppts.pptIterable()) {
+        ppt.flush_samples();
+      }
+    }
   }
 
   /**
@@ -1256,9 +1369,27 @@ public final class FileIO {
     /** All of the ppts seen so far. */
     public PptMap all_ppts;
 
-    /** Input stream. */
+    /**
+     * Input stream. For a binary trace file, the text of the most recent {@link BinaryDtrace#TEXT}
+     * record.
+     */
     public LineNumberReader reader;
 
+    /** The input, if the file is a binary trace file (see {@link BinaryDtrace}); otherwise null. */
+    public BinaryDtrace.@Nullable Reader binary = null;
+
+    /**
+     * The input, if the file is {@link InProcessDtrace#NAME}; otherwise null. Its text records are
+     * read into {@link #reader}.
+     */
+    InProcessDtrace.@Nullable Reader in_process = null;
+
+    /**
+     * The input, if the file is parsed by several threads (see {@link #dkconfig_parse_threads});
+     * otherwise null. Its text records are read into {@link #reader} one run at a time.
+     */
+    @Nullable ParallelDtraceParser parser = null;
+
     /** Total number of lines in the input file. */
     public long total_lines;
 
@@ -1298,6 +1429,8 @@ public final class FileIO {
         filename = "standard input";
       } else if (raw_filename.equals("+")) {
         filename = "chicory socket";
+      } else if (raw_filename.equals(InProcessDtrace.NAME)) {
+        filename = "chicory in-process trace";
       } else {
         // Remove directory parts, to make it shorter
         filename = raw_filename;
@@ -1308,6 +1441,14 @@ public final class FileIO {
       all_ppts = ppts;
 
       boolean is_url = raw_filename.startsWith("file:") || raw_filename.startsWith("jar:");
+      boolean is_in_process = raw_filename.equals(InProcessDtrace.NAME);
+      boolean is_binary =
+          !is_decl_file
+              && !is_url
+              && !is_in_process
+              && !raw_filename.equals("-")
+              && !raw_filename.equals("+")
+              && BinaryDtrace.is_binary_file(raw_filename);
 
       // Do we need to count the lines in the file?
       total_lines = 0;
@@ -1323,6 +1464,8 @@ public final class FileIO {
         count_lines = false;
       } else if (Daikon.dkconfig_progress_delay == -1) {
         count_lines = false;
+      } else if (is_binary || is_in_process) {
+        count_lines = false;
       } else if (new File(raw_filename).length() == 0) {
         // Either it's actually empty, or it's something like a pipe.
         count_lines = false;
@@ -1355,6 +1498,23 @@ public final class FileIO {
         } else {
           reader = new LineNumberReader(new InputStreamReader(stream, UTF_8));
         }
+      } else if (is_binary) {
+        binary = new BinaryDtrace.Reader(raw_filename);
+        reader = new LineNumberReader(new StringReader(""));
+      } else if (is_in_process) {
+        in_process = InProcessDtrace.reader();
+        reader = new LineNumberReader(new StringReader(""));
+      } else if (dkconfig_parse_threads > 1
+          && !is_decl_file
+          && dkconfig_max_line_number == 0
+          && !Global.debugPrintDtrace
+          && !debug_missing
+          && !Debug.logOn()) {
+        parser = new ParallelDtraceParser(raw_filename, filename, dkconfig_parse_threads);
+        for (PptTopLevel ppt : ppts.all_ppts()) {
+          parser.add_declared(ppt);
+        }
+        reader = new LineNumberReader(new StringReader(""));
       } else {
         reader = FilesPlume.newLineNumberFileReader(raw_filename);
       }
@@ -1364,6 +1524,28 @@ public final class FileIO {
       ppt = null;
     }
 
+    /**
+     * Start parsing text that has already been read, such as one record of a trace file. More text
+     * can be parsed with the same state by replacing {@link #reader}.
+     *
+     * @param filename the name of the file that holds the text, for messages
+     * @param reader the text
+     * @param ppts_may_be_new true if the text may declare new program points
+     * @param ppts the program points declared so far
+     */
+    public ParseState(
+        String filename, LineNumberReader reader, boolean ppts_may_be_new, PptMap ppts) {
+      this.filename = filename;
+      is_decl_file = false;
+      this.ppts_may_be_new = ppts_may_be_new;
+      all_ppts = ppts;
+      this.reader = reader;
+      total_lines = 0;
+      varcomp_format = VarComparability.IMPLICIT;
+      rtype = RecordType.NULL;
+      ppt = null;
+    }
+
     /** Returns the current line number in the input file, or -1 if not available. */
     public int get_linenum() {
       return reader.getLineNumber();
@@ -1378,6 +1560,12 @@ public final class FileIO {
     }
 
     public String reading_message() {
+      if (binary != null) {
+        return "Reading " + filename + " (record " + binary.records() + ") ...";
+      }
+      if (in_process != null) {
+        return "Reading " + filename + " (record " + in_process.records() + ") ...";
+      }
       String line;
       if (reader == null) {
         line = "?";
@@ -1396,6 +1584,14 @@ public final class FileIO {
     public String line_file_message() {
       return String.format(" at line %d in file %s", reader.getLineNumber(), filename);
     }
+
+    /** Stops the threads that parse the file, if any. */
+    public void close() {
+      if (parser != null) {
+        parser.close();
+        parser = null;
+      }
+    }
   }
 
   /** Returns the current line number in the input file, or -1 if not available. */
@@ -1420,6 +1616,21 @@ public final class FileIO {
     FileIO.data_trace_state = null;
   }
 
+  /**
+   * Resets the state that is accumulated while reading trace files, so that the files of a later
+   * Daikon run are read as if by a new process. Called by {@link Daikon#cleanup}.
+   */
+  public static void cleanup() {
+    call_hashmap.clear();
+    call_stack.clear();
+    ppt_to_value_reps.clear();
+    ppt_to_values.clear();
+    samples_processed = 0;
+    omitted_declarations = 0;
+    resetNewDeclFormat();
+    clear_data_trace_state();
+  }
+
   /**
    * Read only samples from {@code .dtrace} file. Uses the standard data processor which calls
    * {@link FileIO#process_sample(PptMap, PptTopLevel, ValueTuple, Integer)} on each record, and
@@ -1443,6 +1654,11 @@ public final class FileIO {
       boolean ppts_may_be_new)
       throws IOException {
 
+    if (!is_decl_file && is_csv_file(filename)) {
+      read_csv_file(filename, all_ppts, processor, ppts_may_be_new);
+      return;
+    }
+
     if (debugRead.isLoggable(Level.FINE)) {
       debugRead.fine(
           "read_data_trace_file "
@@ -1460,6 +1676,32 @@ public final class FileIO {
           new PrintWriter(Files.newBufferedWriter(new File(filename + ".debug").toPath(), UTF_8));
     }
 
+    try {
+      read_data_trace_records(data_trace_state, processor);
+    } finally {
+      data_trace_state.close();
+    }
+
+    if (Global.debugPrintDtrace) {
+      assert Global.dtraceWriter != null
+          : "@AssumeAssertion(nullness): dependent: set if debugPrintDtrace is true";
+      Global.dtraceWriter.close();
+    }
+
+    Daikon.progress = "Finished reading " + data_trace_state.filename;
+
+    clear_data_trace_state();
+  }
+
+  /**
+   * Reads the records of a file, passing each sample to the processor.
+   *
+   * @param data_trace_state the state of the parser
+   * @param processor the processor
+   */
+  @RequiresNonNull("FileIO.data_trace_state")
+  private static void read_data_trace_records(ParseState data_trace_state, Processor processor)
+      throws IOException {
     while (true) {
       read_data_trace_record(data_trace_state);
 
@@ -1497,16 +1739,6 @@ public final class FileIO {
         // don't need to do anything explicit for other records found
       }
     }
-
-    if (Global.debugPrintDtrace) {
-      assert Global.dtraceWriter != null
-          : "@AssumeAssertion(nullness): dependent: set if debugPrintDtrace is true";
-      Global.dtraceWriter.close();
-    }
-
-    Daikon.progress = "Finished reading " + data_trace_state.filename;
-
-    clear_data_trace_state();
   }
 
   /**
@@ -1535,6 +1767,39 @@ public final class FileIO {
     boolean stateOK = (state == FileIO.data_trace_state);
     assert stateOK;
 
+    // A binary trace file holds its declarations and comments as text, between binary records.
+    // Likewise, a parallel parser passes on as text the records that it did not parse, and an
+    // in-process trace passes its declarations and comments as text.
+    while (true) {
+      read_text_record(state);
+      if (state.rtype != RecordType.EOF) {
+        return;
+      }
+      if (state.binary != null) {
+        if (read_binary_record(state)) {
+          return;
+        }
+      } else if (state.parser != null) {
+        if (read_parsed_record(state)) {
+          return;
+        }
+      } else if (state.in_process != null) {
+        if (read_in_process_record(state)) {
+          return;
+        }
+      } else {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Reads a record from the text of {@code state.reader}, as described for {@link
+   * #read_data_trace_record}. Sets {@code state.rtype} to EOF at the end of the text.
+   */
+  @RequiresNonNull("FileIO.data_trace_state")
+  private static void read_text_record(ParseState state) throws IOException {
+
     LineNumberReader reader = state.reader;
 
     for (String line = reader.readLine(); line != null; line = reader.readLine()) {
@@ -1606,6 +1871,9 @@ public final class FileIO {
               decl_error(state, e);
             }
           }
+          if (state.parser != null) {
+            state.parser.add_declared(state.all_ppts.get(state.ppt.name()));
+          }
         }
         state.rtype = RecordType.DECL;
         return;
@@ -1625,6 +1893,9 @@ public final class FileIO {
       ppt_name = user_mod_ppt_name(ppt_name);
       if (!ppt_included(ppt_name)) {
         // System.out.printf("skipping ppt %s%n", line);
+        if (state.parser != null) {
+          state.parser.add_format(line, null);
+        }
         while ((line != null) && !line.equals("")) line = reader.readLine();
         continue;
       }
@@ -1645,33 +1916,7 @@ public final class FileIO {
                 state.filename, state.reader.getLineNumber(), line));
       }
 
-      // Parse the ppt name
-      try {
-        new PptName(ppt_name);
-      } catch (Throwable t) {
-        @SuppressWarnings("nullness") // thrown exception always has a detail message
-        @NonNull String message = t.getMessage();
-        // Augment the message with line number information.
-        if (!(t instanceof Daikon.UserError)) {
-          message = String.format("Illegal program point name '%s' (%s)", ppt_name, message);
-        }
-        throw new Daikon.UserError(message, reader, state.filename);
-      }
-
-      if (state.all_ppts.size() == 0) {
-        throw new Daikon.UserError(
-            "No declarations were provided before the first sample.  Perhaps you did not supply"
-                + " the proper .decls file to Daikon.  (Or, there could be a bug in the front end"
-                + " that created the .dtrace file "
-                + state.filename
-                + ".)");
-      }
-
-      PptTopLevel ppt = state.all_ppts.get(ppt_name);
-      if (ppt == null) {
-        throw new Daikon.UserError(
-            "No declaration was provided for program point " + ppt_name, state);
-      }
+      PptTopLevel ppt = sample_ppt(state, ppt_name);
 
       // not vis.length, as that includes constants, derived variables, etc.
       // Actually, we do want to leave space for _orig vars.
@@ -1745,6 +1990,10 @@ public final class FileIO {
         }
       }
 
+      if (state.parser != null) {
+        state.parser.add_format(line, ppt);
+      }
+
       state.ppt = ppt;
       state.nonce = nonce;
       state.vt = ValueTuple.makeUninterned(vals, mods);
@@ -1756,6 +2005,408 @@ public final class FileIO {
     return;
   }
 
+  /**
+   * Takes the next records from the parallel parser, as described for {@link
+   * #read_data_trace_record}.
+   *
+   * @param state the state of the parser, whose {@code parser} field is non-null
+   * @return true if a sample was read; false if some text was read into {@code state.reader}, or
+   *     the file ended
+   */
+  @RequiresNonNull("FileIO.data_trace_state")
+  private static boolean read_parsed_record(ParseState state) throws IOException {
+    ParallelDtraceParser parser = state.parser;
+    assert parser != null;
+    Object item = parser.next();
+    if (item == null) {
+      state.close();
+      return false;
+    }
+    if (item instanceof ParallelDtraceParser.Text) {
+      ParallelDtraceParser.Text text = (ParallelDtraceParser.Text) item;
+      state.reader = new LineNumberReader(new StringReader(text.text));
+      state.reader.setLineNumber(parser.line_number(text.line));
+      return false;
+    }
+
+    ParallelDtraceParser.Sample sample = (ParallelDtraceParser.Sample) item;
+    PptTopLevel ppt = sample.format.ppt;
+    assert ppt != null;
+    state.reader.setLineNumber(parser.line_number(sample.line));
+    VarInfo[] vars = sample.format.vars;
+    int vals_array_size = ppt.var_infos.length - ppt.num_static_constant_vars;
+    @Nullable Object[] vals = new @Nullable Object[vals_array_size];
+    int[] mods = new int[vals_array_size];
+    /*NNC:@Nullable*/ String[] oldvalue_reps = ppt_to_value_reps.get(ppt);
+    if (oldvalue_reps == null) {
+      oldvalue_reps = new /*NNC:@Nullable*/ String[ppt.num_tracevars];
+      ppt_to_value_reps.put(ppt, oldvalue_reps);
+    }
+
+    // As in read_vals_and_mods_from_trace_file, whose checks the parser has made.
+    for (int i = 0; i < vars.length; i++) {
+      VarInfo vi = vars[i];
+      int val_index = vi.value_index;
+      String value_rep = sample.value_reps[i];
+      int mod = sample.mods[i];
+      if (mod != ValueTuple.MISSING_NONSENSICAL) {
+        if (value_rep.equals(oldvalue_reps[val_index])) {
+          if (!dkconfig_add_changed) {
+            mod = ValueTuple.UNMODIFIED;
+          }
+        } else {
+          mod = ValueTuple.MODIFIED;
+        }
+      }
+      oldvalue_reps[val_index] = value_rep;
+      Object value = sample.values[i];
+      if (value == null) {
+        mod = ValueTuple.MISSING_NONSENSICAL;
+        vi.canBeMissing = true;
+      } else {
+        value = ProglangType.intern_value(value);
+      }
+      vals[val_index] = value;
+      mods[val_index] = mod;
+    }
+
+    state.ppt = ppt;
+    state.nonce = sample.nonce;
+    state.vt = ValueTuple.makeUninterned(vals, mods);
+    state.rtype = RecordType.SAMPLE;
+    return true;
+  }
+
+  /**
+   * Reads records from the binary part of a trace file, as described for {@link
+   * #read_data_trace_record}, until it finds a sample or some text.
+   *
+   * @param state the state of the parser, whose {@code binary} field is non-null
+   * @return true if a sample was read or the file ended unexpectedly; false if some text was read
+   *     into {@code state.reader}, or the file ended
+   */
+  @RequiresNonNull("FileIO.data_trace_state")
+  private static boolean read_binary_record(ParseState state) throws IOException {
+    BinaryDtrace.Reader input = state.binary;
+    assert input != null;
+    while (true) {
+      int tag = input.read_tag();
+      switch (tag) {
+        case -1:
+          input.close();
+          state.binary = null;
+          return false;
+        case BinaryDtrace.TEXT:
+          state.reader = new LineNumberReader(new StringReader(input.read_text()));
+          return false;
+        case BinaryDtrace.PPT:
+          input.read_ppt();
+          break;
+        case BinaryDtrace.SAMPLE:
+          try {
+            if (read_binary_sample(state, input)) {
+              return true;
+            }
+          } catch (EOFException e) {
+            System.out.println();
+            System.out.println(
+                "WARNING: Unexpected EOF while processing "
+                    + "trace file - last record of trace file ignored");
+            input.close();
+            state.binary = null;
+            state.rtype = RecordType.EOF;
+            return true;
+          }
+          break;
+        default:
+          throw new Daikon.UserError(
+              "Bad record tag " + tag + " in binary data trace file " + state.filename);
+      }
+    }
+  }
+
+  /**
+   * Reads a {@link BinaryDtrace#SAMPLE} record, after its tag. If its program point is included,
+   * stores the sample into {@code state}, just as {@link #read_text_record} does.
+   *
+   * @param state the state of the parser
+   * @param input the binary trace file
+   * @return true if the sample was stored, false if it was skipped
+   */
+  @RequiresNonNull("FileIO.data_trace_state")
+  private static boolean read_binary_sample(ParseState state, BinaryDtrace.Reader input)
+      throws IOException {
+    BinaryDtrace.PptFormat format = input.read_sample_ppt();
+    if (!format.resolved) {
+      resolve_binary_ppt(state, format);
+    }
+    Integer nonce = input.read_nonce();
+    input.read_mods(format);
+    PptTopLevel ppt = format.ppt;
+    @Nullable VarInfo[] vars = format.vars;
+    if (ppt == null || vars == null) {
+      for (int i = 0; i < format.kinds.length; i++) {
+        if (format.mods[i] != ValueTuple.MISSING_NONSENSICAL) {
+          input.skip_value(format.kinds[i]);
+        }
+      }
+      return false;
+    }
+
+    int vals_array_size = ppt.var_infos.length - ppt.num_static_constant_vars;
+    @Nullable Object[] vals = new @Nullable Object[vals_array_size];
+    int[] mods = new int[vals_array_size];
+    @Nullable Object[] oldvalues = ppt_to_values.get(ppt);
+    if (oldvalues == null) {
+      // We've not encountered this program point before.  A null old value
+      // differs from every value in the trace file, which is the desired behavior.
+      oldvalues = new @Nullable Object[ppt.num_tracevars];
+      ppt_to_values.put(ppt, oldvalues);
+    }
+
+    for (int i = 0; i < vars.length; i++) {
+      int mod = format.mods[i];
+      if (mod == ValueTuple.MISSING_FLOW) {
+        throw new Daikon.UserError(
+            "Bad modbit 3 for variable " + format.var_names[i] + " for program point " + ppt.name(),
+            state);
+      }
+      VarInfo vi = vars[i];
+      if (vi == null) {
+        if (mod != ValueTuple.MISSING_NONSENSICAL) {
+          input.skip_value(format.kinds[i]);
+        }
+        continue;
+      }
+      Object value =
+          (mod == ValueTuple.MISSING_NONSENSICAL) ? null : input.read_value(format.kinds[i]);
+      store_value(vi, value, mod, oldvalues, vals, mods);
+    }
+
+    state.ppt = ppt;
+    state.nonce = nonce;
+    state.vt = ValueTuple.makeUninterned(vals, mods);
+    state.rtype = RecordType.SAMPLE;
+    return true;
+  }
+
+  /**
+   * Stores the value of a variable into a sample that is read as values rather than as text, and
+   * sets its modified bit as {@link #read_vals_and_mods_from_trace_file} would.
+   *
+   * @param vi the variable
+   * @param value the interned value, or null if it is nonsensical or a null string
+   * @param mod the modified bit of the value, as recorded in the trace
+   * @param oldvalues the values of the previous sample of the program point; modified
+   * @param vals the values of the sample; modified
+   * @param mods the modified bits of the sample; modified
+   */
+  private static void store_value(
+      VarInfo vi,
+      @Nullable Object value,
+      int mod,
+      @Nullable Object[] oldvalues,
+      @Nullable Object[] vals,
+      int[] mods) {
+    int val_index = vi.value_index;
+    if (value == null) {
+      // The value is nonsensical, or is a null string.
+      mod = ValueTuple.MISSING_NONSENSICAL;
+      vi.canBeMissing = true;
+    } else if (value == oldvalues[val_index]) {
+      // The values are interned.
+      if (!dkconfig_add_changed) {
+        mod = ValueTuple.UNMODIFIED;
+      }
+    } else {
+      mod = ValueTuple.MODIFIED;
+    }
+    vals[val_index] = value;
+    mods[val_index] = mod;
+    oldvalues[val_index] = value;
+  }
+
+  /**
+   * Reads records from an in-process trace, as described for {@link #read_data_trace_record},
+   * until it finds a sample or some text. Waits for the records that have not yet been traced.
+   *
+   * @param state the state of the parser, whose {@code in_process} field is non-null
+   * @return true if a sample was read; false if some text was read into {@code state.reader}, or
+   *     the trace ended
+   */
+  @RequiresNonNull("FileIO.data_trace_state")
+  private static boolean read_in_process_record(ParseState state) throws IOException {
+    InProcessDtrace.Reader input = state.in_process;
+    assert input != null;
+    while (true) {
+      Object record = input.take();
+      if (record == null) {
+        state.in_process = null;
+        return false;
+      } else if (record instanceof String) {
+        state.reader = new LineNumberReader(new StringReader((String) record));
+        return false;
+      } else if (read_in_process_sample(state, (InProcessDtrace.Sample) record)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Reads a sample of an in-process trace. If its program point is included, stores the sample
+   * into {@code state}, just as {@link #read_text_record} does.
+   *
+   * @param state the state of the parser
+   * @param sample the sample
+   * @return true if the sample was stored, false if it was skipped
+   */
+  @RequiresNonNull("FileIO.data_trace_state")
+  private static boolean read_in_process_sample(ParseState state, InProcessDtrace.Sample sample) {
+    BinaryDtrace.PptFormat format = sample.format;
+    if (!format.resolved) {
+      resolve_binary_ppt(state, format);
+    }
+    PptTopLevel ppt = format.ppt;
+    @Nullable VarInfo[] vars = format.vars;
+    if (ppt == null || vars == null) {
+      return false;
+    }
+
+    int vals_array_size = ppt.var_infos.length - ppt.num_static_constant_vars;
+    @Nullable Object[] vals = new @Nullable Object[vals_array_size];
+    int[] mods = new int[vals_array_size];
+    @Nullable Object[] oldvalues = ppt_to_values.get(ppt);
+    if (oldvalues == null) {
+      oldvalues = new @Nullable Object[ppt.num_tracevars];
+      ppt_to_values.put(ppt, oldvalues);
+    }
+
+    for (int i = 0; i < vars.length; i++) {
+      VarInfo vi = vars[i];
+      if (vi == null) {
+        continue;
+      }
+      // The front end does not intern values, because it runs on other threads than Daikon.
+      Object value = sample.values[i];
+      if (sample.mods[i] == ValueTuple.MISSING_NONSENSICAL) {
+        value = null;
+      } else if (value != null) {
+        value = ProglangType.intern_value(value);
+      }
+      store_value(vi, value, sample.mods[i], oldvalues, vals, mods);
+    }
+
+    state.ppt = ppt;
+    state.nonce = sample.nonce;
+    state.vt = ValueTuple.makeUninterned(vals, mods);
+    state.rtype = RecordType.SAMPLE;
+    return true;
+  }
+
+  /**
+   * Sets {@code format.ppt} to the declared program point of the samples described by {@code
+   * format}, or to null if they are skipped, and sets {@code format.vars} to the declared
+   * variables. Called at the first sample of the program point.
+   *
+   * @param state the state of the parser
+   * @param format the description of the program point, from the binary or in-process trace
+   */
+  private static void resolve_binary_ppt(ParseState state, BinaryDtrace.PptFormat format) {
+    format.resolved = true;
+    String ppt_name = user_mod_ppt_name(format.name);
+    if (!ppt_included(ppt_name)) {
+      return;
+    }
+    PptTopLevel ppt = sample_ppt(state, ppt_name);
+    @Nullable VarInfo[] vars = new @Nullable VarInfo[format.var_names.length];
+    VarInfo[] vis = ppt.var_infos;
+    int vi_index = 0;
+    int num_vars = 0;
+    for (int i = 0; i < vars.length; i++) {
+      String var_name = format.var_names[i];
+      if (!var_included(var_name)) {
+        continue;
+      }
+      while (vi_index < vis.length && vis[vi_index].is_static_constant) {
+        vi_index++;
+      }
+      if (num_vars == ppt.num_tracevars || !vis[vi_index].str_name().equals(var_name)) {
+        throw new Daikon.UserError(
+            "Mismatch between declaration and trace.  Expected variable "
+                + ((num_vars == ppt.num_tracevars) ? "none" : vis[vi_index].name())
+                + ", got "
+                + var_name
+                + " for program point "
+                + ppt.name(),
+            state);
+      }
+      VarInfo vi = vis[vi_index++];
+      if (BinaryDtrace.kind(vi.rep_type) != format.kinds[i]) {
+        throw new Daikon.UserError(
+            "Variable "
+                + vi.name()
+                + " of type "
+                + vi.rep_type
+                + " has values of a different type in the trace for program point "
+                + ppt.name(),
+            state);
+      }
+      vars[i] = vi;
+      num_vars++;
+    }
+    if (num_vars != ppt.num_tracevars) {
+      throw new Daikon.UserError(
+          "The trace has values of "
+              + num_vars
+              + " of the "
+              + ppt.num_tracevars
+              + " variables declared for program point "
+              + ppt.name(),
+          state);
+    }
+    format.ppt = ppt;
+    format.vars = vars;
+  }
+
+  /**
+   * Returns the declared program point of a sample.
+   *
+   * @param state the state of the parser
+   * @param ppt_name the name of the program point, as modified by {@link #user_mod_ppt_name}
+   * @return the program point
+   * @throws Daikon.UserError if the name is illegal or the program point was not declared
+   */
+  private static PptTopLevel sample_ppt(ParseState state, String ppt_name) {
+    // Parse the ppt name
+    try {
+      new PptName(ppt_name);
+    } catch (Throwable t) {
+      @SuppressWarnings("nullness") // thrown exception always has a detail message
+      @NonNull String message = t.getMessage();
+      // Augment the message with line number information.
+      if (!(t instanceof Daikon.UserError)) {
+        message = String.format("Illegal program point name '%s' (%s)", ppt_name, message);
+      }
+      throw new Daikon.UserError(message, state.reader, state.filename);
+    }
+
+    if (state.all_ppts.size() == 0) {
+      throw new Daikon.UserError(
+          "No declarations were provided before the first sample.  Perhaps you did not supply"
+              + " the proper .decls file to Daikon.  (Or, there could be a bug in the front end"
+              + " that created the .dtrace file "
+              + state.filename
+              + ".)");
+    }
+
+    PptTopLevel ppt = state.all_ppts.get(ppt_name);
+    if (ppt == null) {
+      throw new Daikon.UserError(
+          "No declaration was provided for program point " + ppt_name, state);
+    }
+    return ppt;
+  }
+
   /**
    * Add orig() and derived variables to vt (by side effect), then supply it to the program point
    * for flowing.
@@ -1805,10 +2456,19 @@ public final class FileIO {
     }
 
     // Add derived variables
-    compute_derived_variables(ppt, vt.vals, vt.mods);
+    @Nullable List<Derivation> out_of_bounds = compute_derived_variables(ppt, vt.vals, vt.mods);
 
-    // Causes interning
-    vt = new ValueTuple(vt.vals, vt.mods);
+    // Samples that were read earlier, but have not been added yet, must not
+    // see the variables that went out of bounds on this sample.
+    if (out_of_bounds != null && (parallel_inference != null || use_sample_blocks)) {
+      for (Derivation derivation : out_of_bounds) {
+        derivation.missing_array_bounds = false;
+      }
+      flush_samples(all_ppts);
+      for (Derivation derivation : out_of_bounds) {
+        derivation.missing_array_bounds = true;
+      }
+    }
 
     if (debugRead.isLoggable(Level.FINE)) {
       debugRead.fine("Adding ValueTuple to " + ppt.name());
@@ -1820,11 +2480,10 @@ public final class FileIO {
       return;
     }
 
-    @SuppressWarnings({"UnusedVariable", "nullness:contracts.precondition"})
-    Object dummy = ppt.add_bottom_up(vt, 1);
-
-    if (debugVars.isLoggable(Level.FINE)) {
-      debugVars.fine(ppt.name() + " vars: " + Debug.int_vars(ppt, vt));
+    if (parallel_inference != null) {
+      parallel_inference.add(ppt, vt);
+    } else {
+      add_sample(ppt, vt);
     }
 
     if (Global.debugPrintDtrace) {
@@ -1834,6 +2493,27 @@ public final class FileIO {
     }
   }
 
+  /**
+   * Supplies a sample, which already contains its derived variables, to the program point for
+   * flowing.
+   *
+   * @param ppt the program point
+   * @param vt the sample, interned
+   */
+  @SuppressWarnings("nullness:contracts.precondition")
+  static void add_sample(PptTopLevel ppt, ValueTuple vt) {
+    if (use_sample_blocks) {
+      ppt.add_bottom_up_later(vt, dkconfig_sample_block_size);
+    } else {
+      @SuppressWarnings("UnusedVariable")
+      Object dummy = ppt.add_bottom_up(vt, 1);
+    }
+
+    if (debugVars.isLoggable(Level.FINE)) {
+      debugVars.fine(ppt.name() + " vars: " + Debug.int_vars(ppt, vt));
+    }
+  }
+
   /** Returns true if this procedure has an unmatched entry. */
   static boolean has_unmatched_procedure_entry(PptTopLevel ppt) {
     for (Invocation invok : call_hashmap.values()) {
@@ -2336,8 +3016,13 @@ public final class FileIO {
     return false;
   }
 
-  /** Computes values of derived variables. */
-  public static void compute_derived_variables(
+  /**
+   * Computes values of derived variables.
+   *
+   * @return the derivations whose array index went out of bounds for the first time on this
+   *     sample (see {@link Derivation#missingOutOfBounds}), or null if there are none
+   */
+  public static @Nullable List<Derivation> compute_derived_variables(
       PptTopLevel ppt, @Nullable Object[] vals, int[] mods) {
     // This ValueTuple is temporary:  we're temporarily suppressing interning,
     // which we will do after we have all the values available.
@@ -2347,14 +3032,343 @@ public final class FileIO {
       assert !ppt.var_infos[i].isDerived();
     }
     int num_const = ppt.num_static_constant_vars;
+    @Nullable List<Derivation> out_of_bounds = null;
     for (int i = filled_slots; i < ppt.var_infos.length; i++) {
       assert ppt.var_infos[i].derived != null : "variable not derived: " + ppt.var_infos[i].repr();
       assert ppt.var_infos[i].derived != null : "@AssumeAssertion(nullness): application invariant";
+      Derivation derived = ppt.var_infos[i].derived;
+      boolean was_out_of_bounds = derived.missing_array_bounds;
       // Add this derived variable's value
-      ValueAndModified vm = ppt.var_infos[i].derived.computeValueAndModified(partial_vt);
+      ValueAndModified vm = derived.computeValueAndModified(partial_vt);
       vals[i - num_const] = vm.value;
       mods[i - num_const] = vm.modified;
+      if (!was_out_of_bounds && derived.missing_array_bounds) {
+        if (out_of_bounds == null) {
+          out_of_bounds = new ArrayList<>();
+        }
+        out_of_bounds.add(derived);
+      }
     }
+    return out_of_bounds;
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  /// CSV files
+  ///
+
+  /** Matches a number in a csv file. This is the same regular expression as in convertcsv.pl. */
+  private static final Pattern csv_number_pattern =
+      Pattern.compile("^([+-]?)(?=\\d|\\.\\d)\\d*(\\.\\d*)?([Ee]([+-]?\\d+))?$");
+
+  /**
+   * Returns true if the file should be read as a csv file rather than as a dtrace file. As with
+   * dtrace files, there might be a suffix on the end of the name (e.g., ".gz").
+   *
+   * @param filename the name of a trace file
+   * @return true if the file is a csv file
+   */
+  @Pure
+  public static boolean is_csv_file(String filename) {
+    return (filename.indexOf(".csv") != -1) && (filename.indexOf(".dtrace") == -1);
+  }
+
+  /**
+   * Reads a csv file as a trace over a single program point, named by {@link
+   * #dkconfig_csv_ppt_name}. This is equivalent to running {@code convertcsv.pl} and reading the
+   * resulting {@code .decls} and {@code .dtrace} files, but it avoids writing, and re-parsing, the
+   * intermediate text files.
+   *
+   * <p>The first row contains the variable names. Each subsequent row contains one value for each
+   * variable and is passed to the processor as one sample. A column is declared as a double if all
+   * of its non-missing values are numbers, and as a string otherwise; this requires an extra pass
+   * over the file before any samples are processed.
+   *
+   * @param filename the csv file to read
+   * @param all_ppts the map to which the program point is added
+   * @param processor the processor that receives each sample
+   * @param ppts_may_be_new true if the program point may be new, in which case an existing ppt with
+   *     the same name must match the columns of the file exactly
+   * @throws IOException if there is trouble reading the file
+   */
+  public static void read_csv_file(
+      String filename, PptMap all_ppts, Processor processor, boolean ppts_may_be_new)
+      throws IOException {
+
+    char delimiter = csv_delimiter();
+    if (!(dkconfig_csv_missing.equals("old")
+        || dkconfig_csv_missing.equals("zero")
+        || dkconfig_csv_missing.equals("nonsensical"))) {
+      throw new Daikon.UserError(
+          "Bad value for configuration option csv_missing: " + dkconfig_csv_missing);
+    }
+
+    // First pass: read the variable names and determine the type of each column.
+    String[] varnames;
+    boolean[] is_number;
+    try (LineNumberReader reader = FilesPlume.newLineNumberFileReader(filename)) {
+      String header = reader.readLine();
+      if (header == null) {
+        throw new Daikon.UserError("No variable names in csv file " + filename);
+      }
+      List<String> names = parse_csv_line(header, delimiter);
+      if (names.size() > 1 && names.get(names.size() - 1).isEmpty()) {
+        // Ignore a trailing delimiter
+        names.remove(names.size() - 1);
+      }
+      varnames = new String[names.size()];
+      for (int i = 0; i < varnames.length; i++) {
+        varnames[i] = csv_var_name(names.get(i));
+      }
+      is_number = new boolean[varnames.length];
+      Arrays.fill(is_number, true);
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+        List<String> fields = csv_row(line, delimiter, varnames.length, reader, filename);
+        for (int i = 0; i < varnames.length; i++) {
+          String value = fields.get(i);
+          if (!is_csv_missing(value) && !csv_number_pattern.matcher(value).matches()) {
+            is_number[i] = false;
+          }
+        }
+      }
+    }
+
+    // The declaration is in the old (version 1) format unless a decls file said otherwise.
+    if (new_decl_format == null) {
+      new_decl_format = Boolean.FALSE;
+    }
+
+    String ppt_name = user_mod_ppt_name(dkconfig_csv_ppt_name);
+    if (!ppt_included(ppt_name)) {
+      omitted_declarations++;
+      return;
+    }
+
+    // Build the variables of the program point, remembering the column of each one.
+    List<VarInfo> vi_list = new ArrayList<>(varnames.length);
+    int[] columns = new int[varnames.length];
+    for (int i = 0; i < varnames.length; i++) {
+      if (!var_included(varnames[i])) {
+        continue;
+      }
+      String type_string = is_number[i] ? "double" : "java.lang.String";
+      ProglangType prog_type = ProglangType.parse(type_string);
+      VarComparability comparability =
+          VarComparability.parse(VarComparability.IMPLICIT, "1", prog_type);
+      @SuppressWarnings("interning") // about to be used in a new program point
+      @Interned VarInfo vi =
+          new VarInfo(
+              varnames[i],
+              prog_type,
+              ProglangType.rep_parse(type_string),
+              comparability,
+              false,
+              null,
+              VarInfoAux.getDefault());
+      columns[vi_list.size()] = i;
+      vi_list.add(vi);
+    }
+    VarInfo[] vi_array = vi_list.toArray(new VarInfo[vi_list.size()]);
+
+    ParseState state = new ParseState(filename, false, ppts_may_be_new, all_ppts);
+    FileIO.data_trace_state = state;
+
+    PptTopLevel ppt = all_ppts.get(ppt_name);
+    if (ppt == null) {
+      ppt = new PptTopLevel(ppt_name, vi_array);
+      all_ppts.add(ppt);
+      try {
+        Daikon.init_ppt(ppt, all_ppts);
+      } catch (Exception e) {
+        decl_error(state, e);
+      }
+    } else if (ppts_may_be_new) {
+      check_decl_match(state, ppt, vi_array);
+    }
+
+    // Second pass: pass each row to the processor as a sample.
+    LineNumberReader reader = state.reader;
+    reader.readLine(); // the variable names
+    int num_tracevars = ppt.num_tracevars;
+    int vals_array_size = ppt.var_infos.length - ppt.num_static_constant_vars;
+    String[] prev_reps = new String[num_tracevars];
+    @Nullable Object[] prev_vals = new @Nullable Object[num_tracevars];
+    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+      if (line.trim().isEmpty()) {
+        continue;
+      }
+      if ((dkconfig_max_line_number > 0) && (reader.getLineNumber() > dkconfig_max_line_number)) {
+        break;
+      }
+      List<String> fields = csv_row(line, delimiter, varnames.length, reader, filename);
+
+      @Nullable Object[] vals = new @Nullable Object[vals_array_size];
+      int[] mods = new int[vals_array_size];
+      for (int val_index = 0; val_index < num_tracevars; val_index++) {
+        VarInfo vi = ppt.var_infos[val_index];
+        String value_rep = fields.get(columns[val_index]);
+        int mod = ValueTuple.MODIFIED;
+        Object val;
+        if (!is_csv_missing(value_rep)) {
+          val = csv_value(vi, value_rep, reader, filename);
+          if (value_rep.equals(prev_reps[val_index]) && !dkconfig_add_changed) {
+            mod = ValueTuple.UNMODIFIED;
+          }
+          prev_reps[val_index] = value_rep;
+          prev_vals[val_index] = val;
+        } else if (dkconfig_csv_missing.equals("old") && prev_vals[val_index] != null) {
+          val = prev_vals[val_index];
+        } else if (dkconfig_csv_missing.equals("nonsensical")) {
+          val = null;
+        } else {
+          // "zero", or "old" before any value has been seen
+          val = vi.rep_type.isString() ? "" : csv_value(vi, "0", reader, filename);
+        }
+        if (val == null) {
+          mod = ValueTuple.MISSING_NONSENSICAL;
+          vi.canBeMissing = true;
+        }
+        vals[val_index] = val;
+        mods[val_index] = mod;
+      }
+
+      samples_processed++;
+      try {
+        processor.process_sample(all_ppts, ppt, ValueTuple.makeUninterned(vals, mods), null);
+      } catch (Error e) {
+        if (!dkconfig_continue_after_file_exception) {
+          throw new Daikon.UserError(e, state);
+        } else {
+          System.out.println();
+          System.out.println(
+              "WARNING: Error while processing csv file; subsequent records ignored.");
+          System.out.print("Ignored backtrace:");
+          e.printStackTrace(System.out);
+          System.out.println();
+        }
+      }
+    }
+    reader.close();
+
+    Daikon.progress = "Finished reading " + state.filename;
+
+    clear_data_trace_state();
+  }
+
+  /**
+   * Returns the field separator for csv files, as specified by {@link #dkconfig_csv_delimiter}.
+   *
+   * @return the field separator for csv files
+   */
+  private static char csv_delimiter() {
+    if (dkconfig_csv_delimiter.equals("\\t")) {
+      return '\t';
+    }
+    if (dkconfig_csv_delimiter.isEmpty()) {
+      throw new Daikon.UserError("Empty value for configuration option csv_delimiter");
+    }
+    return dkconfig_csv_delimiter.charAt(0);
+  }
+
+  /**
+   * Splits one line of a csv file into its fields. A field may be enclosed in double quotes, in
+   * which case it may contain the delimiter, and a doubled double quote within it stands for a
+   * single double quote. Fields may not span lines.
+   *
+   * @param line a line of a csv file
+   * @param delimiter the field separator
+   * @return the fields of the line, with enclosing quotes removed
+   */
+  public static List<String> parse_csv_line(String line, char delimiter) {
+    List<String> result = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean in_quotes = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (in_quotes) {
+        if (c != '"') {
+          field.append(c);
+        } else if ((i + 1 < line.length()) && (line.charAt(i + 1) == '"')) {
+          field.append('"');
+          i++;
+        } else {
+          in_quotes = false;
+        }
+      } else if (c == '"') {
+        in_quotes = true;
+      } else if (c == delimiter) {
+        result.add(field.toString());
+        field.setLength(0);
+      } else if ((c == '\r') && (i == line.length() - 1)) {
+        // ignore the carriage return of a DOS line ending
+      } else {
+        field.append(c);
+      }
+    }
+    result.add(field.toString());
+    return result;
+  }
+
+  /**
+   * Splits one row of a csv file into exactly {@code num_fields} fields, throwing a UserError if it
+   * has a different number of fields. A trailing delimiter is permitted.
+   */
+  private static List<String> csv_row(
+      String line, char delimiter, int num_fields, LineNumberReader reader, String filename) {
+    List<String> fields = parse_csv_line(line, delimiter);
+    if (fields.size() == num_fields + 1 && fields.get(num_fields).isEmpty()) {
+      fields.remove(num_fields);
+    }
+    if (fields.size() != num_fields) {
+      throw new Daikon.UserError(
+          String.format(
+              "Line contains %d values, but %d variables were declared",
+              fields.size(), num_fields),
+          reader,
+          filename);
+    }
+    return fields;
+  }
+
+  /** Returns true if the csv value is missing, that is, if it is empty or consists of blanks. */
+  @Pure
+  private static boolean is_csv_missing(String value) {
+    return value.trim().isEmpty();
+  }
+
+  /** Returns the interned value of a (non-missing) csv field for the given variable. */
+  private static @Interned Object csv_value(
+      VarInfo vi, String value_rep, LineNumberReader reader, String filename) {
+    if (vi.rep_type.isString()) {
+      return value_rep.intern();
+    }
+    Object val = vi.rep_type.parse_value(value_rep.trim(), reader, filename);
+    if (val == null) {
+      throw new Daikon.UserError(
+          "Bad value " + value_rep + " for variable " + vi.name(), reader, filename);
+    }
+    return val;
+  }
+
+  /**
+   * Converts a csv column name into a Daikon variable name, in the same way as {@code
+   * convertcsv.pl}. A name that contains a character that is special in variable names is quoted.
+   *
+   * @param name the name of a csv column
+   * @return the name of the corresponding variable
+   */
+  private static String csv_var_name(String name) {
+    String simplified =
+        name.replace(' ', '_')
+            .replace('.', '_')
+            .replaceAll("[\"/-]", "_")
+            .replaceAll("[()\\[\\]<>]", "");
+    if (simplified.equals(name)) {
+      return name;
+    }
+    return "\"" + name.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
   }
 
   ///////////////////////////////////////////////////////////////////////////
@@ -2385,26 +3399,56 @@ public final class FileIO {
   }
 
   /**
-   * Write a serialized PptMap to a file.
+   * Write a serialized PptMap to a file, in the format described in {@link InvFile}. The file is
+   * compressed regardless of its name.
    *
    * @param map a PptMap
    * @param file the file to which to write
    * @throws IOException if there is trouble writing the file
    */
   public static void write_serialized_pptmap(PptMap map, File file) throws IOException {
-    SerialFormat record = new SerialFormat(map, Configuration.getInstance());
-    FilesPlume.writeObject(record, file);
+    InvFile.write(
+        map, Configuration.getInstance(), Boolean.TRUE.equals(FileIO.new_decl_format), file);
   }
 
   /**
    * Read either a serialized PptMap or a InvMap and return a PptMap. If an InvMap is specified, it
-   * is converted to a PptMap.
+   * is converted to a PptMap. The file may be in the format described in {@link InvFile}, or be a
+   * single serialized object (possibly compressed) as written by older versions of Daikon.
    */
   @EnsuresNonNull("FileIO.new_decl_format")
   public static PptMap read_serialized_pptmap(File file, boolean use_saved_config)
       throws IOException {
+    return read_serialized_pptmap(file, use_saved_config, null);
+  }
+
+  /**
+   * Like {@link #read_serialized_pptmap(File, boolean)}, but if the file is in the format described
+   * in {@link InvFile}, reads only the program points whose names satisfy {@code select}, and those
+   * they depend on (see {@link InvFile.Reader#read_selected}). The result may contain other program
+   * points, so callers must still check the names of those they use.
+   *
+   * @param file the file to read
+   * @param use_saved_config if true, overlap the configuration in the file onto the current one
+   * @param select which program points are needed, or null for all of them
+   * @return the program points read from the file
+   * @throws IOException if there is trouble reading the file
+   */
+  @EnsuresNonNull("FileIO.new_decl_format")
+  public static PptMap read_serialized_pptmap(
+      File file, boolean use_saved_config, @Nullable Predicate<String> select) throws IOException {
 
     try {
+      if (InvFile.is_inv_file(file)) {
+        try (InvFile.Reader reader = new InvFile.Reader(file)) {
+          if (use_saved_config) {
+            Configuration.getInstance().overlap(reader.config());
+          }
+          FileIO.new_decl_format = reader.new_decl_format();
+          return (select == null) ? reader.read_map() : reader.read_selected(select);
+        }
+      }
+
       Object obj = FilesPlume.readObject(file);
       if (obj instanceof FileIO.SerialFormat) {
         SerialFormat record = (SerialFormat) obj;
@@ -2524,7 +3568,7 @@ public final class FileIO {
    * Converts the declaration record version of a name into its correct version. In the declaration
    * record, blanks are encoded as \_ and backslashes as \\.
    */
-  private static String unescape_decl(String orig) {
+  static String unescape_decl(String orig) {
     StringBuilder sb = new StringBuilder(orig.length());
     // The previous escape character was seen just before this position.
     int post_esc = 0;
@@ -2584,8 +3628,7 @@ public final class FileIO {
    * @param orig the name of a declaration
    * @return the representation of the name in a declaration file
    */
-  @SuppressWarnings("UnusedMethod")
-  private static String escape_decl(String orig) {
+  static String escape_decl(String orig) {
     return orig.replace("\\", "\\\\")
         .replace(" ", "\\_")
         .replace("\n", "\\n") // not lineSep
@@ -0,0 +1,378 @@
+package daikon;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Passes trace records from a front end to Daikon within one JVM, without encoding them. Chicory's
+ * {@code --daikon-in-process} option runs Daikon on a thread of the traced program, reading the
+ * trace file named {@link #NAME}. The samples of the traced threads reach Daikon's program points
+ * as values, just as if they had been read from a {@linkplain BinaryDtrace binary trace file}, but
+ * nothing is written to a file or a socket. Chicory converts numbers, booleans, characters, hash
+ * codes, and arrays of them directly; only strings and null values are printed and parsed.
+ * Declarations and comments are passed as text in the {@code .dtrace} format.
+ *
+ * <p>The records pass through a queue that holds at most {@link #CAPACITY} of them. When Daikon
+ * falls behind, the front end waits for it, so the memory that is used is bounded.
+ *
+ * <p>A JVM has a single channel, which is opened by {@link #open}. Like {@link Daikon#mainHelper},
+ * it can be used by only one Daikon run at a time.
+ */
+public final class InProcessDtrace {
+
+  /** This is a static class. */
+  private InProcessDtrace() {
+    throw new Error("do not instantiate");
+  }
+
+  /** The name of the trace file whose records are read from the channel. */
+  public static final String NAME = "=";
+
+  /** The number of records that the queue holds. */
+  public static final int CAPACITY = 4096;
+
+  /** How often a writer that waits for room in the queue checks whether it was discarded. */
+  private static final long WAIT_MILLIS = 100;
+
+  /** Marks the end of the records in the queue. */
+  private static final Object END = new Object();
+
+  /** The queue of the channel, or null if it has not been opened. */
+  private static volatile @Nullable BlockingQueue<Object> queue = null;
+
+  /** A sample, as it passes through the queue. */
+  static final class Sample {
+
+    /** The program point and variables of the sample. */
+    final BinaryDtrace.PptFormat format;
+
+    /** The invocation nonce, or null if there is none. */
+    final @Nullable Integer nonce;
+
+    /** The uninterned value of each variable, or null if it is nonsensical. */
+    final @Nullable Object[] values;
+
+    /** The modified bit of each variable. */
+    final int[] mods;
+
+    /**
+     * Creates a sample.
+     *
+     * @param format the program point and variables of the sample
+     * @param nonce the invocation nonce, or null if there is none
+     * @param values the value of each variable, or null if it is nonsensical
+     * @param mods the modified bit of each variable
+     */
+    Sample(
+        BinaryDtrace.PptFormat format,
+        @Nullable Integer nonce,
+        @Nullable Object[] values,
+        int[] mods) {
+      this.format = format;
+      this.nonce = nonce;
+      this.values = values;
+      this.mods = mods;
+    }
+  }
+
+  /**
+   * Opens the channel. If it was already open, its readers and writers continue to use the old
+   * channel, and the readers that are created later use the new one.
+   *
+   * @return the writer of the channel
+   */
+  public static synchronized Writer open() {
+    BlockingQueue<Object> result = new ArrayBlockingQueue<>(CAPACITY);
+    queue = result;
+    return new Writer(result);
+  }
+
+  /**
+   * Returns a reader of the channel. See {@link FileIO#read_data_trace_record}.
+   *
+   * @return a reader of the channel
+   * @throws Daikon.UserError if the channel has not been opened
+   */
+  static Reader reader() {
+    BlockingQueue<Object> q = queue;
+    if (q == null) {
+      throw new Daikon.UserError(
+          "Trace file " + NAME + " can be read only when Daikon is run by Chicory's"
+              + " --daikon-in-process option");
+    }
+    return new Reader(q);
+  }
+
+  /** Reads the records of the channel. */
+  static final class Reader {
+
+    /** The queue. */
+    private final BlockingQueue<Object> queue;
+
+    /** The number of records that have been read. */
+    private long records = 0;
+
+    /**
+     * Creates a reader.
+     *
+     * @param queue the queue
+     */
+    private Reader(BlockingQueue<Object> queue) {
+      this.queue = queue;
+    }
+
+    /**
+     * Returns the next record, waiting for it if need be.
+     *
+     * @return the text of a record (a {@code String}), a {@link Sample}, or null at the end
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    @Nullable Object take() throws InterruptedIOException {
+      Object record;
+      try {
+        record = queue.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while reading the in-process trace");
+      }
+      if (record == END) {
+        // Leave the marker for any later reader.
+        queue.offer(END);
+        return null;
+      }
+      records++;
+      return record;
+    }
+
+    /** Returns the number of records that have been read. */
+    long records() {
+      return records;
+    }
+  }
+
+  /**
+   * Passes records to Daikon. Text is passed through {@link #text_writer}; samples are passed as
+   * described for {@link BinaryDtrace.SampleWriter}. Like {@link BinaryDtrace.Writer}, a Writer is
+   * not thread-safe: the caller must not start a sample until the previous one has ended.
+   */
+  public static final class Writer implements BinaryDtrace.SampleWriter, Closeable {
+
+    /** The queue. */
+    private final BlockingQueue<Object> queue;
+
+    /** Text that has been written through {@link #text_writer} but not yet passed on. */
+    private final StringBuilder pending_text = new StringBuilder();
+
+    /** The description of each program point that has had a sample. */
+    private final HashMap<String, BinaryDtrace.PptFormat> formats = new HashMap<>();
+
+    /** True once {@link #close} has been called. */
+    private boolean closed = false;
+
+    /** True once {@link #discard} has been called. */
+    private volatile boolean discarded = false;
+
+    /** The name of the program point of the current sample, or null between samples. */
+    private @Nullable String ppt_name = null;
+
+    /** The description of the program point of the current sample, or null if it is new. */
+    private BinaryDtrace.@Nullable PptFormat format = null;
+
+    /** The nonce of the current sample. */
+    private @Nullable Integer nonce = null;
+
+    /** The number of variables of the current sample that have been added. */
+    private int num_vars = 0;
+
+    /** The names of the variables of the current sample, if its program point is new. */
+    private final List<String> var_names = new ArrayList<>();
+
+    /** The kinds of the variables of the current sample, if its program point is new. */
+    private final List<Integer> var_kinds = new ArrayList<>();
+
+    /** The values of the current sample. */
+    private @Nullable Object[] values = new @Nullable Object[16];
+
+    /** The modified bits of the current sample. */
+    private int[] mods = new int[16];
+
+    /**
+     * Creates a writer.
+     *
+     * @param queue the queue
+     */
+    private Writer(BlockingQueue<Object> queue) {
+      this.queue = queue;
+    }
+
+    /**
+     * Adds a record to the queue, waiting for room if need be. Drops the record if this has been
+     * discarded.
+     *
+     * @param record the record
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    private void put(Object record) throws InterruptedIOException {
+      try {
+        while (!discarded && !queue.offer(record, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+          // Daikon has fallen behind; wait for it.
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while writing the in-process trace");
+      }
+    }
+
+    /** Passes on the text that was written through {@link #text_writer}. */
+    private void flush_text() throws IOException {
+      if (pending_text.length() > 0 && !closed) {
+        String text = pending_text.toString();
+        pending_text.setLength(0);
+        put(text);
+      }
+    }
+
+    /**
+     * Returns a writer for text in the {@code .dtrace} format. The text is passed on before the
+     * next sample, or when the writer or this is flushed or closed.
+     *
+     * @return a writer for text
+     */
+    public TextWriter text_writer() {
+      return new TextWriter();
+    }
+
+    /** Text output to the channel. See {@link #text_writer}. */
+    public final class TextWriter extends java.io.Writer {
+
+      /** Creates a writer of text. */
+      private TextWriter() {}
+
+      @Override
+      public void write(char[] cbuf, int off, int len) {
+        pending_text.append(cbuf, off, len);
+      }
+
+      @Override
+      public void write(String str, int off, int len) {
+        pending_text.append(str, off, off + len);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        Writer.this.flush();
+      }
+
+      @Override
+      public void close() throws IOException {
+        Writer.this.close();
+      }
+    }
+
+    @Override
+    public void start_sample(String ppt_name, @Nullable Integer nonce) {
+      assert this.ppt_name == null : "sample of " + this.ppt_name + " was not ended";
+      this.ppt_name = ppt_name;
+      this.format = formats.get(ppt_name);
+      this.nonce = nonce;
+      num_vars = 0;
+      var_names.clear();
+      var_kinds.clear();
+    }
+
+    @Override
+    public void add_value(
+        String var_name, ProglangType rep_type, @Nullable Object value, int mod) {
+      assert ppt_name != null : "add_value called outside a sample";
+      if (format == null) {
+        int kind = BinaryDtrace.kind(rep_type);
+        if (kind < 0) {
+          throw new IllegalArgumentException(
+              "Variable " + var_name + " of type " + rep_type + " has no binary encoding");
+        }
+        var_names.add(var_name);
+        var_kinds.add(kind);
+      }
+      if (num_vars == values.length) {
+        values = Arrays.copyOf(values, 2 * num_vars);
+        mods = Arrays.copyOf(mods, 2 * num_vars);
+      }
+      values[num_vars] = value;
+      mods[num_vars] = (value == null) ? ValueTuple.MISSING_NONSENSICAL : mod;
+      num_vars++;
+    }
+
+    @Override
+    public void end_sample() throws IOException {
+      String name = ppt_name;
+      assert name != null : "end_sample called outside a sample";
+      ppt_name = null;
+      flush_text();
+      BinaryDtrace.PptFormat sample_format = format;
+      if (sample_format == null) {
+        int[] kinds = new int[num_vars];
+        for (int i = 0; i < num_vars; i++) {
+          kinds[i] = var_kinds.get(i);
+        }
+        sample_format =
+            new BinaryDtrace.PptFormat(name, var_names.toArray(new String[num_vars]), kinds);
+        formats.put(name, sample_format);
+      } else if (sample_format.kinds.length != num_vars) {
+        throw new IllegalStateException(
+            "Sample of " + name + " has " + num_vars + " variables, previously "
+                + sample_format.kinds.length);
+      }
+      if (closed) {
+        return;
+      }
+      put(
+          new Sample(
+              sample_format,
+              nonce,
+              Arrays.copyOf(values, num_vars),
+              Arrays.copyOf(mods, num_vars)));
+    }
+
+    /**
+     * Passes on any text written through {@link #text_writer}.
+     *
+     * @throws IOException if the text cannot be passed on
+     */
+    public void flush() throws IOException {
+      flush_text();
+    }
+
+    /**
+     * Drops the records that have not been read, and those that are written later, so that the
+     * writer no longer waits for the reader. Called when the reader stops. Unlike the other
+     * methods, this may be called by any thread.
+     */
+    public void discard() {
+      discarded = true;
+      queue.clear();
+    }
+
+    /**
+     * Passes on any text written through {@link #text_writer}, and marks the end of the records.
+     * Records that are written later are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      flush_text();
+      closed = true;
+      put(END);
+    }
+  }
+}
@@ -0,0 +1,522 @@
+package daikon;
+
+import daikon.config.Configuration;
+import daikon.inv.Invariant;
+import daikon.split.PptSplitter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.checkerframework.dataflow.qual.SideEffectFree;
+
+/**
+ * Infers invariants from data that arrives over time. Samples are added to the program points as
+ * data trace files arrive, and each {@link #update} returns the invariants of all of the samples
+ * so far, as Daikon would have computed them from all of the files at once, together with the
+ * invariants that have been falsified or newly justified since the previous update.
+ *
+ * <p>The processing that Daikon does after reading the data (the hierarchy, equality sets, dynamic
+ * constants, and implications; see {@link Daikon#postprocess_data}) modifies the program points
+ * so that no more samples can be added to them. It is therefore done to a copy of the program
+ * points, and only to the parts of the program point hierarchy that contain a program point that
+ * has received samples since the previous update. The results for the rest of the hierarchy are
+ * reused.
+ *
+ * <p>The program points to which samples are added can be saved to a file with {@link #save}, and
+ * inference can be resumed from that file with {@link #load}. Such a file is in the format of an
+ * {@code .inv} file, but its invariants are not post-processed, so it should not be printed.
+ *
+ * <p>Like {@link Daikon#mainHelper}, this uses Daikon's static state, so only one instance can be
+ * used at a time, and no other Daikon run may take place while it is in use.
+ */
+public final class IncrementalInference {
+
+  /** Debug logger. */
+  public static final Logger debug = Logger.getLogger("daikon.IncrementalInference");
+
+  /** An invariant at a program point. */
+  public static final class Change {
+    /** The name of the program point. */
+    public final String ppt_name;
+    /** The invariant, in Daikon's output format. */
+    public final String invariant;
+
+    /**
+     * Creates a record of an invariant at a program point.
+     *
+     * @param ppt_name the name of the program point
+     * @param invariant the invariant, in Daikon's output format
+     */
+    public Change(String ppt_name, String invariant) {
+      this.ppt_name = ppt_name;
+      this.invariant = invariant;
+    }
+
+    @SideEffectFree
+    @Override
+    public String toString(@GuardSatisfied Change this) {
+      return ppt_name + ": " + invariant;
+    }
+  }
+
+  /** The result of an {@link #update}. */
+  public static final class Update {
+    /**
+     * The post-processed program points. Program points that did not change are shared with the
+     * result of the previous update, so this map should not be modified.
+     */
+    public final PptMap ppts;
+    /** The invariants that pass Daikon's default filters, in the order of the program points. */
+    public final List<Change> invariants;
+    /** The invariants of the previous update that are not in {@link #invariants}. */
+    public final List<Change> falsified;
+    /** The invariants in {@link #invariants} that were not in the previous update. */
+    public final List<Change> justified;
+    /** The number of program points that were post-processed by this update. */
+    public final int reprocessed;
+
+    /**
+     * Creates the result of an update.
+     *
+     * @param ppts the post-processed program points
+     * @param invariants the invariants that pass Daikon's default filters
+     * @param falsified the invariants that are no longer found
+     * @param justified the invariants that were not found before
+     * @param reprocessed the number of program points that were post-processed
+     */
+    Update(
+        PptMap ppts,
+        List<Change> invariants,
+        List<Change> falsified,
+        List<Change> justified,
+        int reprocessed) {
+      this.ppts = ppts;
+      this.invariants = invariants;
+      this.falsified = falsified;
+      this.justified = justified;
+      this.reprocessed = reprocessed;
+    }
+  }
+
+  /** The program points, with the invariants of all of the samples so far, not post-processed. */
+  private final PptMap live;
+
+  /** The number of samples of each program point in {@link #live} at the previous update. */
+  private final Map<String, Integer> processed_samples = new HashMap<>();
+
+  /**
+   * For each post-processed program point, the name of a program point in the same connected
+   * part of the hierarchy, which stands for that part. Null before the first update.
+   */
+  private @Nullable Map<String, String> component = null;
+
+  /** The post-processed program points of the previous update. */
+  private PptMap processed = new PptMap();
+
+  /**
+   * The invariants that pass the default filters at each post-processed program point (including
+   * its conditional program points), as of the previous update. They are computed when the
+   * program point is post-processed, because printing the program point changes its variable
+   * names.
+   */
+  private Map<String, List<Change>> filtered = new HashMap<>();
+
+  /**
+   * Creates an inference over the given program points.
+   *
+   * @param live the program points, which are not post-processed
+   */
+  private IncrementalInference(PptMap live) {
+    this.live = live;
+    Daikon.setup_NISuppression();
+  }
+
+  /**
+   * Starts an inference. The arguments are those of Daikon's command line; samples are added from
+   * the data trace files among them.
+   *
+   * @param args Daikon's command-line arguments
+   * @return the inference
+   * @throws IOException if there is trouble reading the files
+   */
+  public static IncrementalInference start(String... args) throws IOException {
+    Daikon.cleanup();
+    Daikon.FileOptions files = read_options(args);
+    Daikon.setup(files);
+    IncrementalInference inference = new IncrementalInference(Daikon.all_ppts);
+    inference.add(files.dtrace);
+    return inference;
+  }
+
+  /**
+   * Resumes an inference that was saved by {@link #save}. The configuration with which it was
+   * started is restored, and may be changed by the arguments, which are those of Daikon's command
+   * line. Samples are added from the data trace files among the arguments.
+   *
+   * @param file a file written by {@link #save}
+   * @param args Daikon's command-line arguments
+   * @return the inference
+   * @throws IOException if there is trouble reading the files
+   */
+  public static IncrementalInference load(File file, String... args) throws IOException {
+    Daikon.cleanup();
+    Configuration.getInstance().reset();
+    PptMap ppts = FileIO.read_serialized_pptmap(file, true);
+    for (PptTopLevel ppt : ppts.pptIterable()) {
+      if (ppt.invariants_merged || !ppt.children.isEmpty()) {
+        throw new Daikon.UserError(
+            file + " holds post-processed invariants, which cannot be added to");
+      }
+    }
+    boolean new_decl_format = FileIO.new_decl_format;
+    Daikon.FileOptions files = read_options(args);
+    Daikon.setup(files);
+    FileIO.new_decl_format = new_decl_format;
+    for (PptTopLevel ppt : Daikon.all_ppts.pptIterable()) {
+      if (!ppts.containsName(ppt.name())) {
+        ppts.add(ppt);
+      }
+    }
+    Daikon.all_ppts = ppts;
+    IncrementalInference inference = new IncrementalInference(ppts);
+    inference.add(files.dtrace);
+    return inference;
+  }
+
+  /**
+   * Reads Daikon's command-line arguments.
+   *
+   * @param args the arguments, which may be empty
+   * @return the files named by the arguments
+   */
+  private static Daikon.FileOptions read_options(String[] args) {
+    if (args.length == 0) {
+      return new Daikon.FileOptions(
+          new LinkedHashSet<File>(),
+          new LinkedHashSet<String>(),
+          new LinkedHashSet<File>(),
+          new LinkedHashSet<File>());
+    }
+    return Daikon.read_options(args, Daikon.usage);
+  }
+
+  /**
+   * Adds the samples in the given data trace files. Their program points need not have been
+   * declared before.
+   *
+   * @param dtrace_files the names of the data trace files
+   * @throws IOException if there is trouble reading the files
+   */
+  public void add(String... dtrace_files) throws IOException {
+    add(Arrays.asList(dtrace_files));
+  }
+
+  /**
+   * Adds the samples in the given data trace files. Their program points need not have been
+   * declared before. A program point that had converged (see {@link
+   * PptTopLevel#dkconfig_convergence_samples}) processes the new samples, until its invariants are
+   * stable again.
+   *
+   * @param dtrace_files the names of the data trace files
+   * @throws IOException if there is trouble reading the files
+   */
+  public void add(Collection<String> dtrace_files) throws IOException {
+    for (PptTopLevel ppt : live.ppt_all_iterable()) {
+      ppt.restart_convergence();
+    }
+    // Samples at a numbered exit may also be added to the combined exit, which is found in
+    // Daikon.all_ppts.
+    Daikon.all_ppts = live;
+    Daikon.isInferencing = true;
+    try {
+      FileIO.read_data_trace_files(dtrace_files, live);
+    } finally {
+      Daikon.isInferencing = false;
+    }
+  }
+
+  /**
+   * Writes the program points, with the invariants of the samples added so far, to a file from
+   * which {@link #load} can resume the inference. Program points that are split by a splitter
+   * cannot be saved, because the splitters are compiled when Daikon runs.
+   *
+   * @param file the file to write
+   * @throws IOException if there is trouble writing the file
+   */
+  public void save(File file) throws IOException {
+    for (PptTopLevel ppt : live.pptIterable()) {
+      if (ppt.has_splitters()) {
+        throw new Daikon.UserError("Cannot save the conditional program points of " + ppt.name());
+      }
+    }
+    settle();
+    FileIO.write_serialized_pptmap(live, file);
+  }
+
+  /**
+   * Post-processes the program points, and returns the invariants of all of the samples so far.
+   *
+   * @return the invariants, and how they changed since the previous update
+   */
+  public Update update() {
+    settle();
+
+    // Find the parts of the hierarchy that contain a program point with new samples.  If there
+    // are new program points, the hierarchy may have changed, so all of it is post-processed.
+    boolean all = (component == null) || !processed_samples.keySet().equals(names(live));
+    Set<String> changed = new LinkedHashSet<>();
+    if (!all) {
+      assert component != null : "@AssumeAssertion(nullness): checked above";
+      for (PptTopLevel ppt : live.pptIterable()) {
+        Integer samples = processed_samples.get(ppt.name());
+        if (samples == null || samples != ppt.num_samples()) {
+          changed.add(component.get(ppt.name()));
+        }
+      }
+    }
+    List<PptTopLevel> todo = new ArrayList<>();
+    for (PptTopLevel ppt : live.pptIterable()) {
+      if (all || changed.contains(component_of(ppt.name()))) {
+        todo.add(ppt);
+      }
+    }
+    debug.fine("Post-processing " + todo.size() + " of " + live.size() + " program points");
+
+    PptMap copy = copy(todo);
+    Daikon.postprocess_data(copy);
+
+    // Combine the new results with those of the parts that did not change
+    PptMap result = new PptMap();
+    Map<String, List<Change>> new_filtered = new HashMap<>();
+    if (!all) {
+      for (PptTopLevel ppt : processed.pptIterable()) {
+        if (!changed.contains(component_of(ppt.name()))) {
+          result.add(ppt);
+          List<Change> invs = filtered.get(ppt.name());
+          new_filtered.put(ppt.name(), (invs == null) ? Collections.emptyList() : invs);
+        }
+      }
+    }
+    for (PptTopLevel ppt : copy.pptIterable()) {
+      result.add(ppt);
+      new_filtered.put(ppt.name(), filtered_invariants(ppt));
+    }
+    if (all) {
+      component = components(copy);
+    }
+
+    // Compare the invariants of the program points that were post-processed
+    List<Change> falsified = new ArrayList<>();
+    List<Change> justified = new ArrayList<>();
+    Set<String> reprocessed = names(copy);
+    for (PptTopLevel ppt : processed.pptIterable()) {
+      if (all || reprocessed.contains(ppt.name())) {
+        List<Change> after = new_filtered.get(ppt.name());
+        falsified.addAll(difference(filtered.get(ppt.name()), after));
+      }
+    }
+    for (PptTopLevel ppt : copy.pptIterable()) {
+      List<Change> before = processed.containsName(ppt.name()) ? filtered.get(ppt.name()) : null;
+      justified.addAll(difference(new_filtered.get(ppt.name()), before));
+    }
+    List<Change> invariants = new ArrayList<>();
+    for (PptTopLevel ppt : result.pptIterable()) {
+      List<Change> invs = new_filtered.get(ppt.name());
+      if (invs != null) {
+        invariants.addAll(invs);
+      }
+    }
+
+    processed = result;
+    filtered = new_filtered;
+    processed_samples.clear();
+    for (PptTopLevel ppt : live.pptIterable()) {
+      processed_samples.put(ppt.name(), ppt.num_samples());
+    }
+    return new Update(result, invariants, falsified, justified, todo.size());
+  }
+
+  /**
+   * Creates the ternary slices that are still deferred by the prefilter (see {@link
+   * PptTopLevel#dkconfig_ternary_prefilter_samples}), as Daikon does when it has read all of the
+   * data. The prefilter is not serialized.
+   */
+  private void settle() {
+    for (PptTopLevel ppt : live.ppt_all_iterable()) {
+      ppt.instantiate_ternary_views();
+    }
+  }
+
+  /**
+   * Returns the part of the hierarchy that a program point was in at the previous update.
+   *
+   * @param ppt_name the name of a program point
+   * @return the name that stands for its part of the hierarchy, or the name itself if it was not
+   *     post-processed
+   */
+  private String component_of(String ppt_name) {
+    String result = (component == null) ? null : component.get(ppt_name);
+    return (result == null) ? ppt_name : result;
+  }
+
+  /**
+   * Returns the names of the program points in a map.
+   *
+   * @param ppts the program points
+   * @return their names
+   */
+  private static Set<String> names(PptMap ppts) {
+    return new LinkedHashSet<String>(ppts.nameStringSet());
+  }
+
+  /**
+   * Returns an independent copy of some program points. Splitters, which are not serialized, are
+   * shared with the originals.
+   *
+   * @param ppts the program points to copy
+   * @return a map that holds the copies
+   */
+  private static PptMap copy(List<PptTopLevel> ppts) {
+    PptMap map = new PptMap();
+    map.addAll(ppts);
+    PptMap result;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+        out.writeObject(map);
+      }
+      try (ObjectInputStream in =
+          new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+        result = (PptMap) in.readObject();
+      }
+    } catch (IOException | ClassNotFoundException e) {
+      throw new Error("Cannot copy program points", e);
+    }
+    for (PptTopLevel ppt : ppts) {
+      if (!ppt.has_splitters()) {
+        continue;
+      }
+      PptTopLevel ppt_copy = result.get(ppt.name());
+      assert ppt_copy != null && ppt_copy.splitters != null;
+      for (int i = 0; i < ppt.splitters.size(); i++) {
+        PptSplitter ppt_split = ppt.splitters.get(i);
+        PptSplitter split_copy = ppt_copy.splitters.get(i);
+        split_copy.splitter = ppt_split.splitter;
+        for (int j = 0; j < ppt_split.ppts.length; j++) {
+          ((PptConditional) split_copy.ppts[j]).splitter =
+              ((PptConditional) ppt_split.ppts[j]).splitter;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the connected parts of the hierarchy of some program points.
+   *
+   * @param ppts post-processed program points
+   * @return for each program point, the name of a program point that stands for its part
+   */
+  private static Map<String, String> components(PptMap ppts) {
+    Map<String, String> result = new HashMap<>();
+    for (PptTopLevel start : ppts.pptIterable()) {
+      if (result.containsKey(start.name())) {
+        continue;
+      }
+      Deque<PptTopLevel> stack = new ArrayDeque<>();
+      stack.push(start);
+      result.put(start.name(), start.name());
+      while (!stack.isEmpty()) {
+        PptTopLevel ppt = stack.pop();
+        List<PptTopLevel> neighbors = new ArrayList<>();
+        for (PptRelation rel : ppt.parents) {
+          neighbors.add(rel.parent);
+        }
+        for (PptRelation rel : ppt.children) {
+          neighbors.add(rel.child);
+        }
+        for (PptTopLevel neighbor : neighbors) {
+          while (neighbor instanceof PptConditional) {
+            neighbor = ((PptConditional) neighbor).parent;
+          }
+          if (!result.containsKey(neighbor.name())) {
+            result.put(neighbor.name(), start.name());
+            stack.push(neighbor);
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the invariants at a program point, and at its conditional program points, that pass
+   * the default filters.
+   *
+   * @param ppt a post-processed program point
+   * @return the invariants that pass the default filters
+   */
+  private static List<Change> filtered_invariants(PptTopLevel ppt) {
+    List<PptTopLevel> ppts = new ArrayList<>();
+    ppts.add(ppt);
+    if (ppt.has_splitters()) {
+      for (PptSplitter ppt_split : ppt.splitters) {
+        ppts.addAll(Arrays.asList(ppt_split.ppts));
+      }
+    }
+    List<Change> result = new ArrayList<>();
+    for (PptTopLevel p : ppts) {
+      List<Invariant> invs = new ArrayList<>(p.getInvariants());
+      invs.sort(PptTopLevel.icfp);
+      for (Invariant inv : invs) {
+        if (inv.isWorthPrinting()) {
+          result.add(new Change(p.name(), inv.format()));
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the invariants in one list that are not in another.
+   *
+   * @param invs a list of invariants, or null
+   * @param others a list of invariants, or null
+   * @return the elements of invs that are not in others, in order
+   */
+  private static List<Change> difference(
+      @Nullable List<Change> invs, @Nullable List<Change> others) {
+    if (invs == null) {
+      return Collections.emptyList();
+    }
+    Set<String> other_keys = new LinkedHashSet<>();
+    if (others != null) {
+      for (Change change : others) {
+        other_keys.add(change.toString());
+      }
+    }
+    List<Change> result = new ArrayList<>();
+    for (Change change : invs) {
+      if (!other_keys.contains(change.toString())) {
+        result.add(change);
+      }
+    }
+    return result;
+  }
+}
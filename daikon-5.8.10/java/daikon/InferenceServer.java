@@ -0,0 +1,227 @@
+package daikon;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import daikon.config.Configuration;
+import gnu.getopt.*;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.plumelib.util.StringsPlume;
+
+/**
+ * A long-running process that performs many Daikon runs, one per request. This avoids starting a
+ * new JVM (and re-loading and re-compiling Daikon's classes) for each of a large number of small
+ * data sets.
+ *
+ * <p>Requests are read from standard input, or, with {@code --port}, from connections to a socket
+ * on the loopback interface; connections are served one at a time. A request consists of Daikon's
+ * command-line arguments, one per line, followed by an empty line. The response consists of
+ * everything that Daikon printed to standard output, followed by a line that starts with {@link
+ * #RESPONSE_END}: either {@code "%%END ok"} or {@code "%%END error "} followed by the error
+ * message. Unless an {@code -o} argument is given, no {@code .inv} file is written.
+ *
+ * <p>Before each run, configuration options that were set by the previous request are restored to
+ * their defaults, and {@link Daikon#mainHelper} resets the rest of Daikon's static state.
+ */
+public final class InferenceServer {
+  private InferenceServer() {
+    throw new Error("do not instantiate");
+  }
+
+  /** Debug logger. */
+  public static final Logger debug = Logger.getLogger("daikon.InferenceServer");
+
+  /** The prefix of the last line of each response. */
+  public static final String RESPONSE_END = "%%END ";
+
+  /** The usage message for this program. */
+  private static String usage =
+      StringsPlume.joinLines(
+          "Usage: java daikon.InferenceServer [OPTION]...",
+          "  -h, --" + Daikon.help_SWITCH,
+          "      Display this usage message",
+          "  --port PORT",
+          "      Read requests from connections to PORT on the loopback interface,",
+          "      rather than from standard input");
+
+  public static void main(final String[] args) throws IOException {
+    try {
+      mainHelper(args);
+    } catch (Daikon.DaikonTerminationException e) {
+      Daikon.handleDaikonTerminationException(e);
+    }
+  }
+
+  /**
+   * This does the work of {@link #main(String[])}, but it never calls System.exit, so it is
+   * appropriate to be called progrmmatically.
+   *
+   * @param args the command-line arguments
+   * @throws IOException if there is trouble reading requests or writing responses
+   */
+  public static void mainHelper(String[] args) throws IOException {
+    LongOpt[] longopts =
+        new LongOpt[] {
+          new LongOpt(Daikon.help_SWITCH, LongOpt.NO_ARGUMENT, null, 0),
+          new LongOpt("port", LongOpt.REQUIRED_ARGUMENT, null, 0),
+        };
+    Getopt g = new Getopt("daikon.InferenceServer", args, "h", longopts);
+    int port = -1;
+    int c;
+    while ((c = g.getopt()) != -1) {
+      switch (c) {
+        case 0:
+          String option_name = longopts[g.getLongind()].getName();
+          if (Daikon.help_SWITCH.equals(option_name)) {
+            System.out.println(usage);
+            throw new Daikon.NormalTermination();
+          } else if ("port".equals(option_name)) {
+            try {
+              port = Integer.parseInt(Daikon.getOptarg(g));
+            } catch (NumberFormatException e) {
+              throw new Daikon.UserError("Bad port number: " + Daikon.getOptarg(g));
+            }
+          } else {
+            throw new Daikon.UserError("Unknown long option received: " + option_name);
+          }
+          break;
+        case 'h':
+          System.out.println(usage);
+          throw new Daikon.NormalTermination();
+        case '?':
+          break; // getopt() already printed an error
+        default:
+          throw new Daikon.UserError("getopt() returned " + c);
+      }
+    }
+    if (g.getOptind() != args.length) {
+      throw new Daikon.UserError("Unexpected argument: " + args[g.getOptind()] + "\n" + usage);
+    }
+
+    if (port == -1) {
+      serve(new BufferedReader(new InputStreamReader(System.in, UTF_8)), System.out);
+      return;
+    }
+
+    try (ServerSocket server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress())) {
+      System.out.println("Listening on port " + server.getLocalPort());
+      while (true) {
+        try (Socket socket = server.accept()) {
+          debug.fine("Accepted connection from " + socket.getRemoteSocketAddress());
+          BufferedReader in =
+              new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+          serve(in, socket.getOutputStream());
+        } catch (IOException e) {
+          System.err.println("Connection failed: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads requests from {@code in} and writes a response to each one to {@code out}, until the end
+   * of the input.
+   *
+   * @param in the source of requests
+   * @param out the destination for responses
+   * @throws IOException if there is trouble reading requests or writing responses
+   */
+  public static void serve(BufferedReader in, OutputStream out) throws IOException {
+    for (List<String> request = read_request(in); request != null; request = read_request(in)) {
+      out.write(run(request.toArray(new String[request.size()])));
+      out.flush();
+    }
+  }
+
+  /**
+   * Reads one request: a sequence of non-empty lines followed by an empty line or the end of the
+   * input.
+   *
+   * @param in the source of requests
+   * @return the lines of the request, or null if there are no more requests
+   * @throws IOException if there is trouble reading the request
+   */
+  private static @Nullable List<String> read_request(BufferedReader in) throws IOException {
+    List<String> result = new ArrayList<>();
+    for (String line = in.readLine(); line != null; line = in.readLine()) {
+      if (line.isEmpty()) {
+        // Ignore empty lines between requests.
+        if (result.isEmpty()) {
+          continue;
+        }
+        return result;
+      }
+      result.add(line);
+    }
+    return result.isEmpty() ? null : result;
+  }
+
+  /** Holds what Daikon prints to standard output during the current run. */
+  private static ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+  /**
+   * Replaces System.out during each run. The same stream is used for every run, because some of
+   * Daikon's classes (such as PrintInvariants) retain the value of System.out.
+   */
+  private static PrintStream capture;
+
+  static {
+    try {
+      capture = new PrintStream(captured, true, UTF_8.name());
+    } catch (UnsupportedEncodingException e) {
+      throw new Error("UTF-8 is always supported", e);
+    }
+  }
+
+  /**
+   * Runs Daikon with the given arguments and returns the response: everything Daikon printed to
+   * standard output, followed by the terminating line.
+   *
+   * @param args Daikon's command-line arguments
+   * @return the response to the request, encoded in UTF-8
+   */
+  public static synchronized byte[] run(String[] args) {
+    Configuration.getInstance().reset();
+    Daikon.write_default_inv_file = false;
+
+    captured.reset();
+    PrintStream saved_out = System.out;
+    String status;
+    System.setOut(capture);
+    try {
+      Daikon.mainHelper(args);
+      status = "ok";
+    } catch (Daikon.NormalTermination e) {
+      status = "ok";
+    } catch (Daikon.DaikonTerminationException e) {
+      status = "error " + e.getMessage();
+    } catch (Throwable e) {
+      // Daikon's static state is reset at the beginning of the next run.
+      e.printStackTrace();
+      status = "error " + e;
+    } finally {
+      capture.flush();
+      System.setOut(saved_out);
+      Daikon.write_default_inv_file = true;
+    }
+
+    byte[] output = captured.toByteArray();
+    if (output.length > 0 && output[output.length - 1] != '\n') {
+      capture.println();
+    }
+    capture.println(RESPONSE_END + status.replace('\n', ' ').replace('\r', ' ').trim());
+    return captured.toByteArray();
+  }
+}
@@ -0,0 +1,1088 @@
+package daikon;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import daikon.config.Configuration;
+import daikon.split.PptSplitter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The format of {@code .inv} files, which hold a {@link PptMap} and the {@link Configuration} with
+ * which it was computed. {@link FileIO#read_serialized_pptmap} reads a file in this format, and
+ * also reads the older format, which is a single Java serialization of the whole map.
+ *
+ * <p>The file is split into independently compressed sections, so that a reader can seek to the
+ * program points it needs (see {@link Reader#read_ppts}) without reading the rest, and neither
+ * writing nor reading ever holds the serialized form of the whole map. A program point is stored
+ * by Java serialization, but the hierarchy that connects program points (the {@link PptRelation}
+ * objects in their {@code parents} and {@code children} lists) is stored separately, by name and
+ * variable index, and is reconnected when the program points are read. Program points that refer
+ * to one another in other ways, such as a combined exit point and the numbered exit points that
+ * it is split into, are stored in the same section.
+ *
+ * <p>An invariant file starts with the bytes of {@link #MAGIC} and a version number (currently
+ * {@link #VERSION}). Sections follow, each compressed with {@link Deflater}:
+ *
+ * <dl>
+ *   <dt>{@link #CONFIG}
+ *   <dd>The serialized {@link Configuration}, followed by the value of {@link
+ *       FileIO#new_decl_format}.
+ *   <dt>{@link #PPTS}
+ *   <dd>An array of one or more serialized program points, whose {@code parents} and {@code
+ *       children} lists are empty.
+ *   <dt>{@link #HIERARCHY}
+ *   <dd>The relations between program points. See {@link Writer#write_hierarchy}.
+ *   <dt>{@link #CLASSES}
+ *   <dd>The number of serialized class descriptors, and the descriptors. In a {@link #PPTS}
+ *       section, a class descriptor is replaced by its index in this list, so that each is stored
+ *       once per file rather than once per section.
+ * </dl>
+ *
+ * The sections are followed by an index: the number of sections, the kind, offset, and length of
+ * each; and the number of program points, and the name and section of each, in the order of the
+ * map. The file ends with the offset of the index and {@link #MAGIC}. Numbers are big-endian, as
+ * written by {@link DataOutputStream}.
+ */
+public final class InvFile {
+
+  /** This is a static class. */
+  private InvFile() {
+    throw new Error("do not instantiate");
+  }
+
+  /**
+   * The first bytes of an invariant file. An {@code .inv} file in the older format starts with a
+   * gzip header or a Java serialization header, neither of which contains a zero byte.
+   */
+  static final byte[] MAGIC = {0, 'D', 'I', 'B'};
+
+  /** The version of the format that is written, and the only version that can be read. */
+  static final int VERSION = 1;
+
+  /** Kind of a section that holds the configuration. */
+  static final int CONFIG = 1;
+
+  /** Kind of a section that holds program points. */
+  static final int PPTS = 2;
+
+  /** Kind of a section that holds the program point hierarchy. */
+  static final int HIERARCHY = 3;
+
+  /** Kind of a section that holds the class descriptors of the serialized objects. */
+  static final int CLASSES = 4;
+
+  /**
+   * The approximate number of bytes of serialized program points in a {@link #PPTS} section,
+   * before compression. Smaller sections make it faster to read a few program points, but make
+   * the file larger.
+   */
+  static final int SECTION_SIZE = 1 << 18;
+
+  /**
+   * Returns true if the given file is an invariant file in this format.
+   *
+   * @param file a file
+   * @return true if the file starts with {@link #MAGIC}
+   */
+  public static boolean is_inv_file(File file) {
+    byte[] start = new byte[MAGIC.length];
+    try (InputStream in = Files.newInputStream(file.toPath())) {
+      int n = 0;
+      while (n < start.length) {
+        int read = in.read(start, n, start.length - n);
+        if (read < 0) {
+          return false;
+        }
+        n += read;
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(start, MAGIC);
+  }
+
+  /**
+   * Writes a map of program points to a file.
+   *
+   * @param map the program points
+   * @param config the configuration with which the invariants were computed
+   * @param new_decl_format the value of {@link FileIO#new_decl_format}
+   * @param file the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(PptMap map, Configuration config, boolean new_decl_format, File file)
+      throws IOException {
+    try (Writer writer = new Writer(file, map)) {
+      writer.write_config(config, new_decl_format);
+      writer.write_ppts();
+      writer.write_hierarchy();
+    }
+  }
+
+  /**
+   * Identifies a program point that can be an end of a relation: a program point of the map, or a
+   * conditional program point of one of its splitters.
+   */
+  private static final class Node {
+
+    /** The index, in the map, of the program point or of the program point that owns it. */
+    final int ppt;
+
+    /** The index of the splitter in {@code splitters}, or -1 for a program point of the map. */
+    final int splitter;
+
+    /** The index of the conditional program point in the splitter, or -1. */
+    final int cond;
+
+    /**
+     * Creates a node.
+     *
+     * @param ppt the index, in the map, of the program point or of its owner
+     * @param splitter the index of the splitter, or -1
+     * @param cond the index of the conditional program point in the splitter, or -1
+     */
+    Node(int ppt, int splitter, int cond) {
+      this.ppt = ppt;
+      this.splitter = splitter;
+      this.cond = cond;
+    }
+
+    /**
+     * Writes this node.
+     *
+     * @param out where to write
+     */
+    void write(DataOutputStream out) throws IOException {
+      out.writeInt(ppt);
+      out.writeInt(splitter);
+      out.writeInt(cond);
+    }
+
+    /**
+     * Reads a node, as written by {@link #write}.
+     *
+     * @param in where to read
+     * @return the node
+     */
+    static Node read(DataInputStream in) throws IOException {
+      int ppt = in.readInt();
+      int splitter = in.readInt();
+      int cond = in.readInt();
+      return new Node(ppt, splitter, cond);
+    }
+  }
+
+  /**
+   * Adds the nodes of a program point and of its conditional program points.
+   *
+   * @param ppt a program point
+   * @param index the index of the program point in the map
+   * @param in_map the program points of the map
+   * @param nodes the node of each program point, to which the new nodes are added
+   * @param order the program points of {@code nodes}, in order, to which the new ones are added
+   */
+  private static void add_nodes(
+      PptTopLevel ppt,
+      int index,
+      Map<PptTopLevel, Integer> in_map,
+      Map<PptTopLevel, Node> nodes,
+      List<PptTopLevel> order) {
+    nodes.put(ppt, new Node(index, -1, -1));
+    order.add(ppt);
+    if (ppt.splitters != null) {
+      for (int s = 0; s < ppt.splitters.size(); s++) {
+        PptTopLevel[] conds = ppt.splitters.get(s).ppts;
+        for (int c = 0; c < conds.length; c++) {
+          if (!in_map.containsKey(conds[c])) {
+            nodes.put(conds[c], new Node(index, s, c));
+            order.add(conds[c]);
+          }
+        }
+      }
+    }
+  }
+
+  /** Writes an invariant file. */
+  static final class Writer implements Closeable {
+
+    /** The output. */
+    private final DataOutputStream out;
+
+    /** The number of bytes written to {@link #out}. */
+    private long position = 0;
+
+    /** The program points to write, in the order of the map. */
+    private final List<PptTopLevel> ppts;
+
+    /** The index of each program point in {@link #ppts}. */
+    private final Map<PptTopLevel, Integer> in_map = new IdentityHashMap<>();
+
+    /** The kind of each section that has been written. */
+    private final List<Integer> section_kinds = new ArrayList<>();
+
+    /** The offset of each section that has been written. */
+    private final List<Long> section_offsets = new ArrayList<>();
+
+    /** The length of each section that has been written. */
+    private final List<Integer> section_lengths = new ArrayList<>();
+
+    /** The section of each program point, indexed like {@link #ppts}. */
+    private final int[] ppt_sections;
+
+    /** The class descriptors of the serialized program points, in the order of their numbers. */
+    private final List<ObjectStreamClass> classes = new ArrayList<>();
+
+    /** The number of each class descriptor in {@link #classes}. */
+    private final Map<ObjectStreamClass, Integer> class_numbers = new IdentityHashMap<>();
+
+    /**
+     * Starts writing an invariant file.
+     *
+     * @param file the file to write
+     * @param map the program points that will be written
+     * @throws IOException if the file cannot be written
+     */
+    Writer(File file, PptMap map) throws IOException {
+      OutputStream stream = Files.newOutputStream(file.toPath());
+      out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+      ppts = new ArrayList<>(map.asCollection());
+      for (int i = 0; i < ppts.size(); i++) {
+        in_map.put(ppts.get(i), i);
+      }
+      ppt_sections = new int[ppts.size()];
+      Arrays.fill(ppt_sections, -1);
+      out.write(MAGIC);
+      out.writeByte(VERSION);
+      position = MAGIC.length + 1;
+    }
+
+    /**
+     * Writes the {@link #CONFIG} section.
+     *
+     * @param config the configuration with which the invariants were computed
+     * @param new_decl_format the value of {@link FileIO#new_decl_format}
+     */
+    void write_config(Configuration config, boolean new_decl_format) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(deflate(bytes))) {
+        oos.writeObject(config);
+        oos.writeBoolean(new_decl_format);
+      }
+      write_section(CONFIG, bytes);
+    }
+
+    /**
+     * Writes the program points, in {@link #PPTS} sections. Program points that refer to one
+     * another, other than through their relations, are written to the same section. Consecutive
+     * program points share a section until it holds about {@link #SECTION_SIZE} bytes.
+     */
+    void write_ppts() throws IOException {
+      // Serialize each program point once without writing it, to find its size and the program
+      // points that it refers to.
+      int num_ppts = ppts.size();
+      int[] groups = new int[num_ppts];
+      long[] sizes = new long[num_ppts];
+      for (int i = 0; i < num_ppts; i++) {
+        groups[i] = i;
+      }
+      for (int i = 0; i < num_ppts; i++) {
+        CountingOutputStream counter = new CountingOutputStream();
+        PptOutputStream oos =
+            new PptOutputStream(counter, Collections.singletonList(ppts.get(i)), false);
+        oos.writeObject(ppts.get(i));
+        oos.close();
+        sizes[i] = counter.count;
+        for (PptTopLevel other : oos.referenced) {
+          groups[find(groups, i)] = find(groups, in_map.get(other));
+        }
+      }
+
+      Map<Integer, List<Integer>> group_members = new LinkedHashMap<>();
+      for (int i = 0; i < num_ppts; i++) {
+        group_members.computeIfAbsent(find(groups, i), k -> new ArrayList<>()).add(i);
+      }
+      List<Integer> section = new ArrayList<>();
+      long section_size = 0;
+      for (List<Integer> members : group_members.values()) {
+        for (int i : members) {
+          section.add(i);
+          section_size += sizes[i];
+        }
+        if (section_size >= SECTION_SIZE) {
+          write_ppt_section(section);
+          section.clear();
+          section_size = 0;
+        }
+      }
+      if (!section.isEmpty()) {
+        write_ppt_section(section);
+      }
+    }
+
+    /**
+     * Returns the representative of the group of a program point.
+     *
+     * @param groups for each program point, another in its group, or itself for a representative
+     * @param i the index of a program point
+     * @return the index of the representative of its group
+     */
+    private static int find(int[] groups, int i) {
+      while (groups[i] != i) {
+        groups[i] = groups[groups[i]];
+        i = groups[i];
+      }
+      return i;
+    }
+
+    /**
+     * Writes a {@link #PPTS} section.
+     *
+     * @param section the indices of the program points of the section
+     */
+    private void write_ppt_section(List<Integer> section) throws IOException {
+      Collections.sort(section);
+      List<PptTopLevel> members = new ArrayList<>(section.size());
+      for (int i : section) {
+        members.add(ppts.get(i));
+        ppt_sections[i] = section_kinds.size();
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (PptOutputStream oos = new PptOutputStream(deflate(bytes), members, true)) {
+        oos.writeObject(members.toArray(new PptTopLevel[0]));
+      }
+      write_section(PPTS, bytes);
+    }
+
+    /**
+     * Serializes program points without their relations, and writes the number of each class
+     * descriptor in {@link #classes} rather than the descriptor itself.
+     */
+    private final class PptOutputStream extends ObjectOutputStream {
+
+      /** The program points that are being written. */
+      private final Set<PptTopLevel> members = Collections.newSetFromMap(new IdentityHashMap<>());
+
+      /** If true, a reference to a program point of the map that is not a member is an error. */
+      private final boolean complete;
+
+      /** The {@code parents} and {@code children} lists of the program points written so far. */
+      private final Set<Object> relation_lists =
+          Collections.newSetFromMap(new IdentityHashMap<>());
+
+      /** The program points of the map, other than members, that were referred to. */
+      final List<PptTopLevel> referenced = new ArrayList<>();
+
+      /**
+       * Creates a stream that serializes the given program points.
+       *
+       * @param out where to write
+       * @param members the program points that are being written
+       * @param complete if false, a reference to a program point of the map that is not a member
+       *     is written as null and added to {@link #referenced}; if true, it is an error
+       */
+      PptOutputStream(OutputStream out, Collection<PptTopLevel> members, boolean complete)
+          throws IOException {
+        super(out);
+        this.members.addAll(members);
+        this.complete = complete;
+        enableReplaceObject(true);
+      }
+
+      @Override
+      protected Object replaceObject(Object obj) throws IOException {
+        if (obj instanceof PptTopLevel) {
+          PptTopLevel ppt = (PptTopLevel) obj;
+          if (!members.contains(ppt) && in_map.containsKey(ppt)) {
+            if (complete) {
+              throw new NotSerializableException("Reference to another section: " + ppt.name());
+            }
+            if (!referenced.contains(ppt)) {
+              referenced.add(ppt);
+            }
+            return null;
+          }
+          relation_lists.add(ppt.parents);
+          relation_lists.add(ppt.children);
+        } else if (relation_lists.contains(obj)) {
+          return new ArrayList<PptRelation>();
+        } else if (obj instanceof PptRelation) {
+          throw new NotSerializableException("PptRelation outside of a relation list: " + obj);
+        }
+        return obj;
+      }
+
+      @Override
+      protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+        Integer number = class_numbers.get(desc);
+        if (number == null) {
+          number = classes.size();
+          classes.add(desc);
+          class_numbers.put(desc, number);
+        }
+        writeInt(number);
+      }
+    }
+
+    /**
+     * Writes the {@link #HIERARCHY} section. It holds the number of relations, and for each: the
+     * {@linkplain Node node} of its parent and of its child, its type, and the variable maps
+     * ({@code child_to_parent_map}, then {@code parent_to_child_map}) as a number of entries and
+     * the {@code varinfo_index} of the key and value of each. Then it holds the number of nodes
+     * that are in a relation, and for each: the node, and the indices of the relations in its
+     * {@code parents} list and in its {@code children} list. A relation between a program point of
+     * the map and one that is not in the map is not written.
+     */
+    void write_hierarchy() throws IOException {
+      Map<PptTopLevel, Node> nodes = new IdentityHashMap<>();
+      List<PptTopLevel> node_ppts = new ArrayList<>();
+      for (int i = 0; i < ppts.size(); i++) {
+        add_nodes(ppts.get(i), i, in_map, nodes, node_ppts);
+      }
+      Map<PptRelation, Integer> relations = new IdentityHashMap<>();
+      List<PptRelation> relation_list = new ArrayList<>();
+      for (PptTopLevel ppt : node_ppts) {
+        for (List<PptRelation> list : Arrays.asList(ppt.parents, ppt.children)) {
+          for (PptRelation rel : list) {
+            if (!relations.containsKey(rel)
+                && nodes.containsKey(rel.parent)
+                && nodes.containsKey(rel.child)) {
+              relations.put(rel, relation_list.size());
+              relation_list.add(rel);
+            }
+          }
+        }
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (DataOutputStream data = new DataOutputStream(deflate(bytes))) {
+        data.writeInt(relation_list.size());
+        for (PptRelation rel : relation_list) {
+          nodes.get(rel.parent).write(data);
+          nodes.get(rel.child).write(data);
+          data.writeByte(rel.relationship.ordinal());
+          write_var_map(data, rel.child_to_parent_map);
+          write_var_map(data, rel.parent_to_child_map);
+        }
+        List<PptTopLevel> related = new ArrayList<>();
+        for (PptTopLevel ppt : node_ppts) {
+          if (!ppt.parents.isEmpty() || !ppt.children.isEmpty()) {
+            related.add(ppt);
+          }
+        }
+        data.writeInt(related.size());
+        for (PptTopLevel ppt : related) {
+          nodes.get(ppt).write(data);
+          write_relation_list(data, ppt.parents, relations);
+          write_relation_list(data, ppt.children, relations);
+        }
+      }
+      write_section(HIERARCHY, bytes);
+    }
+
+    /**
+     * Writes a map between the variables of two program points.
+     *
+     * @param data where to write
+     * @param map the map
+     */
+    private static void write_var_map(DataOutputStream data, Map<VarInfo, VarInfo> map)
+        throws IOException {
+      data.writeInt(map.size());
+      for (Map.Entry<VarInfo, VarInfo> entry : map.entrySet()) {
+        data.writeInt(entry.getKey().varinfo_index);
+        data.writeInt(entry.getValue().varinfo_index);
+      }
+    }
+
+    /**
+     * Writes the indices of the relations in a list, omitting those that are not written.
+     *
+     * @param data where to write
+     * @param list the relations
+     * @param relations the index of each relation that is written
+     */
+    private static void write_relation_list(
+        DataOutputStream data, List<PptRelation> list, Map<PptRelation, Integer> relations)
+        throws IOException {
+      List<Integer> indices = new ArrayList<>();
+      for (PptRelation rel : list) {
+        Integer index = relations.get(rel);
+        if (index != null) {
+          indices.add(index);
+        }
+      }
+      data.writeInt(indices.size());
+      for (int index : indices) {
+        data.writeInt(index);
+      }
+    }
+
+    /**
+     * Returns a stream that compresses what is written to it into {@code bytes}.
+     *
+     * @param bytes where to write the compressed bytes
+     * @return a stream that writes to {@code bytes}
+     */
+    private static OutputStream deflate(ByteArrayOutputStream bytes) {
+      return new DeflaterOutputStream(bytes, new Deflater(Deflater.DEFAULT_COMPRESSION), 1 << 16) {
+        @Override
+        public void close() throws IOException {
+          super.close();
+          def.end();
+        }
+      };
+    }
+
+    /**
+     * Writes a section.
+     *
+     * @param kind the kind of the section
+     * @param bytes the compressed contents of the section
+     */
+    private void write_section(int kind, ByteArrayOutputStream bytes) throws IOException {
+      section_kinds.add(kind);
+      section_offsets.add(position);
+      section_lengths.add(bytes.size());
+      bytes.writeTo(out);
+      position += bytes.size();
+    }
+
+    /** Writes the {@link #CLASSES} section and the index, and closes the file. */
+    @Override
+    public void close() throws IOException {
+      try {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(deflate(bytes))) {
+          oos.writeInt(classes.size());
+          for (ObjectStreamClass desc : classes) {
+            oos.writeObject(desc);
+          }
+        }
+        write_section(CLASSES, bytes);
+
+        long index_offset = position;
+        out.writeInt(section_kinds.size());
+        for (int i = 0; i < section_kinds.size(); i++) {
+          out.writeByte(section_kinds.get(i));
+          out.writeLong(section_offsets.get(i));
+          out.writeInt(section_lengths.get(i));
+        }
+        int written = 0;
+        for (int section : ppt_sections) {
+          if (section != -1) {
+            written++;
+          }
+        }
+        out.writeInt(written);
+        for (int i = 0; i < ppts.size(); i++) {
+          if (ppt_sections[i] != -1) {
+            write_string(out, ppts.get(i).name());
+            out.writeInt(ppt_sections[i]);
+          }
+        }
+        out.writeLong(index_offset);
+        out.write(MAGIC);
+      } finally {
+        out.close();
+      }
+    }
+  }
+
+  /** An output stream that counts the bytes written to it, and discards them. */
+  private static final class CountingOutputStream extends OutputStream {
+
+    /** The number of bytes written. */
+    long count = 0;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+  /**
+   * Writes a string of any length.
+   *
+   * @param out where to write
+   * @param s the string
+   */
+  private static void write_string(DataOutputStream out, String s) throws IOException {
+    byte[] bytes = s.getBytes(UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads a string, as written by {@link #write_string}.
+   *
+   * @param in where to read
+   * @return the string
+   */
+  private static String read_string(DataInput in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  /** Reads an invariant file. */
+  public static final class Reader implements Closeable {
+
+    /** The file. */
+    private final RandomAccessFile file;
+
+    /** The name of the file, for messages. */
+    private final String filename;
+
+    /** The kind of each section. */
+    private final int[] section_kinds;
+
+    /** The offset of each section. */
+    private final long[] section_offsets;
+
+    /** The length of each section. */
+    private final int[] section_lengths;
+
+    /** The names of the program points, in the order of the map. */
+    private final List<String> ppt_names;
+
+    /** The section of each program point, by name, in the order of the map. */
+    private final Map<String, Integer> ppt_sections = new LinkedHashMap<>();
+
+    /** The configuration with which the invariants were computed. */
+    private final Configuration config;
+
+    /** The value of {@link FileIO#new_decl_format} when the file was written. */
+    private final boolean new_decl_format;
+
+    /** The class descriptors of the serialized program points, indexed by number. */
+    private final ObjectStreamClass[] classes;
+
+    /**
+     * Opens an invariant file, and reads its index and configuration.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be read, or is not an invariant file
+     */
+    public Reader(File file) throws IOException {
+      this.file = new RandomAccessFile(file, "r");
+      this.filename = file.toString();
+      try {
+        byte[] magic = new byte[MAGIC.length];
+        this.file.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+          throw new IOException(filename + " is not an invariant file");
+        }
+        int version = this.file.readByte();
+        if (version != VERSION) {
+          throw new IOException(
+              "Cannot read version " + version + " of the invariant file format in " + filename);
+        }
+        this.file.seek(this.file.length() - 8 - MAGIC.length);
+        long index_offset = this.file.readLong();
+        this.file.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+          throw new IOException("Invariant file " + filename + " is truncated");
+        }
+        this.file.seek(index_offset);
+        int num_sections = this.file.readInt();
+        section_kinds = new int[num_sections];
+        section_offsets = new long[num_sections];
+        section_lengths = new int[num_sections];
+        for (int i = 0; i < num_sections; i++) {
+          section_kinds[i] = this.file.readByte();
+          section_offsets[i] = this.file.readLong();
+          section_lengths[i] = this.file.readInt();
+        }
+        int num_ppts = this.file.readInt();
+        ppt_names = new ArrayList<>(num_ppts);
+        for (int i = 0; i < num_ppts; i++) {
+          String name = read_string(this.file);
+          ppt_names.add(name);
+          ppt_sections.put(name, this.file.readInt());
+        }
+
+        try (ObjectInputStream ois = new ObjectInputStream(section(find_section(CONFIG)))) {
+          config = (Configuration) ois.readObject();
+          new_decl_format = ois.readBoolean();
+        }
+        try (ObjectInputStream ois = new ObjectInputStream(section(find_section(CLASSES)))) {
+          classes = new ObjectStreamClass[ois.readInt()];
+          for (int i = 0; i < classes.length; i++) {
+            classes[i] = (ObjectStreamClass) ois.readObject();
+          }
+        }
+      } catch (ClassNotFoundException e) {
+        this.file.close();
+        throw new IOException("Error while loading inv file " + filename, e);
+      } catch (IOException | RuntimeException e) {
+        this.file.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Returns the configuration with which the invariants were computed.
+     *
+     * @return the configuration with which the invariants were computed
+     */
+    public Configuration config() {
+      return config;
+    }
+
+    /**
+     * Returns the value of {@link FileIO#new_decl_format} when the file was written.
+     *
+     * @return the value of {@link FileIO#new_decl_format} when the file was written
+     */
+    public boolean new_decl_format() {
+      return new_decl_format;
+    }
+
+    /**
+     * Returns the names of the program points in the file, in order.
+     *
+     * @return the names of the program points in the file
+     */
+    public List<String> ppt_names() {
+      return Collections.unmodifiableList(ppt_names);
+    }
+
+    /**
+     * Reads all the program points.
+     *
+     * @return the program points
+     * @throws IOException if the file cannot be read
+     */
+    public PptMap read_map() throws IOException {
+      return read_ppts(ppt_names);
+    }
+
+    /**
+     * Reads some of the program points, and the relations between them. The program points are
+     * read along with any that are stored in the same section, so the result may contain other
+     * program points as well.
+     *
+     * @param names the names of the program points to read; names that are not in the file are
+     *     ignored
+     * @return the program points that were read, in the order of the file
+     * @throws IOException if the file cannot be read
+     */
+    public PptMap read_ppts(Collection<String> names) throws IOException {
+      Map<Integer, PptTopLevel[]> sections = new LinkedHashMap<>();
+      for (String name : names) {
+        Integer section = ppt_sections.get(name);
+        if (section != null && !sections.containsKey(section)) {
+          sections.put(section, read_section_ppts(section));
+        }
+      }
+      Map<String, PptTopLevel> loaded = new LinkedHashMap<>();
+      for (PptTopLevel[] ppts : sections.values()) {
+        for (PptTopLevel ppt : ppts) {
+          loaded.put(ppt.name(), ppt);
+        }
+      }
+      PptMap result = new PptMap();
+      for (String name : ppt_names) {
+        PptTopLevel ppt = loaded.get(name);
+        if (ppt != null) {
+          result.add(ppt);
+        }
+      }
+      read_hierarchy(result);
+      return result;
+    }
+
+    /**
+     * Reads the program points whose names satisfy a predicate, and the program points that they
+     * depend on: their ancestors in the program point hierarchy, and the other program points of
+     * the same method (or class), so that, for instance, an exit point is read along with the
+     * other exit points of its method.
+     *
+     * @param select which program points to read
+     * @return the program points that were read, in the order of the file
+     * @throws IOException if the file cannot be read
+     */
+    public PptMap read_selected(Predicate<String> select) throws IOException {
+      Set<String> methods = new HashSet<>();
+      for (String name : ppt_names) {
+        if (select.test(name)) {
+          methods.add(method_name(name));
+        }
+      }
+      boolean[] selected = new boolean[ppt_names.size()];
+      for (int i = 0; i < selected.length; i++) {
+        selected[i] = methods.contains(method_name(ppt_names.get(i)));
+      }
+
+      // Add the ancestors.  parents.get(i) holds the parents of the i'th program point.
+      List<List<Integer>> parents = read_parents();
+      Deque<Integer> pending = new ArrayDeque<>();
+      for (int i = 0; i < selected.length; i++) {
+        if (selected[i]) {
+          pending.add(i);
+        }
+      }
+      while (!pending.isEmpty()) {
+        for (int parent : parents.get(pending.remove())) {
+          if (!selected[parent]) {
+            selected[parent] = true;
+            pending.add(parent);
+          }
+        }
+      }
+
+      List<String> names = new ArrayList<>();
+      for (int i = 0; i < selected.length; i++) {
+        if (selected[i]) {
+          names.add(ppt_names.get(i));
+        }
+      }
+      return read_ppts(names);
+    }
+
+    /**
+     * Returns the part of a program point name before {@link FileIO#ppt_tag_separator}.
+     *
+     * @param ppt_name the name of a program point
+     * @return the name of its method or class
+     */
+    private static String method_name(String ppt_name) {
+      int tag = ppt_name.indexOf(FileIO.ppt_tag_separator);
+      return (tag == -1) ? ppt_name : ppt_name.substring(0, tag);
+    }
+
+    /**
+     * Reads the parents of each program point from the {@link #HIERARCHY} section, without reading
+     * any program points. A relation of a conditional program point is attributed to the program
+     * point that owns it.
+     *
+     * @return the indices of the parents of each program point, indexed like {@link #ppt_names}
+     */
+    private List<List<Integer>> read_parents() throws IOException {
+      List<List<Integer>> result = new ArrayList<>(ppt_names.size());
+      for (int i = 0; i < ppt_names.size(); i++) {
+        result.add(new ArrayList<>(1));
+      }
+      try (DataInputStream in = new DataInputStream(section(find_section(HIERARCHY)))) {
+        int num_relations = in.readInt();
+        for (int i = 0; i < num_relations; i++) {
+          Node parent = Node.read(in);
+          Node child = Node.read(in);
+          in.readByte();
+          // Skip the two variable maps.
+          for (int m = 0; m < 2; m++) {
+            int size = in.readInt();
+            for (int e = 0; e < 2 * size; e++) {
+              in.readInt();
+            }
+          }
+          if (parent.ppt != child.ppt) {
+            result.get(child.ppt).add(parent.ppt);
+          }
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Reads the program points of a {@link #PPTS} section.
+     *
+     * @param section the index of the section
+     * @return the program points
+     */
+    private PptTopLevel[] read_section_ppts(int section) throws IOException {
+      try (ObjectInputStream ois =
+          new ObjectInputStream(section(section)) {
+            @Override
+            protected ObjectStreamClass readClassDescriptor() throws IOException {
+              int number = readInt();
+              if (number < 0 || number >= classes.length) {
+                throw new StreamCorruptedException("Bad class number " + number);
+              }
+              return classes[number];
+            }
+          }) {
+        return (PptTopLevel[]) ois.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Error while loading inv file " + filename, e);
+      }
+    }
+
+    /**
+     * Reads the relations between the given program points, and adds them to the program points.
+     *
+     * @param map the program points that have been read
+     */
+    private void read_hierarchy(PptMap map) throws IOException {
+      PptTopLevel[] by_index = new PptTopLevel[ppt_names.size()];
+      for (int i = 0; i < by_index.length; i++) {
+        by_index[i] = map.get(ppt_names.get(i));
+      }
+      try (DataInputStream in = new DataInputStream(section(find_section(HIERARCHY)))) {
+        int num_relations = in.readInt();
+        @Nullable PptRelation[] relations = new @Nullable PptRelation[num_relations];
+        PptRelation.PptRelationType[] types = PptRelation.PptRelationType.values();
+        for (int i = 0; i < num_relations; i++) {
+          PptTopLevel parent = resolve(Node.read(in), by_index);
+          PptTopLevel child = resolve(Node.read(in), by_index);
+          PptRelation.PptRelationType type = types[in.readByte()];
+          PptRelation rel = null;
+          if (parent != null && child != null) {
+            rel = PptRelation.newRelation(parent, child, type);
+          }
+          read_var_map(in, (rel == null) ? null : rel.child_to_parent_map, child, parent);
+          read_var_map(in, (rel == null) ? null : rel.parent_to_child_map, parent, child);
+          relations[i] = rel;
+        }
+        int num_related = in.readInt();
+        for (int i = 0; i < num_related; i++) {
+          PptTopLevel ppt = resolve(Node.read(in), by_index);
+          List<PptRelation> parents = read_relation_list(in, relations);
+          List<PptRelation> children = read_relation_list(in, relations);
+          if (ppt != null) {
+            ppt.parents.clear();
+            ppt.parents.addAll(parents);
+            ppt.children.clear();
+            ppt.children.addAll(children);
+          }
+        }
+      }
+    }
+
+    /**
+     * Returns the program point that a node identifies, or null if it was not read.
+     *
+     * @param node a node
+     * @param by_index the program points that were read, indexed like {@link #ppt_names}
+     * @return the program point, or null
+     */
+    private static @Nullable PptTopLevel resolve(Node node, PptTopLevel[] by_index) {
+      PptTopLevel ppt = by_index[node.ppt];
+      if (ppt == null || node.splitter == -1) {
+        return ppt;
+      }
+      assert ppt.splitters != null;
+      PptSplitter splitter = ppt.splitters.get(node.splitter);
+      return splitter.ppts[node.cond];
+    }
+
+    /**
+     * Reads a map between the variables of two program points.
+     *
+     * @param in where to read
+     * @param map where to put the entries, or null to discard them
+     * @param key_ppt the program point of the keys, or null
+     * @param value_ppt the program point of the values, or null
+     */
+    private static void read_var_map(
+        DataInputStream in,
+        @Nullable Map<VarInfo, VarInfo> map,
+        @Nullable PptTopLevel key_ppt,
+        @Nullable PptTopLevel value_ppt)
+        throws IOException {
+      int size = in.readInt();
+      for (int i = 0; i < size; i++) {
+        int key = in.readInt();
+        int value = in.readInt();
+        if (map != null && key_ppt != null && value_ppt != null) {
+          map.put(key_ppt.var_infos[key], value_ppt.var_infos[value]);
+        }
+      }
+    }
+
+    /**
+     * Reads a list of relations.
+     *
+     * @param in where to read
+     * @param relations the relations, indexed as in the file; null for those that were not read
+     * @return the relations of the list that were read
+     */
+    private static List<PptRelation> read_relation_list(
+        DataInputStream in, @Nullable PptRelation[] relations) throws IOException {
+      int size = in.readInt();
+      List<PptRelation> result = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        PptRelation rel = relations[in.readInt()];
+        if (rel != null) {
+          result.add(rel);
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Returns the index of the first section of the given kind.
+     *
+     * @param kind the kind of section
+     * @return the index of the section
+     */
+    private int find_section(int kind) throws IOException {
+      for (int i = 0; i < section_kinds.length; i++) {
+        if (section_kinds[i] == kind) {
+          return i;
+        }
+      }
+      throw new IOException("Invariant file " + filename + " has no section of kind " + kind);
+    }
+
+    /**
+     * Returns the decompressed contents of a section.
+     *
+     * @param section the index of the section
+     * @return the contents of the section
+     */
+    private InputStream section(int section) throws IOException {
+      byte[] bytes = new byte[section_lengths[section]];
+      file.seek(section_offsets[section]);
+      file.readFully(bytes);
+      // Inflate in large blocks: object streams read a few bytes at a time.
+      return new BufferedInputStream(
+          new InflaterInputStream(new ByteArrayInputStream(bytes)), 1 << 16);
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+  }
+}
@@ -0,0 +1,652 @@
+package daikon;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.plumelib.util.FilesPlume;
+
+/**
+ * Reads a text data trace file using several threads. One thread reads the file: it memory-maps a
+ * plain file, or decompresses a compressed one, and cuts it into chunks of whole records (a chunk
+ * ends at a blank line). Worker threads split each chunk into records and parse the values of its
+ * samples. {@link FileIO#read_data_trace_record} takes the parsed chunks in the order of the file,
+ * so samples are processed in the same order as when the file is read by one thread.
+ *
+ * <p>A worker can only parse a sample of a program point whose variables it knows: {@link FileIO}
+ * records them (see {@link #add_declared} and {@link #add_format}) when it reads the declaration
+ * of the program point, or a sample of it that arrives as text. Every other record, such as a
+ * declaration, a comment, or a sample that no worker can parse yet, is passed to {@link FileIO} as
+ * text, and read as if it came from a file. Workers neither intern values nor read any state that
+ * {@link FileIO} modifies, other than the recorded program points; the values are interned by the
+ * thread that calls {@link FileIO#read_data_trace_record}.
+ */
+public final class ParallelDtraceParser implements Closeable {
+
+  /** The approximate number of bytes in a chunk. */
+  static final int chunk_size = 1 << 18;
+
+  /** The maximum number of bytes of a plain file that are mapped at once. */
+  static final int max_window = 1 << 30;
+
+  /** The name of the file, for messages. */
+  private final String filename;
+
+  /** The worker threads. */
+  private final ExecutorService workers;
+
+  /** The thread that reads the file. */
+  private final Thread producer;
+
+  /** The chunks that are being parsed or have been parsed, in the order of the file. */
+  private final BlockingQueue<Future<Chunk>> chunks;
+
+  /** Marks the end of {@link #chunks}. */
+  private static final Chunk END = new Chunk(new ArrayList<>(), 0);
+
+  /**
+   * The variables of each program point whose samples the workers parse, indexed by the first
+   * line of a sample (the name of the program point, as it appears in the file).
+   */
+  private final ConcurrentHashMap<String, SampleFormat> formats = new ConcurrentHashMap<>();
+
+  /** The chunk whose records are being returned by {@link #next}, or null before the first. */
+  private @Nullable Chunk current = null;
+
+  /** The index in {@code current.items} of the next record to be returned. */
+  private int next_item = 0;
+
+  /** The number of lines in the file before {@link #current}. */
+  private int line_base = 0;
+
+  /** The variables of a program point whose samples a worker parses. */
+  static final class SampleFormat {
+
+    /**
+     * The program point, or null if its samples are skipped (see {@link
+     * FileIO#ppt_included(String)}).
+     */
+    final @Nullable PptTopLevel ppt;
+
+    /** The variables whose values appear in a sample, in order. */
+    final VarInfo[] vars;
+
+    /** The name of each variable in {@link #vars}, as returned by {@link VarInfo#str_name}. */
+    final String[] names;
+
+    /** The representation type of each variable in {@link #vars}. */
+    final ProglangType[] types;
+
+    /**
+     * Creates a description of a program point.
+     *
+     * @param ppt the program point, or null if its samples are skipped
+     * @param vars the variables whose values appear in a sample
+     */
+    SampleFormat(@Nullable PptTopLevel ppt, VarInfo[] vars) {
+      this.ppt = ppt;
+      this.vars = vars;
+      names = new String[vars.length];
+      types = new ProglangType[vars.length];
+      for (int i = 0; i < vars.length; i++) {
+        names[i] = vars[i].str_name();
+        types[i] = vars[i].rep_type;
+      }
+    }
+  }
+
+  /** Some records, as text, to be read by {@link FileIO}. */
+  static final class Text {
+
+    /** The text of the records. */
+    final String text;
+
+    /** The number, within its chunk, of the line before the text. */
+    final int line;
+
+    /**
+     * Creates some records.
+     *
+     * @param text the text of the records
+     * @param line the number, within its chunk, of the line before the text
+     */
+    Text(String text, int line) {
+      this.text = text;
+      this.line = line;
+    }
+  }
+
+  /** A parsed sample. */
+  static final class Sample {
+
+    /** The program point of the sample. */
+    final SampleFormat format;
+
+    /** The invocation nonce, or null if there is none. */
+    final @Nullable Integer nonce;
+
+    /** The text of each value. */
+    final String[] value_reps;
+
+    /** The modified bit of each value, as in the file. */
+    final int[] mods;
+
+    /**
+     * Each value, as returned by {@link ProglangType#parse_value_uninterned}; null if it is
+     * nonsensical.
+     */
+    final @Nullable Object[] values;
+
+    /** The number, within its chunk, of the last line of the sample. */
+    final int line;
+
+    /**
+     * Creates a parsed sample.
+     *
+     * @param format the program point of the sample
+     * @param nonce the invocation nonce, or null
+     * @param value_reps the text of each value
+     * @param mods the modified bit of each value
+     * @param values each value, or null if it is nonsensical
+     * @param line the number, within its chunk, of the last line of the sample
+     */
+    Sample(
+        SampleFormat format,
+        @Nullable Integer nonce,
+        String[] value_reps,
+        int[] mods,
+        @Nullable Object[] values,
+        int line) {
+      this.format = format;
+      this.nonce = nonce;
+      this.value_reps = value_reps;
+      this.mods = mods;
+      this.values = values;
+      this.line = line;
+    }
+  }
+
+  /** The records of a chunk. */
+  private static final class Chunk {
+
+    /** The records, each a {@link Text} or a {@link Sample}. */
+    final List<Object> items;
+
+    /** The number of lines in the chunk. */
+    final int num_lines;
+
+    /**
+     * Creates a chunk.
+     *
+     * @param items the records
+     * @param num_lines the number of lines in the chunk
+     */
+    Chunk(List<Object> items, int num_lines) {
+      this.items = items;
+      this.num_lines = num_lines;
+    }
+  }
+
+  /**
+   * Starts reading a file.
+   *
+   * @param raw_filename the file, which is decompressed if its name ends in {@code .gz}
+   * @param filename the name of the file, for messages
+   * @param threads the number of worker threads
+   */
+  ParallelDtraceParser(String raw_filename, String filename, int threads) {
+    this.filename = filename;
+    workers =
+        Executors.newFixedThreadPool(
+            threads,
+            r -> {
+              Thread t = new Thread(r, "dtrace parser");
+              t.setDaemon(true);
+              return t;
+            });
+    // A worker can only parse the samples of program points that were declared, or sampled, before
+    // it started; so the workers should not get far ahead.
+    chunks = new ArrayBlockingQueue<>(2 * threads);
+    producer = new Thread(() -> produce(raw_filename), "dtrace reader");
+    producer.setDaemon(true);
+    producer.start();
+  }
+
+  /**
+   * Reads the file and queues its chunks for parsing. Runs on {@link #producer}.
+   *
+   * @param raw_filename the file
+   */
+  private void produce(String raw_filename) {
+    try {
+      File file = new File(raw_filename);
+      if (file.isFile() && !raw_filename.endsWith(".gz")) {
+        produce_mapped(file.toPath());
+      } else {
+        try (InputStream in = FilesPlume.newFileInputStream(file)) {
+          produce_stream(in);
+        }
+      }
+      chunks.put(CompletableFuture.completedFuture(END));
+    } catch (InterruptedException e) {
+      // close() was called.
+    } catch (Throwable e) {
+      CompletableFuture<Chunk> failure = new CompletableFuture<>();
+      failure.completeExceptionally(e);
+      try {
+        chunks.put(failure);
+      } catch (InterruptedException e2) {
+        // close() was called.
+      }
+    }
+  }
+
+  /**
+   * Cuts a plain file into chunks, mapping up to {@link #max_window} bytes of it at a time.
+   *
+   * @param path the file
+   */
+  private void produce_mapped(Path path) throws IOException, InterruptedException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      long pos = 0;
+      while (pos < size) {
+        int window = (int) Math.min(size - pos, max_window);
+        boolean at_end = (pos + window == size);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, pos, window);
+        int start = 0;
+        while (start < window) {
+          int end = next_boundary(map, start + chunk_size, window);
+          if (end == -1) {
+            if (at_end) {
+              end = window;
+            } else {
+              break;
+            }
+          }
+          ByteBuffer chunk = map.duplicate();
+          chunk.position(start).limit(end);
+          submit(chunk.slice());
+          start = end;
+        }
+        if (start == 0) {
+          throw new IOException(
+              "No blank line in " + max_window + " bytes at byte " + pos + " of " + filename);
+        }
+        pos += start;
+      }
+    }
+  }
+
+  /**
+   * Cuts a stream into chunks.
+   *
+   * @param in the stream
+   */
+  private void produce_stream(InputStream in) throws IOException, InterruptedException {
+    byte[] buffer = new byte[2 * chunk_size];
+    int length = 0;
+    while (true) {
+      int read = in.read(buffer, length, buffer.length - length);
+      if (read < 0) {
+        if (length > 0) {
+          submit(ByteBuffer.wrap(buffer, 0, length));
+        }
+        return;
+      }
+      length += read;
+      if (length < chunk_size) {
+        continue;
+      }
+      int end = last_boundary(buffer, length);
+      if (end == -1) {
+        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        continue;
+      }
+      byte[] rest = new byte[buffer.length];
+      System.arraycopy(buffer, end, rest, 0, length - end);
+      submit(ByteBuffer.wrap(buffer, 0, end));
+      buffer = rest;
+      length -= end;
+    }
+  }
+
+  /**
+   * Queues a chunk for parsing.
+   *
+   * @param data the bytes of the chunk
+   */
+  private void submit(ByteBuffer data) throws InterruptedException {
+    chunks.put(workers.submit(() -> parse(data)));
+  }
+
+  /**
+   * Returns the index just after the first blank line that ends at or after {@code from}.
+   *
+   * @param data some bytes
+   * @param from where to start looking
+   * @param limit where to stop looking
+   * @return the index after the blank line, or -1 if there is none before {@code limit}
+   */
+  private static int next_boundary(ByteBuffer data, int from, int limit) {
+    for (int i = Math.max(from, 1); i < limit; i++) {
+      if (data.get(i) == '\n') {
+        byte prev = data.get(i - 1);
+        if (prev == '\n' || (prev == '\r' && i >= 2 && data.get(i - 2) == '\n')) {
+          return i + 1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index just after the last blank line in some bytes.
+   *
+   * @param data some bytes
+   * @param limit the number of bytes
+   * @return the index after the blank line, or -1 if there is none
+   */
+  private static int last_boundary(byte[] data, int limit) {
+    for (int i = limit - 1; i >= 1; i--) {
+      if (data[i] == '\n') {
+        byte prev = data[i - 1];
+        if (prev == '\n' || (prev == '\r' && i >= 2 && data[i - 2] == '\n')) {
+          return i + 1;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Splits a chunk into records, and parses its samples. Runs on a worker thread.
+   *
+   * @param data the bytes of the chunk
+   * @return the records of the chunk
+   */
+  private Chunk parse(ByteBuffer data) {
+    String text;
+    if (data.hasArray()) {
+      text = new String(data.array(), data.arrayOffset(), data.remaining(), UTF_8);
+    } else {
+      byte[] bytes = new byte[data.remaining()];
+      data.get(bytes);
+      text = new String(bytes, UTF_8);
+    }
+
+    List<Object> items = new ArrayList<>();
+    List<String> lines = new ArrayList<>();
+    // The text from text_start has not been added to items; it starts after line text_line.
+    int text_start = 0;
+    int text_line = 0;
+    int line_num = 0;
+    int pos = 0;
+    while (pos < text.length()) {
+      // Collect the lines of the next record, up to a blank line.
+      int record_start = pos;
+      lines.clear();
+      while (pos < text.length()) {
+        int eol = text.indexOf('\n', pos);
+        int next = (eol == -1) ? text.length() : eol + 1;
+        int end = (eol == -1) ? text.length() : eol;
+        if (end > pos && text.charAt(end - 1) == '\r') {
+          end--;
+        }
+        line_num++;
+        String line = text.substring(pos, end);
+        pos = next;
+        if (line.isEmpty()) {
+          if (lines.isEmpty()) {
+            continue;
+          }
+          break;
+        }
+        lines.add(line);
+      }
+      if (lines.isEmpty()) {
+        continue;
+      }
+      SampleFormat format = formats.get(lines.get(0));
+      if (format == null) {
+        continue;
+      }
+      Sample sample = (format.ppt == null) ? null : parse_sample(format, lines, line_num);
+      if (format.ppt != null && sample == null) {
+        continue;
+      }
+      // The record is a sample, or is skipped.  Pass on the text before it.
+      if (record_start > text_start) {
+        items.add(new Text(text.substring(text_start, record_start), text_line));
+      }
+      if (sample != null) {
+        items.add(sample);
+      }
+      text_start = pos;
+      text_line = line_num;
+    }
+    if (text_start < text.length()) {
+      items.add(new Text(text.substring(text_start), text_line));
+    }
+    return new Chunk(items, line_num);
+  }
+
+  /**
+   * Parses a sample, as {@link FileIO#read_data_trace_record} would.
+   *
+   * @param format the program point of the sample
+   * @param lines the lines of the sample
+   * @param line_num the number, within its chunk, of the last line of the sample
+   * @return the sample, or null if it is not in the expected form (so that {@link FileIO} reports
+   *     the problem)
+   */
+  private @Nullable Sample parse_sample(SampleFormat format, List<String> lines, int line_num) {
+    int num_vars = format.vars.length;
+    String[] value_reps = new String[num_vars];
+    int[] mods = new int[num_vars];
+    @Nullable Object[] values = new @Nullable Object[num_vars];
+    Integer nonce = null;
+    int i = 1;
+    try {
+      if (i < lines.size() && lines.get(i).equals("this_invocation_nonce")) {
+        if (i + 1 == lines.size()) {
+          return null;
+        }
+        nonce = Integer.valueOf(lines.get(i + 1));
+        i += 2;
+      }
+      for (int k = 0; k < num_vars; k++) {
+        i = skip_excluded(lines, i);
+        if (i == -1 || i + 2 >= lines.size()) {
+          return null;
+        }
+        if (!FileIO.unescape_decl(lines.get(i).trim()).equals(format.names[k])) {
+          return null;
+        }
+        String value_rep = lines.get(i + 1);
+        int mod = parse_modbit(lines.get(i + 2));
+        if (mod == -1) {
+          return null;
+        }
+        if (mod == ValueTuple.MISSING_NONSENSICAL) {
+          if (!(value_rep.equals("nonsensical")
+              || value_rep.equals("uninit")
+              || value_rep.equals("missing"))) {
+            return null;
+          }
+        } else {
+          values[k] = format.types[k].parse_value_uninterned(value_rep, null, filename);
+        }
+        value_reps[k] = value_rep;
+        mods[k] = mod;
+        i += 3;
+      }
+      if (skip_excluded(lines, i) != lines.size()) {
+        return null;
+      }
+    } catch (RuntimeException e) {
+      // FileIO will read the sample again, and report the problem.
+      return null;
+    }
+    return new Sample(format, nonce, value_reps, mods, values, line_num);
+  }
+
+  /**
+   * Skips the variables of a sample that are not included (see {@link FileIO#var_included}).
+   *
+   * @param lines the lines of a sample
+   * @param i the index of the line of the next variable name
+   * @return the index of the next included variable name, or of the end of the sample; or -1 if
+   *     the sample is malformed
+   */
+  private static int skip_excluded(List<String> lines, int i) {
+    while (i < lines.size() && !FileIO.var_included(lines.get(i))) {
+      if (i + 2 >= lines.size() || parse_modbit(lines.get(i + 2)) == -1) {
+        return -1;
+      }
+      i += 3;
+    }
+    return i;
+  }
+
+  /**
+   * Parses a modified bit.
+   *
+   * @param line the text of a modified bit
+   * @return the modified bit, or -1 if it is not 0, 1, or 2
+   */
+  private static int parse_modbit(String line) {
+    if (line.length() != 1) {
+      return -1;
+    }
+    char c = line.charAt(0);
+    return (c >= '0' && c <= '2') ? c - '0' : -1;
+  }
+
+  /**
+   * Records the variables of a program point, so that the workers parse its samples. Called on
+   * the thread that reads the samples, when it has read a sample of the program point.
+   *
+   * @param line the first line of the sample, which names the program point
+   * @param ppt the program point, or null if its samples are skipped
+   */
+  void add_format(String line, @Nullable PptTopLevel ppt) {
+    if (formats.containsKey(line)) {
+      return;
+    }
+    if (ppt == null) {
+      formats.put(line, new SampleFormat(null, new VarInfo[0]));
+      return;
+    }
+    VarInfo[] vars = new VarInfo[ppt.num_tracevars];
+    int i = 0;
+    for (VarInfo vi : ppt.var_infos) {
+      if (i == vars.length) {
+        break;
+      }
+      if (vi.is_static_constant) {
+        continue;
+      }
+      if (vi.rep_type.dimensions() > 1) {
+        return;
+      }
+      vars[i++] = vi;
+    }
+    formats.put(line, new SampleFormat(ppt, vars));
+  }
+
+  /**
+   * Records the variables of a declared program point, so that the workers parse its samples.
+   * Called on the thread that reads the samples.
+   *
+   * @param ppt the program point
+   */
+  void add_declared(@Nullable PptTopLevel ppt) {
+    if (ppt == null) {
+      return;
+    }
+    String name = ppt.name();
+    // Otherwise, the first line of a sample may differ from the name of its program point.
+    if (FileIO.dkconfig_rm_stack_dups || !FileIO.escape_decl(name).equals(name)) {
+      return;
+    }
+    if (FileIO.ppt_included(name)) {
+      add_format(name, ppt);
+    }
+  }
+
+  /**
+   * Returns the next records: a {@link Text} or a {@link Sample}.
+   *
+   * @return the next records, or null at the end of the file
+   * @throws IOException if the file cannot be read
+   */
+  @Nullable Object next() throws IOException {
+    while (current == null || next_item == current.items.size()) {
+      if (current != null) {
+        line_base += current.num_lines;
+        if (current == END) {
+          return null;
+        }
+      }
+      Chunk chunk;
+      try {
+        chunk = chunks.take().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new Error("Interrupted while reading " + filename, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new Error(cause);
+      }
+      current = chunk;
+      next_item = 0;
+    }
+    return current.items.get(next_item++);
+  }
+
+  /**
+   * Returns the number of a line in the file.
+   *
+   * @param line the number of a line within the chunk of the records most recently returned by
+   *     {@link #next}
+   * @return the number of the line in the file
+   */
+  int line_number(int line) {
+    return line_base + line;
+  }
+
+  /** Stops reading the file. */
+  @Override
+  public void close() {
+    producer.interrupt();
+    workers.shutdownNow();
+    chunks.clear();
+  }
+}
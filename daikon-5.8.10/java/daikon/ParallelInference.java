@@ -0,0 +1,150 @@
+package daikon;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Adds samples to program points using several threads. Samples are read, and their derived
+ * variables are computed and interned, on the thread that reads the trace file. They are then
+ * queued for one of the worker threads, which calls {@link PptTopLevel#add_bottom_up}.
+ *
+ * <p>All program points of a method (its entry, its exits, and their conditional program points)
+ * are assigned to the same worker, so no program point is ever modified by two threads. (Without
+ * the dataflow hierarchy, a sample at a numbered exit is also added to the combined exit.)
+ *
+ * <p>The workers run only while the reading thread waits for them: when a batch of samples has
+ * been queued, it is processed, and reading resumes when all of the workers are done. Thus the
+ * values that the reading thread interns, and the program points that it creates, are never
+ * accessed concurrently. Work that touches state that is shared between program points (such as
+ * the interning tables and the non-instantiating suppression lists in {@link
+ * daikon.suppress.NIS}) is done while holding {@link #lock}.
+ */
+public final class ParallelInference {
+
+  /** Debug logger. */
+  public static final Logger debug = Logger.getLogger("daikon.ParallelInference");
+
+  /**
+   * Held by a worker while it modifies state that is shared by all program points. Code that runs
+   * during inference and interns values must hold this lock.
+   */
+  public static final Object lock = new Object();
+
+  /** The number of samples that are queued before the workers process them. */
+  static final int batch_size = 4096;
+
+  /** The worker threads. */
+  private final ExecutorService executor;
+
+  /** The samples queued for each worker, in the order they were read. */
+  private final List<List<Sample>> queues;
+
+  /** The total number of samples in {@link #queues}. */
+  private int queued = 0;
+
+  /** A sample to be added to a program point. */
+  private static final class Sample {
+    /** The program point. */
+    final PptTopLevel ppt;
+    /** The sample, with derived variables. */
+    final ValueTuple vt;
+
+    Sample(PptTopLevel ppt, ValueTuple vt) {
+      this.ppt = ppt;
+      this.vt = vt;
+    }
+  }
+
+  /**
+   * Creates a set of workers.
+   *
+   * @param threads the number of worker threads
+   */
+  ParallelInference(int threads) {
+    assert threads > 1;
+    executor = Executors.newFixedThreadPool(threads);
+    queues = new ArrayList<>(threads);
+    for (int i = 0; i < threads; i++) {
+      queues.add(new ArrayList<Sample>());
+    }
+    debug.fine("Using " + threads + " inference threads");
+  }
+
+  /**
+   * Queues a sample for the worker that owns the program point. If enough samples are queued, waits
+   * until all of them have been processed.
+   *
+   * @param ppt the program point
+   * @param vt the sample (interned, and including derived variables)
+   */
+  void add(PptTopLevel ppt, ValueTuple vt) {
+    String method = ppt.ppt_name.getNameWithoutPoint();
+    int hash = (method == null) ? ppt.name.hashCode() : method.hashCode();
+    queues.get(Math.floorMod(hash, queues.size())).add(new Sample(ppt, vt));
+    queued++;
+    if (queued >= batch_size) {
+      finish();
+    }
+  }
+
+  /** Waits until all of the queued samples have been added to their program points. */
+  void finish() {
+    if (queued == 0) {
+      return;
+    }
+    List<Future<?>> results = new ArrayList<>(queues.size());
+    for (final List<Sample> queue : queues) {
+      if (queue.isEmpty()) {
+        continue;
+      }
+      results.add(
+          executor.submit(
+              new Callable<@Nullable Void>() {
+                @Override
+                public @Nullable Void call() {
+                  for (Sample sample : queue) {
+                    FileIO.add_sample(sample.ppt, sample.vt);
+                  }
+                  return null;
+                }
+              }));
+    }
+    // Wait for every worker, even if one of them fails, so that none is still using the queues.
+    @Nullable Throwable failure = null;
+    for (Future<?> result : results) {
+      try {
+        result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new Error("Interrupted while waiting for inference threads", e);
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      }
+    }
+    for (List<Sample> queue : queues) {
+      queue.clear();
+    }
+    queued = 0;
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    } else if (failure instanceof Error) {
+      throw (Error) failure;
+    } else if (failure != null) {
+      throw new Error(failure);
+    }
+  }
+
+  /** Stops the worker threads. Any samples that have not been processed are discarded. */
+  void shutdown() {
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,171 @@
+package daikon;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Merges the invariants of the program point hierarchy using several threads. This does the same
+ * work as calling {@link PptTopLevel#mergeInvs} on each root, as a graph of tasks: one for each
+ * program point that has children, which runs when the tasks of its children are done. Sibling
+ * subtrees are merged concurrently, and a program point with several parents is merged exactly
+ * once, before any of them.
+ *
+ * <p>Merging a program point also modifies its children for a while (see {@link
+ * PptTopLevel#merge_invs_multiple_children}), so the program points that share a child are merged
+ * one after the other, in the order in which {@link PptTopLevel#mergeInvs} would merge them. The
+ * graph is built by the same depth-first traversal, so that loops in the hierarchy are broken in
+ * the same places. The result is therefore the same as merging on one thread. Only interning a
+ * value and updating the statistics of {@link daikon.suppress.NIS} hold {@link
+ * ParallelInference#lock}; creating invariants and checking their suppressions read only the
+ * program points being merged.
+ */
+final class ParallelMerge {
+
+  /** Debug logger. */
+  public static final Logger debug = Logger.getLogger("daikon.ParallelMerge");
+
+  /** The merge of one program point. */
+  private static final class Task {
+    /** The program point. */
+    final PptTopLevel ppt;
+    /** The tasks that must be done before this one. */
+    final Set<Task> deps = new LinkedHashSet<>();
+    /** The running task, once the graph has been built. */
+    @Nullable CompletableFuture<@Nullable Void> future = null;
+
+    Task(PptTopLevel ppt) {
+      this.ppt = ppt;
+    }
+  }
+
+  /** The tasks, in the order in which {@link PptTopLevel#mergeInvs} would merge them. */
+  private final List<Task> tasks = new ArrayList<>();
+
+  /** The task of each program point that has been visited. */
+  private final Map<PptTopLevel, Task> task_map = new IdentityHashMap<>();
+
+  /** The program points on the path of the traversal to the one being visited. */
+  private final Set<PptTopLevel> in_merge = new LinkedHashSet<>();
+
+  private ParallelMerge() {}
+
+  /**
+   * Merges the invariants of all of the program points in a hierarchy.
+   *
+   * @param all_ppts the program points
+   * @param threads the number of threads
+   */
+  static void merge(PptMap all_ppts, int threads) {
+    assert threads > 1;
+    ParallelMerge graph = new ParallelMerge();
+    for (PptTopLevel ppt : all_ppts.pptIterable()) {
+      if (ppt.parents.size() == 0) {
+        graph.visit(ppt);
+      }
+    }
+    graph.order_shared_children();
+    debug.fine("Merging " + graph.tasks.size() + " program points on " + threads + " threads");
+    graph.run(threads);
+  }
+
+  /**
+   * Adds the tasks that merge a program point and its descendants, in the same order as {@link
+   * PptTopLevel#mergeInvs}.
+   *
+   * @param ppt the program point
+   * @return the task that merges ppt, or null if there is nothing to merge
+   */
+  private @Nullable Task visit(PptTopLevel ppt) {
+    if (ppt.children.size() == 0 || ppt.invariants_merged) {
+      return null;
+    }
+    Task task = task_map.get(ppt);
+    if (task != null) {
+      return task;
+    }
+    in_merge.add(ppt);
+    List<Task> deps = new ArrayList<>();
+    for (PptRelation rel : ppt.children) {
+      if (!in_merge.contains(rel.child) && !rel.child.in_merge) {
+        Task dep = visit(rel.child);
+        if (dep != null) {
+          deps.add(dep);
+        }
+      }
+    }
+    in_merge.remove(ppt);
+    task = new Task(ppt);
+    task.deps.addAll(deps);
+    task_map.put(ppt, task);
+    tasks.add(task);
+    return task;
+  }
+
+  /**
+   * Makes the program points that share a child wait for each other, in the order in which they
+   * would be merged on one thread.
+   */
+  private void order_shared_children() {
+    Map<PptTopLevel, Task> last_parent = new IdentityHashMap<>();
+    for (Task task : tasks) {
+      for (PptRelation rel : task.ppt.children) {
+        Task previous = last_parent.put(rel.child, task);
+        if (previous != null && previous != task) {
+          task.deps.add(previous);
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the tasks and waits for all of them.
+   *
+   * @param threads the number of threads
+   */
+  private void run(int threads) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      // Start nothing until the whole graph has been built.
+      CompletableFuture<@Nullable Void> start = new CompletableFuture<>();
+      List<CompletableFuture<@Nullable Void>> all = new ArrayList<>(tasks.size());
+      for (Task task : tasks) {
+        List<CompletableFuture<@Nullable Void>> deps = new ArrayList<>(task.deps.size() + 1);
+        deps.add(start);
+        for (Task dep : task.deps) {
+          assert dep.future != null : "@AssumeAssertion(nullness): tasks are in dependency order";
+          deps.add(dep.future);
+        }
+        PptTopLevel ppt = task.ppt;
+        task.future =
+            CompletableFuture.allOf(deps.toArray(new CompletableFuture<?>[0]))
+                .thenRunAsync(ppt::merge_invs_from_children, executor);
+        all.add(task.future);
+      }
+      start.complete(null);
+      try {
+        CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+      } catch (CompletionException e) {
+        Throwable failure = e.getCause();
+        if (failure instanceof RuntimeException) {
+          throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+          throw (Error) failure;
+        } else {
+          throw new Error(failure);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package daikon;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Runs the phases that Daikon performs after reading the data trace files, and records their
+ * {@link PhaseMetrics}. A phase that does the same work at each program point is run on {@link
+ * Daikon#dkconfig_postprocess_threads} threads.
+ *
+ * <p>The work at one program point may also read or modify other program points (for example,
+ * implications at a combined exit are formed from its numbered exits). Each phase therefore says
+ * which program points the work at a program point touches, and the program points that touch the
+ * same one are processed one after the other, in the order of the phase's iteration. The result is
+ * therefore the same as on one thread. Only interning a value and updating the statistics of
+ * {@link daikon.suppress.NIS} hold {@link ParallelInference#lock}; creating invariants and checking
+ * their suppressions read only the program points that the work touches.
+ */
+final class ParallelPostProcess {
+
+  private ParallelPostProcess() {
+    throw new Error("do not instantiate");
+  }
+
+  /**
+   * Runs a phase that does independent work at each program point.
+   *
+   * @param name the name of the phase
+   * @param ppts the program points to process, in order
+   * @param action the work at one program point
+   */
+  static void run(String name, Iterable<PptTopLevel> ppts, Consumer<PptTopLevel> action) {
+    run(name, ppts, Collections::singletonList, action);
+  }
+
+  /**
+   * Runs a phase that does some work at each program point.
+   *
+   * @param name the name of the phase
+   * @param ppts the program points to process, in order
+   * @param touched returns the program points that the work at a program point reads or modifies,
+   *     including that program point
+   * @param action the work at one program point
+   */
+  static void run(
+      String name,
+      Iterable<PptTopLevel> ppts,
+      Function<PptTopLevel, Collection<PptTopLevel>> touched,
+      Consumer<PptTopLevel> action) {
+    List<PptTopLevel> ppt_list = new ArrayList<>();
+    for (PptTopLevel ppt : ppts) {
+      ppt_list.add(ppt);
+    }
+    int threads = Math.max(1, Math.min(Daikon.dkconfig_postprocess_threads, ppt_list.size()));
+    time(
+        name,
+        ppt_list.size(),
+        threads,
+        () -> {
+          if (threads == 1) {
+            for (PptTopLevel ppt : ppt_list) {
+              action.accept(ppt);
+            }
+          } else {
+            run_parallel(ppt_list, touched, action, threads);
+          }
+        });
+  }
+
+  /**
+   * Runs a phase on the current thread and records how long it took.
+   *
+   * @param name the name of the phase
+   * @param ppt_count the number of program points that the phase processes
+   * @param threads the number of threads that the phase uses
+   * @param phase the phase
+   */
+  static void time(String name, int ppt_count, int threads, Runnable phase) {
+    Daikon.debugProgress.fine(name + " ... ");
+    long start = System.nanoTime();
+    phase.run();
+    PhaseMetrics metrics = new PhaseMetrics(name, ppt_count, threads, System.nanoTime() - start);
+    Daikon.phase_metrics.add(metrics);
+    Daikon.debugProgress.fine(
+        name + " ... done [" + TimeUnit.NANOSECONDS.toSeconds(metrics.nanos) + "]");
+  }
+
+  /**
+   * Does the work at each program point on a pool of threads, and waits for all of it.
+   *
+   * @param ppts the program points to process, in order
+   * @param touched returns the program points that the work at a program point touches
+   * @param action the work at one program point
+   * @param threads the number of threads
+   */
+  private static void run_parallel(
+      List<PptTopLevel> ppts,
+      Function<PptTopLevel, Collection<PptTopLevel>> touched,
+      Consumer<PptTopLevel> action,
+      int threads) {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      // Start nothing until every task knows what it waits for.
+      CompletableFuture<@Nullable Void> start = new CompletableFuture<>();
+      Map<PptTopLevel, CompletableFuture<@Nullable Void>> last_task = new IdentityHashMap<>();
+      List<CompletableFuture<@Nullable Void>> all = new ArrayList<>(ppts.size());
+      for (PptTopLevel ppt : ppts) {
+        Collection<PptTopLevel> ppt_touched = touched.apply(ppt);
+        List<CompletableFuture<@Nullable Void>> deps = new ArrayList<>(ppt_touched.size() + 1);
+        deps.add(start);
+        for (PptTopLevel other : ppt_touched) {
+          CompletableFuture<@Nullable Void> previous = last_task.get(other);
+          if (previous != null) {
+            deps.add(previous);
+          }
+        }
+        CompletableFuture<@Nullable Void> task =
+            CompletableFuture.allOf(deps.toArray(new CompletableFuture<?>[0]))
+                .thenRunAsync(() -> action.accept(ppt), executor);
+        for (PptTopLevel other : ppt_touched) {
+          last_task.put(other, task);
+        }
+        all.add(task);
+      }
+      start.complete(null);
+      try {
+        CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+      } catch (CompletionException e) {
+        Throwable failure = e.getCause();
+        if (failure instanceof RuntimeException) {
+          throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+          throw (Error) failure;
+        } else {
+          throw new Error(failure);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
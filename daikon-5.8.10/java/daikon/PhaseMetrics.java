@@ -0,0 +1,48 @@
+package daikon;
+
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.dataflow.qual.SideEffectFree;
+
+/**
+ * How long one of the phases that Daikon runs after reading the data trace files took, and how
+ * much work it did. The phases of the most recent run are in {@link Daikon#phase_metrics}, in the
+ * order in which they ran, and are printed if {@link Daikon#dkconfig_print_phase_metrics} is set.
+ */
+public final class PhaseMetrics {
+
+  /** The name of the phase. */
+  public final String name;
+
+  /** The number of program points that the phase processed. */
+  public final int ppt_count;
+
+  /** The number of threads that the phase ran on. */
+  public final int threads;
+
+  /** The elapsed time of the phase, in nanoseconds. */
+  public final long nanos;
+
+  /**
+   * Creates the metrics of a phase.
+   *
+   * @param name the name of the phase
+   * @param ppt_count the number of program points that the phase processed
+   * @param threads the number of threads that the phase ran on
+   * @param nanos the elapsed time of the phase, in nanoseconds
+   */
+  public PhaseMetrics(String name, int ppt_count, int threads, long nanos) {
+    this.name = name;
+    this.ppt_count = ppt_count;
+    this.threads = threads;
+    this.nanos = nanos;
+  }
+
+  @SideEffectFree
+  @Override
+  public String toString(@GuardSatisfied PhaseMetrics this) {
+    return String.format(
+        "%s: %d ppts, %d threads, %d ms",
+        name, ppt_count, threads, TimeUnit.NANOSECONDS.toMillis(nanos));
+  }
+}
@@ -115,6 +115,15 @@ public class PptRelation implements Serializable {
     connect();
   }
 
+  /**
+   * Returns a relation of the given type between the specified parent and child, and stores it in
+   * both, like the constructor. The variable maps are filled in by the caller. Used when reading an
+   * invariant file (see {@link InvFile}).
+   */
+  static PptRelation newRelation(PptTopLevel parent, PptTopLevel child, PptRelationType rel_type) {
+    return new PptRelation(parent, child, rel_type);
+  }
+
   /** Adds this relation to its child's parent list and its parent's children list. */
   @SuppressWarnings({
     "nullness:argument" // won't be used until initialization is finished
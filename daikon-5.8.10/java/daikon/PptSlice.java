@@ -3,11 +3,15 @@ package daikon;
 import daikon.inv.DiscardInfo;
 import daikon.inv.Invariant;
 import daikon.suppress.NIS;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
@@ -65,7 +69,7 @@ public abstract class PptSlice extends Ppt {
   PptSlice(PptTopLevel parent, VarInfo[] var_infos) {
     super(var_infos);
     this.parent = parent;
-    invs = new ArrayList<Invariant>();
+    invs = new InvariantList(this);
     // Ensure that the VarInfo objects are in order (and not duplicated).
     for (int i = 0; i < var_infos.length - 1; i++) {
       assert var_infos[i].varinfo_index <= var_infos[i + 1].varinfo_index;
@@ -77,6 +81,109 @@ public abstract class PptSlice extends Ppt {
     }
   }
 
+  /** Restores the invariant list of a slice that was serialized before it counted its changes. */
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    if (!(invs instanceof InvariantList)) {
+      InvariantList list = new InvariantList(this);
+      list.addAll(invs);
+      invs = list;
+    }
+  }
+
+  /**
+   * The list of the invariants of a slice. Each change to the elements of the list is counted by
+   * {@link PptTopLevel#invariants_changed}, so that a program point can tell whether a sample
+   * changed its invariants without counting them.
+   */
+  static final class InvariantList extends ArrayList<Invariant> {
+    static final long serialVersionUID = 20261018L;
+
+    /** The slice whose invariants this list holds. */
+    private final PptSlice slice;
+
+    /**
+     * Creates an empty list of the invariants of the given slice.
+     *
+     * @param slice the slice whose invariants the list holds
+     */
+    InvariantList(@UnknownInitialization(PptSlice.class) PptSlice slice) {
+      this.slice = slice;
+    }
+
+    /**
+     * Records that the elements of the list changed, if they did.
+     *
+     * @param changed true if the elements of the list changed
+     * @return {@code changed}
+     */
+    private boolean changed(boolean changed) {
+      if (changed && slice.parent != null) {
+        slice.parent.invariants_changed();
+      }
+      return changed;
+    }
+
+    @Override
+    public boolean add(Invariant inv) {
+      return changed(super.add(inv));
+    }
+
+    @Override
+    public void add(int index, Invariant inv) {
+      changed(true);
+      super.add(index, inv);
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Invariant> c) {
+      return changed(super.addAll(c));
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Invariant> c) {
+      return changed(super.addAll(index, c));
+    }
+
+    @Override
+    public Invariant remove(int index) {
+      changed(true);
+      return super.remove(index);
+    }
+
+    @Override
+    public boolean remove(@Nullable Object o) {
+      return changed(super.remove(o));
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+      return changed(super.removeAll(c));
+    }
+
+    @Override
+    public boolean retainAll(Collection<?> c) {
+      return changed(super.retainAll(c));
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Invariant> filter) {
+      return changed(super.removeIf(filter));
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+      changed(fromIndex < toIndex);
+      super.removeRange(fromIndex, toIndex);
+    }
+
+    @Override
+    public void clear() {
+      changed(!isEmpty());
+      super.clear();
+    }
+  }
+
   @SideEffectFree
   @Override
   @SuppressWarnings("nullness:override.receiver") // see comment on overridden definition in Ppt
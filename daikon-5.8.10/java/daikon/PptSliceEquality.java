@@ -235,6 +235,48 @@ public class PptSliceEquality extends PptSlice {
     invs.addAll(newInvs);
   }
 
+  /**
+   * While {@link #add} splits equality sets, the slices of the parent that contain each variable,
+   * in the order of the parent's views; otherwise null. Lets {@link #copyInvsFromLeader} visit only
+   * the slices that contain the old leader, instead of all of the slices, for each split.
+   */
+  private transient @Nullable Map<VarInfo, List<PptSlice>> slices_by_var = null;
+
+  /** Returns the slices of the parent that contain each variable, in the order of the views. */
+  private Map<VarInfo, List<PptSlice>> index_slices() {
+    slices_by_var = new HashMap<>();
+    for (PptSlice slice : parent.views_iterable()) {
+      index_slice(slice);
+    }
+    return slices_by_var;
+  }
+
+  /** Adds a slice that was just added to the parent to {@link #slices_by_var}, if it is in use. */
+  private void index_slice(PptSlice slice) {
+    if (slices_by_var == null) {
+      return;
+    }
+    for (int i = 0; i < slice.var_infos.length; i++) {
+      VarInfo vi = slice.var_infos[i];
+      if (i == 0 || vi != slice.var_infos[i - 1]) {
+        slices_by_var.computeIfAbsent(vi, __ -> new ArrayList<PptSlice>()).add(slice);
+      }
+    }
+  }
+
+  /** Removes a slice that was removed from the parent from {@link #slices_by_var}, if in use. */
+  private void unindex_slice(PptSlice slice) {
+    if (slices_by_var == null) {
+      return;
+    }
+    for (VarInfo vi : slice.var_infos) {
+      List<PptSlice> slices = slices_by_var.get(vi);
+      if (slices != null) {
+        slices.remove(slice);
+      }
+    }
+  }
+
   /**
    * Returns a List of Invariants that have been weakened/destroyed. However, this handles the
    * creation of new Equality invariants and the instantiation of other invariants.
@@ -259,14 +301,14 @@ public class PptSliceEquality extends PptSlice {
       Equality inv = (Equality) invar;
 
       // Add this sample to the invariant and track any vars that fall
-      // out of the set.
-      List<VarInfo> nonEqualVis = inv.add(vt, count);
+      // out of the set, grouped by their values.
+      Map<Object, List<VarInfo>> nonEqualVis = inv.split(vt, count);
 
       // If some vars fell out
-      if (nonEqualVis.size() > 0) {
+      if (nonEqualVis != null) {
 
         // Create new equality sets for all of the non-equal vars
-        List<Equality> newInvs = createEqualityInvs(nonEqualVis, vt, inv, count);
+        List<Equality> newInvs = createEqualityInvs(nonEqualVis, inv, count);
 
         // Get a list of all of the new non-missing leaders
         List<VarInfo> newInvsLeaders = new ArrayList<>(newInvs.size());
@@ -292,8 +334,14 @@ public class PptSliceEquality extends PptSlice {
           }
         }
 
-        // Create new slices and invariants for each new leader
-        weakenedInvs.addAll(copyInvsFromLeader(inv.leader(), newInvsLeaders));
+        // Create new slices and invariants for each new leader.  This uses state
+        // that is shared with other program points.
+        if (slices_by_var == null) {
+          slices_by_var = index_slices();
+        }
+        synchronized (ParallelInference.lock) {
+          weakenedInvs.addAll(copyInvsFromLeader(inv.leader(), newInvsLeaders));
+        }
 
         // Keep track of all of the new invariants created.
         allNewInvs.addAll(newInvs);
@@ -302,67 +350,56 @@ public class PptSliceEquality extends PptSlice {
 
     // Add all of the new equality sets to our list
     invs.addAll(allNewInvs);
+    slices_by_var = null;
 
     return weakenedInvs;
   }
 
   /**
-   * Dummy value that's incomparable to everything else to indicate missings in createEqualityInvs.
+   * Returns true if {@link #add} would split any of the equality sets. Does not change any of them.
+   *
+   * @param vt the sample
+   * @return true if adding the sample would split an equality set
    */
-  private static final Object dummyMissing = new Object();
+  public boolean would_split(ValueTuple vt) {
+    for (Invariant inv : invs) {
+      if (((Equality) inv).would_split(vt)) {
+        return true;
+      }
+    }
+    return false;
+  }
 
   /**
-   * Create a List of Equality invariants based on the values given by vt for the VarInfos in vis.
-   * Any variables that are out of bounds are forced into a separate equality set (since they no
-   * longer make sense and certainly shouldn't be equal to anything else)
-   *
-   * <p>Requires: vis.size() &gt; 0
+   * Create a List of Equality invariants, one for each group of variables that split off from
+   * leader. Any variables that are out of bounds are in separate groups (see {@link
+   * Equality#split}).
    *
    * <p>Ensures: result.size() &gt; 0
    *
-   * @param vis the VarInfos that were different from leader
-   * @param vt the ValueTuple associated with the VarInfos now
+   * @param groups the VarInfos that were different from leader, grouped by their values
    * @param leader the original leader of VarInfos
    * @param count the number of samples seen (needed to set the number of samples for the new
    *     Equality invariants)
-   * @return a List of Equality invariants bundling together same values from vis, and if needed,
-   *     another representing all the missing values
+   * @return a List of Equality invariants bundling together same values from groups, and if
+   *     needed, another representing all the missing values
    */
   private List<Equality> createEqualityInvs(
-      List<VarInfo> vis, ValueTuple vt, Equality leader, int count) {
-    assert vis.size() > 0;
-    HashMap<Object, List<VarInfo>> multiMap = new HashMap<>(); /* key is a value */
-    List<VarInfo> out_of_bounds = new ArrayList<>();
-    for (VarInfo vi : vis) {
-      if (vi.missingOutOfBounds()) {
-        out_of_bounds.add(vi);
-      } else if (vt.isMissing(vi)) {
-        addToBindingList(multiMap, dummyMissing, vi);
-      } else {
-        if (vi.getValue(vt) == null) {
-          System.out.printf(
-              "null value for variable %s, mod=%d at ppt %s%n",
-              vi.name(), vt.getModified(vi), parent.name());
-          VarInfo rv = parent.find_var_by_name("return");
-          assert rv != null : "@AssumeAssertion(nullness)";
-          System.out.println("return value = " + Debug.toString(rv.getValue(vt)));
-          System.out.println("At line number " + FileIO.get_linenum());
-        }
-        addToBindingList(multiMap, vi.getValue(vt), vi);
-      }
-    }
+      Map<Object, List<VarInfo>> groups, Equality leader, int count) {
+    assert groups.size() > 0;
     // Why use an array?  Because we'll be sorting shortly
-    /*NNC:@MonotonicNonNull*/ Equality[] resultArray =
-        new Equality[multiMap.values().size() + out_of_bounds.size()];
+    Equality[] resultArray = new Equality[groups.size()];
     int resultCount = 0;
-    for (Map.Entry<@KeyFor("multiMap") Object, List<VarInfo>> entry : multiMap.entrySet()) {
+    for (Map.Entry<@KeyFor("groups") Object, List<VarInfo>> entry : groups.entrySet()) {
       Object key = entry.getKey();
       List<VarInfo> list = entry.getValue();
       assert list.size() > 0;
       Equality eq = new Equality(list, this);
       @SuppressWarnings("interning") // special value
-      boolean isMissing = (key == dummyMissing);
-      if (isMissing) {
+      boolean isMissing = (key == Equality.MISSING);
+      if (key instanceof VarInfo) {
+        // out of bounds; no samples
+      } else if (isMissing) {
         eq.setSamples(leader.numSamples() - count);
       } else {
         eq.setSamples(leader.numSamples());
@@ -373,12 +410,6 @@ public class PptSliceEquality extends PptSlice {
       resultArray[resultCount] = eq;
       resultCount++;
     }
-    for (VarInfo oob : out_of_bounds) {
-      List<VarInfo> list = Collections.singletonList(oob);
-      resultArray[resultCount] = new Equality(list, this);
-      resultCount++;
-    }
-    resultArray = castNonNullDeep(resultArray); // https://tinyurl.com/cfissue/986
 
     // Sort for determinism
     Arrays.sort(resultArray, EqualityComparator.theInstance);
@@ -471,38 +502,52 @@ public class PptSliceEquality extends PptSlice {
     // Copy all possible combinations from the current ppt (with repetition)
     // of replacing leader with different members of newVis.
 
-    // Loop through each slice.
-    // Uses old-style for loop and Iterator because it will be side-effected.
-    for (Iterator<PptSlice> i = parent.views_iterator(); i.hasNext(); ) {
-      PptSlice slice = i.next();
+    // Loop through each slice that contains the old leader, in the order of
+    // the views.  While add splits sets, they are looked up in the index.
+    List<PptSlice> leader_slices;
+    if (slices_by_var != null) {
+      leader_slices = slices_by_var.get(leader);
+      leader_slices = (leader_slices == null) ? Collections.emptyList() : leader_slices;
+    } else {
+      leader_slices = new ArrayList<>();
+      for (PptSlice slice : parent.views_iterable()) {
+        if (slice.containsVar(leader)) {
+          leader_slices.add(slice);
+        }
+      }
+    }
+    List<PptSlice> removed = new ArrayList<>();
+    for (PptSlice slice : leader_slices) {
 
       if (debug.isLoggable(Level.FINE)) {
         debug.fine("  Slice is: " + slice.toString());
         debug.fine("  With invs: " + slice.invs);
       }
 
-      // If this slice contains the old leader
-      if (slice.containsVar(leader)) {
-
-        // Substitute new leader for old leader and create new slices/invs
-        VarInfo[] toFill = new VarInfo[slice.var_infos.length];
-        copyInvsFromLeaderHelper(leader, newVis, slice, newSlices, 0, -1, toFill);
-
-        // Remove any statically obvious invariants in the old slice.
-        // This is called here because breaking up the equality set may
-        // cause some invariants to become statically obvious (because
-        // they will now be the only item in their set)
-        for (Invariant inv : slice.invs) {
-          if (!Daikon.dkconfig_undo_opts) {
-            if (inv.isObviousStatically_AllInEquality()) {
-              inv.falsify();
-              falsified_invs.add(inv);
-            }
+      // Substitute new leader for old leader and create new slices/invs
+      VarInfo[] toFill = new VarInfo[slice.var_infos.length];
+      copyInvsFromLeaderHelper(leader, newVis, slice, newSlices, 0, -1, toFill);
+
+      // Remove any statically obvious invariants in the old slice.
+      // This is called here because breaking up the equality set may
+      // cause some invariants to become statically obvious (because
+      // they will now be the only item in their set)
+      for (Invariant inv : slice.invs) {
+        if (!Daikon.dkconfig_undo_opts) {
+          if (inv.isObviousStatically_AllInEquality()) {
+            inv.falsify();
+            falsified_invs.add(inv);
           }
         }
-        if (slice.invs.size() == 0) i.remove();
+      }
+      if (slice.invs.size() == 0) {
+        parent.removeSlice(slice);
+        removed.add(slice);
       }
     }
+    for (PptSlice slice : removed) {
+      unindex_slice(slice);
+    }
 
     // Add each new slice with invariants
     for (PptSlice slice : newSlices) {
@@ -512,9 +557,12 @@ public class PptSliceEquality extends PptSlice {
       assert (parent.findSlice(slice.var_infos) == null) : parent.findSlice(slice.var_infos);
       slice.repCheck();
       parent.addSlice(slice);
+      index_slice(slice);
     }
 
-    parent.repCheck();
+    if (Debug.dkconfig_internal_check) {
+      parent.repCheck();
+    }
 
     if (debug.isLoggable(Level.FINE)) {
       debug.fine("  new slices count:" + parent.numViews());
@@ -95,6 +95,7 @@ import java.util.Set;
 import java.util.StringJoiner;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.checkerframework.checker.initialization.qual.Initialized;
@@ -157,6 +158,34 @@ public class PptTopLevel extends Ppt {
    */
   public static boolean dkconfig_remove_merged_invs = false;
 
+  /**
+   * Integer. If positive, the ternary slices of a program point are not created until it has seen
+   * this many samples (or all of its samples, if fewer), and then only over the triples of
+   * variables whose values in those samples some ternary invariant could describe. This saves
+   * time and memory at program points with many numeric variables, most triples of which are
+   * unrelated. If zero, ternary slices are created as soon as their variables have values.
+   */
+  public static int dkconfig_ternary_prefilter_samples = 0;
+
+  /**
+   * Integer. The maximum number of ternary slices of a program point. Once a program point has
+   * this many, no more are created over all triples of its variables, though slices are still
+   * created for invariants that are no longer suppressed (see daikon.suppress.NIS) and for new
+   * equality set leaders. If zero, there is no limit.
+   */
+  public static int dkconfig_max_ternary_slices = 0;
+
+  /**
+   * Integer. If positive, a program point stops processing samples once its invariants have been
+   * stable for this many consecutive samples: no sample has falsified or weakened an invariant or
+   * created one, and no invariant has become justified. Its later samples are counted (see {@link
+   * #num_skipped_samples}) but not processed. This makes Daikon faster on large traces that
+   * exercise few distinct behaviors, at the risk of reporting invariants that a skipped sample
+   * would have falsified. Until then, samples are added one at a time rather than in blocks. If
+   * zero, every sample is processed.
+   */
+  public static int dkconfig_convergence_samples = 0;
+
   /**
    * Boolean. Needed by the NIS.falsified method when keeping stats to figure out how many falsified
    * invariants are antecedents. Only the first pass of processing with the sample is counted toward
@@ -255,6 +284,62 @@ public class PptTopLevel extends Ppt {
 
   private int values_num_samples;
 
+  /** Samples that have been read but not yet added, or null. See {@link #add_bottom_up_later}. */
+  private transient @Nullable SampleBlock pending_samples = null;
+
+  /**
+   * The most recent sample passed to {@link #add_bottom_up_later}, which has not yet been added, or
+   * null. Used only if {@link FileIO#dkconfig_fold_duplicate_samples} is set.
+   */
+  private transient @Nullable ValueTuple duplicate_sample = null;
+
+  /** The number of consecutive samples identical to {@link #duplicate_sample}. */
+  private transient int duplicate_count = 0;
+
+  /**
+   * Collects the first samples while the ternary slices are not yet created, or null. See {@link
+   * #dkconfig_ternary_prefilter_samples}.
+   */
+  private transient @Nullable TernaryPrefilter ternary_prefilter = null;
+
+  /**
+   * The number of ternary slices, over all program points, that were not created because the
+   * prefilter found them implausible. See {@link #dkconfig_ternary_prefilter_samples}.
+   */
+  public static final AtomicLong implausible_ternary_slices = new AtomicLong();
+
+  /**
+   * The invariants of this program point that have been falsified since falsified invariants were
+   * last removed from it, in the order they were falsified, or null if there have been none. See
+   * {@link #add_falsified}.
+   */
+  private transient @Nullable ArrayList<Invariant> falsified_invs = null;
+
+  /**
+   * True if this program point no longer processes samples, because its invariants have been
+   * stable. See {@link #dkconfig_convergence_samples}. {@link IncrementalInference#add}, which
+   * {@link IncrementalInference#load} also calls, clears it.
+   */
+  private boolean converged = false;
+
+  /** The number of samples that were not processed because this program point had converged. */
+  private int skipped_samples = 0;
+
+  /** The number of consecutive samples that have not changed the invariants. */
+  private transient int stable_samples = 0;
+
+  /** The number of changes to the invariants of the slices, and to the set of slices. */
+  private transient int invariant_changes = 0;
+
+  /** The value of {@link #invariant_changes} after the previous sample. */
+  private transient int stable_invariant_changes = -1;
+
+  /**
+   * The number of justified invariants when the current run of stable samples started, or -1 if
+   * not yet counted.
+   */
+  private transient int stable_justified_cnt = -1;
+
   /** Keep track of which variables are valid (not missing) on each sample. */
   ModBitTracker mbtracker;
 
@@ -1033,6 +1118,11 @@ public class PptTopLevel extends Ppt {
       return null;
     }
 
+    if (converged && dkconfig_convergence_samples > 0) {
+      skipped_samples += count;
+      return null;
+    }
+
     // If there are conditional program points, add the sample there instead
     if (has_splitters()) {
       assert splitters != null; // guaranteed by call to has_splitters
@@ -1046,15 +1136,13 @@ public class PptTopLevel extends Ppt {
 
     // If we are not using the hierarchy and this is a numbered exit, also
     // apply these values to the combined exit
-    if (!Daikon.use_dataflow_hierarchy) {
-      // System.out.println ("ppt_name = " + ppt_name);
-      if (!(this instanceof PptConditional) && ppt_name.isNumberedExitPoint()) {
-        PptTopLevel parent = Daikon.all_ppts.get(ppt_name.makeExit());
-        if (parent != null) {
-          // System.out.println ("parent is " + parent.name());
-          parent.get_missingOutOfBounds(this, vt);
-          parent.add_bottom_up(vt, count);
-        }
+    if (adds_to_combined_exit()) {
+      PptTopLevel parent = Daikon.all_ppts.get(ppt_name.makeExit());
+      if (parent != null) {
+        // System.out.println ("parent is " + parent.name());
+        parent.flush_samples();
+        parent.get_missingOutOfBounds(this, vt);
+        parent.add_bottom_up(vt, count);
       }
     }
 
@@ -1068,6 +1156,10 @@ public class PptTopLevel extends Ppt {
     // Instantiate slices and invariants if this is the first sample
     if (values_num_samples == 0) {
       debugFlow.fine("  Instantiating views for the first time");
+      if (dkconfig_ternary_prefilter_samples > 0) {
+        ternary_prefilter =
+            new TernaryPrefilter(this, dkconfig_ternary_prefilter_samples, vt.vals.length);
+      }
       if (!DynamicConstants.dkconfig_use_dynamic_constant_optimization) {
         instantiate_views_and_invariants();
       }
@@ -1139,35 +1231,196 @@ public class PptTopLevel extends Ppt {
       }
     }
 
-    values_num_samples += count;
+    record_values(vt, count);
 
-    vt.checkRep(); // temporary, for debugging
+    // Add the sample to each slice
+    for (PptSlice slice : views_iterable()) {
+      if (slice.invs.size() == 0) {
+        continue;
+      }
+      weakened_invs.addAll(slice.add(vt, count));
+    }
 
-    // Keep track of what variables are present on this sample
-    mbtracker.add(vt, count);
+    // Processing falsified invariants uses state that is shared with other
+    // program points.  If this sample falsified no invariant, there is
+    // nothing to do.
+    if (has_falsified_invariants()) {
+      synchronized (ParallelInference.lock) {
+        process_falsified(vt, count);
+      }
+    }
 
-    vt.checkRep(); // temporary, for debugging
+    remove_dead_slices();
 
-    // Keep track of the distinct values seen
-    for (int i = 0; i < vt.vals.length; i++) {
-      if (!vt.isMissing(i)) {
-        Object val = vt.vals[i];
-        ValueSet vs = value_sets[i];
-        if (val == null) { // temporary, for debugging
-          System.out.printf("Null value at index %s in ValueTuple %s, ValueSet=%s%n", i, vt, vs);
+    if (ternary_prefilter != null && ternary_prefilter.add(vt, count)) {
+      instantiate_ternary_views();
+    }
+
+    if (debugNISStats.isLoggable(Level.FINE)) {
+      NIS.dump_stats(debugNISStats, this);
+    }
+
+    // At this point, no invariant should exist that is suppressed
+    if (Debug.dkconfig_internal_check) {
+      for (PptSlice slice : views_iterable()) {
+        for (Invariant inv : slice.invs) {
+          if (inv.is_ni_suppressed()) {
+            NISuppressionSet ss = inv.get_ni_suppressions();
+            assert ss != null; // guaranteed by call to is_ni_suppressed
+            ss.suppressed(inv.ppt);
+            System.out.printf(
+                "suppressed: %s by suppression set %s in ppt %s", inv.format(), ss, slice);
+            throw new Error();
+          }
         }
-        vs.add(val);
       }
     }
 
-    // Add the sample to each slice
+    if (dkconfig_convergence_samples > 0) {
+      check_convergence(!weakened_invs.isEmpty(), count);
+    }
+
+    return weakened_invs;
+  }
+
+  /**
+   * Records whether a sample changed the invariants, and marks this program point as converged
+   * once they have been stable for {@link #dkconfig_convergence_samples} samples. Program points
+   * that pass their samples on to other program points (those with splitters, and numbered exits
+   * without the dataflow hierarchy) and those whose ternary slices are not yet created do not
+   * converge.
+   *
+   * @param weakened true if the sample falsified or weakened an invariant
+   * @param count the number of samples that the sample represents
+   */
+  private void check_convergence(boolean weakened, int count) {
+    if (weakened || invariant_changes != stable_invariant_changes) {
+      stable_invariant_changes = invariant_changes;
+      stable_samples = 0;
+      stable_justified_cnt = -1;
+      return;
+    }
+    if (stable_justified_cnt == -1) {
+      stable_justified_cnt = justified_cnt();
+    }
+    stable_samples += count;
+    if (stable_samples < dkconfig_convergence_samples
+        || has_splitters()
+        || adds_to_combined_exit()
+        || ternary_prefilter != null) {
+      return;
+    }
+    int justified_cnt = justified_cnt();
+    if (justified_cnt != stable_justified_cnt) {
+      // Start another run of stable samples
+      stable_samples = 0;
+      stable_justified_cnt = justified_cnt;
+      return;
+    }
+    converged = true;
+    if (debug.isLoggable(Level.FINE)) {
+      debug.fine(name() + " converged after " + values_num_samples + " samples");
+    }
+  }
+
+  /** Returns the number of justified invariants of this program point. */
+  private int justified_cnt() {
+    int result = 0;
     for (PptSlice slice : views_iterable()) {
-      if (slice.invs.size() == 0) {
-        continue;
+      for (Invariant inv : slice.invs) {
+        if (inv.justified()) {
+          result++;
+        }
       }
-      weakened_invs.addAll(slice.add(vt, count));
     }
+    return result;
+  }
+
+  /** Records that the invariants of a slice of this program point changed. */
+  void invariants_changed() {
+    invariant_changes++;
+  }
+
+  /**
+   * Makes this program point process samples again, and restarts its count of stable samples. See
+   * {@link #dkconfig_convergence_samples}.
+   */
+  void restart_convergence() {
+    converged = false;
+    stable_samples = 0;
+    stable_invariant_changes = -1;
+    stable_justified_cnt = -1;
+  }
+
+  /**
+   * Returns true if this program point no longer processes samples. See {@link
+   * #dkconfig_convergence_samples}.
+   */
+  public boolean converged() {
+    return converged;
+  }
+
+  /**
+   * Returns the number of samples that this program point did not process because it had
+   * converged. They are not included in {@link #num_samples()}.
+   */
+  public int num_skipped_samples() {
+    return skipped_samples;
+  }
+
+  /**
+   * Records that an invariant of this program point has been falsified. Called by {@link
+   * Invariant#falsify}. After a sample, only the recorded invariants are examined, rather than
+   * every invariant of this program point: late in a run, a sample rarely falsifies any.
+   *
+   * @param inv the newly falsified invariant
+   */
+  public void add_falsified(Invariant inv) {
+    if (falsified_invs == null) {
+      falsified_invs = new ArrayList<>();
+    }
+    falsified_invs.add(inv);
+  }
+
+  /**
+   * Returns the falsified invariants that are still in a slice of this program point, in the order
+   * they were falsified. Forgets the other recorded invariants, such as those that were already
+   * removed from their slice and those of temporary slices.
+   *
+   * @return the falsified invariants of this program point
+   */
+  public List<Invariant> falsified_invariants() {
+    if (falsified_invs == null) {
+      return Collections.emptyList();
+    }
+    falsified_invs.removeIf(
+        inv ->
+            !inv.is_false()
+                || views.get(sliceIndex(inv.ppt.var_infos)) != inv.ppt
+                || !inv.ppt.invs.contains(inv));
+    return falsified_invs;
+  }
+
+  /** Returns true if any invariant in this program point has been falsified. */
+  private boolean has_falsified_invariants() {
+    return !falsified_invariants().isEmpty();
+  }
 
+  /**
+   * Removes the invariants that were falsified by a sample, and creates any invariants that they
+   * no longer suppress. Called by {@link #add_bottom_up} and {@link #add_bottom_up_block} while
+   * holding {@link ParallelInference#lock}.
+   *
+   * @param vt the sample
+   * @param count how many instances of the sample were added
+   */
+  @RequiresNonNull({
+    "daikon.suppress.NIS.suppressor_map",
+    "daikon.suppress.NIS.suppressor_map_suppression_count",
+    "daikon.suppress.NIS.all_suppressions",
+    "daikon.suppress.NIS.suppressor_proto_invs"
+  })
+  private void process_falsified(ValueTuple vt, int count) {
     // Create any newly unsuppressed invariants
     NIS.process_falsified_invs(this, vt);
 
@@ -1184,12 +1437,19 @@ public class PptTopLevel extends Ppt {
     // the NIS.newly_falsified list will be empty.
 
     do {
-      // Remove any falsified invariants.  Make a copy of the original slices
-      // since NISuppressions will add new slices/invariants as others are
-      // falsified.
-      PptSlice[] slices = views.values().toArray(new @Nullable PptSlice[views.values().size()]);
-      for (int i = 0; i < slices.length; i++) {
-        slices[i].remove_falsified();
+      // Remove any falsified invariants from the slices that contain them.
+      // Collect the slices first, since NISuppressions will add new
+      // slices/invariants (and falsify some) as others are removed; those
+      // are removed by the next iteration.
+      Set<PptSlice> slices = new LinkedHashSet<>();
+      for (Invariant inv : falsified_invariants()) {
+        slices.add(inv.ppt);
+      }
+      if (falsified_invs != null) {
+        falsified_invs.clear();
+      }
+      for (PptSlice slice : slices) {
+        slice.remove_falsified();
       }
 
       // Apply the sample to any invariants created by non-instantiating
@@ -1200,8 +1460,44 @@ public class PptTopLevel extends Ppt {
     } while (NIS.newly_falsified.size() != 0);
 
     first_pass_with_sample = true;
+  }
+
+  /**
+   * Returns true if this is a numbered exit whose samples are also added to the combined exit,
+   * which happens when the dataflow hierarchy is not used.
+   */
+  private boolean adds_to_combined_exit() {
+    return !Daikon.use_dataflow_hierarchy
+        && !(this instanceof PptConditional)
+        && ppt_name.isNumberedExitPoint();
+  }
+
+  /** Records which variables are present in a sample, and their values. */
+  private void record_values(ValueTuple vt, int count) {
+    values_num_samples += count;
+
+    vt.checkRep(); // temporary, for debugging
+
+    // Keep track of what variables are present on this sample
+    mbtracker.add(vt, count);
 
-    // Remove slices from the list if all of their invariants have died.
+    vt.checkRep(); // temporary, for debugging
+
+    // Keep track of the distinct values seen
+    for (int i = 0; i < vt.vals.length; i++) {
+      if (!vt.isMissing(i)) {
+        Object val = vt.vals[i];
+        ValueSet vs = value_sets[i];
+        if (val == null) { // temporary, for debugging
+          System.out.printf("Null value at index %s in ValueTuple %s, ValueSet=%s%n", i, vt, vs);
+        }
+        vs.add(val);
+      }
+    }
+  }
+
+  /** Removes slices from the list if all of their invariants have died. */
+  private void remove_dead_slices() {
     // (Removal requires use of old-style for loop and Iterator.)
     for (Iterator<PptSlice> itor = views_iterator(); itor.hasNext(); ) {
       PptSlice view = itor.next();
@@ -1212,28 +1508,492 @@ public class PptTopLevel extends Ppt {
         }
       }
     }
+  }
 
-    if (debugNISStats.isLoggable(Level.FINE)) {
-      NIS.dump_stats(debugNISStats, this);
+  /**
+   * Adds a sample to this program point, possibly later: the sample is kept until {@code
+   * block_size} samples have accumulated, which are then passed to {@link #add_bottom_up_block}.
+   * {@link #flush_samples} must be called after the last sample has been read. The invariants are
+   * the same as if the sample were passed to {@link #add_bottom_up} immediately.
+   *
+   * <p>If {@link FileIO#dkconfig_fold_duplicate_samples} is set, a sample that is identical to the
+   * previous one is only counted, and the run of identical samples is added by a single call to
+   * {@link #add_bottom_up} with its length as the count.
+   *
+   * <p>A numbered exit whose samples are also added to the combined exit (see {@link
+   * #add_bottom_up}) adds its samples immediately.
+   *
+   * @param vt the sample (interned, and including derived variables)
+   * @param block_size the number of samples to accumulate
+   */
+  @RequiresNonNull({
+    "daikon.suppress.NIS.suppressor_map",
+    "daikon.suppress.NIS.suppressor_map_suppression_count",
+    "daikon.suppress.NIS.all_suppressions",
+    "daikon.suppress.NIS.suppressor_proto_invs"
+  })
+  public void add_bottom_up_later(ValueTuple vt, int block_size) {
+    if (converged && dkconfig_convergence_samples > 0) {
+      skipped_samples++;
+      return;
+    }
+    if (adds_to_combined_exit()) {
+      add_bottom_up(vt, 1);
+      return;
+    }
+    if (!FileIO.dkconfig_fold_duplicate_samples) {
+      add_to_block(vt, 1, block_size);
+      return;
     }
+    // The values are interned, so comparing them is cheap.
+    ValueTuple previous = duplicate_sample;
+    if (previous != null && vt.equals(previous)) {
+      duplicate_count++;
+      return;
+    }
+    if (previous != null) {
+      add_to_block(previous, duplicate_count, block_size);
+    }
+    duplicate_sample = vt;
+    duplicate_count = 1;
+  }
 
-    // At this point, no invariant should exist that is suppressed
-    if (Debug.dkconfig_internal_check) {
-      for (PptSlice slice : views_iterable()) {
+  /**
+   * Adds a sample to the block of pending samples, and adds the block once it is full. A sample
+   * that represents several samples, and any sample if blocks are not used, is added at once, after
+   * the samples pending before it.
+   *
+   * @param vt the sample
+   * @param count the number of samples that vt represents
+   * @param block_size the number of samples to accumulate
+   */
+  @RequiresNonNull({
+    "daikon.suppress.NIS.suppressor_map",
+    "daikon.suppress.NIS.suppressor_map_suppression_count",
+    "daikon.suppress.NIS.all_suppressions",
+    "daikon.suppress.NIS.suppressor_proto_invs"
+  })
+  private void add_to_block(ValueTuple vt, int count, int block_size) {
+    if (count > 1 || block_size <= 1) {
+      flush_block();
+      add_bottom_up(vt, count);
+      return;
+    }
+    if (pending_samples == null) {
+      pending_samples = new SampleBlock(block_size, vt.vals.length);
+    }
+    if (pending_samples.add(vt)) {
+      add_bottom_up_block(pending_samples);
+      pending_samples.clear();
+    }
+  }
+
+  /** Adds any samples that were passed to {@link #add_bottom_up_later} but not yet added. */
+  @RequiresNonNull({
+    "daikon.suppress.NIS.suppressor_map",
+    "daikon.suppress.NIS.suppressor_map_suppression_count",
+    "daikon.suppress.NIS.all_suppressions",
+    "daikon.suppress.NIS.suppressor_proto_invs"
+  })
+  public void flush_samples() {
+    flush_block();
+    ValueTuple previous = duplicate_sample;
+    if (previous != null) {
+      duplicate_sample = null;
+      add_bottom_up(previous, duplicate_count);
+    }
+  }
+
+  /** Adds the samples in the block of pending samples. */
+  @RequiresNonNull({
+    "daikon.suppress.NIS.suppressor_map",
+    "daikon.suppress.NIS.suppressor_map_suppression_count",
+    "daikon.suppress.NIS.all_suppressions",
+    "daikon.suppress.NIS.suppressor_proto_invs"
+  })
+  private void flush_block() {
+    SampleBlock block = pending_samples;
+    if (block == null) {
+      return;
+    }
+    pending_samples = null;
+    add_bottom_up_block(block);
+  }
+
+  /**
+   * Adds a block of samples to this program point. The invariants are the same as if {@link
+   * #add_bottom_up} were called on each sample in turn, but consecutive samples are added to an
+   * invariant that {@linkplain Invariant#supports_batch supports it} in a single call when
+   * possible.
+   *
+   * <p>Samples are added in runs. A run ends before a sample that would split an equality set or
+   * change the dynamic constants, and after a sample that falsifies an invariant that suppresses
+   * others (see {@link NIS}), since each of these changes the invariants, or the suppressions, that
+   * apply to the following samples. Other falsified invariants are removed at the end of the run.
+   *
+   * @param block the samples, in the order they were read
+   */
+  @RequiresNonNull({
+    "daikon.suppress.NIS.suppressor_map",
+    "daikon.suppress.NIS.suppressor_map_suppression_count",
+    "daikon.suppress.NIS.all_suppressions",
+    "daikon.suppress.NIS.suppressor_proto_invs"
+  })
+  public void add_bottom_up_block(SampleBlock block) {
+    int i = 0;
+    while (i < block.size()) {
+      if (can_add_run()) {
+        i = add_run(block, i);
+      } else {
+        add_bottom_up(block.get(i), 1);
+        i++;
+      }
+    }
+  }
+
+  /**
+   * Returns true if the next samples can be added by {@link #add_run}. That requires the slices
+   * and invariants to have been instantiated, and excludes the cases in which {@link
+   * #add_bottom_up} does more than add the sample to the slices of this program point.
+   */
+  private boolean can_add_run() {
+    if (values_num_samples == 0
+        || var_infos.length == 0
+        || ternary_prefilter != null
+        || dkconfig_convergence_samples > 0
+        || has_splitters()
+        || adds_to_combined_exit()
+        || PrintInvariants.print_discarded_invariants
+        || Debug.dkconfig_internal_check
+        || debug.isLoggable(Level.FINE)
+        || debugNISStats.isLoggable(Level.FINE)) {
+      return false;
+    }
+    // A slice over a variable that is missing out of bounds is falsified by its next sample
+    for (PptSlice slice : views_iterable()) {
+      for (VarInfo vi : slice.var_infos) {
+        if (vi.missingOutOfBounds()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if adding the sample would split an equality set or change the dynamic
+   * constants.
+   */
+  private boolean changes_variables(ValueTuple vt) {
+    return (equality_view != null && equality_view.would_split(vt))
+        || (constants != null && constants.would_change(vt));
+  }
+
+  /**
+   * The invariants of a program point while a run of samples is added to it by {@link #add_run}.
+   * The invariants of each slice are divided into three groups:
+   *
+   * <ul>
+   *   <li>invariants that suppress others and are {@linkplain Invariant#is_stateless stateless},
+   *       which are given the whole run first, to find the first sample that falsifies one of them,
+   *   <li>other invariants that are given the whole run in one call to {@link
+   *       Invariant#add_batch}, and
+   *   <li>invariants that are given one sample at a time.
+   * </ul>
+   */
+  private static final class SampleRun {
+    /** The slices that have invariants. */
+    final List<PptSlice> slices = new ArrayList<>();
+
+    /** The stateless invariants of each slice that suppress others. */
+    final List<List<Invariant>> checked = new ArrayList<>();
+
+    /** The other invariants of each slice that are given a run at a time. */
+    final List<List<Invariant>> batched = new ArrayList<>();
+
+    /** The invariants of each slice that are given a sample at a time. */
+    final List<List<Invariant>> unbatched = new ArrayList<>();
+
+    /** Checked invariants that are falsified by the run. They have not been falsified yet. */
+    final List<Invariant> checked_falsified = new ArrayList<>();
+
+    /** The index of the sample that falsifies each element of {@link #checked_falsified}. */
+    final List<Integer> checked_falsified_at = new ArrayList<>();
+
+    /** Invariants, other than checked ones, that do not suppress others and were falsified. */
+    final List<Invariant> falsified = new ArrayList<>();
+
+    /** The index of the sample that falsified each element of {@link #falsified}. */
+    final List<Integer> falsified_at = new ArrayList<>();
+
+    @RequiresNonNull("daikon.suppress.NIS.suppressor_map")
+    SampleRun(PptTopLevel ppt) {
+      for (PptSlice slice : ppt.views_iterable()) {
+        if (slice.invs.size() == 0) {
+          continue;
+        }
+        boolean has_static_constant = false;
+        for (VarInfo vi : slice.var_infos) {
+          has_static_constant |= vi.is_static_constant;
+        }
+        List<Invariant> slice_checked = new ArrayList<>();
+        List<Invariant> slice_batched = new ArrayList<>();
+        List<Invariant> slice_unbatched = new ArrayList<>();
         for (Invariant inv : slice.invs) {
-          if (inv.is_ni_suppressed()) {
-            NISuppressionSet ss = inv.get_ni_suppressions();
-            assert ss != null; // guaranteed by call to is_ni_suppressed
-            ss.suppressed(inv.ppt);
-            System.out.printf(
-                "suppressed: %s by suppression set %s in ppt %s", inv.format(), ss, slice);
-            throw new Error();
+          if (has_static_constant || !inv.supports_batch()) {
+            slice_unbatched.add(inv);
+          } else if (!is_suppressor(inv)) {
+            slice_batched.add(inv);
+          } else if (inv.is_stateless()) {
+            slice_checked.add(inv);
+          } else {
+            slice_unbatched.add(inv);
           }
         }
+        slices.add(slice);
+        checked.add(slice_checked);
+        batched.add(slice_batched);
+        unbatched.add(slice_unbatched);
       }
     }
 
-    return weakened_invs;
+    /** Returns true if falsifying the invariant can create other invariants. */
+    @RequiresNonNull("daikon.suppress.NIS.suppressor_map")
+    private static boolean is_suppressor(Invariant inv) {
+      return NIS.dkconfig_enabled && NIS.suppressor_map.containsKey(inv.getClass());
+    }
+
+    /**
+     * Adds samples {@code from} to {@code to-1} of the block to the checked invariants, and returns
+     * where the run must end: after the first sample that falsifies one of them.
+     *
+     * @return the index after the last sample of the run
+     */
+    int add_checked(SampleBlock block, int from, int to) {
+      for (int j = 0; j < slices.size(); j++) {
+        VarInfo[] vis = slices.get(j).var_infos;
+        for (Invariant inv : checked.get(j)) {
+          int false_at = add_batch(inv, vis, block, from, to);
+          if (false_at >= 0) {
+            checked_falsified.add(inv);
+            checked_falsified_at.add(false_at);
+            to = false_at + 1;
+          }
+        }
+      }
+      return to;
+    }
+
+    /**
+     * Falsifies the checked invariants that were falsified by the last sample of the run. Others
+     * were falsified by a later sample, which is not in the run; being stateless, they are
+     * unaffected by the samples that they were given beyond the run.
+     *
+     * @param last the index of the last sample of the run
+     */
+    void falsify_checked(int last) {
+      for (int k = 0; k < checked_falsified.size(); k++) {
+        if (checked_falsified_at.get(k) == last) {
+          checked_falsified.get(k).falsify();
+        }
+      }
+    }
+
+    /**
+     * Adds a sample to the invariants that are given a sample at a time.
+     *
+     * @param vt the sample
+     * @param i the index of the sample in its block
+     * @return true if the sample falsified an invariant that suppresses others
+     */
+    @RequiresNonNull("daikon.suppress.NIS.suppressor_map")
+    boolean add_unbatched(ValueTuple vt, int i) {
+      boolean falsified_suppressor = false;
+      for (int j = 0; j < slices.size(); j++) {
+        List<Invariant> invs = unbatched.get(j);
+        if (invs.isEmpty()) {
+          continue;
+        }
+        PptSlice slice = slices.get(j);
+        if (invs.size() == slice.invs.size()) {
+          // Equivalent to the loop below, but also handles static constants
+          for (Invariant inv : slice.add(vt, 1)) {
+            if (inv.is_false()) {
+              falsified_suppressor |= record_falsified(inv, i);
+            }
+          }
+        } else if (!is_any_missing(slice.var_infos, vt)) {
+          falsified_suppressor |= add_sample(invs, vt, i);
+        }
+      }
+      return falsified_suppressor;
+    }
+
+    /**
+     * Adds a sample to some of the invariants of a slice. None of the slice's variables may be
+     * missing in the sample.
+     *
+     * @return true if the sample falsified an invariant that suppresses others
+     */
+    @RequiresNonNull("daikon.suppress.NIS.suppressor_map")
+    private boolean add_sample(List<Invariant> invs, ValueTuple vt, int i) {
+      boolean falsified_suppressor = false;
+      for (Invariant inv : invs) {
+        if (!inv.is_false() && inv.add_sample(vt, 1) == InvariantStatus.FALSIFIED) {
+          inv.falsify();
+          falsified_suppressor |= record_falsified(inv, i);
+        }
+      }
+      return falsified_suppressor;
+    }
+
+    /** Adds samples {@code from} to {@code to-1} of the block to the batched invariants. */
+    @RequiresNonNull("daikon.suppress.NIS.suppressor_map")
+    void add_batched(SampleBlock block, int from, int to) {
+      for (int j = 0; j < slices.size(); j++) {
+        VarInfo[] vis = slices.get(j).var_infos;
+        for (Invariant inv : batched.get(j)) {
+          if (inv.is_false()) {
+            continue;
+          }
+          int false_at = add_batch(inv, vis, block, from, to);
+          if (false_at >= 0) {
+            inv.falsify();
+            record_falsified(inv, false_at);
+          }
+        }
+      }
+    }
+
+    /**
+     * Adds samples {@code from} to {@code to-1} of the block to an invariant, skipping the samples
+     * in which one of its variables is missing.
+     *
+     * @return the index of the sample that falsified the invariant, or -1 if none did
+     */
+    private static int add_batch(
+        Invariant inv, VarInfo[] vis, SampleBlock block, int from, int to) {
+      assert inv.supports_batch() : inv.getClass().getName() + " does not support add_batch";
+      int start = from;
+      while (start < to) {
+        int end = block.next_missing(vis, start, to);
+        if (start < end) {
+          int false_at = inv.add_batch(block, start, end);
+          if (false_at >= 0) {
+            return false_at;
+          }
+        }
+        start = end + 1;
+      }
+      return -1;
+    }
+
+    /**
+     * Records that an invariant was falsified by sample {@code i}.
+     *
+     * @return true if the invariant suppresses others, so the run must end with sample {@code i}
+     */
+    @RequiresNonNull("daikon.suppress.NIS.suppressor_map")
+    private boolean record_falsified(Invariant inv, int i) {
+      if (is_suppressor(inv)) {
+        return true;
+      }
+      falsified.add(inv);
+      falsified_at.add(i);
+      return false;
+    }
+
+    /**
+     * Removes the invariants that were falsified before sample {@code last}, as {@link
+     * #add_bottom_up} would have done when the sample that falsified each was added.
+     *
+     * @return true if any invariant was removed
+     */
+    boolean remove_falsified_before(int last) {
+      boolean removed = false;
+      for (int k = 0; k < falsified.size(); k++) {
+        if (falsified_at.get(k) < last) {
+          Invariant inv = falsified.get(k);
+          inv.ppt.invs.remove(inv);
+          removed = true;
+        }
+      }
+      return removed;
+    }
+
+    /** Returns true if any of the variables is missing in the sample. */
+    private static boolean is_any_missing(VarInfo[] vis, ValueTuple vt) {
+      for (VarInfo vi : vis) {
+        if (vi.isMissing(vt)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Adds a run of samples, starting at {@code from}, to this program point. See {@link
+   * #add_bottom_up_block}. Requires {@link #can_add_run}.
+   *
+   * @param block the samples
+   * @param from the index of the first sample of the run
+   * @return the index after the last sample of the run
+   */
+  @RequiresNonNull({
+    "daikon.suppress.NIS.suppressor_map",
+    "daikon.suppress.NIS.suppressor_map_suppression_count",
+    "daikon.suppress.NIS.all_suppressions",
+    "daikon.suppress.NIS.suppressor_proto_invs"
+  })
+  private int add_run(SampleBlock block, int from) {
+    if (changes_variables(block.get(from))) {
+      add_bottom_up(block.get(from), 1);
+      return from + 1;
+    }
+    // Adding a sample that does not change the variables does not change the outcome of
+    // changes_variables for the next one.
+    int to = from + 1;
+    while (to < block.size() && !changes_variables(block.get(to))) {
+      to++;
+    }
+
+    SampleRun run = new SampleRun(this);
+    to = run.add_checked(block, from, to);
+    int last = from;
+    while (true) {
+      ValueTuple vt = block.get(last);
+      if (equality_view != null) {
+        equality_view.add(vt, 1);
+      }
+      if (constants != null) {
+        constants.add(vt, 1);
+      }
+      record_values(vt, 1);
+      if (run.add_unbatched(vt, last) || last + 1 == to) {
+        break;
+      }
+      last++;
+    }
+    run.falsify_checked(last);
+    run.add_batched(block, from, last + 1);
+
+    // An invariant that was falsified before the last sample would already have been removed,
+    // and its slice too if it became empty, when the last sample was added.
+    if (run.remove_falsified_before(last)) {
+      remove_dead_slices();
+    }
+
+    instantiated_inv_cnt = invariant_cnt();
+    instantiated_slice_cnt = views.size();
+
+    if (has_falsified_invariants()) {
+      synchronized (ParallelInference.lock) {
+        process_falsified(block.get(last), 1);
+      }
+    }
+    remove_dead_slices();
+    return last + 1;
   }
 
   /**
@@ -1588,6 +2348,7 @@ public class PptTopLevel extends Ppt {
     // slice.repCheck();
 
     views.put(sliceIndex(slice.var_infos), slice);
+    invariant_changes++;
     if (Debug.logOn()) slice.log("Adding slice");
   }
 
@@ -1595,6 +2356,7 @@ public class PptTopLevel extends Ppt {
   public void removeSlice(PptSlice slice) {
     Object o = views.remove(sliceIndex(slice.var_infos));
     assert o != null;
+    invariant_changes++;
   }
 
   /** Remove a list of invariants. */
@@ -2284,13 +3046,15 @@ public class PptTopLevel extends Ppt {
     addViews(binary_views);
     binary_views = null;
 
-    // 3. all ternary views
+    // 3. all ternary views, unless the prefilter is still collecting samples (see
+    // instantiate_ternary_views)
     if (Global.debugInfer.isLoggable(Level.FINE)) {
       Global.debugInfer.fine("Trying ternary slices for " + this.name());
     }
 
+    int room = (ternary_prefilter == null) ? ternary_slice_room() : 0;
     List<PptSlice> ternary_views = new ArrayList<>();
-    for (int i1 = 0; i1 < var_infos.length; i1++) {
+    for (int i1 = 0; room > 0 && i1 < var_infos.length; i1++) {
       VarInfo var1 = var_infos[i1];
       if (!is_var_ok_ternary(var1)) {
         continue;
@@ -2300,7 +3064,7 @@ public class PptTopLevel extends Ppt {
       // comparability info exists" then continue.
       // if (var1.isStaticConstant()) continue;
 
-      for (int i2 = i1; i2 < var_infos.length; i2++) {
+      for (int i2 = i1; room > 0 && i2 < var_infos.length; i2++) {
         VarInfo var2 = var_infos[i2];
 
         if (!is_var_ok_ternary(var2)) {
@@ -2311,7 +3075,7 @@ public class PptTopLevel extends Ppt {
         // comparability info exists" then continue.
         // if (var2.isStaticConstant()) continue;
 
-        for (int i3 = i2; i3 < var_infos.length; i3++) {
+        for (int i3 = i2; room > 0 && i3 < var_infos.length; i3++) {
 
           VarInfo var3 = var_infos[i3];
 
@@ -2328,6 +3092,9 @@ public class PptTopLevel extends Ppt {
           if (Debug.logOn() || debug_on) {
             Debug.log(debug, getClass(), slice3, "Created Ternary Slice");
           }
+          if (slice3.invs.size() > 0) {
+            room--;
+          }
           ternary_views.add(slice3);
         }
       }
@@ -2347,6 +3114,90 @@ public class PptTopLevel extends Ppt {
     repCheck();
   }
 
+  /**
+   * Returns true if the ternary slices of this program point are not created yet, because the
+   * prefilter is still collecting samples. See {@link #dkconfig_ternary_prefilter_samples}.
+   */
+  @Pure
+  public boolean defers_ternary_slices() {
+    return ternary_prefilter != null;
+  }
+
+  /**
+   * Creates the ternary slices that were deferred while the prefilter collected the first samples
+   * of this program point, over the triples of variables that it finds plausible, and gives them
+   * those samples. Called by {@link #add_bottom_up} once the samples have been collected, and by
+   * Daikon for program points that saw fewer samples. Does nothing if no slices are deferred.
+   */
+  public void instantiate_ternary_views() {
+    TernaryPrefilter prefilter = ternary_prefilter;
+    if (prefilter == null) {
+      return;
+    }
+    ternary_prefilter = null;
+
+    List<VarInfo> vars = new ArrayList<>();
+    for (VarInfo vi : var_infos) {
+      if (is_var_ok_ternary(vi)) {
+        vars.add(vi);
+      }
+    }
+
+    int room = ternary_slice_room();
+    List<PptSlice> ternary_views = new ArrayList<>();
+    for (int i1 = 0; room > 0 && i1 < vars.size(); i1++) {
+      VarInfo var1 = vars.get(i1);
+      for (int i2 = i1; room > 0 && i2 < vars.size(); i2++) {
+        VarInfo var2 = vars.get(i2);
+        for (int i3 = i2; room > 0 && i3 < vars.size(); i3++) {
+          VarInfo var3 = vars.get(i3);
+          if (!is_slice_ok(var1, var2, var3)) {
+            continue;
+          }
+          // A slice created by NIS while the samples were collected already has its invariants
+          if (findSlice(var1, var2, var3) != null) {
+            continue;
+          }
+          if (!prefilter.is_plausible(var1, var2, var3)) {
+            implausible_ternary_slices.incrementAndGet();
+            continue;
+          }
+          PptSlice3 slice3 = new PptSlice3(this, var1, var2, var3);
+          slice3.instantiate_invariants();
+          if (slice3.invs.size() == 0) {
+            continue;
+          }
+          prefilter.replay(slice3);
+          if (slice3.invs.size() > 0) {
+            ternary_views.add(slice3);
+            room--;
+          }
+        }
+      }
+    }
+    addViews(ternary_views);
+  }
+
+  /**
+   * Returns how many more ternary slices may be created over all triples of variables. See {@link
+   * #dkconfig_max_ternary_slices}.
+   *
+   * @return the number of ternary slices that may be created, or Integer.MAX_VALUE if there is no
+   *     limit
+   */
+  public int ternary_slice_room() {
+    if (dkconfig_max_ternary_slices <= 0) {
+      return Integer.MAX_VALUE;
+    }
+    int count = 0;
+    for (PptSlice slice : views_iterable()) {
+      if (slice instanceof PptSlice3) {
+        count++;
+      }
+    }
+    return Math.max(0, dkconfig_max_ternary_slices - count);
+  }
+
   /**
    * Returns whether the variable should be involved in an unary slice. The variable must be a
    * leader, not a constant, and not always missing.
@@ -2747,6 +3598,28 @@ public class PptTopLevel extends Ppt {
     return proverStack;
   }
 
+  /**
+   * Returns the program points that {@link #addImplications} reads or modifies: this one, its
+   * conditional program points, and the numbered exits of a combined exit.
+   *
+   * @return the program points whose invariants the implications at this program point use
+   */
+  List<PptTopLevel> implication_sources() {
+    List<PptTopLevel> result = new ArrayList<>();
+    result.add(this);
+    if (splitters != null) {
+      for (PptSplitter ppt_split : splitters) {
+        result.addAll(Arrays.asList(ppt_split.ppts));
+      }
+    }
+    if (ppt_name.isCombinedExitPoint()) {
+      for (PptRelation rel : children) {
+        if (rel.getRelationType() == PptRelationType.EXIT_EXITNN) result.add(rel.child);
+      }
+    }
+    return result;
+  }
+
   /**
    * Given conditional program points (and invariants detected over them), create implications.
    * Configuration variable "pairwise_implications" controls whether all or only the first two
@@ -3560,6 +4433,19 @@ public class PptTopLevel extends Ppt {
       }
     }
 
+    merge_invs_from_children();
+  }
+
+  /**
+   * Merges the invariants of the children of this ppt into this ppt, once the children themselves
+   * have been merged (except for any child that is an ancestor of this ppt in a loop in the
+   * hierarchy). Called by {@link #mergeInvs}, and by {@link ParallelMerge}, which merges
+   * independent parts of the hierarchy concurrently.
+   */
+  void merge_invs_from_children() {
+
+    in_merge = true;
+
     if (debugMerge.isLoggable(Level.FINE)) {
       debugMerge.fine("Processing ppt " + name());
     }
@@ -3879,18 +4765,19 @@ public class PptTopLevel extends Ppt {
     // are no ternary array invariants, those slices don't need to
     // be created.
     List<PptSlice> ternary_slices = new ArrayList<>();
-    for (int i = 0; i < leaders.length; i++) {
+    int room = ternary_slice_room();
+    for (int i = 0; ternary_slices.size() < room && i < leaders.length; i++) {
       if (leaders[i].rep_type.isArray()) {
         continue;
       }
-      for (int j = i; j < leaders.length; j++) {
+      for (int j = i; ternary_slices.size() < room && j < leaders.length; j++) {
         if (leaders[j].rep_type.isArray()) {
           continue;
         }
         if (!leaders[i].compatible(leaders[j])) {
           continue;
         }
-        for (int k = j; k < leaders.length; k++) {
+        for (int k = j; ternary_slices.size() < room && k < leaders.length; k++) {
           if (!is_slice_ok(leaders[i], leaders[j], leaders[k])) {
             continue;
           }
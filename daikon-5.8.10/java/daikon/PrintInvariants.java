@@ -48,6 +48,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -444,12 +445,18 @@ public final class PrintInvariants {
       throw new Daikon.UserError("Wrong number of arguments (expected 1)");
     }
 
-    // Read in the invariants
+    // Read in the invariants.  If only some ppts will be printed, read just those (and the ppts
+    // they depend on) when the file's format allows it.
     String filename = args[fileIndex];
+    Predicate<String> select = null;
+    Pattern regexp = ppt_regexp;
+    if (regexp != null && !dkconfig_true_inv_cnt) {
+      select = name -> regexp.matcher(name).find();
+    }
     PptMap ppts =
         FileIO.read_serialized_pptmap(
-            new File(filename), true // use saved config
-            );
+            new File(filename), true, // use saved config
+            select);
     // Setup the list of prototype invariants and initialize NIS suppressions
     Daikon.setup_proto_invs();
     Daikon.setup_NISuppression();
@@ -219,7 +219,9 @@ public final @Interned class ProglangType implements Serializable {
   //   return t;
   // }
 
-  private static ProglangType intern(@Interned String t_base, int t_dims) {
+  // Synchronized because Chicory threads parse representation types while Daikon reads a trace
+  // in the same process; see daikon.chicory.DTraceWriter.
+  private static synchronized ProglangType intern(@Interned String t_base, int t_dims) {
     // Disabled for performance reasons! this assertion is sound though:
     //    assert t_base == t_base.intern();
     ProglangType existing = find(t_base, t_dims);
@@ -389,6 +391,69 @@ public final @Interned class ProglangType implements Serializable {
 
   public final @Nullable @Interned Object parse_value_scalar(
       String value, LineNumberReader reader, String filename) {
+    @SuppressWarnings("interning") // intern is true
+    @Interned Object result = parse_value_scalar(value, reader, filename, true);
+    return result;
+  }
+
+  /**
+   * Like {@link #parse_value}, but does not intern the result. Unlike {@link #parse_value}, this
+   * may be called by several threads at once. {@link #intern_value} interns the result.
+   *
+   * @param value the string representation of a value
+   * @param reader the reader from which the value was read, for warnings; or null to reject, with
+   *     an IllegalArgumentException, a malformed value that would otherwise cause a warning
+   * @param filename the name of the file from which the value was read, for warnings
+   * @return the value, or null if it is nonsensical
+   */
+  public final @Nullable Object parse_value_uninterned(
+      String value, @Nullable LineNumberReader reader, String filename) {
+    switch (dimensions) {
+      case 0:
+        return parse_value_scalar(value, reader, filename, false);
+      case 1:
+        return parse_value_array_1d(value, reader, filename, false);
+      default:
+        throw new Error("Can't parse a value of type " + format());
+    }
+  }
+
+  /**
+   * Interns a value returned by {@link #parse_value_uninterned}.
+   *
+   * @param value a value
+   * @return the interned value, as {@link #parse_value} would have returned it
+   */
+  @SuppressWarnings("interning") // the elements of a String[] are already interned
+  public static @Interned Object intern_value(Object value) {
+    if (value instanceof Long) {
+      return ValueTuple.internedLong(((Long) value).longValue());
+    } else if (value instanceof Double) {
+      return ValueTuple.internedDouble(((Double) value).doubleValue());
+    } else if (value instanceof String) {
+      return ((String) value).intern();
+    } else if (value instanceof long[]) {
+      return Intern.intern((long[]) value);
+    } else if (value instanceof double[]) {
+      return Intern.intern((double[]) value);
+    } else if (value instanceof String[]) {
+      return Intern.intern((@Interned String[]) value);
+    } else {
+      throw new Error("Can't intern a value of class " + value.getClass());
+    }
+  }
+
+  /**
+   * Parses a scalar value; see {@link #parse_value_uninterned}.
+   *
+   * @param value the string representation of a value
+   * @param reader the reader from which the value was read, or null
+   * @param filename the name of the file from which the value was read
+   * @param intern whether to intern the result
+   * @return the value, or null if it is nonsensical
+   */
+  private @Nullable Object parse_value_scalar(
+      String value, @Nullable LineNumberReader reader, String filename, boolean intern) {
     // System.out.println(format() + ".parse(\"" + value + "\")");
 
     assert dimensions == 0;
@@ -404,6 +469,9 @@ public final @Interned class ProglangType implements Serializable {
         // Unfortunately, there is not a convenient way to communicate what
         // the variable name is, which would make the error message even
         // more specific.
+        if (reader == null) {
+          throw new IllegalArgumentException("Badly quoted string value: " + value);
+        }
         if (!value.startsWith("\"")) {
           System.out.printf(
               "Warning: unquoted string value at %s line %d: %s%n",
@@ -429,11 +497,11 @@ public final @Interned class ProglangType implements Serializable {
         c = StringsPlume.unescapeJava(value).charAt(0);
       } else if ((value.length() == 4) && (value.charAt(0) == '\\')) {
         Byte b = Byte.decode("0" + value.substring(1));
-        return Intern.internedLong(b.longValue());
+        return intern ? ValueTuple.internedLong(b.longValue()) : Long.valueOf(b.longValue());
       } else {
         throw new IllegalArgumentException("Bad character: " + value);
       }
-      return Intern.internedLong((int) c);
+      return intern ? ValueTuple.internedLong((int) c) : Long.valueOf((int) c);
     }
     // When parse_value is called from FileIO.read_ppt_decl, we have
     // not set file_rep_type. Hence, rep_type is still file_rep_type
@@ -454,7 +522,8 @@ public final @Interned class ProglangType implements Serializable {
       if (value.equals("null")) {
         return LongZero;
       }
-      return Intern.internedLong(myParseLong(value));
+      long result = myParseLong(value);
+      return intern ? ValueTuple.internedLong(result) : Long.valueOf(result);
     } else if (base == BASE_DOUBLE) {
       // Must ignore case, because dfej outputs "NaN", while dfec
       // outputs "nan".  dfec outputs "nan", because this string
@@ -468,7 +537,8 @@ public final @Interned class ProglangType implements Serializable {
       if (value.equalsIgnoreCase("-Infinity") || value.equals("-inf")) {
         return DoubleNegativeInfinity;
       }
-      return Intern.internedDouble(value);
+      double result = Double.parseDouble(value);
+      return intern ? ValueTuple.internedDouble(result) : Double.valueOf(result);
     } else if ((base == BASE_HASHCODE)
         || (base == BASE_LONG)
         || (base == BASE_LONG_LONG)
@@ -481,6 +551,22 @@ public final @Interned class ProglangType implements Serializable {
 
   public final @Nullable @Interned Object parse_value_array_1d(
       String value, LineNumberReader reader, String filename) {
+    @SuppressWarnings("interning") // intern is true
+    @Interned Object result = parse_value_array_1d(value, reader, filename, true);
+    return result;
+  }
+
+  /**
+   * Parses an array value; see {@link #parse_value_uninterned}.
+   *
+   * @param value the string representation of a value
+   * @param reader the reader from which the value was read, or null
+   * @param filename the name of the file from which the value was read
+   * @param intern whether to intern the result
+   * @return the value, or null if it is nonsensical
+   */
+  private @Nullable Object parse_value_array_1d(
+      String value, @Nullable LineNumberReader reader, String filename, boolean intern) {
     // System.out.println(format() + ".parse(\"" + value + "\")");
 
     String value_orig = value; // we will side-effect the parameter
@@ -523,6 +609,8 @@ public final @Interned class ProglangType implements Serializable {
             v.add(null);
           } else if (parser.ttype == StreamTokenizer.TT_NUMBER) {
             v.add(Integer.toString((int) parser.nval));
+          } else if (reader == null) {
+            throw new IllegalArgumentException("Bad array value: " + value_orig);
           } else {
             System.out.printf(
                 "Warning: at %s line %d%n"
@@ -560,7 +648,7 @@ public final @Interned class ProglangType implements Serializable {
           result[i] = myParseLong(value_strings[i]);
         }
       }
-      return Intern.intern(result);
+      return intern ? Intern.intern(result) : result;
     } else if (base == BASE_DOUBLE) {
       double[] result = new double[len];
       for (int i = 0; i < len; i++) {
@@ -577,12 +665,12 @@ public final @Interned class ProglangType implements Serializable {
           result[i] = Double.parseDouble(value_strings[i]);
         }
       }
-      return Intern.intern(result);
+      return intern ? Intern.intern(result) : result;
     } else if (base == BASE_STRING) {
       // First, intern each String in the array ...
       @Interned String[] value_strings_elts_interned = Intern.internStrings(value_strings);
       // ... then, intern the entire array, and return it
-      return Intern.intern(value_strings_elts_interned);
+      return intern ? Intern.intern(value_strings_elts_interned) : value_strings_elts_interned;
     } else {
       throw new Error("Can't yet parse array of base type " + base);
     }
@@ -0,0 +1,189 @@
+package daikon;
+
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A block of samples that have been read for one program point, but not yet added to it. {@link
+ * PptTopLevel#add_bottom_up_block} adds the samples of a block together, which allows an invariant
+ * over numeric variables to see many samples in one call (see {@link
+ * daikon.inv.Invariant#add_batch}).
+ *
+ * <p>For that purpose, the values and modified bits of each variable can be obtained as primitive
+ * arrays, called columns: element {@code i} of a column holds the variable's value in sample
+ * {@code i} of the block. A column is computed the first time it is requested, and is recomputed
+ * after the block is {@linkplain #clear cleared}; its array is allocated only once.
+ */
+public final class SampleBlock {
+
+  /** The samples, in the order they were read. Only the first {@link #size} elements are used. */
+  final @Nullable ValueTuple[] samples;
+
+  /** The number of samples in this block. */
+  int size = 0;
+
+  /** The modified bits of each variable, indexed by value_index, or null if not yet requested. */
+  private final int @Nullable [][] mods;
+
+  /** The values of each integral variable, indexed by value_index. */
+  private final long @Nullable [][] longs;
+
+  /** The values of each floating-point variable, indexed by value_index. */
+  private final double @Nullable [][] doubles;
+
+  /** Whether each element of {@link #mods} holds the modified bits of the current samples. */
+  private final boolean[] mods_valid;
+
+  /** Whether each element of {@link #longs} holds the values of the current samples. */
+  private final boolean[] longs_valid;
+
+  /** Whether each element of {@link #doubles} holds the values of the current samples. */
+  private final boolean[] doubles_valid;
+
+  /**
+   * Creates an empty block.
+   *
+   * @param capacity the maximum number of samples in the block
+   * @param num_values the number of values in each sample
+   */
+  public SampleBlock(int capacity, int num_values) {
+    samples = new @Nullable ValueTuple[capacity];
+    mods = new int[num_values][];
+    longs = new long[num_values][];
+    doubles = new double[num_values][];
+    mods_valid = new boolean[num_values];
+    longs_valid = new boolean[num_values];
+    doubles_valid = new boolean[num_values];
+  }
+
+  /**
+   * Adds a sample to the end of this block.
+   *
+   * @param vt the sample (interned, and including derived variables)
+   * @return true if the block is now full
+   */
+  public boolean add(ValueTuple vt) {
+    assert size < samples.length;
+    samples[size++] = vt;
+    return size == samples.length;
+  }
+
+  /** Returns the number of samples in this block. */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the given sample.
+   *
+   * @param i the index of the sample
+   * @return sample {@code i} of this block
+   */
+  @SuppressWarnings("nullness") // samples[0..size-1] are non-null
+  public ValueTuple get(int i) {
+    assert i < size;
+    return samples[i];
+  }
+
+  /** Removes all of the samples from this block. */
+  public void clear() {
+    Arrays.fill(samples, 0, size, null);
+    size = 0;
+    Arrays.fill(mods_valid, false);
+    Arrays.fill(longs_valid, false);
+    Arrays.fill(doubles_valid, false);
+  }
+
+  /**
+   * Returns the modified bits of a variable in each sample.
+   *
+   * @param vi a variable of the program point
+   * @return the column of the variable's modified bits; do not modify it
+   */
+  public int[] mods(VarInfo vi) {
+    int index = vi.value_index;
+    int[] column = mods[index];
+    if (column == null) {
+      column = new int[samples.length];
+      mods[index] = column;
+    }
+    if (!mods_valid[index]) {
+      for (int i = 0; i < size; i++) {
+        column[i] = get(i).mods[index];
+      }
+      mods_valid[index] = true;
+    }
+    return column;
+  }
+
+  /**
+   * Returns the values of an integral variable in each sample. The value is 0 in samples where the
+   * variable is missing.
+   *
+   * @param vi a variable of the program point, whose values are {@code Long}s
+   * @return the column of the variable's values; do not modify it
+   */
+  public long[] longs(VarInfo vi) {
+    int index = vi.value_index;
+    long[] column = longs[index];
+    if (column == null) {
+      column = new long[samples.length];
+      longs[index] = column;
+    }
+    if (!longs_valid[index]) {
+      for (int i = 0; i < size; i++) {
+        ValueTuple vt = get(i);
+        column[i] = vt.isMissing(index) ? 0 : ((Long) vt.vals[index]).longValue();
+      }
+      longs_valid[index] = true;
+    }
+    return column;
+  }
+
+  /**
+   * Returns the values of a floating-point variable in each sample. The value is 0 in samples where
+   * the variable is missing.
+   *
+   * @param vi a variable of the program point, whose values are {@code Double}s
+   * @return the column of the variable's values; do not modify it
+   */
+  public double[] doubles(VarInfo vi) {
+    int index = vi.value_index;
+    double[] column = doubles[index];
+    if (column == null) {
+      column = new double[samples.length];
+      doubles[index] = column;
+    }
+    if (!doubles_valid[index]) {
+      for (int i = 0; i < size; i++) {
+        ValueTuple vt = get(i);
+        column[i] = vt.isMissing(index) ? 0 : ((Double) vt.vals[index]).doubleValue();
+      }
+      doubles_valid[index] = true;
+    }
+    return column;
+  }
+
+  /**
+   * Returns the index of the first sample, starting at {@code from}, in which any of the given
+   * variables is missing.
+   *
+   * @param vis variables of the program point
+   * @param from the index of the first sample to examine
+   * @param to the index after the last sample to examine
+   * @return the index of the first such sample, or {@code to} if there is none
+   */
+  public int next_missing(VarInfo[] vis, int from, int to) {
+    for (VarInfo vi : vis) {
+      int[] column = mods(vi);
+      for (int i = from; i < to; i++) {
+        int mod = column[i];
+        if (ValueTuple.modIsMissingNonsensical(mod) || ValueTuple.modIsMissingFlow(mod)) {
+          to = i;
+          break;
+        }
+      }
+    }
+    return to;
+  }
+}
@@ -0,0 +1,404 @@
+package daikon;
+
+import daikon.inv.Invariant;
+import daikon.inv.ternary.TernaryInvariant;
+import daikon.inv.ternary.threeScalar.LinearTernary;
+import daikon.inv.ternary.threeScalar.LinearTernaryFloat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import typequals.prototype.qual.Prototype;
+
+/**
+ * Collects the first samples of a program point, and then decides over which triples of variables
+ * ternary slices are worth creating. See {@link PptTopLevel#dkconfig_ternary_prefilter_samples}.
+ *
+ * <p>A triple is plausible unless the samples falsify every ternary invariant that would be
+ * instantiated over it. LinearTernary and LinearTernaryFloat are falsified once five distinct
+ * points do not lie on a plane. That is tested by a sketch: the values of the third variable are
+ * projected onto the span of 1 and the values of the first two, and the triple is implausible if
+ * the residual is clearly not zero. The basis of that span depends only on the first two
+ * variables, so it is computed once for each pair, and each triple then costs one pass over the
+ * samples. Any other ternary invariant is instantiated over a scratch slice, which is not added to
+ * the program point, and given the samples.
+ *
+ * <p>The sketch errs on the side of plausible: when the residual is small, when the values are not
+ * finite, or when there are too few distinct points, the triple is kept.
+ */
+final class TernaryPrefilter {
+
+  /**
+   * How large, relative to the norm of the third variable's values, the residual must be for the
+   * values to be clearly not coplanar. This is much looser than {@link Global#fuzzy}, so that no
+   * LinearTernary that the fuzzy comparison would keep is ruled out.
+   */
+  static final double TOLERANCE = 1e-3;
+
+  /** The number of distinct points that LinearTernary needs before it can be falsified. */
+  static final int MIN_POINTS = 5;
+
+  /** The program point. */
+  private final PptTopLevel ppt;
+
+  /** The first samples of the program point. */
+  private final SampleBlock samples;
+
+  /** The count of each sample in {@link #samples}. */
+  private final int[] counts;
+
+  /** The prototypes of the ternary invariants. */
+  private final List<@Prototype Invariant> ternary_protos = new ArrayList<>();
+
+  /** The values of each numeric variable as doubles, indexed by value_index, or null. */
+  private final double @Nullable [][] columns;
+
+  /** The first variable of the pair whose basis is {@link #pair_basis}. */
+  private @Nullable VarInfo pair_x = null;
+
+  /** The second variable of the pair whose basis is {@link #pair_basis}. */
+  private @Nullable VarInfo pair_y = null;
+
+  /** The basis of the last pair of variables that a triple started with. */
+  private @Nullable Basis pair_basis = null;
+
+  /**
+   * An orthonormal basis of the span of 1 and the values of two variables, over the samples in
+   * which the values of a triple are used.
+   */
+  private static final class Basis {
+
+    /** The indices of the samples in which the values are used. */
+    final int[] rows;
+
+    /**
+     * The basis vectors, over {@link #rows}. Null if the two variables and 1 do not span a plane,
+     * in which case any third variable is coplanar with them.
+     */
+    final double @Nullable [][] vectors;
+
+    /** The number of distinct points of the two variables, up to {@link #MIN_POINTS}. */
+    final int distinct;
+
+    /**
+     * Creates a basis.
+     *
+     * @param rows the indices of the samples in which the values are used
+     * @param vectors the basis vectors, or null
+     * @param distinct the number of distinct points, up to {@link #MIN_POINTS}
+     */
+    Basis(int[] rows, double @Nullable [][] vectors, int distinct) {
+      this.rows = rows;
+      this.vectors = vectors;
+      this.distinct = distinct;
+    }
+  }
+
+  /**
+   * Creates a prefilter that collects samples.
+   *
+   * @param ppt the program point
+   * @param num_samples the number of samples to collect
+   * @param num_values the number of values in each sample
+   */
+  TernaryPrefilter(PptTopLevel ppt, int num_samples, int num_values) {
+    this.ppt = ppt;
+    samples = new SampleBlock(num_samples, num_values);
+    counts = new int[num_samples];
+    columns = new double[num_values][];
+    for (@Prototype Invariant proto : Daikon.proto_invs) {
+      if (proto instanceof TernaryInvariant) {
+        ternary_protos.add(proto);
+      }
+    }
+  }
+
+  /**
+   * Adds a sample.
+   *
+   * @param vt the sample
+   * @param count the number of times the sample was seen
+   * @return true if all the samples have now been collected
+   */
+  boolean add(ValueTuple vt, int count) {
+    counts[samples.size()] = count;
+    return samples.add(vt);
+  }
+
+  /**
+   * Returns true if some ternary invariant over the variables could be true of the samples.
+   *
+   * @param v1 the first variable, in varinfo_index order
+   * @param v2 the second variable
+   * @param v3 the third variable
+   * @return false if the samples falsify every ternary invariant over the variables
+   */
+  boolean is_plausible(VarInfo v1, VarInfo v2, VarInfo v3) {
+    VarInfo[] vis = {v1, v2, v3};
+    boolean linear = false;
+    List<@Prototype Invariant> others = new ArrayList<>();
+    for (@Prototype Invariant proto : ternary_protos) {
+      if (!proto.valid_types(vis) || !proto.instantiate_ok(vis)) {
+        continue;
+      }
+      if (proto instanceof LinearTernary || proto instanceof LinearTernaryFloat) {
+        linear = true;
+      } else {
+        others.add(proto);
+      }
+    }
+    return (linear && may_be_coplanar(v1, v2, v3)) || (!others.isEmpty() && may_hold(vis, others));
+  }
+
+  /**
+   * Gives the samples to the invariants of a new slice, and removes the invariants that they
+   * falsify. Like {@link DynamicConstants}, doesn't call {@link PptSlice#remove_falsified}, since
+   * the invariants were never part of the program point.
+   *
+   * @param slice a slice that is not yet among the views of the program point
+   */
+  void replay(PptSlice3 slice) {
+    for (int i = 0; i < samples.size(); i++) {
+      slice.add(samples.get(i), counts[i]);
+    }
+    List<Invariant> to_remove = new ArrayList<>();
+    for (Invariant inv : slice.invs) {
+      if (inv.is_false()) {
+        to_remove.add(inv);
+      }
+    }
+    slice.removeInvariants(to_remove);
+  }
+
+  /**
+   * Returns true if some of the given invariants, instantiated over a scratch slice, are true of
+   * the samples.
+   *
+   * @param vis the variables
+   * @param protos the prototypes of the invariants
+   * @return true if some invariant is not falsified by the samples
+   */
+  private boolean may_hold(VarInfo[] vis, List<@Prototype Invariant> protos) {
+    PptSlice3 scratch = new PptSlice3(ppt, vis[0], vis[1], vis[2]);
+    for (@Prototype Invariant proto : protos) {
+      Invariant inv = proto.instantiate(scratch);
+      if (inv != null) {
+        scratch.addInvariant(inv);
+      }
+    }
+    if (scratch.invs.isEmpty()) {
+      return false;
+    }
+    replay(scratch);
+    return !scratch.invs.isEmpty();
+  }
+
+  /**
+   * Returns true unless the values of the variables clearly do not lie on a plane, at five or more
+   * distinct points. Uses the samples that a ternary invariant over the variables would see: those
+   * in which no variable is missing and the first one is modified.
+   *
+   * @param v1 the first variable, in varinfo_index order
+   * @param v2 the second variable
+   * @param v3 the third variable
+   * @return false if the values of the variables are clearly not coplanar
+   */
+  private boolean may_be_coplanar(VarInfo v1, VarInfo v2, VarInfo v3) {
+    double[] x = column(v1);
+    double[] y = column(v2);
+    double[] z = column(v3);
+    if (x == null || y == null || z == null) {
+      return true;
+    }
+
+    Basis basis;
+    if (v1 == pair_x && v2 == pair_y) {
+      assert pair_basis != null : "@AssumeAssertion(nullness): set with pair_x and pair_y";
+      basis = pair_basis;
+    } else {
+      basis = basis(v1, v2, null);
+      pair_x = v1;
+      pair_y = v2;
+      pair_basis = basis;
+    }
+    int[] z_mods = samples.mods(v3);
+    for (int row : basis.rows) {
+      if (is_missing(z_mods[row])) {
+        // The pair's basis spans samples in which z is missing
+        basis = basis(v1, v2, v3);
+        break;
+      }
+    }
+    double[][] vectors = basis.vectors;
+    if (vectors == null) {
+      return true;
+    }
+    int[] rows = basis.rows;
+    if (basis.distinct < MIN_POINTS && distinct(rows, x, y, z) < MIN_POINTS) {
+      return true;
+    }
+
+    double[] dots = new double[vectors.length];
+    double z_norm = 0;
+    for (int r = 0; r < rows.length; r++) {
+      double value = z[rows[r]];
+      if (!Double.isFinite(value)) {
+        return true;
+      }
+      z_norm += value * value;
+      for (int k = 0; k < vectors.length; k++) {
+        dots[k] += value * vectors[k][r];
+      }
+    }
+    double residual = 0;
+    for (int r = 0; r < rows.length; r++) {
+      double diff = z[rows[r]];
+      for (int k = 0; k < vectors.length; k++) {
+        diff -= dots[k] * vectors[k][r];
+      }
+      residual += diff * diff;
+    }
+    return residual <= TOLERANCE * TOLERANCE * z_norm;
+  }
+
+  /**
+   * Computes the basis of the span of 1 and the values of two variables.
+   *
+   * @param v1 the first variable
+   * @param v2 the second variable
+   * @param v3 a third variable that must not be missing in the samples used, or null
+   * @return the basis
+   */
+  private Basis basis(VarInfo v1, VarInfo v2, @Nullable VarInfo v3) {
+    double[] x = column(v1);
+    double[] y = column(v2);
+    assert x != null && y != null;
+    int[] x_mods = samples.mods(v1);
+    int[] y_mods = samples.mods(v2);
+    int[] z_mods = (v3 == null) ? null : samples.mods(v3);
+    int[] rows = new int[samples.size()];
+    int num_rows = 0;
+    for (int i = 0; i < samples.size(); i++) {
+      // As in PptSlice3.add, a sample in which the first variable is unmodified is not seen
+      if (is_missing(x_mods[i])
+          || is_missing(y_mods[i])
+          || (z_mods != null && is_missing(z_mods[i]))
+          || x_mods[i] == ValueTuple.UNMODIFIED) {
+        continue;
+      }
+      rows[num_rows++] = i;
+    }
+    rows = Arrays.copyOf(rows, num_rows);
+
+    int distinct = distinct(rows, x, y, null);
+    if (distinct < 3) {
+      return new Basis(rows, null, distinct);
+    }
+    double[][] vectors = new double[3][num_rows];
+    Arrays.fill(vectors[0], 1 / Math.sqrt(num_rows));
+    for (int r = 0; r < num_rows; r++) {
+      vectors[1][r] = x[rows[r]];
+      vectors[2][r] = y[rows[r]];
+    }
+    for (int k = 1; k < 3; k++) {
+      double[] v = vectors[k];
+      double norm = norm(v);
+      if (!Double.isFinite(norm)) {
+        return new Basis(rows, null, distinct);
+      }
+      // Orthogonalize twice, for accuracy
+      for (int pass = 0; pass < 2; pass++) {
+        for (int j = 0; j < k; j++) {
+          double dot = 0;
+          for (int r = 0; r < num_rows; r++) {
+            dot += v[r] * vectors[j][r];
+          }
+          for (int r = 0; r < num_rows; r++) {
+            v[r] -= dot * vectors[j][r];
+          }
+        }
+      }
+      double residual = norm(v);
+      if (residual <= TOLERANCE * norm) {
+        return new Basis(rows, null, distinct);
+      }
+      for (int r = 0; r < num_rows; r++) {
+        v[r] /= residual;
+      }
+    }
+    return new Basis(rows, vectors, distinct);
+  }
+
+  /**
+   * Returns the number of distinct points among the given samples, up to {@link #MIN_POINTS}.
+   *
+   * @param rows the indices of the samples
+   * @param x the values of the first variable
+   * @param y the values of the second variable
+   * @param z the values of the third variable, or null to count points of two variables
+   * @return the number of distinct points, or {@link #MIN_POINTS} if there are more
+   */
+  private static int distinct(int[] rows, double[] x, double[] y, double @Nullable [] z) {
+    int[] found = new int[MIN_POINTS];
+    int num_found = 0;
+    for (int row : rows) {
+      boolean seen = false;
+      for (int f = 0; f < num_found && !seen; f++) {
+        int other = found[f];
+        seen = x[row] == x[other] && y[row] == y[other] && (z == null || z[row] == z[other]);
+      }
+      if (!seen) {
+        found[num_found++] = row;
+        if (num_found == MIN_POINTS) {
+          break;
+        }
+      }
+    }
+    return num_found;
+  }
+
+  /**
+   * Returns the values of a variable in each sample, as doubles.
+   *
+   * @param vi a variable of the program point
+   * @return the values, which are 0 where the variable is missing, or null if the variable is not
+   *     numeric or not in the samples
+   */
+  private double @Nullable [] column(VarInfo vi) {
+    if (vi.is_static_constant || vi.value_index < 0) {
+      return null;
+    }
+    double[] column = columns[vi.value_index];
+    if (column != null) {
+      return column;
+    }
+    column = new double[samples.size()];
+    if (vi.file_rep_type.isIntegral()) {
+      long[] longs = samples.longs(vi);
+      for (int i = 0; i < column.length; i++) {
+        column[i] = longs[i];
+      }
+    } else if (vi.file_rep_type.isFloat()) {
+      double[] doubles = samples.doubles(vi);
+      System.arraycopy(doubles, 0, column, 0, column.length);
+    } else {
+      return null;
+    }
+    columns[vi.value_index] = column;
+    return column;
+  }
+
+  /** Returns the Euclidean norm of a vector. */
+  private static double norm(double[] v) {
+    double sum = 0;
+    for (double d : v) {
+      sum += d * d;
+    }
+    return Math.sqrt(sum);
+  }
+
+  /** Returns true if a modified bit means that the value is missing. */
+  private static boolean is_missing(int mod) {
+    return ValueTuple.modIsMissingNonsensical(mod) || ValueTuple.modIsMissingFlow(mod);
+  }
+}
@@ -18,17 +18,17 @@ import org.plumelib.util.MathPlume;
  * This data structure holds a tuple of values for a particular program point. VarInfo objects can
  * use this to get the values of the variables they represent.
  *
- * <p>It has two fields: vals and mods. While the arrays and their elements are interned, the
- * ValueTuple objects themselves are not interned.
+ * <p>It has two fields: vals and mods. The elements of vals are interned, but neither the arrays
+ * nor the ValueTuple objects themselves are interned.
  */
 public final class ValueTuple implements Cloneable {
 
   /** Debug tracer. */
   public static Logger debug = Logger.getLogger("daikon.ValueTuple");
 
-  // These arrays are interned, and so are their elements.
+  // The elements of this array are interned.
   // Each element is null only if it is missing (according to the mods array).
-  public @Nullable @Interned Object @Interned [] vals;
+  public @Nullable @Interned Object[] vals;
 
   // Could consider putting the mods array in the first slot of "vals", to
   // avoid the Object overhead of a pair of val and mods.
@@ -37,7 +37,7 @@ public final class ValueTuple implements Cloneable {
    * Modification bit per value, possibly packed into fewer ints than the vals field. Don't use a
    * single int because that won't scale to (say) more than 32 values.
    */
-  public int @Interned [] mods;
+  public int[] mods;
 
   // Right now there are only three meaningful values for a mod:
   /** Not modified. */
@@ -332,24 +332,33 @@ public final class ValueTuple implements Cloneable {
     }
   }
 
-  /** Default constructor that interns its argument. */
+  /**
+   * Default constructor. The elements of vals must be interned.
+   *
+   * <p>The arrays themselves are not interned: interning them would require a lookup in the
+   * interning tables, and an entry in them, for every sample, and no client compares the arrays by
+   * identity.
+   */
   public ValueTuple(@Nullable @Interned Object[] vals, int[] mods) {
-    this.vals = Intern.intern(vals);
-    this.mods = Intern.intern(mods);
+    this.vals = vals;
+    this.mods = mods;
     checkRep();
   }
 
   /**
-   * Private constructor that doesn't perform interning.
+   * Private constructor that doesn't require the values to be interned.
    *
    * @param vals the values
    * @param mods the modbits
-   * @param check if true, require vals and mods to be interned
+   * @param check if true, require the values to be interned
    */
   @SuppressWarnings("interning") // interning constructor
   private ValueTuple(@Nullable Object[] vals, int[] mods, boolean check) {
-    assert !check || Intern.isInterned(vals);
-    assert !check || Intern.isInterned(mods);
+    if (check) {
+      for (Object val : vals) {
+        assert val == null || Intern.isInterned(val);
+      }
+    }
     this.vals = vals;
     this.mods = mods;
     checkRep();
@@ -364,19 +373,20 @@ public final class ValueTuple implements Cloneable {
   }
 
   /**
-   * More convenient name for the constructor that doesn't intern. That is, the result is an
-   * <b>uninterned</b> ValueTuple.
+   * More convenient name for the constructor that doesn't check its values. That is, the result is
+   * an <b>uninterned</b> ValueTuple, whose values might not all be interned.
    *
    * <p>This is not private because it is used (only) by read_data_trace_file, which makes a partial
-   * ValueTuple, fills it in with derived variables, and only then interns it; the alternative would
-   * be for derived variables to take separate vals and mods arguments. No one else should use it!
+   * ValueTuple, fills it in with derived variables, and only then makes the final ValueTuple; the
+   * alternative would be for derived variables to take separate vals and mods arguments. No one
+   * else should use it!
    */
   public static ValueTuple makeUninterned(@Nullable Object[] vals, int[] mods) {
     return new ValueTuple(vals, mods, false);
   }
 
-  /** Constructor that takes already-interned arguments. */
-  static ValueTuple makeFromInterned(@Nullable @Interned Object @Interned [] vals, int[] mods) {
+  /** Constructor that takes already-interned values. */
+  static ValueTuple makeFromInterned(@Nullable @Interned Object[] vals, int[] mods) {
     return new ValueTuple(vals, mods, true);
   }
 
@@ -396,7 +406,7 @@ public final class ValueTuple implements Cloneable {
       return false;
     }
     ValueTuple other = (ValueTuple) obj;
-    return (vals == other.vals) && (mods == other.mods);
+    return Arrays.equals(vals, other.vals) && Arrays.equals(mods, other.mods);
   }
 
   @Pure
@@ -516,4 +526,68 @@ public final class ValueTuple implements Cloneable {
     }
     return new ValueTuple(new_vals, new_mods);
   }
+
+  ///////////////////////////////////////////////////////////////////////////
+  /// Interning of scalar values
+  ///
+
+  // Every sample interns each of its scalar values, but most values recur
+  // from one sample to the next.  These caches hold recently interned
+  // values, so that a value that recurs needs neither an allocation nor a
+  // lookup in the interning tables.  Each element is the canonical
+  // (interned) object, so the result is the same as without the cache.
+  // A race between threads can only cause a cache miss.
+
+  /** The base-2 logarithm of the number of elements in each scalar cache. */
+  private static final int SCALAR_CACHE_BITS = 12;
+
+  /** Recently interned Long values, indexed by {@link #scalar_cache_index}. */
+  private static final @Nullable @Interned Long[] long_cache =
+      new @Nullable @Interned Long[1 << SCALAR_CACHE_BITS];
+
+  /** Recently interned Double values, indexed by {@link #scalar_cache_index}. */
+  private static final @Nullable @Interned Double[] double_cache =
+      new @Nullable @Interned Double[1 << SCALAR_CACHE_BITS];
+
+  /** Returns the index in a scalar cache for a value with the given bits. */
+  private static int scalar_cache_index(long bits) {
+    return (int) ((bits * 0x9E3779B97F4A7C15L) >>> (64 - SCALAR_CACHE_BITS));
+  }
+
+  /**
+   * Returns an interned Long with the given value. This is equivalent to {@link
+   * Intern#internedLong(long)}, but faster for values that were interned recently.
+   *
+   * @param value the value
+   * @return the interned Long with the given value
+   */
+  public static @Interned Long internedLong(long value) {
+    int index = scalar_cache_index(value);
+    @Interned Long result = long_cache[index];
+    if (result == null || result.longValue() != value) {
+      result = Intern.internedLong(value);
+      long_cache[index] = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns an interned Double with the given value. This is equivalent to {@link
+   * Intern#internedDouble(double)}, but faster for values that were interned recently.
+   *
+   * @param value the value
+   * @return the interned Double with the given value
+   */
+  public static @Interned Double internedDouble(double value) {
+    long bits = Double.doubleToRawLongBits(value);
+    int index = scalar_cache_index(bits);
+    @Interned Double result = double_cache[index];
+    // Compare the bits, not the values: NaN != NaN, so NaN would never hit. Intern maps -0.0 to
+    // 0.0, whose bits differ, so -0.0 always misses and gets the same result as from Intern.
+    if (result == null || Double.doubleToRawLongBits(result) != bits) {
+      result = Intern.internedDouble(value);
+      double_cache[index] = result;
+    }
+    return result;
+  }
 }
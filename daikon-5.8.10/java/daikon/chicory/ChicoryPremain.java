@@ -92,7 +92,10 @@ public class ChicoryPremain {
     }
 
     // Open the dtrace file
-    if (Chicory.daikon_online) {
+    Runtime.dtrace_binary = Chicory.dtrace_binary;
+    if (Chicory.daikon_in_process) {
+      Runtime.setDtraceInProcess(daikonArgs());
+    } else if (Chicory.daikon_online) {
       Runtime.setDtraceOnlineMode(daikon_port);
     } else if (Chicory.dtrace_file == null) {
       File trace_file_path = new File(Chicory.output_dir, "dtrace.gz");
@@ -108,7 +111,8 @@ public class ChicoryPremain {
     // It uses the Runtime copy of the patterns.
     Runtime.ppt_omit_pattern = Chicory.ppt_omit_pattern;
     Runtime.ppt_select_pattern = Chicory.ppt_select_pattern;
-    Runtime.sample_start = Chicory.sample_start;
+    Runtime.sampler =
+        new Sampler(Chicory.sample_start, Chicory.sample_reservoir, Chicory.sample_budget);
     DaikonVariableInfo.std_visibility = Chicory.std_visibility;
     DaikonVariableInfo.debug_vars.enabled = Chicory.debug_decl_print;
     if (Chicory.comparability_file != null) {
@@ -163,6 +167,23 @@ public class ChicoryPremain {
     }
   }
 
+  /**
+   * Returns the arguments to Daikon given by {@link Chicory#daikon_args}. As when Chicory runs
+   * Daikon in a separate process, they are separated by white space. Chicory quotes them when it
+   * passes them to the premain.
+   *
+   * @return the arguments to Daikon
+   */
+  private static String[] daikonArgs() {
+    String args = Chicory.daikon_args.trim();
+    if (args.length() >= 2
+        && (args.charAt(0) == '\'' || args.charAt(0) == '"')
+        && args.charAt(args.length() - 1) == args.charAt(0)) {
+      args = args.substring(1, args.length() - 1).trim();
+    }
+    return args.isEmpty() ? new String[0] : args.split("\\s+");
+  }
+
   /** Set up the declaration and dtrace writer. */
   // Runtime.dtrace is @GuardedBy("<self>") because in the Runtime class,
   // the printing of final lines and then closing of dtrace only happens
@@ -179,7 +200,7 @@ public class ChicoryPremain {
     // so they don't need to be handled here.
     // (It looks like these can be called even if Runtime.dtrace is null...)
     Runtime.decl_writer = new DeclWriter(Runtime.dtrace);
-    Runtime.dtrace_writer = new DTraceWriter(Runtime.dtrace);
+    Runtime.dtrace_writer = new DTraceWriter(Runtime.dtrace, Runtime.binary_dtrace);
   }
 
   /**
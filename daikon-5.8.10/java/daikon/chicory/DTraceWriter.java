@@ -1,12 +1,18 @@
 package daikon.chicory;
 
+import daikon.BinaryDtrace;
 import daikon.Chicory;
+import daikon.ProglangType;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.checkerframework.checker.lock.qual.GuardSatisfied;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -40,6 +46,99 @@ public class DTraceWriter extends DaikonWriter {
   /** Where to print output. */
   private PrintWriter outFile;
 
+  /**
+   * Where to write samples, if the data trace file is in the binary format of {@link BinaryDtrace}
+   * or samples are passed to Daikon in-process (see {@link daikon.InProcessDtrace}); otherwise
+   * null. Declarations are still printed to {@link #outFile}.
+   */
+  private BinaryDtrace.@Nullable SampleWriter binaryFile;
+
+  /** Buffers the samples of each thread if they are printed to {@link #outFile}; otherwise null. */
+  private @Nullable TraceBuffer buffer;
+
+  /** The representation type of each representation type name, for {@link #binaryFile}. */
+  private Map<String, ProglangType> repTypes = new ConcurrentHashMap<>();
+
+  /** The sample that each thread is building, if samples are added to {@link #binaryFile}. */
+  private final ThreadLocal<PendingSample> pendingSamples =
+      ThreadLocal.withInitial(PendingSample::new);
+
+  /**
+   * A sample that a thread builds before adding it to {@link #binaryFile}, so that the lock on
+   * {@link #outFile} is held only while the finished sample is added.
+   */
+  private static final class PendingSample {
+    /** The name of the program point. */
+    String pptname = "";
+
+    /** The invocation nonce. */
+    int nonce;
+
+    /** The number of variables that have been added. */
+    int size = 0;
+
+    /** The name of each variable. */
+    String[] names = new String[16];
+
+    /** The representation type of each variable. */
+    ProglangType[] repTypes = new ProglangType[16];
+
+    /** The value of each variable, or null if it is nonsensical. */
+    @Nullable Object[] values = new @Nullable Object[16];
+
+    /** The modified bit of each variable. */
+    int[] mods = new int[16];
+
+    /**
+     * Starts a sample, discarding the previous one.
+     *
+     * @param pptname the name of the program point
+     * @param nonce the invocation nonce
+     */
+    void start(String pptname, int nonce) {
+      this.pptname = pptname;
+      this.nonce = nonce;
+      size = 0;
+    }
+
+    /**
+     * Adds a variable to the sample.
+     *
+     * @param name the name of the variable
+     * @param repType the representation type of the variable
+     * @param value the value, or null if it is nonsensical
+     * @param mod the modified bit
+     */
+    void add(String name, ProglangType repType, @Nullable Object value, int mod) {
+      if (size == names.length) {
+        names = Arrays.copyOf(names, 2 * size);
+        repTypes = Arrays.copyOf(repTypes, 2 * size);
+        values = Arrays.copyOf(values, 2 * size);
+        mods = Arrays.copyOf(mods, 2 * size);
+      }
+      names[size] = name;
+      repTypes[size] = repType;
+      values[size] = value;
+      mods[size] = mod;
+      size++;
+    }
+
+    /**
+     * Writes the sample, and forgets its values.
+     *
+     * @param writer where to write the sample
+     * @throws IOException if there is trouble writing the sample
+     */
+    void writeTo(BinaryDtrace.SampleWriter writer) throws IOException {
+      writer.start_sample(pptname, nonce);
+      for (int i = 0; i < size; i++) {
+        writer.add_value(names[i], repTypes[i], values[i], mods[i]);
+      }
+      writer.end_sample();
+      Arrays.fill(values, 0, size, null);
+    }
+  }
+
   /** debug information about daikon variables */
   private boolean debug_vars = false;
 
@@ -49,8 +148,39 @@ public class DTraceWriter extends DaikonWriter {
    * @param writer stream to write to
    */
   public DTraceWriter(PrintWriter writer) {
+    this(writer, null);
+  }
+
+  /**
+   * Initializes the DTraceWriter.
+   *
+   * @param writer stream to write to
+   * @param binary where to write samples as values, or null to print them to {@code writer}
+   */
+  public DTraceWriter(PrintWriter writer, BinaryDtrace.@Nullable SampleWriter binary) {
     super();
     outFile = writer;
+    binaryFile = binary;
+    buffer = (binary == null) ? new TraceBuffer(writer) : null;
+    if (binary != null) {
+      // Chicory does not instrument the classes that are loaded before its transformer is
+      // installed.  Parsing a value of each kind now loads the Daikon classes that
+      // addBinaryValue uses, so that they are not instrumented later.
+      String[][] examples = {
+        {"int", "1"},
+        {"double", "1.5"},
+        {"java.lang.String", "\"a\""},
+        {"int[]", "[1 nonsensical]"},
+        {"double[]", "[1.5 NaN]"},
+        {"java.lang.String[]", "[\"a\" null]"}
+      };
+      for (String[] example : examples) {
+        ProglangType repType = ProglangType.rep_parse(example[0]).fileTypeToRepType();
+        repTypes.put(example[0], repType);
+        BinaryDtrace.kind(repType);
+        repType.parse_value_uninterned(example[1], null, "Chicory");
+      }
+    }
   }
 
   /** Prints the method entry program point in the dtrace file. */
@@ -79,11 +209,7 @@ public class DTraceWriter extends DaikonWriter {
       stack.fillInStackTrace();
       stack.printStackTrace(System.out);
     }
-    outFile.println(DaikonWriter.methodEntryName(member));
-    printNonce(nonceVal);
-    traverse(mi, root, args, obj, nonsenseValue);
-
-    outFile.println();
+    printSample(mi.entry_ppt_name(), nonceVal, mi, root, args, obj, nonsenseValue);
 
     Runtime.incrementRecords();
   }
@@ -94,9 +220,7 @@ public class DTraceWriter extends DaikonWriter {
     if (Runtime.dtrace_closed) {
       return;
     }
-    outFile.println(pptname);
-    printNonce(nonceVal);
-    outFile.println();
+    printSample(pptname, nonceVal, null, null, null, null, null);
     Runtime.incrementRecords();
   }
 
@@ -113,8 +237,6 @@ public class DTraceWriter extends DaikonWriter {
       return;
     }
 
-    Member member = mi.member;
-
     // gets the traversal pattern root for this method exit
     RootInfo root = mi.traversalExit;
     if (root == null) {
@@ -134,11 +256,7 @@ public class DTraceWriter extends DaikonWriter {
               + "No exit locations found in exit_locations set!");
     }
 
-    outFile.println(DaikonWriter.methodExitName(member, lineNum));
-    printNonce(nonceVal);
-    traverse(mi, root, args, obj, ret_val);
-
-    outFile.println();
+    printSample(mi.exit_ppt_name(lineNum), nonceVal, mi, root, args, obj, ret_val);
 
     Runtime.incrementRecords();
   }
@@ -149,22 +267,122 @@ public class DTraceWriter extends DaikonWriter {
     if (Runtime.dtrace_closed) {
       return;
     }
-    outFile.println(pptname);
-    printNonce(nonceVal);
-    outFile.println();
+    printSample(pptname, nonceVal, null, null, null, null, null);
     Runtime.incrementRecords();
   }
 
+  /**
+   * Writes any samples that are still buffered. Must be called before the dtrace file is closed;
+   * samples that are completed afterward are not written.
+   */
+  public void close(@GuardSatisfied DTraceWriter this) {
+    if (buffer != null) {
+      buffer.close();
+    }
+  }
+
+  /**
+   * Returns the number of samples that were not written because they were completed after {@link
+   * #close} was called.
+   *
+   * @return the number of samples that were dropped
+   */
+  public long droppedRecords(@GuardSatisfied DTraceWriter this) {
+    return (buffer == null) ? 0 : buffer.dropped();
+  }
+
   // prints an invocation nonce entry in the dtrace
-  private void printNonce(@GuardSatisfied DTraceWriter this, int val) {
-    outFile.println("this_invocation_nonce");
-    outFile.println(val);
+  private void printNonce(@GuardSatisfied DTraceWriter this, StringBuilder out, int val) {
+    out.append("this_invocation_nonce").append(lineSep);
+    out.append(val).append(lineSep);
+  }
+
+  /**
+   * Prints a sample: the program point name, the invocation nonce, and the variables of root (if
+   * it is non-null).
+   *
+   * <p>A text sample is appended to the buffer of the current thread, without holding any lock. A
+   * sample that is added to {@link #binaryFile} is built by the current thread, and then added
+   * while holding the lock on {@link #outFile}, because binaryFile holds the sample that is being
+   * added.
+   */
+  private void printSample(
+      @GuardSatisfied DTraceWriter this,
+      String pptname,
+      int nonceVal,
+      @Nullable MethodInfo mi,
+      @Nullable RootInfo root,
+      Object[] args,
+      Object thisObj,
+      Object ret_val) {
+    if (buffer != null) {
+      StringBuilder out = buffer.start();
+      out.append(pptname).append(lineSep);
+      printNonce(out, nonceVal);
+      if (root != null) {
+        traverse(out, null, mi, root, args, thisObj, ret_val);
+      }
+      out.append(lineSep);
+      buffer.finish();
+      return;
+    }
+    PendingSample sample = pendingSamples.get();
+    sample.start(pptname, nonceVal);
+    if (root != null) {
+      traverse(null, sample, mi, root, args, thisObj, ret_val);
+    }
+    synchronized (outFile) {
+      try {
+        sample.writeTo(binaryFile);
+      } catch (IOException e) {
+        throw new Error(e);
+      }
+    }
+  }
+
+  /**
+   * Adds a variable's value to a sample. A number, boolean, character, hash code, or array of them
+   * is converted directly (see {@link DaikonVariableInfo#getDaikonValue}); a string, an array of
+   * strings, or a null value is obtained by parsing its textual form, as Daikon would. The value is
+   * not interned, so that Daikon may be reading other values at the same time.
+   *
+   * @param sample the sample
+   * @param curInfo the variable
+   * @param val the value of the variable
+   */
+  private void addBinaryValue(
+      @GuardSatisfied DTraceWriter this,
+      PendingSample sample,
+      DaikonVariableInfo curInfo,
+      Object val) {
+    String repTypeName = curInfo.getRepTypeNameOnly();
+    ProglangType repType = repTypes.get(repTypeName);
+    if (repType == null) {
+      repType = ProglangType.rep_parse(repTypeName).fileTypeToRepType();
+      repTypes.put(repTypeName, repType);
+    }
+    Object daikonValue = curInfo.getDaikonValue(val, BinaryDtrace.kind(repType));
+    if (daikonValue != DaikonVariableInfo.NO_DAIKON_VALUE) {
+      sample.add(curInfo.getName(), repType, daikonValue, (daikonValue == null) ? 2 : 1);
+      return;
+    }
+    String valueString = curInfo.getDTraceValueString(val);
+    int sep = valueString.lastIndexOf(DaikonWriter.lineSep);
+    String value = valueString.substring(0, sep);
+    int mod = Integer.parseInt(valueString.substring(sep + DaikonWriter.lineSep.length()));
+    sample.add(
+        curInfo.getName(),
+        repType,
+        (mod == 2) ? null : repType.parse_value_uninterned(value, null, "Chicory"),
+        mod);
   }
 
   /**
    * Prints the method's return value and all relevant variables. Uses the tree of
    * DaikonVariableInfo objects.
    *
+   * @param out where to append the text of the variables, or null to add them to {@code sample}
+   * @param sample where to add the values of the variables, if {@code out} is null
    * @param mi the method whose program point we are printing
    * @param root the root of the program point's tree
    * @param args the arguments to the method corrsponding to mi. Must be in the same order as the
@@ -174,6 +392,8 @@ public class DTraceWriter extends DaikonWriter {
    */
   private void traverse(
       @GuardSatisfied DTraceWriter this,
+      @Nullable StringBuilder out,
+      @Nullable PendingSample sample,
       MethodInfo mi,
       RootInfo root,
       Object[] args,
@@ -208,34 +428,52 @@ public class DTraceWriter extends DaikonWriter {
                 + mi);
       }
 
-      traverseValue(mi, child, val);
+      traverseValue(out, sample, mi, child, val);
     }
   }
 
   // traverse from the traversal pattern data structure and recurse
   private void traverseValue(
-      @GuardSatisfied DTraceWriter this, MethodInfo mi, DaikonVariableInfo curInfo, Object val) {
+      @GuardSatisfied DTraceWriter this,
+      @Nullable StringBuilder out,
+      @Nullable PendingSample sample,
+      MethodInfo mi,
+      DaikonVariableInfo curInfo,
+      Object val) {
 
     if (curInfo.dTraceShouldPrint()) {
-      if (!(curInfo instanceof StaticObjInfo)) {
-        outFile.println(curInfo.getName());
-        outFile.println(curInfo.getDTraceValueString(val));
+      if (curInfo instanceof StaticObjInfo) {
+        // nothing to print
+      } else if (out == null) {
+        addBinaryValue(sample, curInfo, val);
+      } else {
+        out.append(curInfo.getName()).append(lineSep);
+        curInfo.appendDTraceValue(out, val);
+        out.append(lineSep);
       }
 
       if (debug_vars) {
-        String out = curInfo.getDTraceValueString(val);
-        if (out.length() > 20) out = out.substring(0, 20);
+        String value = curInfo.getDTraceValueString(val);
+        if (value.length() > 20) value = value.substring(0, 20);
         System.out.printf(
-            "  --variable %s [%d]= %s%n", curInfo.getName(), curInfo.children.size(), out);
+            "  --variable %s [%d]= %s%n", curInfo.getName(), curInfo.children.size(), value);
       }
     }
 
     // go through all of the current node's children
     // and recurse on their values
     if (curInfo.dTraceShouldPrintChildren()) {
-      for (DaikonVariableInfo child : curInfo) {
+      List<DaikonVariableInfo> children = curInfo.children;
+      for (int i = 0; i < children.size(); i++) {
+        DaikonVariableInfo child = children.get(i);
+        if (out != null
+            && !debug_vars
+            && child instanceof FieldInfo
+            && ((FieldInfo) child).appendPrimitiveField(out, val)) {
+          continue;
+        }
         Object childVal = child.getMyValFromParentVal(val);
-        traverseValue(mi, child, childVal);
+        traverseValue(out, sample, mi, child, childVal);
       }
     }
   }
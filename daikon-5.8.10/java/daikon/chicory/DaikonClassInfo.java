@@ -55,6 +55,16 @@ public class DaikonClassInfo extends DaikonVariableInfo {
     }
   }
 
+  @Override
+  public void appendDTraceValue(StringBuilder out, Object val) {
+    out.append(getDTraceValueString(val));
+  }
+
+  @Override
+  public Object getDaikonValue(Object val, int kind) {
+    return NO_DAIKON_VALUE;
+  }
+
   /**
    * Get a String representation of the given Object's run-time type and the corresponding
    * "modified" value.
@@ -1,5 +1,6 @@
 package daikon.chicory;
 
+import daikon.BinaryDtrace;
 import daikon.Chicory;
 import daikon.Daikon.BugInDaikon;
 import daikon.plumelib.bcelutil.SimpleLog;
@@ -53,6 +54,9 @@ public abstract class DaikonVariableInfo
   /** The variable name. Sensible for all subtypes except RootInfo. */
   private final @Interned String name;
 
+  /** The variable name as printed, with "[..]" for the first "[]"; see {@link #getName}. */
+  private final String printed_name;
+
   /** The child nodes. */
   public List<DaikonVariableInfo> children;
 
@@ -152,6 +156,7 @@ public abstract class DaikonVariableInfo
     // same variable names at different program points within
     // the same class.
     name = theName.intern();
+    printed_name = name.replaceFirst("\\[\\]", "[..]");
     this.typeName = typeName.intern();
     this.repTypeName = repTypeName.intern();
 
@@ -169,10 +174,8 @@ public abstract class DaikonVariableInfo
 
   /** Returns the name of this variable. */
   public @Nullable String getName(@GuardSatisfied DaikonVariableInfo this) {
-    if (name == null) {
-      return null;
-    }
-    return name.replaceFirst("\\[\\]", "[..]");
+    // The name is computed once, because the DTraceWriter prints it in every sample.
+    return printed_name;
   }
 
   /**
@@ -280,6 +283,141 @@ public abstract class DaikonVariableInfo
     }
   }
 
+  /**
+   * Appends to a dtrace record the same text as {@link #getDTraceValueString}, without building
+   * intermediate strings. Subclasses that override getDTraceValueString must override this too.
+   *
+   * @param out the text of the record
+   * @param val the object whose value to print
+   */
+  @SuppressWarnings("unchecked")
+  public void appendDTraceValue(StringBuilder out, Object val) {
+    if (isArray) {
+      List<Object> theValues = (List<Object>) val; // unchecked cast
+      if (theValues == null) {
+        out.append("null");
+      } else if (theValues instanceof NonsensicalList) {
+        out.append("nonsensical");
+      } else {
+        out.append('[');
+        for (int i = 0; i < theValues.size(); i++) {
+          if (i > 0) {
+            out.append(' ');
+          }
+          out.append(getValueStringOfObject(theValues.get(i), true));
+        }
+        out.append(']');
+      }
+      out.append(DaikonWriter.lineSep).append(theValues instanceof NonsensicalList ? '2' : '1');
+    } else {
+      out.append(getValueStringOfObject(val, true));
+      out.append(DaikonWriter.lineSep).append(val instanceof NonsensicalObject ? '2' : '1');
+    }
+  }
+
+  /** Returned by {@link #getDaikonValue} for a value that it does not convert. */
+  public static final Object NO_DAIKON_VALUE = new Object();
+
+  /**
+   * Returns the value that Daikon reads from the text that {@link #getDTraceValueString} returns,
+   * as {@link daikon.ProglangType#parse_value_uninterned} would return it, without building the
+   * text. Numbers, booleans, characters, hash codes, arrays of them, and nonsensical values are
+   * converted; strings and null values are not. Subclasses that override getDTraceValueString must
+   * override this too.
+   *
+   * @param val the object whose value to convert
+   * @param kind the kind of the variable's representation type (see {@link BinaryDtrace#kind})
+   * @return the value (a {@code Long}, {@code Double}, {@code long[]}, or {@code double[]}), null
+   *     if it is nonsensical, or {@link #NO_DAIKON_VALUE} if it is not converted
+   */
+  @SuppressWarnings("unchecked")
+  public @Nullable Object getDaikonValue(Object val, int kind) {
+    if (isArray) {
+      return getDaikonArrayValue((List<Object>) val, kind); // unchecked cast
+    } else if (val == null) {
+      return NO_DAIKON_VALUE;
+    } else if (val instanceof NonsensicalObject) {
+      return null;
+    }
+    Object value = getDaikonScalarValue(val);
+    if ((kind == BinaryDtrace.INT && value instanceof Long)
+        || (kind == BinaryDtrace.DOUBLE && value instanceof Double)) {
+      return value;
+    }
+    return NO_DAIKON_VALUE;
+  }
+
+  /**
+   * Returns the value that Daikon reads from the text of a scalar or of an element of an array.
+   *
+   * @param val a non-null value that is not nonsensical
+   * @return the value (a {@code Long} or {@code Double}), or {@link #NO_DAIKON_VALUE} if it is not
+   *     converted
+   */
+  private static Object getDaikonScalarValue(Object val) {
+    if (val instanceof Runtime.IntWrap) {
+      return Long.valueOf(((Runtime.IntWrap) val).val);
+    } else if (val instanceof Runtime.LongWrap) {
+      return Long.valueOf(((Runtime.LongWrap) val).val);
+    } else if (val instanceof Runtime.BooleanWrap) {
+      return Long.valueOf(((Runtime.BooleanWrap) val).val ? 1 : 0);
+    } else if (val instanceof Runtime.CharWrap) {
+      return Long.valueOf(((Runtime.CharWrap) val).val);
+    } else if (val instanceof Runtime.ByteWrap) {
+      return Long.valueOf(((Runtime.ByteWrap) val).val);
+    } else if (val instanceof Runtime.ShortWrap) {
+      return Long.valueOf(((Runtime.ShortWrap) val).val);
+    } else if (val instanceof Runtime.DoubleWrap) {
+      return Double.valueOf(((Runtime.DoubleWrap) val).val);
+    } else if (val instanceof Runtime.FloatWrap) {
+      // Daikon reads the shortest decimal text of the float, not its exact value.
+      return Double.valueOf(Float.toString(((Runtime.FloatWrap) val).val));
+    } else if (val instanceof Runtime.PrimitiveWrapper) {
+      return NO_DAIKON_VALUE;
+    } else {
+      return Long.valueOf(System.identityHashCode(val));
+    }
+  }
+
+  /**
+   * Returns the value that Daikon reads from the text of an array of numbers, booleans,
+   * characters, or hash codes.
+   *
+   * @param vals the elements of the array
+   * @param kind the kind of the variable's representation type (see {@link BinaryDtrace#kind})
+   * @return the value (a {@code long[]} or {@code double[]}), null if it is nonsensical, or {@link
+   *     #NO_DAIKON_VALUE} if it is not converted
+   */
+  private static @Nullable Object getDaikonArrayValue(@Nullable List<Object> vals, int kind) {
+    if (vals == null || (kind != BinaryDtrace.INT_ARRAY && kind != BinaryDtrace.DOUBLE_ARRAY)) {
+      return NO_DAIKON_VALUE;
+    } else if (vals instanceof NonsensicalList) {
+      return null;
+    }
+    int size = vals.size();
+    long @Nullable [] longs = (kind == BinaryDtrace.INT_ARRAY) ? new long[size] : null;
+    double @Nullable [] doubles = (kind == BinaryDtrace.DOUBLE_ARRAY) ? new double[size] : null;
+    for (int i = 0; i < size; i++) {
+      Object elt = vals.get(i);
+      if (elt == null) {
+        // Daikon reads a null element as 0
+        continue;
+      } else if (elt instanceof NonsensicalObject) {
+        // An array with a nonsensical element is nonsensical
+        return null;
+      }
+      Object value = getDaikonScalarValue(elt);
+      if (longs != null && value instanceof Long) {
+        longs[i] = ((Long) value).longValue();
+      } else if (doubles != null && value instanceof Double) {
+        doubles[i] = ((Double) value).doubleValue();
+      } else {
+        return NO_DAIKON_VALUE;
+      }
+    }
+    return (longs != null) ? longs : doubles;
+  }
+
   /** Gets the value of an object and concatenates the associated "modified" integer. */
   protected String getValueStringOfObjectWithMod(Object theValue, boolean hashArray) {
     String retString = getValueStringOfObject(theValue, hashArray) + DaikonWriter.lineSep;
@@ -119,6 +119,57 @@ public class FieldInfo extends DaikonVariableInfo {
     }
   }
 
+  /**
+   * If this is a primitive instance field that is printed and has no children, appends its name,
+   * value, and modified bit in the given parent object to a dtrace record, and returns true.
+   * Otherwise appends nothing and returns false, and the value must be obtained with {@link
+   * #getMyValFromParentVal}. The value is read without wrapping it in a {@link
+   * Runtime.PrimitiveWrapper}, and is printed as the wrapper would print it.
+   *
+   * @param out the text of the record
+   * @param parentVal the object whose field to print
+   * @return true if the field was printed
+   */
+  @SuppressWarnings("deprecation") // in Java 9+, use canAccess instead of isAccessible
+  boolean appendPrimitiveField(StringBuilder out, Object parentVal) {
+    if (!is_primitive || is_static || isArray || !dTraceShouldPrint() || !children.isEmpty()) {
+      return false;
+    }
+    out.append(getName()).append(DaikonWriter.lineSep);
+    if ((parentVal == null) || (parentVal instanceof NonsensicalObject)) {
+      out.append("nonsensical").append(DaikonWriter.lineSep).append('2');
+      out.append(DaikonWriter.lineSep);
+      return true;
+    }
+    if (!field.isAccessible()) {
+      field.setAccessible(true);
+    }
+    Class<?> fieldType = field.getType();
+    try {
+      if (fieldType == int.class) {
+        out.append(field.getInt(parentVal));
+      } else if (fieldType == long.class) {
+        out.append(field.getLong(parentVal));
+      } else if (fieldType == boolean.class) {
+        out.append(field.getBoolean(parentVal));
+      } else if (fieldType == float.class) {
+        out.append(field.getFloat(parentVal));
+      } else if (fieldType == byte.class) {
+        out.append((int) field.getByte(parentVal));
+      } else if (fieldType == char.class) {
+        out.append((int) field.getChar(parentVal));
+      } else if (fieldType == short.class) {
+        out.append((int) field.getShort(parentVal));
+      } else {
+        out.append(field.getDouble(parentVal));
+      }
+    } catch (IllegalArgumentException | IllegalAccessException e) {
+      throw new Error(e);
+    }
+    out.append(DaikonWriter.lineSep).append('1').append(DaikonWriter.lineSep);
+    return true;
+  }
+
   public Field getField() {
     return field;
   }
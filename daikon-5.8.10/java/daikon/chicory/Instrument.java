@@ -185,6 +185,12 @@ public class Instrument extends InstructionListUtils implements ClassFileTransfo
       return null;
     }
 
+    // Don't instrument the classes that Daikon loads when it runs in this JVM
+    if (Thread.currentThread() == Runtime.daikon_thread) {
+      debug_transform.log("Not considering class %s loaded by Daikon%n", fullClassName);
+      return null;
+    }
+
     debug_transform.log(
         "transforming class %s, loader %s - %s%n", className, loader, loader.getParent());
 
@@ -1198,6 +1204,10 @@ public class Instrument extends InstructionListUtils implements ClassFileTransfo
     if (classname.equals("daikon/PptTopLevel$PptType")) {
       return true;
     }
+    if (classname.startsWith("daikon/BinaryDtrace")
+        || classname.startsWith("daikon/InProcessDtrace")) {
+      return true;
+    }
     if (classname.startsWith("daikon/plumelib")) {
       return true;
     }
@@ -6,6 +6,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.checkerframework.checker.lock.qual.GuardSatisfied;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.RequiresNonNull;
@@ -68,6 +70,12 @@ public class MethodInfo {
    */
   public @MonotonicNonNull RootInfo traversalExit = null;
 
+  /** The name of the entry program point, or null if it has not been computed yet. */
+  private volatile @MonotonicNonNull String entry_ppt_name = null;
+
+  /** The name of the exit program point at each exit line that has been computed so far. */
+  private final Map<Integer, String> exit_ppt_names = new ConcurrentHashMap<>();
+
   /** The number of times this method has been called. */
   public int call_cnt = 0;
 
@@ -236,6 +244,32 @@ public class MethodInfo {
     return (out + ")");
   }
 
+  /**
+   * Returns the name of the entry program point of this method. The name is computed once, because
+   * the DTraceWriter prints it in every entry sample.
+   *
+   * @return the name of the entry program point of this method
+   */
+  public String entry_ppt_name() {
+    String result = entry_ppt_name;
+    if (result == null) {
+      result = DaikonWriter.methodEntryName(member);
+      entry_ppt_name = result;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the name of the exit program point of this method at the given line.
+   *
+   * @param lineNum the line number of a return statement in the method
+   * @return the name of the exit program point of this method at the given line
+   */
+  public String exit_ppt_name(int lineNum) {
+    return exit_ppt_names.computeIfAbsent(
+        lineNum, line -> DaikonWriter.methodExitName(member, line));
+  }
+
   public boolean isPure() {
     return isPure;
   }
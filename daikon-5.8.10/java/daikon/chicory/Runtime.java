@@ -2,6 +2,9 @@ package daikon.chicory;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import daikon.BinaryDtrace;
+import daikon.Daikon;
+import daikon.InProcessDtrace;
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -17,20 +20,19 @@ import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
 import org.checkerframework.checker.lock.qual.GuardSatisfied;
 import org.checkerframework.checker.lock.qual.GuardedBy;
-import org.checkerframework.checker.lock.qual.Holding;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -53,13 +55,6 @@ public class Runtime {
   /** debug flag */
   public static boolean debug = false;
 
-  /**
-   * Flag indicating that a dtrace record is currently being written used to prevent a call to
-   * instrumented code that occurs as part of generating a dtrace record (eg, toArray when
-   * processing lists or pure functions) from generating a nested dtrace record.
-   */
-  public static boolean in_dtrace = false;
-
   /** True if ChicoryPremain was unable to load. */
   public static boolean chicoryLoaderInstantiationError = false;
 
@@ -94,7 +89,7 @@ public class Runtime {
   static long dtraceLimit = Long.MAX_VALUE;
 
   /** Number of records printed to date. */
-  static long printedRecords = 0;
+  static final AtomicLong printedRecords = new AtomicLong();
 
   /** Terminate the program when the dtrace limit is reached. */
   static boolean dtraceLimitTerminate = false;
@@ -107,13 +102,24 @@ public class Runtime {
   static @GuardedBy("<self>") PrintWriter dtrace;
 
   /** Set to true when the dtrace stream is closed. */
-  static boolean dtrace_closed = false;
+  static volatile boolean dtrace_closed = false;
+
+  /** True if the dtrace file is to be written in binary form (see {@link BinaryDtrace}). */
+  static boolean dtrace_binary = false;
+
+  /**
+   * Where the samples are written, if they are written as values: the binary dtrace file, if
+   * dtrace_binary is true, or the in-process trace that Daikon reads (see {@link
+   * #setDtraceInProcess}). {@link #dtrace} writes its text. Null otherwise.
+   */
+  static BinaryDtrace.@Nullable SampleWriter binary_dtrace = null;
+
+  /** The thread on which Daikon runs, if it reads the trace in-process; otherwise null. */
+  static volatile @Nullable Thread daikon_thread = null;
 
   /** True if no dtrace is being generated. */
   static boolean no_dtrace = false;
 
-  static String method_indent = "";
-
   /** Decl writer setup for writing to the trace file. */
   @SuppressWarnings("nullness:initialization.static.field.uninitialized" // Set in
   // ChicoryPremain.initializeDeclAndDTraceWriters.
@@ -124,7 +130,7 @@ public class Runtime {
   @SuppressWarnings("nullness:initialization.static.field.uninitialized" // Set in
   // ChicoryPremain.initializeDeclAndDTraceWriters.
   )
-  static @GuardedBy("Runtime.class") DTraceWriter dtrace_writer;
+  static DTraceWriter dtrace_writer;
 
   /**
    * Which static initializers have been run. Each element of the Set is a fully qualified class
@@ -139,23 +145,47 @@ public class Runtime {
     /** whether or not the call was captured on enter */
     boolean captured;
 
-    @Holding("Runtime.class")
     public CallInfo(int nonce, boolean captured) {
       this.nonce = nonce;
       this.captured = captured;
     }
   }
 
-  /** Stack of active methods. */
-  private static @GuardedBy("Runtime.class") Map<Thread, Deque<CallInfo>> thread_to_callstack =
-      new LinkedHashMap<>();
+  /**
+   * The tracing state of one thread. Each thread has its own, so that threads can be traced at the
+   * same time.
+   */
+  private static class ThreadState {
+    /**
+     * Flag indicating that a dtrace record is currently being written used to prevent a call to
+     * instrumented code that occurs as part of generating a dtrace record (eg, toArray when
+     * processing lists or pure functions) from generating a nested dtrace record.
+     */
+    boolean in_dtrace = false;
+
+    /** True while a pure method is being called to create a value for the trace file. */
+    boolean invokingPure = false;
+
+    /** Stack of active methods. */
+    final Deque<CallInfo> callstack = new ArrayDeque<>();
+
+    /** The indentation of the debugging output for method entries and exits. */
+    String method_indent = "";
+  }
+
+  /** The tracing state of each thread. */
+  private static final ThreadLocal<ThreadState> thread_state =
+      ThreadLocal.withInitial(ThreadState::new);
 
   /**
-   * Sample count at a call site to begin sampling. All previous calls will be recorded. Sampling
-   * starts at 10% and decreases by a factor of 10 each time another sample_start samples have been
-   * recorded. If sample_start is 0, then all calls will be recorded.
+   * Held while the declarations of new classes are printed. A class is removed from {@link
+   * SharedData#new_classes} only after its declarations have been printed, so a thread that finds
+   * the list non-empty waits here until they are.
    */
-  public static int sample_start = 0;
+  private static final Object new_classes_lock = new Object();
+
+  /** Decides which calls are recorded. By default, all calls are recorded. */
+  public static Sampler sampler = new Sampler(0, 0, 0);
 
   // Constructor
   private Runtime() {
@@ -180,28 +210,19 @@ public class Runtime {
 
   // Whenever a method call occurs in the target program, output
   // information about that call to the trace file.  However, if the
-  // method is a pure method that is being called to create a value for
-  // the trace file, don't record it.
-  // TODO: invokingPure should be annotated with @GuardedByName("Runtime.class")
-  // once that annotation is available.  Currently all the methods that access
-  // invokingPure are annotated with @Holding("Runtime.class"), but annotating
-  // the boolean would prevent any new methods from accessing it without holding
-  // the lock.
-  private static boolean invokingPure = false;
-
-  @Holding("Runtime.class")
+  // method is a pure method that is being called (by the current thread)
+  // to create a value for the trace file, don't record it.
+
   public static boolean dontProcessPpts() {
-    return invokingPure;
+    return thread_state.get().invokingPure;
   }
 
-  @Holding("Runtime.class")
   public static void startPure() {
-    invokingPure = true;
+    thread_state.get().invokingPure = true;
   }
 
-  @Holding("Runtime.class")
   public static void endPure() {
-    invokingPure = false;
+    thread_state.get().invokingPure = false;
   }
 
   /**
@@ -212,20 +233,19 @@ public class Runtime {
    * @param mi_index index in methods of the MethodInfo for this method
    * @param args array of arguments to method
    */
-  public static synchronized void enter(
+  public static void enter(
       @Nullable Object obj, int nonce, int mi_index, Object[] args) {
 
+    ThreadState state = thread_state.get();
     MethodInfo mi = null;
     if (debug) {
-      synchronized (SharedData.methods) {
-        mi = SharedData.methods.get(mi_index);
-      }
+      mi = SharedData.methods.get(mi_index);
       System.out.printf(
-          "%smethod_entry %s.%s%n", method_indent, mi.class_info.class_name, mi.method_name);
-      method_indent = method_indent.concat("  ");
+          "%smethod_entry %s.%s%n", state.method_indent, mi.class_info.class_name, mi.method_name);
+      state.method_indent = state.method_indent.concat("  ");
     }
 
-    if (dontProcessPpts()) {
+    if (state.invokingPure) {
       return;
     }
 
@@ -233,45 +253,27 @@ public class Runtime {
     // check_in_dtrace();
 
     // Ignore this call if we are already processing a dtrace record
-    if (in_dtrace) {
+    if (state.in_dtrace) {
       return;
     }
 
     // Note that we are processing a dtrace record until we return
-    in_dtrace = true;
+    state.in_dtrace = true;
     try {
-      int num_new_classes = 0;
-      synchronized (SharedData.new_classes) {
-        num_new_classes = SharedData.new_classes.size();
-      }
-      if (num_new_classes > 0) {
+      if (!SharedData.new_classes.isEmpty()) {
         process_new_classes();
       }
 
-      synchronized (SharedData.methods) {
-        mi = SharedData.methods.get(mi_index);
-      }
+      mi = SharedData.methods.get(mi_index);
+      // Not atomic: when several threads call the same method at once, a call may go uncounted,
+      // which only shifts which calls are sampled.
       mi.call_cnt++;
 
       // If sampling, check to see if we are capturing this sample
       boolean capture = true;
-      if (sample_start > 0) {
-        if (mi.call_cnt <= sample_start) {
-          // nothing to do
-        } else if (mi.call_cnt <= (sample_start * 10)) {
-          capture = (mi.call_cnt % 10) == 0;
-        } else if (mi.call_cnt <= (sample_start * 100)) {
-          capture = (mi.call_cnt % 100) == 0;
-        } else if (mi.call_cnt <= (sample_start * 1000)) {
-          capture = (mi.call_cnt % 1000) == 0;
-        } else {
-          capture = (mi.call_cnt % 10000) == 0;
-        }
-        Thread t = Thread.currentThread();
-        @SuppressWarnings("lock:method.invocation") // CF bug: inference failed
-        Deque<CallInfo> callstack =
-            thread_to_callstack.computeIfAbsent(t, __ -> new ArrayDeque<CallInfo>());
-        callstack.push(new CallInfo(nonce, capture));
+      if (sampler.enabled()) {
+        capture = sampler.capture(mi.call_cnt, System.nanoTime());
+        state.callstack.push(new CallInfo(nonce, capture));
       }
 
       if (capture) {
@@ -290,7 +292,7 @@ public class Runtime {
         //                 + " " + mi.capture_cnt + "/" + mi.call_cnt);
       }
     } finally {
-      in_dtrace = false;
+      state.in_dtrace = false;
     }
   }
 
@@ -304,7 +306,7 @@ public class Runtime {
    * @param ret_val return value of method, or null if method is void
    * @param exitLineNum the line number at which this method exited
    */
-  public static synchronized void exit(
+  public static void exit(
       @Nullable Object obj,
       int nonce,
       int mi_index,
@@ -312,17 +314,16 @@ public class Runtime {
       Object ret_val,
       int exitLineNum) {
 
+    ThreadState state = thread_state.get();
     MethodInfo mi = null;
     if (debug) {
-      synchronized (SharedData.methods) {
-        mi = SharedData.methods.get(mi_index);
-      }
-      method_indent = method_indent.substring(2);
+      mi = SharedData.methods.get(mi_index);
+      state.method_indent = state.method_indent.substring(2);
       System.out.printf(
-          "%smethod_exit  %s.%s%n", method_indent, mi.class_info.class_name, mi.method_name);
+          "%smethod_exit  %s.%s%n", state.method_indent, mi.class_info.class_name, mi.method_name);
     }
 
-    if (dontProcessPpts()) {
+    if (state.invokingPure) {
       return;
     }
 
@@ -330,27 +331,22 @@ public class Runtime {
     // check_in_dtrace();
 
     // Ignore this call if we are already processing a dtrace record
-    if (in_dtrace) {
+    if (state.in_dtrace) {
       return;
     }
 
     // Note that we are processing a dtrace record until we return
-    in_dtrace = true;
+    state.in_dtrace = true;
     try {
 
-      int num_new_classes = 0;
-      synchronized (SharedData.new_classes) {
-        num_new_classes = SharedData.new_classes.size();
-      }
-      if (num_new_classes > 0) {
+      if (!SharedData.new_classes.isEmpty()) {
         process_new_classes();
       }
 
       // Skip this call if it was not sampled at entry to the method
-      if (sample_start > 0) {
+      if (sampler.enabled()) {
         CallInfo ci = null;
-        @SuppressWarnings("nullness") // map: key was put in map by enter()
-        @NonNull Deque<CallInfo> callstack = thread_to_callstack.get(Thread.currentThread());
+        Deque<CallInfo> callstack = state.callstack;
         while (!callstack.isEmpty()) {
           ci = callstack.pop();
           if (ci.nonce == nonce) {
@@ -358,9 +354,7 @@ public class Runtime {
           }
         }
         if (ci == null) {
-          synchronized (SharedData.methods) {
-            mi = SharedData.methods.get(mi_index);
-          }
+          mi = SharedData.methods.get(mi_index);
           System.out.printf("no enter for exit %s%n", mi);
           return;
         } else if (!ci.captured) {
@@ -369,9 +363,7 @@ public class Runtime {
       }
 
       // Write out the infromation for this method
-      synchronized (SharedData.methods) {
-        mi = SharedData.methods.get(mi_index);
-      }
+      mi = SharedData.methods.get(mi_index);
       // long start = System.currentTimeMillis();
       if (mi.member == null) {
         dtrace_writer.clinitExit(
@@ -382,7 +374,7 @@ public class Runtime {
       // long duration = System.currentTimeMillis() - start;
       // System.out.println ("Exit " + mi + " " + duration + "ms");
     } finally {
-      in_dtrace = false;
+      state.in_dtrace = false;
     }
   }
 
@@ -417,46 +409,47 @@ public class Runtime {
    * Writes out decl information for any new classes (those in the new_classes field) and removes
    * them from that list.
    */
-  @Holding("Runtime.class")
+  @SuppressWarnings("lock") // non-final field
   public static void process_new_classes() {
 
     // Processing of the new_classes list must be
     // very careful, as the call to get_reflection or printDeclClass
     // may load other classes (which then get added to the list).
-    while (true) {
+    synchronized (new_classes_lock) {
+      while (true) {
 
-      // Get the first class in the list (if any)
-      ClassInfo class_info = null;
-      synchronized (SharedData.new_classes) {
-        if (SharedData.new_classes.size() > 0) {
-          class_info = SharedData.new_classes.removeFirst();
+        // Get the first class in the list (if any).  It stays in the list until its decls
+        // have been printed, so that other threads wait for them before printing samples.
+        ClassInfo class_info = SharedData.new_classes.peekFirst();
+        if (class_info == null) {
+          break;
         }
-      }
-      if (class_info == null) {
-        break;
-      }
 
-      if (debug) System.out.println("processing class " + class_info.class_name);
-      if (first_class) {
-        decl_writer.printHeaderInfo(class_info.class_name);
-        first_class = false;
-      }
-      class_info.initViaReflection();
-      // class_info.dump (System.out);
+        if (debug) System.out.println("processing class " + class_info.class_name);
+        class_info.initViaReflection();
+        // class_info.dump (System.out);
 
-      // Create tree structure for all method entries/exits in the class
-      for (MethodInfo mi : class_info.method_infos) {
-        mi.traversalEnter = RootInfo.enter_process(mi, Runtime.nesting_depth);
-        mi.traversalExit = RootInfo.exit_process(mi, Runtime.nesting_depth);
-      }
+        // Create tree structure for all method entries/exits in the class
+        for (MethodInfo mi : class_info.method_infos) {
+          mi.traversalEnter = RootInfo.enter_process(mi, Runtime.nesting_depth);
+          mi.traversalExit = RootInfo.exit_process(mi, Runtime.nesting_depth);
+        }
 
-      decl_writer.printDeclClass(class_info, comp_info);
+        synchronized (dtrace) {
+          if (first_class) {
+            decl_writer.printHeaderInfo(class_info.class_name);
+            first_class = false;
+          }
+          decl_writer.printDeclClass(class_info, comp_info);
+        }
+        SharedData.new_classes.removeFirst();
+      }
     }
   }
 
   /** Increment the number of records that have been printed. */
   public static void incrementRecords() {
-    printedRecords++;
+    long printed = printedRecords.incrementAndGet();
 
     // This should only print a percentage if dtraceLimit is not its
     // default value.
@@ -464,7 +457,7 @@ public class Runtime {
     //     System.out.printf("printed=%d, percent printed=%f%n", printedRecords,
     //                       (float)(100.0*(float)printedRecords/(float)dtraceLimit));
 
-    if (printedRecords >= dtraceLimit) {
+    if (printed >= dtraceLimit) {
       noMoreOutput();
     }
   }
@@ -490,8 +483,13 @@ public class Runtime {
     final @GuardedBy("<self>") PrintWriter dtrace = Runtime.dtrace;
 
     synchronized (dtrace) {
+      // Another thread may have reached the limit at the same time.
+      if (dtrace_closed) {
+        return;
+      }
       // The shutdown hook is synchronized on this, so close it up
       // ourselves, lest the call to System.exit cause deadlock.
+      dtrace_writer.close();
       dtrace.println();
       dtrace.println("# EOF (added by no_more_output)");
       dtrace.close();
@@ -514,6 +512,60 @@ public class Runtime {
     }
   }
 
+  /**
+   * Passes the trace to Daikon, which is started on a thread of this JVM and reads it as values
+   * (see {@link InProcessDtrace}). Daikon finishes when the program exits.
+   *
+   * @param daikon_args the arguments to Daikon, other than the trace file
+   */
+  @EnsuresNonNull("dtrace")
+  public static void setDtraceInProcess(String[] daikon_args) {
+    dtraceLimit = Long.getLong("DTRACELIMIT", Integer.MAX_VALUE).longValue();
+    dtraceLimitTerminate = Boolean.getBoolean("DTRACELIMITTERMINATE");
+
+    InProcessDtrace.Writer writer = InProcessDtrace.open();
+    binary_dtrace = writer;
+    dtrace = new PrintWriter(writer.text_writer());
+
+    String[] args = Arrays.copyOf(daikon_args, daikon_args.length + 1);
+    args[daikon_args.length] = InProcessDtrace.NAME;
+    Thread thread = new Thread(() -> runDaikon(args, writer), "Chicory in-process Daikon");
+    // The shutdown hook waits for Daikon to finish.
+    thread.setDaemon(true);
+    daikon_thread = thread;
+    thread.start();
+
+    if (supportsAddShutdownHook()) {
+      addShutdownHook();
+    } else {
+      System.err.println("Warning: Daikon may not finish if program is aborted");
+    }
+  }
+
+  /**
+   * The body of {@link #daikon_thread}.
+   *
+   * @param args the arguments to Daikon
+   * @param writer the in-process trace that Daikon reads
+   */
+  private static void runDaikon(String[] args, InProcessDtrace.Writer writer) {
+    // Daikon does not call the traced program, but it may share classes with it.
+    thread_state.get().in_dtrace = true;
+    try {
+      Daikon.mainHelper(args);
+    } catch (Daikon.NormalTermination e) {
+      if (e.getMessage() != null) {
+        System.out.println(e.getMessage());
+      }
+    } catch (Daikon.DaikonTerminationException e) {
+      System.err.println();
+      System.err.println("Daikon: " + e.getMessage());
+    } finally {
+      // If Daikon stopped early, don't let the program wait for it.
+      writer.discard();
+    }
+  }
+
   @EnsuresNonNull("dtrace")
   public static void setDtraceOnlineMode(int port) {
     dtraceLimit = Long.getLong("DTRACELIMIT", Integer.MAX_VALUE).longValue();
@@ -584,6 +636,12 @@ public class Runtime {
         }
         os = new GZIPOutputStream(os);
       }
+      if (dtrace_binary && append) {
+        throw new Error(
+            "DTRACEAPPEND environment variable is set, "
+                + "Cannot append to binary dtrace file "
+                + filename);
+      }
       dtraceLimit = Long.getLong("DTRACELIMIT", Integer.MAX_VALUE).longValue();
       dtraceLimitTerminate = Boolean.getBoolean("DTRACELIMITTERMINATE");
 
@@ -591,7 +649,13 @@ public class Runtime {
 
       // 8192 is the buffer size in BufferedReader
       BufferedOutputStream bos = new BufferedOutputStream(os, 8192);
-      dtrace = new PrintWriter(new BufferedWriter(new OutputStreamWriter(bos, UTF_8)));
+      if (dtrace_binary) {
+        BinaryDtrace.Writer writer = new BinaryDtrace.Writer(bos);
+        binary_dtrace = writer;
+        dtrace = new PrintWriter(writer.text_writer());
+      } else {
+        dtrace = new PrintWriter(new BufferedWriter(new OutputStreamWriter(bos, UTF_8)));
+      }
     } catch (Exception e) {
       e.printStackTrace();
       throw new Error(e);
@@ -649,6 +713,9 @@ public class Runtime {
                   // so we miss the tail of the file.
 
                   synchronized (Runtime.dtrace) {
+                    if (dtrace_writer != null) {
+                      dtrace_writer.close();
+                    }
                     dtrace.println();
                     // These are for debugging, I assume. -MDE
                     for (Pattern p : ppt_omit_pattern) {
@@ -671,9 +738,25 @@ public class Runtime {
                     System.out.println(
                         "Check the --ppt-select-pattern and --ppt-omit-pattern options");
                   }
-                } else if (printedRecords == 0) {
+                } else if (printedRecords.get() == 0) {
                   System.out.println("Chicory warning: no records were printed");
                 }
+                long dropped = (dtrace_writer == null) ? 0 : dtrace_writer.droppedRecords();
+                if (dropped > 0) {
+                  System.out.printf(
+                      "Chicory warning: %d records were completed after the dtrace file was"
+                          + " closed, and were not written%n",
+                      dropped);
+                }
+
+                Thread daikon = daikon_thread;
+                if (daikon != null) {
+                  try {
+                    daikon.join();
+                  } catch (InterruptedException e) {
+                    System.err.println("Chicory: interrupted while waiting for Daikon");
+                  }
+                }
               }
             });
   }
@@ -0,0 +1,115 @@
+package daikon.chicory;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which calls Chicory records, to bound the cost of tracing. The decision is made when a
+ * method is entered, before any of its variables are examined; the exit of the call is recorded
+ * iff its entry was. Three policies can be combined, and a call is recorded only if each of the
+ * policies that is enabled selects it:
+ *
+ * <ul>
+ *   <li>Back-off ({@code --sample-start}): record the first sample_start calls of each method, then
+ *       10% of the calls, and a factor of 10 fewer each time another sample_start calls have been
+ *       recorded.
+ *   <li>Reservoir ({@code --sample-reservoir}): record the first k calls of each method, then the
+ *       n'th call with probability k/n. This is the acceptance rule of reservoir sampling; because
+ *       a record cannot be taken back once it is written, no earlier record is evicted, so about
+ *       k(1 + ln(n/k)) of the first n calls are recorded, spread evenly over the run.
+ *   <li>Budget ({@code --sample-budget}): record at most the given number of records per second,
+ *       over all methods. A recorded call counts as two records: its entry and its exit.
+ * </ul>
+ */
+public class Sampler {
+
+  /** Calls of each method that are recorded before back-off starts; 0 disables back-off. */
+  private final int sample_start;
+
+  /** Size of the reservoir of each method; 0 disables reservoir sampling. */
+  private final int reservoir;
+
+  /** Records that are written per second, over all methods; 0 means no limit. */
+  private final int budget;
+
+  /**
+   * The records that the budget has allowed in the current second: the low 32 bits of the second
+   * (of {@link System#nanoTime}) in the high half, and the number of records in the low half. Both
+   * are kept in one word so that starting a new second cannot lose another thread's count.
+   */
+  private final AtomicLong budget_used = new AtomicLong();
+
+  /**
+   * Creates a Sampler.
+   *
+   * @param sample_start calls of each method that are recorded before back-off starts, or 0
+   * @param reservoir size of the reservoir of each method, or 0
+   * @param budget records that are written per second, or 0 for no limit
+   */
+  public Sampler(int sample_start, int reservoir, int budget) {
+    this.sample_start = sample_start;
+    this.reservoir = reservoir;
+    this.budget = budget;
+  }
+
+  /**
+   * Returns true if some calls are not recorded.
+   *
+   * @return true if some calls are not recorded
+   */
+  public boolean enabled() {
+    return sample_start > 0 || reservoir > 0 || budget > 0;
+  }
+
+  /**
+   * Returns true if the given call is to be recorded.
+   *
+   * @param call_cnt the number of calls of the method, including this one
+   * @param now the current value of {@link System#nanoTime}
+   * @return true if the call is to be recorded
+   */
+  public boolean capture(int call_cnt, long now) {
+    if (sample_start > 0 && !backoff(call_cnt)) {
+      return false;
+    }
+    if (reservoir > 0
+        && call_cnt > reservoir
+        && ThreadLocalRandom.current().nextInt(call_cnt) >= reservoir) {
+      return false;
+    }
+    if (budget > 0) {
+      int second = (int) (now / 1_000_000_000L);
+      while (true) {
+        long state = budget_used.get();
+        int used = ((int) (state >>> 32) == second) ? (int) state : 0;
+        if (used + 2 > budget) {
+          return false;
+        }
+        if (budget_used.compareAndSet(state, ((long) second << 32) | (used + 2))) {
+          break;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns true if back-off records the given call.
+   *
+   * @param call_cnt the number of calls of the method, including this one
+   * @return true if back-off records the given call
+   */
+  private boolean backoff(int call_cnt) {
+    if (call_cnt <= sample_start) {
+      return true;
+    } else if (call_cnt <= (sample_start * 10)) {
+      return (call_cnt % 10) == 0;
+    } else if (call_cnt <= (sample_start * 100)) {
+      return (call_cnt % 100) == 0;
+    } else if (call_cnt <= (sample_start * 1000)) {
+      return (call_cnt % 1000) == 0;
+    } else {
+      return (call_cnt % 10000) == 0;
+    }
+  }
+}
@@ -1,15 +1,17 @@
 package daikon.chicory;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.checkerframework.checker.lock.qual.GuardedBy;
 
 /**
  * Data that is shared across Chicory. The primary users are Instrument.java and Runtime.java. As
  * those classes may be executing on different threads, these items must be accessed via
- * synchronized statements.
+ * synchronized statements, except as noted: Runtime reads new_classes and methods on every traced
+ * call, so they can be read without a lock.
  */
 @SuppressWarnings(
     "initialization.fields.uninitialized") // library initialized in code added by run-time
@@ -21,12 +23,16 @@ public class SharedData {
    */
   // The order of this list depends on the order of loading by the JVM.
   // Declared as Deque instead of List to permit use of removeFirst().
-  public static final @GuardedBy("<self>") Deque<ClassInfo> new_classes =
-      new ArrayDeque<ClassInfo>();
+  // Only Runtime.process_new_classes removes elements.
+  public static final Deque<ClassInfo> new_classes = new ConcurrentLinkedDeque<ClassInfo>();
 
   /** List of all instrumented classes. */
   public static final @GuardedBy("<self>") List<ClassInfo> all_classes = new ArrayList<>();
 
-  /** List of all instrumented methods. */
-  public static final @GuardedBy("<self>") List<MethodInfo> methods = new ArrayList<>();
+  /**
+   * List of all instrumented methods. A method's index in this list is compiled into its
+   * instrumentation, so additions must hold the lock on this list to find the index at which they
+   * add.
+   */
+  public static final List<MethodInfo> methods = new CopyOnWriteArrayList<>();
 }
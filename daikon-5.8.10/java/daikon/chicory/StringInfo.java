@@ -37,6 +37,16 @@ public class StringInfo extends DaikonVariableInfo {
     }
   }
 
+  @Override
+  public void appendDTraceValue(StringBuilder out, Object val) {
+    out.append(getDTraceValueString(val));
+  }
+
+  @Override
+  public Object getDaikonValue(Object val, int kind) {
+    return NO_DAIKON_VALUE;
+  }
+
   /**
    * Returns a space-separated String of the elements in theValues. If theValues is null, returns
    * "null." If theValues is nonsensical, returns "nonsensical".
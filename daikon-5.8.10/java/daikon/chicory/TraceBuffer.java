@@ -0,0 +1,208 @@
+package daikon.chicory;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.checkerframework.checker.lock.qual.GuardedBy;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Buffers the text of dtrace records, and writes it to the dtrace file on a background thread.
+ *
+ * <p>Each thread of the traced program prints its records to a buffer of its own, and then puts
+ * each completed record in a ring of its own. A single writer thread takes the records out of all
+ * of the rings and writes them to the dtrace file. Thus, threads that are being traced do not wait
+ * for one another, or for the dtrace file, except when their ring is full.
+ *
+ * <p>The records of one thread are written in the order in which that thread completed them. The
+ * records of different threads may be interleaved in any order; Daikon matches entries to exits by
+ * their nonces.
+ *
+ * <p>The ring of a thread that has terminated is discarded once its records have been written, so
+ * a program that creates many short-lived threads does not accumulate rings.
+ */
+public class TraceBuffer {
+
+  /** The number of completed records that the ring of each thread holds. */
+  static final int RING_SIZE = 256;
+
+  /** How long the writer thread waits when there is nothing to write, in nanoseconds. */
+  private static final long IDLE_NANOS = 1_000_000;
+
+  /**
+   * The records of one thread. Only that thread adds records, and only a thread that holds the lock
+   * on the dtrace file removes them.
+   */
+  private static final class Ring {
+    /** The completed records; the slots from head to tail (modulo RING_SIZE) are in use. */
+    final String[] records = new String[RING_SIZE];
+
+    /** The number of records that have been removed from this ring. */
+    volatile long head = 0;
+
+    /** The number of records that have been added to this ring. */
+    volatile long tail = 0;
+
+    /** The text of the record that the thread is printing. */
+    final StringBuilder record = new StringBuilder();
+
+    /** The thread that adds records to this ring. */
+    final Thread owner = Thread.currentThread();
+  }
+
+  /** Where the records are written. */
+  private final @GuardedBy("<self>") PrintWriter out;
+
+  /** The rings of the threads that have printed a record, until they terminate. */
+  private final Queue<Ring> rings = new ConcurrentLinkedQueue<>();
+
+  /** The ring of the current thread. */
+  private final ThreadLocal<Ring> ring = ThreadLocal.withInitial(this::newRing);
+
+  /** The thread that writes the records, or null if it has not been started. */
+  private volatile @Nullable Thread writer = null;
+
+  /** True once {@link #close} has been called; records that are completed later are dropped. */
+  private volatile boolean closed = false;
+
+  /** True once {@link #close} has written the records. Accessed only while holding out's lock. */
+  private boolean drained = false;
+
+  /** The number of records that were dropped because they were completed after close. */
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Creates a TraceBuffer.
+   *
+   * @param out where to write the records
+   */
+  public TraceBuffer(@GuardedBy("<self>") PrintWriter out) {
+    this.out = out;
+  }
+
+  /** Creates and registers the ring of the current thread, starting the writer if need be. */
+  private Ring newRing() {
+    Ring result = new Ring();
+    rings.add(result);
+    synchronized (this) {
+      if (writer == null) {
+        Thread thread = new Thread(this::run, "Chicory dtrace writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts a record in the current thread.
+   *
+   * @return the buffer to which to append the text of the record
+   */
+  public StringBuilder start() {
+    Ring r = ring.get();
+    r.record.setLength(0);
+    return r.record;
+  }
+
+  /**
+   * Completes the record that the current thread is printing, so that it will be written. Waits
+   * for the writer if the ring of the current thread is full. If {@link #close} has been called,
+   * the record is dropped and counted instead.
+   */
+  public void finish() {
+    Ring r = ring.get();
+    if (closed) {
+      dropped.incrementAndGet();
+      return;
+    }
+    String record = r.record.toString();
+    long tail = r.tail;
+    while (tail - r.head >= RING_SIZE) {
+      if (closed) {
+        dropped.incrementAndGet();
+        return;
+      }
+      LockSupport.unpark(writer);
+      Thread.yield();
+    }
+    r.records[(int) (tail % RING_SIZE)] = record;
+    r.tail = tail + 1;
+    if (closed) {
+      // close may have written the rings before this record was added; if so, no one will.
+      synchronized (out) {
+        if (drained) {
+          for (long head = r.head; head < r.tail; head++) {
+            r.records[(int) (head % RING_SIZE)] = null;
+            dropped.incrementAndGet();
+          }
+          r.head = r.tail;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of records that were dropped because they were completed after {@link
+   * #close} was called.
+   *
+   * @return the number of dropped records
+   */
+  public long dropped() {
+    return dropped.get();
+  }
+
+  /** The body of the writer thread. */
+  private void run() {
+    while (!closed) {
+      if (drain() == 0) {
+        LockSupport.parkNanos(IDLE_NANOS);
+      }
+    }
+  }
+
+  /**
+   * Writes all completed records, and discards the rings of threads that have terminated.
+   *
+   * @return the number of records written
+   */
+  private int drain() {
+    int count = 0;
+    synchronized (out) {
+      for (Iterator<Ring> it = rings.iterator(); it.hasNext(); ) {
+        Ring r = it.next();
+        // Checked before reading tail: a terminated thread adds no more records.
+        boolean terminated = !r.owner.isAlive();
+        long head = r.head;
+        long tail = r.tail;
+        for (; head < tail; head++) {
+          int slot = (int) (head % RING_SIZE);
+          out.write(r.records[slot]);
+          r.records[slot] = null;
+          count++;
+        }
+        r.head = head;
+        if (terminated) {
+          it.remove();
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Writes all completed records and stops the writer thread. Must be called before the dtrace file
+   * is closed.
+   */
+  public void close() {
+    closed = true;
+    synchronized (out) {
+      drain();
+      drained = true;
+    }
+  }
+}
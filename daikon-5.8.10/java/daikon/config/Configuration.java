@@ -4,7 +4,9 @@ import java.io.InputStream;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.checker.signature.qual.ClassGetName;
@@ -108,10 +110,38 @@ public final class Configuration implements Serializable {
     }
   }
 
+  // ============================== RESET ==============================
+
+  /**
+   * Restores every configuration option that has been set through this object to the value it had
+   * before it was first set, and forgets the recorded settings. This permits a long-running process
+   * to apply different settings for each of a sequence of Daikon runs.
+   */
+  public void reset() {
+    if (original_values != null) {
+      for (Map.Entry<Field, @Nullable Object> entry : original_values.entrySet()) {
+        try {
+          setStaticField(entry.getKey(), entry.getValue());
+        } catch (IllegalAccessException e) {
+          throw new ConfigException("Inaccessible configuration option " + entry.getKey());
+        }
+      }
+      original_values.clear();
+    }
+    statements.clear();
+  }
+
   // ============================== ADT COMPONENT ==============================
 
   private List<String> statements = new ArrayList<>();
 
+  /**
+   * The value of each configuration option before it was first set through this object, for use by
+   * {@link #reset}. Fields are not serializable, so this is null in a deserialized object until an
+   * option is set.
+   */
+  private transient @Nullable Map<Field, @Nullable Object> original_values = new LinkedHashMap<>();
+
   public void apply(InputStream input) {
     assert input != null;
     for (String line : new EntryReader(input)) {
@@ -310,6 +340,12 @@ public final class Configuration implements Serializable {
     }
 
     try {
+      if (original_values == null) {
+        original_values = new LinkedHashMap<>();
+      }
+      if (!original_values.containsKey(field)) {
+        original_values.put(field, getStaticField(field));
+      }
       setStaticField(field, value);
     } catch (IllegalAccessException e) {
       throw new ConfigException("Inaccessible configuration option " + field.toString());
@@ -329,6 +365,19 @@ public final class Configuration implements Serializable {
     statements.add(record);
   }
 
+  /**
+   * Returns the value of a static field.
+   *
+   * @param field a field; must be static
+   * @return the value of the field
+   * @throws IllegalAccessException if {@code field} is enforcing Java language access control and
+   *     the underlying field is inaccessible
+   */
+  @SuppressWarnings("nullness:argument") // field is static, so object may be null
+  private static @Nullable Object getStaticField(Field field) throws IllegalAccessException {
+    return field.get(null);
+  }
+
   /**
    * Set a static field to the given value.
    *
@@ -18,7 +18,6 @@ import daikon.chicory.StaticObjInfo;
 import daikon.chicory.StringInfo;
 import daikon.chicory.ThisObjInfo;
 import daikon.plumelib.bcelutil.SimpleLog;
-import daikon.plumelib.util.WeakIdentityHashMap;
 import java.io.PrintWriter;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
@@ -143,9 +142,12 @@ public final class DCRuntime implements ComparabilityProvider {
   private static Map<Thread, ThreadData> thread_to_data =
       new ConcurrentHashMap<Thread, ThreadData>();
 
-  /** Map from each object to the tags used for each primitive value in the object. */
-  public static WeakIdentityHashMap<Object, Object[]> field_map =
-      new WeakIdentityHashMap<Object, Object[]>();
+  /**
+   * Map from each object to the tags used for each primitive value in the object. For an array of
+   * primitives, the tags of its elements.
+   */
+  static StripedWeakIdentityHashMap<Object, Object[]> field_map =
+      new StripedWeakIdentityHashMap<Object, Object[]>();
 
   /** List of all classes encountered. These are the classes that will have comparability output. */
   private static List<ClassInfo> all_classes = new ArrayList<>();
@@ -154,15 +156,16 @@ public final class DCRuntime implements ComparabilityProvider {
   private static Set<String> initialized_eclassses = new HashSet<>();
 
   /**
-   * Class used as a tag for primitive constants. Only different from Object for debugging purposes.
+   * Class used as a tag for primitive constants. Only different from TagEntry for debugging
+   * purposes.
    */
-  private static class Constant {}
+  private static class Constant extends TagEntry {}
 
   /**
-   * Class used as a tag for uninitialized instance fields. Only different from Object for debugging
+   * Class used as a tag for uninitialized fields. Only different from TagEntry for debugging
    * purposes.
    */
-  private static class UninitFieldTag {
+  private static class UninitFieldTag extends TagEntry {
     String descr;
     @Nullable Throwable stack_trace = null;
 
@@ -179,10 +182,10 @@ public final class DCRuntime implements ComparabilityProvider {
   }
 
   /**
-   * Class used as a tag for uninitialized array elements. Only different from Object for debugging
-   * purposes.
+   * Class used as a tag for uninitialized array elements. Only different from TagEntry for
+   * debugging purposes.
    */
-  private static class UninitArrayElem {}
+  private static class UninitArrayElem extends TagEntry {}
 
   /** Either java.lang.DCompMarker or daikon.dcomp.DCompMarker */
   private static Class<?> dcomp_marker_class;
@@ -883,7 +886,7 @@ public final class DCRuntime implements ComparabilityProvider {
     ThreadData td = thread_to_data.get(Thread.currentThread());
     Object static_tag = static_tags.get(static_num);
     if (static_tag == null) {
-      static_tag = new Object();
+      static_tag = new UninitFieldTag();
       static_tags.set(static_num, static_tag);
     }
     td.tag_stack.push(static_tag);
@@ -965,8 +968,7 @@ public final class DCRuntime implements ComparabilityProvider {
     // If none has been allocated, allocate the space and associate it with
     // the array
     if (obj_tags == null) {
-      obj_tags = new Object[length];
-      field_map.put(arr_ref, obj_tags);
+      obj_tags = field_map.putIfAbsent(arr_ref, new Object[length]);
     }
 
     // Pop the tag off of the stack and assign it into the tag storage for
@@ -1265,7 +1267,7 @@ public final class DCRuntime implements ComparabilityProvider {
     // Map from an Object to the Daikon variable that currently holds
     // that object.
     IdentityHashMap<Object, DaikonVariableInfo> varmap =
-        new IdentityHashMap<Object, DaikonVariableInfo>(2048);
+        new IdentityHashMap<Object, DaikonVariableInfo>();
 
     for (DaikonVariableInfo dv : root.children) {
       if (dv instanceof ThisObjInfo) {
@@ -2400,11 +2402,7 @@ public final class DCRuntime implements ComparabilityProvider {
     if (obj_tags != null) {
       Object tag = obj_tags[field_num];
       if (tag == null) {
-        Throwable stack_trace = new Throwable();
-        obj_tags[field_num] =
-            tag =
-                new UninitFieldTag(
-                    obj.getClass().getName() + ":uninit-field:" + field_num, stack_trace);
+        obj_tags[field_num] = tag = uninit_field_tag(obj, field_num);
       }
       td.tag_stack.push(tag);
       if (debug_primitive.enabled()) {
@@ -2414,12 +2412,9 @@ public final class DCRuntime implements ComparabilityProvider {
     } else {
       int fcnt = num_prim_fields(obj.getClass());
       assert field_num < fcnt : obj.getClass() + " " + field_num + " " + fcnt;
-      obj_tags = new Object[fcnt];
-      field_map.put(obj, obj_tags);
+      obj_tags = field_map.putIfAbsent(obj, new Object[fcnt]);
       debug_primitive.log("push_field_tag: Created tag storage%n");
-      Throwable stack_trace = new Throwable();
-      Object tag =
-          new UninitFieldTag(obj.getClass().getName() + ":uninit-field" + field_num, stack_trace);
+      Object tag = uninit_field_tag(obj, field_num);
       obj_tags[field_num] = tag;
       td.tag_stack.push(tag);
       if (debug_primitive.enabled()) {
@@ -2429,6 +2424,22 @@ public final class DCRuntime implements ComparabilityProvider {
     if (debug_tag_frame) System.out.printf("tag stack size: %d%n", td.tag_stack.size());
   }
 
+  /**
+   * Returns a new tag for a field that is read before it is written. The tag records where that
+   * happened only if debug_primitive is enabled, because recording a stack trace is expensive.
+   *
+   * @param obj the object whose field is read
+   * @param field_num which field within obj is read
+   * @return a new tag for the field
+   */
+  private static UninitFieldTag uninit_field_tag(Object obj, int field_num) {
+    if (!debug_primitive.enabled()) {
+      return new UninitFieldTag();
+    }
+    return new UninitFieldTag(
+        obj.getClass().getName() + ":uninit-field:" + field_num, new Throwable());
+  }
+
   /**
    * Pops the tag from the top of the tag stack and stores it in the tag storage for the specified
    * field of the specified object. If tag storage was not previously allocated, it is allocated
@@ -2452,8 +2463,7 @@ public final class DCRuntime implements ComparabilityProvider {
     if (obj_tags == null) {
       int fcnt = num_prim_fields(obj.getClass());
       assert field_num < fcnt : obj.getClass() + " " + field_num + " " + fcnt;
-      obj_tags = new Object[fcnt];
-      field_map.put(obj, obj_tags);
+      obj_tags = field_map.putIfAbsent(obj, new Object[fcnt]);
       debug_primitive.log("pop_field_tag: Created tag storage%n");
     }
 
@@ -2678,8 +2688,7 @@ public final class DCRuntime implements ComparabilityProvider {
       }
     } else {
       int length = Array.getLength(arr_ref);
-      obj_tags = new Object[length];
-      field_map.put(arr_ref, obj_tags);
+      obj_tags = field_map.putIfAbsent(arr_ref, new Object[length]);
       Object tag = new UninitArrayElem();
       obj_tags[index] = tag;
       td.tag_stack.push(tag);
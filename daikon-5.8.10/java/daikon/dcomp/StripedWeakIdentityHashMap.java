@@ -0,0 +1,117 @@
+package daikon.dcomp;
+
+import daikon.plumelib.util.WeakIdentityHashMap;
+import java.util.ArrayList;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A thread-safe map that compares keys by identity and holds them weakly. The keys are divided
+ * among several {@link WeakIdentityHashMap}s, each guarded by its own lock, so that threads that
+ * access different keys rarely wait for one another.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+@SuppressWarnings("interning")
+final class StripedWeakIdentityHashMap<K, V> {
+
+  /** The number of stripes; a power of two. */
+  private static final int STRIPES = 16;
+
+  /** The stripes. Each is accessed only while holding its lock. */
+  private final List<WeakIdentityHashMap<K, V>> stripes = new ArrayList<>(STRIPES);
+
+  /** Creates an empty map. */
+  StripedWeakIdentityHashMap() {
+    for (int i = 0; i < STRIPES; i++) {
+      stripes.add(new WeakIdentityHashMap<K, V>());
+    }
+  }
+
+  /**
+   * Returns the stripe that holds the given key.
+   *
+   * @param key a key
+   * @return the stripe that holds {@code key}
+   */
+  private WeakIdentityHashMap<K, V> stripe(Object key) {
+    int h = System.identityHashCode(key);
+    return stripes.get((h ^ (h >>> 16)) & (STRIPES - 1));
+  }
+
+  /**
+   * Returns the value of the given key.
+   *
+   * @param key a key
+   * @return the value of {@code key}, or null if it has none
+   */
+  @Nullable V get(Object key) {
+    WeakIdentityHashMap<K, V> stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.get(key);
+    }
+  }
+
+  /**
+   * Returns true if the given key has a value.
+   *
+   * @param key a key
+   * @return true if {@code key} has a value
+   */
+  boolean containsKey(Object key) {
+    WeakIdentityHashMap<K, V> stripe = stripe(key);
+    synchronized (stripe) {
+      return stripe.containsKey(key);
+    }
+  }
+
+  /**
+   * Sets the value of the given key, unless it already has one.
+   *
+   * @param key a key
+   * @param value the value to give {@code key}
+   * @return the value that {@code key} has afterward: its previous value, or else {@code value}
+   */
+  V putIfAbsent(K key, V value) {
+    WeakIdentityHashMap<K, V> stripe = stripe(key);
+    synchronized (stripe) {
+      V old = stripe.get(key);
+      if (old != null) {
+        return old;
+      }
+      stripe.put(key, value);
+      return value;
+    }
+  }
+
+  /**
+   * Returns the number of keys.
+   *
+   * @return the number of keys
+   */
+  int size() {
+    int result = 0;
+    for (WeakIdentityHashMap<K, V> stripe : stripes) {
+      synchronized (stripe) {
+        result += stripe.size();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the keys. The result is a copy, which is not affected by later changes.
+   *
+   * @return the keys
+   */
+  List<K> keys() {
+    List<K> result = new ArrayList<>();
+    for (WeakIdentityHashMap<K, V> stripe : stripes) {
+      synchronized (stripe) {
+        result.addAll(stripe.keySet());
+      }
+    }
+    return result;
+  }
+}
@@ -2,7 +2,6 @@ package daikon.dcomp;
 
 import daikon.DynComp;
 import daikon.chicory.DaikonVariableInfo;
-import daikon.plumelib.util.WeakIdentityHashMap;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,25 +11,39 @@ import java.util.StringJoiner;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
- * Union-Find datastructure for Objects without the ranking optimization. All references to the
- * Objects are weak so that they will be removed from the sets when no longer referenced.
+ * Union-Find datastructure for Objects, with path compression and union by rank.
+ *
+ * <p>The tags that DynComp creates for primitive values are TagEntry objects, so each of them is
+ * its own entry, and no lookup is needed to find its set. Any other object is represented by an
+ * entry in {@link #object_map}. References to those objects are weak so that they will be removed
+ * from the sets when no longer referenced.
+ *
+ * <p>The threads of the traced program share the sets, so {@link #union} is synchronized. {@link
+ * #find} is not: it only changes the parent of an entry that is not a representative, to another
+ * entry of the same set, so a union that runs at the same time is not lost.
  */
 // TODO: Make TagEntry generic.
 @SuppressWarnings("interning")
-class TagEntry extends WeakReference<Object> {
+public class TagEntry {
 
-  /** Maps each object to its entry in the Union-Find datastructure. */
-  public static final WeakIdentityHashMap<Object, TagEntry> object_map =
-      new WeakIdentityHashMap<Object, TagEntry>();
+  /** Maps each object that is not a TagEntry to its entry in the Union-Find datastructure. */
+  public static final StripedWeakIdentityHashMap<Object, TagEntry> object_map =
+      new StripedWeakIdentityHashMap<Object, TagEntry>();
 
   // private static SimpleLog debug = new SimpleLog(false);
 
   /**
-   * Parent in the tree that represents the set for this element. If this, this entry is the
+   * Parent in the tree that represents the set for this element. If null, this entry is the
    * representative one.
    */
   private @Nullable TagEntry parent;
 
+  /**
+   * An upper bound on the height of the tree of which this entry is the root. Is not used once this
+   * entry has a parent.
+   */
+  private byte rank;
+
   /**
    * An element in the tree that this element interacted with. If A trace-points to B, then A and B
    * have directly interacted (stronger condition than being in the same comparability set).
@@ -51,49 +64,62 @@ class TagEntry extends WeakReference<Object> {
    */
   protected String tracer_loc = "";
 
-  /**
-   * Create an entry as a separate set. Does not put {@code obj} in {@link object_map}.
-   *
-   * @param obj the object to put in a new set
-   */
-  public TagEntry(Object obj) {
-    super(obj);
+  /** Create an entry as a separate set. */
+  protected TagEntry() {
     this.parent = null;
     this.tracer = null;
-    // System.out.printf("Make %s with parent %s%n", this, this.parent);
+  }
+
+  /** The entry of an object that is not a TagEntry. */
+  private static final class ObjectEntry extends TagEntry {
+
+    /** The object. */
+    private final WeakReference<Object> ref;
+
+    /**
+     * Create an entry for obj as a separate set. Does not put {@code obj} in {@link object_map}.
+     *
+     * @param obj the object to put in a new set
+     */
+    ObjectEntry(Object obj) {
+      this.ref = new WeakReference<>(obj);
+    }
+
+    @Override
+    Object get() {
+      Object result = ref.get();
+      return (result == null) ? this : result;
+    }
   }
 
   /**
-   * Create an entry and add it to an existing set. Does not put {@code obj} in {@link object_map}.
+   * Returns the object that this entry represents. If that object has been garbage collected,
+   * returns this entry instead; since the caller has no references to the object, it can't matter
+   * what is returned.
    *
-   * @param obj the object to put in a new set
-   * @param parent the parent of the new set
+   * @return the object that this entry represents
    */
-  public TagEntry(Object obj, TagEntry parent) {
-    super(obj);
-    this.parent = parent;
-    this.tracer = parent;
-    // System.out.printf("Made %s with parent p%s%n", this, this.parent);
+  Object get() {
+    return this;
   }
 
   /**
-   * Creates a set that only contains obj. Puts {@code obj} in {@link object_map}.
+   * Creates a set that only contains obj, and puts {@code obj} in {@link object_map}. If another
+   * thread has just done so, returns the set that it created.
    *
    * @param obj the object to create a new set for
    * @return a new set containing {@code obj}
    */
   public static TagEntry create(Object obj) {
-    assert !object_map.containsKey(obj);
-    TagEntry entry = new TagEntry(obj);
-    object_map.put(obj, entry);
-    return entry;
+    assert !(obj instanceof TagEntry);
+    return object_map.putIfAbsent(obj, new ObjectEntry(obj));
   }
 
   /**
    * Merge the sets that contain the specified objects. If this is the first time either of the
    * objects was seen, create an entry for it.
    */
-  public static void union(Object obj1, Object obj2) {
+  public static synchronized void union(Object obj1, Object obj2) {
     assert (obj1 != null) && (obj2 != null);
     // debug.log("union of '%s' and '%s'%n", obj1, obj2);
 
@@ -103,7 +129,15 @@ class TagEntry extends WeakReference<Object> {
     TagEntry root2 = te2.find();
 
     if (root1 != root2) {
-      root2.parent = root1;
+      // Attach the shorter tree to the root of the taller one.
+      if (root1.rank < root2.rank) {
+        root1.parent = root2;
+      } else {
+        root2.parent = root1;
+        if (root1.rank == root2.rank) {
+          root1.rank++;
+        }
+      }
       if (DynComp.trace_file != null) {
         te1.rootMe();
         te2.rootMe();
@@ -117,6 +151,9 @@ class TagEntry extends WeakReference<Object> {
   public static TagEntry get_entry(Object obj) {
 
     assert obj != null;
+    if (obj instanceof TagEntry) {
+      return (TagEntry) obj;
+    }
     TagEntry entry = object_map.get(obj);
     if (entry == null) {
       entry = create(obj);
@@ -124,6 +161,19 @@ class TagEntry extends WeakReference<Object> {
     return entry;
   }
 
+  /**
+   * Returns the entry associated with obj, or null if there is none.
+   *
+   * @param obj an object
+   * @return the entry associated with {@code obj}, or null if there is none
+   */
+  private static @Nullable TagEntry find_entry(Object obj) {
+    if (obj instanceof TagEntry) {
+      return (TagEntry) obj;
+    }
+    return object_map.get(obj);
+  }
+
   /**
    * Find the TagEntry that is the representative of this set. As part of finding the
    * representative, the path from the specified entry to the representative is compressed.
@@ -160,25 +210,28 @@ class TagEntry extends WeakReference<Object> {
    */
   public static Object find(Object obj) {
     assert obj != null;
-    TagEntry entry = object_map.get(obj);
+    TagEntry entry = find_entry(obj);
     if (entry == null) {
       return obj;
     }
-    TagEntry root = entry.find();
-
     // It shouldn't matter that this isn't a member of the set, only that
     // it is unique.
-    // return root;
-
-    // If the root object has been garbage collected, just return
-    // a reference to the tag instead.  Since the caller has no references
-    // to the root, it can't matter what we returned.
-    // TODO: In that case, why not return obj?
-    Object root_ref = root.get();
-    if (root_ref == null) {
-      root_ref = root;
+    return entry.find().get();
+  }
+
+  /**
+   * Returns the number of parent links from the entry of an object to the representative of its
+   * set, without compressing the path. Accessor for testing only.
+   *
+   * @param obj an object
+   * @return the depth of {@code obj} in the tree of its set, or 0 if it has no entry
+   */
+  public static int depth(Object obj) {
+    int result = 0;
+    for (TagEntry entry = find_entry(obj); entry != null; entry = entry.parent) {
+      result++;
     }
-    return root_ref;
+    return Math.max(0, result - 1);
   }
 
   ///////////////////////////////////////////////////////////////////////////
@@ -203,7 +256,7 @@ class TagEntry extends WeakReference<Object> {
    * @return the canonical member of this object's set (based on tracers), or possibly null
    */
   public static @Nullable Object tracer_find(Object obj) {
-    TagEntry entry = object_map.get(obj);
+    TagEntry entry = find_entry(obj);
     if (entry == null) {
       return obj;
     }
@@ -211,24 +264,15 @@ class TagEntry extends WeakReference<Object> {
     if (tracer == null) {
       return null;
     }
-    Object tr_ref = tracer.get();
-    if (tr_ref == null) {
-      tr_ref = tracer;
-    }
-    return tr_ref;
+    return tracer.get();
   }
 
   public static Object troot_find(Object obj) {
-    TagEntry entry = object_map.get(obj);
+    TagEntry entry = find_entry(obj);
     if (entry == null) {
       return obj;
     }
-    TagEntry troot = entry.getTraceRoot();
-    Object tr_ref = troot.get();
-    if (tr_ref == null) {
-      tr_ref = troot;
-    }
-    return tr_ref;
+    return entry.getTraceRoot().get();
   }
 
   /**
@@ -328,7 +372,8 @@ class TagEntry extends WeakReference<Object> {
   ///
 
   /**
-   * Returns each of the sets with elements in each set on a separate line.
+   * Returns each of the sets with elements in each set on a separate line. Only the objects in
+   * {@link #object_map} are included, and not the tags that DynComp creates for primitive values.
    *
    * @return a verbose printed representation of this
    */
@@ -338,7 +383,7 @@ class TagEntry extends WeakReference<Object> {
 
     // Fill sets from object_map by placing every object in an ArrayList
     // whose key is its root.
-    for (Object obj : object_map.keySet()) {
+    for (Object obj : object_map.keys()) {
       Object rep = find(obj);
       List<Object> set = sets.computeIfAbsent(rep, __ -> new ArrayList<Object>());
       set.add(obj);
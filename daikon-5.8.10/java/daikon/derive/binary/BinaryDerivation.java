@@ -5,6 +5,7 @@ import daikon.VarInfo;
 import daikon.derive.Derivation;
 import daikon.derive.ValueAndModified;
 import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.qual.Pure;
 import org.checkerframework.dataflow.qual.SideEffectFree;
 import org.plumelib.util.ArraysPlume;
@@ -22,6 +23,26 @@ public abstract class BinaryDerivation extends Derivation {
   /** Original variable 2. */
   public VarInfo base2;
 
+  // A derived value depends only on the values and modified bits of its
+  // bases.  The values are interned, so if they are the same objects as on
+  // the previous sample, so is the result, which is reused rather than
+  // recomputed and interned again.
+
+  /** The value of base1 at the previous call to computeValueAndModifiedImpl. */
+  private transient @Nullable Object last_value1 = null;
+
+  /** The value of base2 at the previous call to computeValueAndModifiedImpl. */
+  private transient @Nullable Object last_value2 = null;
+
+  /** The modified bit of base1 at the previous call to computeValueAndModifiedImpl. */
+  private transient int last_mod1 = 0;
+
+  /** The modified bit of base2 at the previous call to computeValueAndModifiedImpl. */
+  private transient int last_mod2 = 0;
+
+  /** The result of the previous call to computeValueAndModifiedImpl, or null. */
+  private transient @Nullable ValueAndModified last_result = null;
+
   /**
    * Create a new BinaryDerivation from two varinfos.
    *
@@ -88,7 +109,22 @@ public abstract class BinaryDerivation extends Derivation {
       return ValueAndModified.MISSING_FLOW;
     }
 
-    return computeValueAndModifiedImpl(vt);
+    Object value1 = base1.getValueOrNull(vt);
+    Object value2 = base2.getValueOrNull(vt);
+    if (last_result != null
+        && value1 == last_value1
+        && value2 == last_value2
+        && source_mod1 == last_mod1
+        && source_mod2 == last_mod2) {
+      return last_result;
+    }
+    ValueAndModified result = computeValueAndModifiedImpl(vt);
+    last_value1 = value1;
+    last_value2 = value2;
+    last_mod1 = source_mod1;
+    last_mod2 = source_mod2;
+    last_result = result;
+    return result;
   }
 
   /** Actual implementation once mods are handled. */
@@ -9,7 +9,6 @@ import org.checkerframework.checker.interning.qual.Interned;
 import java.util.logging.Logger;
 import daikon.*;
 import daikon.derive.*;
-import org.plumelib.util.Intern;
 import org.plumelib.util.UtilPlume;
 
 public final class SequenceFloatSubscript extends BinaryDerivation {
@@ -98,7 +97,7 @@ public final class SequenceFloatSubscript extends BinaryDerivation {
         (((mod1 == ValueTuple.UNMODIFIED) && (mod2 == ValueTuple.UNMODIFIED))
          ? ValueTuple.UNMODIFIED
          : ValueTuple.MODIFIED);
-    return new ValueAndModified(Intern.internedDouble(val), mod);
+    return new ValueAndModified(ValueTuple.internedDouble(val), mod);
   }
 
   @Override
@@ -9,7 +9,6 @@ import org.checkerframework.checker.interning.qual.Interned;
 import java.util.logging.Logger;
 import daikon.*;
 import daikon.derive.*;
-import org.plumelib.util.Intern;
 import org.plumelib.util.UtilPlume;
 
 public final class SequenceStringSubscript extends BinaryDerivation {
@@ -8,7 +8,6 @@ import org.checkerframework.checker.interning.qual.Interned;
 import daikon.*;
 import daikon.derive.*;
 import daikon.derive.binary.*;
-import org.plumelib.util.Intern;
 
 // originally from pass1.
 /**
@@ -81,7 +80,7 @@ public final class SequenceInitial extends UnaryDerivation {
         return ValueAndModified.MISSING_NONSENSICAL;
       }
       int real_index = (index < 0 ? val_array.length + index : index);
-      return new ValueAndModified(Intern.internedLong(val_array[real_index]), source_mod);
+      return new ValueAndModified(ValueTuple.internedLong(val_array[real_index]), source_mod);
     } else {
       @Interned Object[] val_array = (@Interned Object[]) val;
       if (val_array.length < minLength) {
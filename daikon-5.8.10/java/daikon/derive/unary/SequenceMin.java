@@ -7,7 +7,6 @@ import daikon.derive.ValueAndModified;
 import org.checkerframework.dataflow.qual.Pure;
 import org.checkerframework.dataflow.qual.SideEffectFree;
 import org.plumelib.util.ArraysPlume;
-import org.plumelib.util.Intern;
 
 // like SequenceMax; if one changes, change the other, too
 public final class SequenceMin extends UnaryDerivation {
@@ -40,13 +39,14 @@ public final class SequenceMin extends UnaryDerivation {
       if (val_array.length == 0) {
         return ValueAndModified.MISSING_NONSENSICAL;
       }
-      return new ValueAndModified(Intern.internedLong(ArraysPlume.min(val_array)), source_mod);
+      return new ValueAndModified(ValueTuple.internedLong(ArraysPlume.min(val_array)), source_mod);
     } else if (val instanceof double[]) {
       double[] val_array = (double[]) val;
       if (val_array.length == 0) {
         return ValueAndModified.MISSING_NONSENSICAL;
       }
-      return new ValueAndModified(Intern.internedDouble(ArraysPlume.min(val_array)), source_mod);
+      return new ValueAndModified(
+          ValueTuple.internedDouble(ArraysPlume.min(val_array)), source_mod);
 
     } else {
       return ValueAndModified.MISSING_NONSENSICAL;
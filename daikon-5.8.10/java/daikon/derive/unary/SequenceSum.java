@@ -5,7 +5,6 @@ import daikon.VarInfo;
 import daikon.derive.Derivation;
 import daikon.derive.ValueAndModified;
 import org.checkerframework.dataflow.qual.Pure;
-import org.plumelib.util.Intern;
 
 public final class SequenceSum extends UnaryDerivation {
   // We are Serializable, so we specify a version to allow changes to
@@ -38,14 +37,14 @@ public final class SequenceSum extends UnaryDerivation {
       for (int i = 0; i < val_array.length; i++) {
         result += val_array[i];
       }
-      return new ValueAndModified(Intern.internedLong(result), source_mod);
+      return new ValueAndModified(ValueTuple.internedLong(result), source_mod);
     } else if (val instanceof double[]) {
       double[] val_array = (double[]) val;
       double result = 0;
       for (int i = 0; i < val_array.length; i++) {
         result += val_array[i];
       }
-      return new ValueAndModified(Intern.internedDouble(result), source_mod);
+      return new ValueAndModified(ValueTuple.internedDouble(result), source_mod);
 
     } else {
       return ValueAndModified.MISSING_NONSENSICAL;
@@ -5,6 +5,7 @@ import daikon.VarInfo;
 import daikon.derive.Derivation;
 import daikon.derive.ValueAndModified;
 import org.checkerframework.checker.lock.qual.GuardSatisfied;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.qual.Pure;
 import org.checkerframework.dataflow.qual.SideEffectFree;
 import org.plumelib.util.ArraysPlume;
@@ -17,6 +18,20 @@ public abstract class UnaryDerivation extends Derivation {
 
   public VarInfo base;
 
+  // A derived value depends only on the values and modified bits of its
+  // bases.  The values are interned, so if they are the same objects as on
+  // the previous sample, so is the result, which is reused rather than
+  // recomputed and interned again.
+
+  /** The value of the base at the previous call to computeValueAndModifiedImpl. */
+  private transient @Nullable Object last_value = null;
+
+  /** The modified bit of the base at the previous call to computeValueAndModifiedImpl. */
+  private transient int last_mod = 0;
+
+  /** The result of the previous call to computeValueAndModifiedImpl, or null. */
+  private transient @Nullable ValueAndModified last_result = null;
+
   protected UnaryDerivation(VarInfo vi) {
     base = vi;
   }
@@ -48,7 +63,15 @@ public abstract class UnaryDerivation extends Derivation {
       return ValueAndModified.MISSING_FLOW;
     }
 
-    return computeValueAndModifiedImpl(vt);
+    Object value = base.getValueOrNull(vt);
+    if (last_result != null && value == last_value && source_mod == last_mod) {
+      return last_result;
+    }
+    ValueAndModified result = computeValueAndModifiedImpl(vt);
+    last_value = value;
+    last_mod = source_mod;
+    last_result = result;
+    return result;
   }
 
   /** Actual implementation once mods are handled. */
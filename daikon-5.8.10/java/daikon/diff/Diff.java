@@ -2,6 +2,7 @@ package daikon.diff;
 
 import daikon.Daikon;
 import daikon.FileIO;
+import daikon.InvFile;
 import daikon.Ppt;
 import daikon.PptConditional;
 import daikon.PptMap;
@@ -23,6 +24,7 @@ import java.util.NavigableSet;
 import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import org.checkerframework.checker.initialization.qual.UnknownInitialization;
 import org.checkerframework.checker.nullness.qual.EnsuresNonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -31,6 +33,7 @@ import org.plumelib.util.CollectionsPlume;
 import org.plumelib.util.FilesPlume;
 import org.plumelib.util.OrderedPairIterator;
 import org.plumelib.util.Pair;
+import org.plumelib.util.RegexUtil;
 import org.plumelib.util.StringsPlume;
 
 /**
@@ -89,6 +92,9 @@ public final class Diff {
   private boolean examineAllPpts;
   private boolean ignoreNumberedExits;
 
+  /** If non-null, only program points whose names match this are compared. */
+  private @Nullable Pattern pptRegexp = null;
+
   public Diff() {
     this(false, false);
   }
@@ -167,6 +173,7 @@ public final class Diff {
     @ClassGetName String invSortComparator1Classname = null;
     @ClassGetName String invSortComparator2Classname = null;
     @ClassGetName String invPairComparatorClassname = null;
+    Pattern pptRegexp = null;
 
     boolean optionSelected = false;
 
@@ -181,6 +188,7 @@ public final class Diff {
           new LongOpt(INV_PAIR_COMPARATOR_SWITCH, LongOpt.REQUIRED_ARGUMENT, null, 0),
           new LongOpt(IGNORE_UNJUSTIFIED_SWITCH, LongOpt.NO_ARGUMENT, null, 0),
           new LongOpt(IGNORE_NUMBERED_EXITS_SWITCH, LongOpt.NO_ARGUMENT, null, 0),
+          new LongOpt(Daikon.ppt_regexp_SWITCH, LongOpt.REQUIRED_ARGUMENT, null, 0),
         };
 
     Getopt g =
@@ -233,6 +241,24 @@ public final class Diff {
           } else if (IGNORE_NUMBERED_EXITS_SWITCH.equals(optionName)) {
             ignoreNumberedExits = true;
             break;
+          } else if (Daikon.ppt_regexp_SWITCH.equals(optionName)) {
+            if (pptRegexp != null) {
+              throw new Error(
+                  "multiple --"
+                      + Daikon.ppt_regexp_SWITCH
+                      + " regular expressions supplied on command line");
+            }
+            String regexpString = Daikon.getOptarg(g);
+            if (!RegexUtil.isRegex(regexpString)) {
+              throw new Daikon.UserError(
+                  "Bad regexp "
+                      + regexpString
+                      + " for "
+                      + Daikon.ppt_regexp_SWITCH
+                      + ": "
+                      + RegexUtil.regexError(regexpString));
+            }
+            pptRegexp = Pattern.compile(regexpString);
           } else {
             throw new RuntimeException("Unknown long option received: " + optionName);
           }
@@ -340,6 +366,7 @@ public final class Diff {
             invSortComparator2Classname,
             invPairComparatorClassname,
             defaultComparator);
+    diff.pptRegexp = pptRegexp;
 
     if (!diff.invSortComparator1
             .getClass()
@@ -495,6 +522,12 @@ public final class Diff {
    * @throws ClassNotFoundException if an object in the serialized file has an unloadable class
    */
   private InvMap readInvMap(File file) throws IOException, ClassNotFoundException {
+    if (InvFile.is_inv_file(file)) {
+      Pattern regexp = pptRegexp;
+      return convertToInvMap(
+          FileIO.read_serialized_pptmap(
+              file, false, (regexp == null) ? null : name -> regexp.matcher(name).find()));
+    }
     Object o = FilesPlume.readObject(file);
     if (o instanceof InvMap) {
       return (InvMap) o;
@@ -524,6 +557,9 @@ public final class Diff {
       if (ignoreNumberedExits && ppt.ppt_name.isNumberedExitPoint()) {
         continue;
       }
+      if (pptRegexp != null && !pptRegexp.matcher(ppt.name()).find()) {
+        continue;
+      }
 
       // List<Invariant> invs = ppt.getInvariants();
       List<Invariant> invs = CollectionsPlume.sortList(ppt.getInvariants(), PptTopLevel.icfp);
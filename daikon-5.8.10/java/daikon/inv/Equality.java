@@ -1,6 +1,7 @@
 package daikon.inv;
 
 import daikon.Debug;
+import daikon.FileIO;
 import daikon.Global;
 import daikon.PptSlice;
 import daikon.PptTopLevel;
@@ -11,8 +12,10 @@ import daikon.VarInfo;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.logging.Level;
@@ -391,9 +394,40 @@ public final /*(at)Interned*/ class Equality extends Invariant {
    *
    * @param vt the newly-observed sample
    * @param count the number of times the sample is seen
-   * @return a List of VarInfos that do not fit into this set anymore
+   * @return a List of VarInfos that do not fit into this set anymore, in index order
    */
   public List<VarInfo> add(ValueTuple vt, int count) {
+    Map<Object, List<VarInfo>> split = split(vt, count);
+    if (split == null) {
+      return Collections.emptyList();
+    }
+    List<VarInfo> result = new ArrayList<>();
+    for (List<VarInfo> group : split.values()) {
+      result.addAll(group);
+    }
+    result.sort(VarInfo.IndexComparator.theInstance);
+    return result;
+  }
+
+  /**
+   * Key under which {@link #split} groups the variables that are missing from the sample (but not
+   * because an array index was out of bounds).
+   */
+  public static final Object MISSING = new Object();
+
+  /**
+   * Like {@link #add}, but also partitions the variables that do not fit into this set anymore by
+   * their values in the sample, in the same pass over the set. Each group becomes a new equality
+   * set. Variables that are missing are grouped under {@link #MISSING}, and each variable that is
+   * missing because an array index was out of bounds is in a group of its own, under the variable
+   * itself (since it no longer makes sense and certainly shouldn't be equal to anything else).
+   *
+   * @param vt the newly-observed sample
+   * @param count the number of times the sample is seen
+   * @return the variables that do not fit into this set anymore, grouped by value, with each group
+   *     in index order; or null if all of the variables still fit
+   */
+  public @Nullable Map<Object, List<VarInfo>> split(ValueTuple vt, int count) {
     // Need to handle specially if leader is missing.
     VarInfo leader = leader();
     Object leaderValue = leader.getValueOrNull(vt);
@@ -404,7 +438,8 @@ public final /*(at)Interned*/ class Equality extends Invariant {
       numSamples += count;
     }
 
-    List<VarInfo> result = new ArrayList<>();
+    // Allocated at the first variable that splits off.
+    Map<Object, List<VarInfo>> result = null;
     if (debug.isLoggable(Level.FINE)) {
       debug.fine("Doing add at " + this.ppt.parent.name() + " for " + this);
     }
@@ -416,16 +451,7 @@ public final /*(at)Interned*/ class Equality extends Invariant {
       assert vi.comparableNWay(leader);
       Object viValue = vi.getValueOrNull(vt);
       int viMod = vi.getModified(vt);
-      // The following is possible because values are interned.  The
-      // test also takes into account missing values, since they are
-      // null.
-      if ((leaderValue == viValue)
-          && (leaderMod == viMod)
-          && !leaderOutOfBounds
-          && !vi.missingOutOfBounds()
-          // If the values are NaN, treat them as different.
-          && !((leaderValue instanceof Double) && ((Double) leaderValue).isNaN())) {
-        // The values are the same.
+      if (same_as_leader(vi, viValue, viMod, leaderValue, leaderMod, leaderOutOfBounds)) {
         continue;
       }
       // The values differ.  Remove this from the equality set.
@@ -455,13 +481,84 @@ public final /*(at)Interned*/ class Equality extends Invariant {
                 + "]");
       }
 
-      result.add(vi);
+      Object key;
+      if (vi.missingOutOfBounds()) {
+        key = vi;
+      } else if (vt.isMissing(vi)) {
+        key = MISSING;
+      } else {
+        key = vi.getValue(vt);
+        if (key == null) {
+          throw new Error(
+              String.format(
+                  "null value for variable %s, mod=%d at ppt %s (line %d)",
+                  vi.name(), viMod, ppt.parent.name(), FileIO.get_linenum()));
+        }
+      }
+      if (result == null) {
+        result = new HashMap<>();
+      }
+      result.computeIfAbsent(key, __ -> new ArrayList<VarInfo>()).add(vi);
       i.remove();
     }
 
     return result;
   }
 
+  /**
+   * Returns true if {@link #add} would remove any variable from this set; that is, if the sample
+   * does not give all of the variables the same value. Does not change this set.
+   *
+   * @param vt the sample
+   * @return true if the variables of this set do not all have the same value in the sample
+   */
+  public boolean would_split(ValueTuple vt) {
+    VarInfo leader = leader();
+    Object leaderValue = leader.getValueOrNull(vt);
+    int leaderMod = leader.getModified(vt);
+    boolean leaderOutOfBounds = leader.missingOutOfBounds();
+    for (VarInfo vi : vars) {
+      if (vi == leader) {
+        continue;
+      }
+      Object viValue = vi.getValueOrNull(vt);
+      int viMod = vi.getModified(vt);
+      if (!same_as_leader(vi, viValue, viMod, leaderValue, leaderMod, leaderOutOfBounds)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if a variable has the same value as the leader, so that it remains in this set.
+   *
+   * @param vi the variable
+   * @param viValue the value of vi, or null if it is missing
+   * @param viMod the modified bit of vi
+   * @param leaderValue the value of the leader, or null if it is missing
+   * @param leaderMod the modified bit of the leader
+   * @param leaderOutOfBounds whether the leader is missing because an array index was out of bounds
+   * @return true if vi has the same value as the leader
+   */
+  private static boolean same_as_leader(
+      VarInfo vi,
+      @Nullable Object viValue,
+      int viMod,
+      @Nullable Object leaderValue,
+      int leaderMod,
+      boolean leaderOutOfBounds) {
+    // The following is possible because values are interned.  The
+    // test also takes into account missing values, since they are
+    // null.
+    return (leaderValue == viValue)
+        && (leaderMod == viMod)
+        && !leaderOutOfBounds
+        && !vi.missingOutOfBounds()
+        // If the values are NaN, treat them as different.
+        && !((leaderValue instanceof Double) && ((Double) leaderValue).isNaN());
+  }
+
   //  This method isn't going to be called, but it's declared abstract in Invariant.
   @Override
   protected Invariant resurrect_done(int[] permutation) {
@@ -9,6 +9,7 @@ import daikon.PptSlice;
 import daikon.PptSlice1;
 import daikon.PptSlice2;
 import daikon.PrintInvariants;
+import daikon.SampleBlock;
 import daikon.ValueTuple;
 import daikon.VarComparability;
 import daikon.VarComparabilityImplicit;
@@ -477,9 +478,14 @@ public abstract class Invariant implements Serializable, Cloneable // but don't
 
   /**
    * Marks the invariant as falsified. Should always be called rather than just setting the flag so
-   * that we can track when this happens.
+   * that we can track when this happens. Records the invariant with its program point (see {@link
+   * daikon.PptTopLevel#add_falsified}), so that only the falsified invariants need be examined
+   * after a sample.
    */
   public void falsify(@NonPrototype Invariant this) {
+    if (!falsified) {
+      ppt.parent.add_falsified(this);
+    }
     falsified = true;
     if (logOn()) log("Destroyed %s", format());
   }
@@ -1978,6 +1984,51 @@ public abstract class Invariant implements Serializable, Cloneable // but don't
     }
   }
 
+  /**
+   * Returns true if {@link #add_batch} can add many samples to this invariant in one call. The
+   * state of such an invariant depends only on the samples that it has seen, not on the state of
+   * its program point, so it can be given a run of samples independently of the other invariants.
+   *
+   * @return true if this invariant implements {@link #add_batch}
+   */
+  public boolean supports_batch(@NonPrototype Invariant this) {
+    return false;
+  }
+
+  /**
+   * Returns true if a sample that does not falsify this invariant never changes it, as for {@code x
+   * != 0}. Such an invariant can be given samples past the one that falsifies another invariant;
+   * {@link daikon.PptTopLevel#add_bottom_up_block} relies on that to add a block of samples to the
+   * invariants that suppress others.
+   *
+   * @return true if only falsification changes this invariant
+   */
+  public boolean is_stateless(@NonPrototype Invariant this) {
+    return false;
+  }
+
+  /**
+   * Adds samples {@code from} (inclusive) to {@code to} (exclusive) of the block to this invariant,
+   * one at a time, until one of them falsifies it. None of the invariant's variables may be missing
+   * in those samples. Does not call {@link #falsify}; that is done by the caller.
+   *
+   * <p>This implementation passes each sample to {@link #add_sample}. Invariants for which {@link
+   * #supports_batch} returns true override it with a loop over the block's columns.
+   *
+   * @param block the samples
+   * @param from the index of the first sample to add
+   * @param to the index after the last sample to add
+   * @return the index of the sample that falsified this invariant, or -1 if none did
+   */
+  public int add_batch(@NonPrototype Invariant this, SampleBlock block, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (add_sample(block.get(i), 1) == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   /** Check the rep invariants of this. */
   public void repCheck(@Prototype Invariant this) {}
 
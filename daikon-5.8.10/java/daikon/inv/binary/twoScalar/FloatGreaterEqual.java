@@ -186,6 +186,11 @@ public final class FloatGreaterEqual extends TwoFloat {
     return check_modified(v1, v2, count);
   }
 
+  @Override
+  public boolean is_stateless() {
+    return true;
+  }
+
   // This is very tricky, because whether two variables are equal should
   // presumably be transitive, but it's not guaranteed to be so when using
   // this method and not dropping out all variables whose values are ever
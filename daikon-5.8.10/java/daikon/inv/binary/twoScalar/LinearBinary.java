@@ -157,6 +157,19 @@ public class LinearBinary extends TwoScalar {
     return core.add_modified(x, y, count);
   }
 
+  @Override
+  public int add_modified_batch(
+      long[] x, long[] y, int[] mods, int from, int to, int count) {
+    // An unmodified pair does not change the line (add_unmodified is not overridden).
+    for (int i = from; i < to; i++) {
+      if (mods[i] != ValueTuple.UNMODIFIED
+          && core.add_modified(x[i], y[i], count) == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   @Override
   public boolean enoughSamples(@GuardSatisfied LinearBinary this) {
     return core.enoughSamples();
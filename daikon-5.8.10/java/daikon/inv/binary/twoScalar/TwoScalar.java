@@ -214,6 +214,46 @@ public abstract class TwoScalar extends BinaryInvariant {
     return InvariantStatus.NO_CHANGE;
   }
 
+  @Override
+  public boolean supports_batch() {
+    return true;
+  }
+
+  @Override
+  public int add_batch(SampleBlock block, int from, int to) {
+    int[] mods = block.mods(ppt.var_infos[0]);
+    return add_modified_batch(block.longs(var1()), block.longs(var2()), mods, from, to, 1);
+  }
+
+  /**
+   * Adds the pairs {@code (v1[i], v2[i])}, for {@code i} from {@code from} to {@code to-1}, to the
+   * invariant, one at a time, until one of them falsifies it. A pair whose entry in {@code mods}
+   * is {@link ValueTuple#UNMODIFIED} is passed to {@link #add_unmodified}, and any other pair to
+   * {@link #add_modified}. Subclasses can override this with a loop over their own {@code
+   * add_modified}, which the JIT compiler can optimize better than this one.
+   *
+   * @param v1 the values of the first variable (after any swap)
+   * @param v2 the values of the second variable (after any swap)
+   * @param mods the modified bit of each pair
+   * @param from the index of the first pair to add
+   * @param to the index after the last pair to add
+   * @param count how many identical samples each pair represents
+   * @return the index of the pair that falsified the invariant, or -1 if none did
+   */
+  public int add_modified_batch(
+      long[] v1, long[] v2, int[] mods, int from, int to, int count) {
+    for (int i = from; i < to; i++) {
+      InvariantStatus status =
+          (mods[i] == ValueTuple.UNMODIFIED)
+              ? add_unmodified(v1[i], v2[i], count)
+              : add_modified(v1[i], v2[i], count);
+      if (status == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   /** Returns a representation of the class. This includes the classname, variables, and swap state. */
   @Override
   public String repr(@GuardSatisfied TwoScalar this) {
@@ -133,4 +133,44 @@ public abstract class ThreeScalar extends TernaryInvariant {
   public InvariantStatus add_unmodified(long v1, long v2, long v3, int count) {
     return InvariantStatus.NO_CHANGE;
   }
+
+  @Override
+  public boolean supports_batch() {
+    return true;
+  }
+
+  @Override
+  public int add_batch(SampleBlock block, int from, int to) {
+    return add_modified_batch(block.longs(var1()), block.longs(var2()), block.longs(var3()),
+                              block.mods(var1()), from, to, 1);
+  }
+
+  /**
+   * Adds the triples {@code (v1[i], v2[i], v3[i])}, for {@code i} from {@code from} to {@code
+   * to-1}, to the invariant, one at a time, until one of them falsifies it. A triple whose entry in
+   * {@code mods} is {@link ValueTuple#UNMODIFIED} is passed to {@link #add_unmodified}, and any
+   * other triple to {@link #add_modified}.
+   *
+   * @param v1 the values of the first variable
+   * @param v2 the values of the second variable
+   * @param v3 the values of the third variable
+   * @param mods the modified bit of each triple
+   * @param from the index of the first triple to add
+   * @param to the index after the last triple to add
+   * @param count how many identical samples each triple represents
+   * @return the index of the triple that falsified the invariant, or -1 if none did
+   */
+  public int add_modified_batch(long[] v1, long[] v2, long[] v3, int[] mods,
+                                int from, int to, int count) {
+    for (int i = from; i < to; i++) {
+      InvariantStatus status =
+          (mods[i] == ValueTuple.UNMODIFIED)
+              ? add_unmodified(v1[i], v2[i], v3[i], count)
+              : add_modified(v1[i], v2[i], v3[i], count);
+      if (status == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
 }
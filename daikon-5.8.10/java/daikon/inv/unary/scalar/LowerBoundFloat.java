@@ -173,6 +173,18 @@ public class LowerBoundFloat extends SingleFloat {
 
   }
 
+  @Override
+  public int add_modified_batch(double[] values, int[] mods, int from, int to, int count) {
+    // An unmodified value does not change the bound (add_unmodified is not overridden).
+    for (int i = from; i < to; i++) {
+      if (mods[i] != ValueTuple.UNMODIFIED
+          && core.add_modified(values[i], count) == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   @Override
   public InvariantStatus check_modified(double value, int count) {
 
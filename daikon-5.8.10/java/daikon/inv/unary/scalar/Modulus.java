@@ -1,6 +1,7 @@
 package daikon.inv.unary.scalar;
 
 import daikon.PptSlice;
+import daikon.ValueTuple;
 import daikon.VarInfo;
 import daikon.derive.unary.SequenceLength;
 import daikon.inv.DiscardCode;
@@ -210,6 +211,18 @@ public class Modulus extends SingleScalar {
     return InvariantStatus.NO_CHANGE;
   }
 
+  @Override
+  public int add_modified_batch(long[] values, int[] mods, int from, int to, int count) {
+    // An unmodified value does not change the modulus (add_unmodified is not overridden).
+    for (int i = from; i < to; i++) {
+      if (mods[i] != ValueTuple.UNMODIFIED
+          && add_modified(values[i], count) == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   @Override
   protected double computeConfidence() {
     if (modulus == 1) {
@@ -1,5 +1,6 @@
 package daikon.inv.unary.scalar;
 
+import daikon.ParallelInference;
 import daikon.PptSlice;
 import daikon.VarInfo;
 import daikon.inv.Invariant;
@@ -7,6 +8,7 @@ import daikon.inv.InvariantStatus;
 import daikon.inv.OutputFormat;
 import java.util.NavigableSet;
 import java.util.TreeSet;
+import org.checkerframework.checker.interning.qual.Interned;
 import org.checkerframework.checker.lock.qual.GuardSatisfied;
 import org.checkerframework.dataflow.qual.Pure;
 import org.checkerframework.dataflow.qual.SideEffectFree;
@@ -169,7 +171,12 @@ public class NonModulus extends SingleScalar {
   // XXX have to deal with flowing this; maybe it should live at all ppts?
   @Override
   public InvariantStatus add_modified(long value, int count) {
-    if (elements.add(Intern.internedLong(value))
+    @Interned Long interned;
+    // The interning tables are shared by all program points.
+    synchronized (ParallelInference.lock) {
+      interned = Intern.internedLong(value);
+    }
+    if (elements.add(interned)
         && results_accurate
         && !no_result_yet
         && (MathPlume.modNonnegative(value, modulus) == remainder)) results_accurate = false;
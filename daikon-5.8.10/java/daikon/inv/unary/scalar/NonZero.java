@@ -144,6 +144,11 @@ public class NonZero extends SingleScalar {
     return status;
   }
 
+  @Override
+  public boolean is_stateless() {
+    return true;
+  }
+
   /** Returns whether or not the variable is a pointer. */
   @Pure
   private boolean is_pointer(@GuardSatisfied NonZero this) {
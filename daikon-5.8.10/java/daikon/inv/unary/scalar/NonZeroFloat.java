@@ -134,6 +134,11 @@ public class NonZeroFloat extends SingleFloat {
     return status;
   }
 
+  @Override
+  public boolean is_stateless() {
+    return true;
+  }
+
   /** Returns whether or not the variable is a pointer. */
   @Pure
   private boolean is_pointer(@GuardSatisfied NonZeroFloat this) {
@@ -500,6 +500,18 @@ public String format_csharp_contract(@GuardSatisfied OneOfScalar this) {
     return runValue(a, count, false);
   }
 
+  @Override
+  public int add_modified_batch(long[] values, int[] mods, int from, int to, int count) {
+    // An unmodified value is not recorded (add_unmodified is not overridden).
+    for (int i = from; i < to; i++) {
+      if (mods[i] != ValueTuple.UNMODIFIED
+          && runValue(values[i], count, true) == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   private InvariantStatus runValue(long v, int count, boolean mutate) {
     InvariantStatus status;
     if (mutate) {
@@ -99,6 +99,11 @@ public abstract class RangeInt extends SingleScalar {
     return check_modified(x, count);
   }
 
+  @Override
+  public boolean is_stateless() {
+    return true;
+  }
+
   @Override
   protected double computeConfidence() {
     return CONFIDENCE_JUSTIFIED;
@@ -1,6 +1,8 @@
 package daikon.inv.unary.scalar;
 
 import daikon.PptSlice;
+import daikon.SampleBlock;
+import daikon.ValueTuple;
 import daikon.VarInfo;
 import daikon.inv.InvariantStatus;
 import daikon.inv.unary.UnaryInvariant;
@@ -75,6 +77,44 @@ public abstract class SingleFloat extends UnaryInvariant {
     return InvariantStatus.NO_CHANGE;
   }
 
+  @Override
+  public boolean supports_batch() {
+    return true;
+  }
+
+  @Override
+  public int add_batch(SampleBlock block, int from, int to) {
+    VarInfo v = var();
+    return add_modified_batch(block.doubles(v), block.mods(v), from, to, 1);
+  }
+
+  /**
+   * Adds {@code values[from]} through {@code values[to-1]} to the invariant, one at a time, until
+   * one of them falsifies it. A value whose entry in {@code mods} is {@link ValueTuple#UNMODIFIED}
+   * is passed to {@link #add_unmodified}, and any other value to {@link #add_modified}. Subclasses
+   * can override this with a loop over their own {@code add_modified}, which the JIT compiler can
+   * optimize better than this one.
+   *
+   * @param values the values of the variable
+   * @param mods the modified bit of each value
+   * @param from the index of the first value to add
+   * @param to the index after the last value to add
+   * @param count how many identical samples each value represents
+   * @return the index of the value that falsified the invariant, or -1 if none did
+   */
+  public int add_modified_batch(double[] values, int[] mods, int from, int to, int count) {
+    for (int i = from; i < to; i++) {
+      InvariantStatus status =
+          (mods[i] == ValueTuple.UNMODIFIED)
+              ? add_unmodified(values[i], count)
+              : add_modified(values[i], count);
+      if (status == InvariantStatus.FALSIFIED) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   /**
    * Presents a sample to the invariant. Returns whether the sample is consistent with the
    * invariant. Does not change the state of the invariant.
@@ -239,7 +239,10 @@ public class CommonSequence extends SingleScalarSequence {
 
     intersect = ArraysPlume.subarray(tmp, 0, size);
 
-    intersect = Intern.intern(intersect);
+    // The interning tables are shared by all program points.
+    synchronized (ParallelInference.lock) {
+      intersect = Intern.intern(intersect);
+    }
     elts++;
     return InvariantStatus.NO_CHANGE;
   }
@@ -113,6 +113,11 @@ public abstract class EltRangeInt extends SingleScalarSequence {
     return check_modified(x, count);
   }
 
+  @Override
+  public boolean is_stateless() {
+    return true;
+  }
+
   @Override
   protected double computeConfidence() {
     return CONFIDENCE_JUSTIFIED;
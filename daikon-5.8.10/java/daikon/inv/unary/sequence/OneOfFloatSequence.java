@@ -124,8 +124,11 @@ public final class OneOfFloatSequence extends SingleFloatSequence implements One
     OneOfFloatSequence result = (OneOfFloatSequence) super.clone();
     result.elts = elts.clone();
 
-    for (int i = 0; i < num_elts; i++) {
-      result.elts[i] = Intern.intern(elts[i].clone());
+    // The interning tables are shared by all program points.
+    synchronized (ParallelInference.lock) {
+      for (int i = 0; i < num_elts; i++) {
+        result.elts[i] = Intern.intern(elts[i].clone());
+      }
     }
 
     result.num_elts = this.num_elts;
@@ -657,8 +660,10 @@ public String format_csharp_contract(@GuardSatisfied OneOfFloatSequence this) {
     OneOfFloatSequence result = first.clone();
     result.ppt = parent_ppt;
 
-      for (int i = 0; i < result.num_elts; i++) {
-        result.elts[i] = Intern.intern(result.elts[i]);
+      synchronized (ParallelInference.lock) {
+        for (int i = 0; i < result.num_elts; i++) {
+          result.elts[i] = Intern.intern(result.elts[i]);
+        }
       }
 
     // Loop through the rest of the child invariants
@@ -673,7 +678,9 @@ public String format_csharp_contract(@GuardSatisfied OneOfFloatSequence this) {
       for (int j = 0; j < inv.num_elts; j++) {
         double @Interned [] val = inv.elts[j];
 
-        val = Intern.intern(val);
+        synchronized (ParallelInference.lock) {
+          val = Intern.intern(val);
+        }
 
         InvariantStatus status = result.add_mod_elem(val, 1);
         if (status == InvariantStatus.FALSIFIED) {
@@ -136,8 +136,11 @@ public final class OneOfSequence extends SingleScalarSequence implements OneOf {
     OneOfSequence result = (OneOfSequence) super.clone();
     result.elts = elts.clone();
 
-    for (int i = 0; i < num_elts; i++) {
-      result.elts[i] = Intern.intern(elts[i].clone());
+    // The interning tables are shared by all program points.
+    synchronized (ParallelInference.lock) {
+      for (int i = 0; i < num_elts; i++) {
+        result.elts[i] = Intern.intern(elts[i].clone());
+      }
     }
 
     result.num_elts = this.num_elts;
@@ -799,8 +802,10 @@ public String format_csharp_contract(@GuardSatisfied OneOfSequence this) {
     OneOfSequence result = first.clone();
     result.ppt = parent_ppt;
 
-      for (int i = 0; i < result.num_elts; i++) {
-        result.elts[i] = Intern.intern(result.elts[i]);
+      synchronized (ParallelInference.lock) {
+        for (int i = 0; i < result.num_elts; i++) {
+          result.elts[i] = Intern.intern(result.elts[i]);
+        }
       }
 
     // Loop through the rest of the child invariants
@@ -815,7 +820,9 @@ public String format_csharp_contract(@GuardSatisfied OneOfSequence this) {
       for (int j = 0; j < inv.num_elts; j++) {
         long @Interned [] val = inv.elts[j];
 
-        val = Intern.intern(val);
+        synchronized (ParallelInference.lock) {
+          val = Intern.intern(val);
+        }
 
         InvariantStatus status = result.add_mod_elem(val, 1);
         if (status == InvariantStatus.FALSIFIED) {
@@ -1,5 +1,6 @@
 package daikon.inv.unary.stringsequence;
 
+import daikon.ParallelInference;
 import daikon.PptSlice;
 import daikon.inv.DiscardInfo;
 import daikon.inv.Invariant;
@@ -149,7 +150,10 @@ public class CommonStringSequence extends SingleStringSequence {
     if (a == null) {
       return InvariantStatus.FALSIFIED;
     } else if (intersect == null) {
-      intersect = Intern.intern(a);
+      // The interning tables are shared by all program points.
+      synchronized (ParallelInference.lock) {
+        intersect = Intern.intern(a);
+      }
       return InvariantStatus.NO_CHANGE;
     } else {
       @Interned String[] tmp = new @Interned String[intersect.length];
@@ -164,7 +168,9 @@ public class CommonStringSequence extends SingleStringSequence {
       if (size == 0) {
         return InvariantStatus.FALSIFIED;
       }
-      intersect = Intern.intern(ArraysPlume.subarray(tmp, 0, size));
+      synchronized (ParallelInference.lock) {
+        intersect = Intern.intern(ArraysPlume.subarray(tmp, 0, size));
+      }
     }
     elts++;
     return InvariantStatus.NO_CHANGE;
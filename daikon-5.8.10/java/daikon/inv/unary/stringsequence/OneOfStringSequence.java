@@ -126,8 +126,11 @@ public final class OneOfStringSequence extends SingleStringSequence implements O
     OneOfStringSequence result = (OneOfStringSequence) super.clone();
     result.elts = elts.clone();
 
-    for (int i = 0; i < num_elts; i++) {
-      result.elts[i] = Intern.intern(elts[i].clone());
+    // The interning tables are shared by all program points.
+    synchronized (ParallelInference.lock) {
+      for (int i = 0; i < num_elts; i++) {
+        result.elts[i] = Intern.intern(elts[i].clone());
+      }
     }
 
     result.num_elts = this.num_elts;
@@ -713,8 +716,10 @@ public String format_csharp_contract(@GuardSatisfied OneOfStringSequence this) {
     OneOfStringSequence result = first.clone();
     result.ppt = parent_ppt;
 
-      for (int i = 0; i < result.num_elts; i++) {
-        result.elts[i] = Intern.intern(result.elts[i]);
+      synchronized (ParallelInference.lock) {
+        for (int i = 0; i < result.num_elts; i++) {
+          result.elts[i] = Intern.intern(result.elts[i]);
+        }
       }
 
     // Loop through the rest of the child invariants
@@ -729,7 +734,9 @@ public String format_csharp_contract(@GuardSatisfied OneOfStringSequence this) {
       for (int j = 0; j < inv.num_elts; j++) {
         @Interned String @Interned [] val = inv.elts[j];
 
-        val = Intern.intern(val);
+        synchronized (ParallelInference.lock) {
+          val = Intern.intern(val);
+        }
 
         InvariantStatus status = result.add_mod_elem(val, 1);
         if (status == InvariantStatus.FALSIFIED) {
@@ -2,6 +2,7 @@ package daikon.suppress;
 
 import daikon.Daikon;
 import daikon.Debug;
+import daikon.ParallelInference;
 import daikon.PptSlice;
 import daikon.PptTopLevel;
 import daikon.ValueTuple;
@@ -437,6 +438,25 @@ public class NIS {
     new_invs.clear();
   }
 
+  /**
+   * Discards the invariants and statistics left over from processing samples, so that a later
+   * Daikon run starts afresh. Called by {@link Daikon#cleanup}.
+   */
+  public static void cleanup() {
+    new_invs.clear();
+    newly_falsified.clear();
+    keep_stats = false;
+    duration = 0;
+    false_invs = 0;
+    false_cnts = 0;
+    suppressions_processed = 0;
+    suppressions_processed_falsified = 0;
+    new_invs_cnt = 0;
+    false_invs_cnt = 0;
+    created_invs_cnt = 0;
+    still_suppressed_cnt = 0;
+  }
+
   /** Clears the current NIS statistics and enables the keeping of statistics. */
   public static void clear_stats() {
 
@@ -519,12 +539,14 @@ public class NIS {
   })
   public static void process_falsified_invs(PptTopLevel ppt, ValueTuple vt) {
 
+    // The invariants falsified by this sample, as recorded by Invariant.falsify
+    List<Invariant> falsified_invs = ppt.falsified_invariants();
+
     // if using the hybrid method, need to know the number of falsified suppressor
     // invariants before deciding which method to use
     if (NIS.hybrid_method) {
       int count = 0;
-      for (Iterator<Invariant> i = ppt.invariants_iterator(); i.hasNext(); ) {
-        Invariant inv = i.next();
+      for (Invariant inv : falsified_invs) {
 
         if (NIS.dkconfig_skip_hashcode_type) {
 
@@ -541,19 +563,17 @@ public class NIS {
           }
         }
 
-        if (inv.is_false()) {
-          false_cnts++;
+        false_cnts++;
 
-          if (suppressor_map.containsKey(inv.getClass())) {
+        if (suppressor_map.containsKey(inv.getClass())) {
 
-            // use the following count update when splitting the hybrid method by the
-            // number of total suppressions associated with the falsified invariants
-            @SuppressWarnings("nullness") // map:  same keys in suppressor_map and
-            // suppressor_map_suppression_count
-            int map_count = suppressor_map_suppression_count.get(inv.getClass());
-            count += map_count;
-            suppressions_processed_falsified += map_count;
-          }
+          // use the following count update when splitting the hybrid method by the
+          // number of total suppressions associated with the falsified invariants
+          @SuppressWarnings("nullness") // map:  same keys in suppressor_map and
+          // suppressor_map_suppression_count
+          int map_count = suppressor_map_suppression_count.get(inv.getClass());
+          count += map_count;
+          suppressions_processed_falsified += map_count;
         }
       }
 
@@ -581,9 +601,8 @@ public class NIS {
 
     // If there are no falsified invariants that are suppressors, there is nothing to do
     int false_cnt = 0;
-    for (Iterator<Invariant> i = ppt.invariants_iterator(); i.hasNext(); ) {
-      Invariant inv = i.next();
-      if (inv.is_false() && suppressor_map.containsKey(inv.getClass())) {
+    for (Invariant inv : falsified_invs) {
+      if (suppressor_map.containsKey(inv.getClass())) {
         false_cnt++;
       }
     }
@@ -821,7 +840,10 @@ public class NIS {
         }
 
         if (inv.is_false()) {
-          false_invs++;
+          // Also called while creating invariants on several threads
+          synchronized (ParallelInference.lock) {
+            false_invs++;
+          }
         }
 
         VarComparability vc = inv.get_comparability();
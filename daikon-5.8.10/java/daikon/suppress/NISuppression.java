@@ -87,8 +87,8 @@ public class NISuppression {
 
   /**
    * Checks this suppression. Each suppressor is checked to see if it matches inv and if not,
-   * whether or not it is valid (true). The results are saved in each suppressor. The suppressor
-   * results are used later by {@link #invalidated()}.
+   * whether or not it is valid (true). The results are saved in each suppressor, for debugging
+   * output.
    *
    * @param ppt program point in which to check suppression
    * @param vis variables over which to check suppression
@@ -127,12 +127,18 @@ public class NISuppression {
   }
 
   /**
-   * Determines whether or not the falsified invariant previously passed to {@link
-   * #check(PptTopLevel,VarInfo[],Invariant)} was the first suppressor to be falsified in this
-   * suppression. If the falsified invariant is not involved in this suppression, then it can't have
-   * been invalidated.
+   * Determines whether or not the falsified invariant was the first suppressor to be falsified in
+   * this suppression. If the falsified invariant is not involved in this suppression, then it can't
+   * have been invalidated. Each suppressor is checked again, rather than reading the state saved by
+   * {@link #check(PptTopLevel,VarInfo[],Invariant)}, because other threads may check the same
+   * suppressors while creating invariants at other program points.
+   *
+   * @param ppt program point in which to check suppression
+   * @param vis variables over which to check suppression
+   * @param inv falsified invariant
+   * @return true if inv was the first suppressor to be falsified in this suppression
    */
-  public boolean invalidated() {
+  public boolean invalidated(PptTopLevel ppt, VarInfo[] vis, Invariant inv) {
 
     // We return true when every suppressor except the falsified
     // one is valid and at least one suppressor matches the falsified
@@ -142,11 +148,11 @@ public class NISuppression {
     // have never looked at a slice with nonsensical variables.
     boolean inv_match = false;
     for (int i = 0; i < suppressors.length; i++) {
-      NISuppressor ssor = suppressors[i];
-      assert ssor.state != NIS.SuppressState.NONSENSICAL;
-      if (ssor.state == NIS.SuppressState.MATCH) {
+      NIS.SuppressState st = suppressors[i].check(ppt, vis, inv);
+      assert st != NIS.SuppressState.NONSENSICAL;
+      if (st == NIS.SuppressState.MATCH) {
         inv_match = true;
-      } else if (ssor.state != NIS.SuppressState.VALID) {
+      } else if (st != NIS.SuppressState.VALID) {
         return false;
       }
     }
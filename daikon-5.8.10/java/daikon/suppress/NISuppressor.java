@@ -49,7 +49,8 @@ public class NISuppressor {
 
   /**
    * State of the suppressor for the current check. The state must be one of the defined above. They
-   * can always be compared with ==.
+   * can always be compared with ==. This is just used for debugging purposes; it may be overwritten
+   * by a check on another thread.
    */
   NIS.SuppressState state = NIS.SuppressState.NONE;
 
@@ -33,6 +33,29 @@ import org.junit.runners.Suite;
   daikon.test.TestQuant.class,
   daikon.test.TestAnnotate.class,
   daikon.test.DtraceDiffTester.class,
+  daikon.test.CsvFileTest.class,
+  daikon.test.InferenceServerTest.class,
+  daikon.test.ParallelInferenceTest.class,
+  daikon.test.SampleBlockTest.class,
+  daikon.test.BinaryDtraceTest.class,
+  daikon.test.ParallelParseTest.class,
+  daikon.test.InvFileTest.class,
+  daikon.test.TernaryPrefilterTest.class,
+  daikon.test.ParallelMergeTest.class,
+  daikon.test.ParallelPostProcessTest.class,
+  daikon.test.IncrementalInferenceTest.class,
+  daikon.test.InProcessDtraceTest.class,
+  daikon.test.ConvergenceTest.class,
+  daikon.test.FoldDuplicateSamplesTest.class,
+  daikon.test.SamplerTest.class,
+  daikon.test.TagEntryTest.class,
+  daikon.test.TraceBufferTest.class,
+  daikon.test.ValueTupleTest.class,
+  daikon.test.FalsifiedInvariantsTest.class,
+  daikon.test.EqualitySplitTest.class,
+  daikon.test.DynamicConstantsTest.class,
+  daikon.test.DerivationMemoTest.class,
+  daikon.test.ChicoryFieldsTest.class,
   //       ,
   //       // I'm having trouble with this; need to fix, reinstate, and not call
   //       // specially from Makefile.  -MDE 7/8/2005
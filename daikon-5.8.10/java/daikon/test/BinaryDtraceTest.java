@@ -0,0 +1,147 @@
+package daikon.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import daikon.tools.DtraceToBinary;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/** Tests that Daikon finds the same invariants in a binary trace file as in a text one. */
+public class BinaryDtraceTest extends InferenceTestCase {
+
+  @Test
+  public void testConvertedTrace() throws IOException {
+    for (String name : new String[] {"Hanoi", "AllTypes"}) {
+      String dtrace = "daikon/test/dtracediff/" + name + ".dtrace.gz";
+      String text = infer(NO_OPTIONS, dtrace);
+      for (String suffix : new String[] {".dtrace", ".dtrace.gz"}) {
+        File binary = temp_file(suffix);
+        DtraceToBinary.mainHelper(new String[] {dtrace, binary.toString()});
+        assertTrue(BinaryDtrace.is_binary_file(binary.toString()));
+        assertEquals(text, infer(NO_OPTIONS, binary.toString()));
+      }
+    }
+  }
+
+  /** Tests values that are hard to represent: special characters, nulls, and missing values. */
+  @Test
+  public void testWriter() throws IOException {
+    String decls =
+        String.join(
+            "\n",
+            "decl-version 2.0",
+            "var-comparability none",
+            "",
+            "ppt p.Point:::POINT",
+            "ppt-type point",
+            "variable i",
+            "  var-kind variable",
+            "  dec-type int",
+            "  rep-type int",
+            "variable d",
+            "  var-kind variable",
+            "  dec-type double",
+            "  rep-type double",
+            "variable s",
+            "  var-kind variable",
+            "  dec-type java.lang.String",
+            "  rep-type java.lang.String",
+            "variable a",
+            "  var-kind variable",
+            "  dec-type int[]",
+            "  rep-type hashcode",
+            "variable a[..]",
+            "  var-kind array",
+            "  enclosing-var a",
+            "  array 1",
+            "  dec-type int[]",
+            "  rep-type int[]",
+            "variable sa",
+            "  var-kind variable",
+            "  dec-type java.lang.String[]",
+            "  rep-type hashcode",
+            "variable sa[..]",
+            "  var-kind array",
+            "  enclosing-var sa",
+            "  array 1",
+            "  dec-type java.lang.String[]",
+            "  rep-type java.lang.String[]",
+            "",
+            "");
+    ProglangType int_type = ProglangType.rep_parse("int");
+    ProglangType double_type = ProglangType.rep_parse("double");
+    ProglangType string_type = ProglangType.rep_parse("java.lang.String");
+    ProglangType ints_type = ProglangType.rep_parse("int[]");
+    ProglangType strings_type = ProglangType.rep_parse("java.lang.String[]");
+
+    List<String> text = new ArrayList<>();
+    text.add(decls);
+    File binary_file = temp_file(".dtrace");
+    try (BinaryDtrace.Writer binary = new BinaryDtrace.Writer(new FileOutputStream(binary_file))) {
+      binary.write_text(decls);
+      for (int i = 0; i < 40; i++) {
+        boolean missing = i % 7 == 3;
+        String s = (i % 5 == 0) ? null : "line " + (i % 3) + "\n\"é\"";
+        String i_rep = String.valueOf(i / 2);
+        String d_rep = (i % 9 == 0) ? "NaN" : String.valueOf(i * 0.5);
+        String s_rep = (s == null) ? "null" : "\"line " + (i % 3) + "\\n\\\"é\\\"\"";
+        String a_rep = missing ? "nonsensical" : "[" + i + " " + (i % 4) + "]";
+        String sa_rep = "[\"x\" null \"" + (i % 2) + "\"]";
+        text.add(
+            String.join(
+                "\n",
+                "p.Point:::POINT",
+                "this_invocation_nonce",
+                String.valueOf(i),
+                "i",
+                i_rep,
+                "1",
+                "d",
+                d_rep,
+                "1",
+                "s",
+                s_rep,
+                "1",
+                "a",
+                "1001",
+                "1",
+                "a[..]",
+                a_rep,
+                missing ? "2" : "1",
+                "sa",
+                "1002",
+                "1",
+                "sa[..]",
+                sa_rep,
+                "1",
+                "",
+                ""));
+        binary.start_sample("p.Point:::POINT", i);
+        binary.add_value("i", int_type, int_type.parse_value(i_rep, null, "test"), 1);
+        binary.add_value("d", double_type, double_type.parse_value(d_rep, null, "test"), 1);
+        binary.add_value("s", string_type, s, 1);
+        binary.add_value("a", int_type, int_type.parse_value("1001", null, "test"), 1);
+        binary.add_value(
+            "a[..]", ints_type, missing ? null : ints_type.parse_value(a_rep, null, "test"), 1);
+        binary.add_value("sa", int_type, int_type.parse_value("1002", null, "test"), 1);
+        binary.add_value("sa[..]", strings_type, strings_type.parse_value(sa_rep, null, "test"), 1);
+        binary.end_sample();
+      }
+    }
+    File text_file = temp_file(".dtrace");
+    Files.write(text_file.toPath(), String.join("", text).getBytes(UTF_8));
+
+    String expected = infer(NO_OPTIONS, text_file.toString());
+    assertTrue(expected, expected.contains("p.Point:::POINT"));
+    String actual = infer(NO_OPTIONS, binary_file.toString());
+    assertEquals(expected, actual.replace(binary_file.getName(), text_file.getName()));
+  }
+}
@@ -0,0 +1,127 @@
+package daikon.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.Test;
+
+/** Tests how Chicory prints the primitive fields of an object, which it reads without boxing. */
+public class ChicoryFieldsTest extends InferenceTestCase {
+
+  /** The program that Chicory traces. */
+  public static class Target {
+    int i = -5;
+    long l = 1L << 40;
+    boolean z = true;
+    float f = 1.5f;
+    double d = -0.25;
+    byte b = -7;
+    char c = 'A';
+    short s = 300;
+
+    /** A method whose entry and exit print the fields of this. */
+    void touch() {}
+
+    public static void main(String[] args) {
+      new Target().touch();
+    }
+  }
+
+  /** Returns a new jar file that holds Chicory's premain class, as ChicoryPremain.jar does. */
+  private static File premain_jar() throws IOException {
+    File jar = temp_file(".jar");
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Premain-Class", "daikon.chicory.ChicoryPremain");
+    attributes.putValue("Can-Redefine-Classes", "true");
+    String premain = "daikon/chicory/ChicoryPremain.class";
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()), manifest);
+        InputStream in = ClassLoader.getSystemResourceAsStream(premain)) {
+      assertNotNull(premain, in);
+      out.putNextEntry(new JarEntry(premain));
+      copy(in, out);
+      out.closeEntry();
+    }
+    return jar;
+  }
+
+  /** Copies all of in to out. */
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[8192];
+    for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+      out.write(buffer, 0, n);
+    }
+  }
+
+  @Test
+  public void testPrimitiveFields() throws IOException, InterruptedException {
+    File dir = Files.createTempDirectory("ChicoryFieldsTest").toFile();
+    File dtrace = new File(dir, "Target.dtrace");
+    dtrace.deleteOnExit();
+    dir.deleteOnExit();
+    Process chicory =
+        new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").toString(),
+                "-cp",
+                System.getProperty("java.class.path"),
+                "daikon.Chicory",
+                "--premain=" + premain_jar(),
+                "--output-dir=" + dir,
+                "--dtrace-file=" + dtrace.getName(),
+                "--ppt-select-pattern=" + Target.class.getName().replace("$", "\\$"),
+                Target.class.getName())
+            .redirectErrorStream(true)
+            .start();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    copy(chicory.getInputStream(), output);
+    assertEquals(output.toString("UTF-8"), 0, chicory.waitFor());
+
+    String text = new String(Files.readAllBytes(dtrace.toPath()), UTF_8);
+    String fields =
+        String.join(
+            "\n",
+            "this.i",
+            "-5",
+            "1",
+            "this.l",
+            "1099511627776",
+            "1",
+            "this.z",
+            "true",
+            "1",
+            "this.f",
+            "1.5",
+            "1",
+            "this.d",
+            "-0.25",
+            "1",
+            "this.b",
+            "-7",
+            "1",
+            "this.c",
+            "65",
+            "1",
+            "this.s",
+            "300",
+            "1",
+            "");
+    // At the exit of the constructor, and at the entry and exit of touch.
+    int count = 0;
+    for (int at = text.indexOf(fields); at >= 0; at = text.indexOf(fields, at + 1)) {
+      count++;
+    }
+    assertEquals(text, 3, count);
+  }
+}
@@ -0,0 +1,66 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests that a program point stops processing samples once its invariants are stable (see {@link
+ * PptTopLevel#dkconfig_convergence_samples}).
+ */
+public class ConvergenceTest extends InferenceTestCase {
+
+  /** Writes a csv file whose rows repeat a few behaviors, and returns its name. */
+  private static String csv() throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("a,b,c");
+    for (int i = 0; i < 400; i++) {
+      lines.add((i % 5) + "," + (i % 5 + 2) + "," + (i % 3));
+    }
+    return csv(lines);
+  }
+
+  /** Starts inferring the invariants of the csv file with the given convergence setting. */
+  private static IncrementalInference start(String csv, int convergence_samples)
+      throws IOException {
+    return start(
+        new String[] {"daikon.PptTopLevel.convergence_samples=" + convergence_samples}, csv);
+  }
+
+  @Test
+  public void testConverges() throws IOException {
+    String csv = csv();
+    IncrementalInference.Update all = start(csv, 0).update();
+    PptTopLevel ppt = all.ppts.get(FileIO.dkconfig_csv_ppt_name);
+    assertTrue(ppt != null && !ppt.converged());
+    assertEquals(400, ppt.num_samples());
+    assertEquals(0, ppt.num_skipped_samples());
+
+    IncrementalInference.Update converged = start(csv, 50).update();
+    ppt = converged.ppts.get(FileIO.dkconfig_csv_ppt_name);
+    assertTrue(ppt != null && ppt.converged());
+    assertTrue(ppt.num_samples() < 400);
+    assertEquals(400, ppt.num_samples() + ppt.num_skipped_samples());
+    assertEquals(strings(all.invariants), strings(converged.invariants));
+  }
+
+  @Test
+  public void testAddRestartsConvergence() throws IOException {
+    IncrementalInference inference = start(csv(), 50);
+    PptTopLevel ppt = inference.update().ppts.get(FileIO.dkconfig_csv_ppt_name);
+    assertTrue(ppt != null && ppt.converged());
+    int processed = ppt.num_samples();
+
+    inference.add(csv(Arrays.asList("a,b,c", "9,1,5")));
+    ppt = inference.update().ppts.get(FileIO.dkconfig_csv_ppt_name);
+    assertTrue(ppt != null);
+    assertEquals(processed + 1, ppt.num_samples());
+    assertTrue(!ppt.converged());
+  }
+}
@@ -0,0 +1,114 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/** Tests reading of csv files by {@link FileIO#read_csv_file}. */
+public class CsvFileTest {
+
+  @BeforeClass
+  public static void setUpClass() {
+    daikon.LogHelper.setupLogs(LogHelper.INFO);
+  }
+
+  @Before
+  public void setUp() {
+    // Other tests may leave these set.
+    Daikon.ppt_regexp = null;
+    Daikon.ppt_omit_regexp = null;
+    Daikon.var_regexp = null;
+    Daikon.var_omit_regexp = null;
+  }
+
+  @After
+  public void tearDown() {
+    FileIO.dkconfig_csv_missing = "old";
+    FileIO.dkconfig_csv_delimiter = ",";
+    FileIO.resetNewDeclFormat();
+  }
+
+  /** Records the samples it is passed, rather than processing them. */
+  static class RecordingProcessor extends FileIO.Processor {
+    List<ValueTuple> samples = new ArrayList<>();
+
+    @Override
+    public void process_sample(
+        PptMap all_ppts, PptTopLevel ppt, ValueTuple vt, @Nullable Integer nonce) {
+      samples.add(vt);
+    }
+  }
+
+  /** Writes the given lines to a csv file, reads it, and returns the samples read. */
+  private static List<ValueTuple> read(PptMap all_ppts, String... lines) throws IOException {
+    File file = File.createTempFile("CsvFileTest", ".csv");
+    file.deleteOnExit();
+    Files.write(file.toPath(), Arrays.asList(lines));
+    RecordingProcessor processor = new RecordingProcessor();
+    FileIO.resetNewDeclFormat();
+    FileIO.read_csv_file(file.toString(), all_ppts, processor, true);
+    return processor.samples;
+  }
+
+  @Test
+  public void testParseLine() {
+    assertEquals(Arrays.asList("a", "b", ""), FileIO.parse_csv_line("a,b,", ','));
+    assertEquals(Arrays.asList("a, b", "c\"d"), FileIO.parse_csv_line("\"a, b\",\"c\"\"d\"", ','));
+    assertEquals(Arrays.asList("1", "2 3"), FileIO.parse_csv_line("1\t2 3", '\t'));
+  }
+
+  @Test
+  public void testDeclarations() throws IOException {
+    PptMap all_ppts = new PptMap();
+    read(all_ppts, "amount,name,x y", "1,a,2.5", "3,b,");
+    PptTopLevel ppt = all_ppts.get(FileIO.dkconfig_csv_ppt_name);
+    assertTrue(ppt != null);
+    assertEquals(3, ppt.num_tracevars);
+    assertEquals("amount", ppt.var_infos[0].name());
+    assertEquals(ProglangType.DOUBLE, ppt.var_infos[0].rep_type);
+    assertEquals(ProglangType.STRING, ppt.var_infos[1].rep_type);
+    assertEquals("\"x y\"", ppt.var_infos[2].name());
+  }
+
+  @Test
+  public void testMissingValues() throws IOException {
+    List<ValueTuple> samples = read(new PptMap(), "x,s", ",", "2,a", " ,");
+    assertEquals(3, samples.size());
+    // "old": zero before the first value, and the previous value afterwards
+    assertEquals(0.0, samples.get(0).vals[0]);
+    assertEquals("", samples.get(0).vals[1]);
+    assertEquals(2.0, samples.get(2).vals[0]);
+    assertEquals("a", samples.get(2).vals[1]);
+
+    FileIO.dkconfig_csv_missing = "nonsensical";
+    samples = read(new PptMap(), "x,s", "2,a", " ,");
+    assertNull(samples.get(1).vals[0]);
+    assertEquals(ValueTuple.MISSING_NONSENSICAL, samples.get(1).mods[1]);
+  }
+
+  @Test
+  public void testDelimiter() throws IOException {
+    FileIO.dkconfig_csv_delimiter = "\\t";
+    List<ValueTuple> samples = read(new PptMap(), "x\ty", "1\t2,5");
+    assertEquals(1.0, samples.get(0).vals[0]);
+    assertEquals("2,5", samples.get(0).vals[1]);
+  }
+
+  @Test(expected = Daikon.UserError.class)
+  public void testWrongFieldCount() throws IOException {
+    read(new PptMap(), "x,y", "1,2,3");
+  }
+}
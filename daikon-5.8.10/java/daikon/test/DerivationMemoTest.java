@@ -0,0 +1,90 @@
+package daikon.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import daikon.*;
+import daikon.derive.ValueAndModified;
+import daikon.derive.binary.SequencesConcat;
+import daikon.derive.unary.SequenceSum;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.plumelib.util.Intern;
+
+/**
+ * Tests that a derivation reuses its previous result when its base values and modified bits are
+ * the same as on the previous sample, and only then.
+ */
+public class DerivationMemoTest {
+
+  @BeforeClass
+  public static void setUpClass() {
+    FileIO.new_decl_format = true;
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    FileIO.resetNewDeclFormat();
+  }
+
+  /** The modified bit of a value that changed. */
+  private static final int MODIFIED = ValueTuple.MODIFIED;
+
+  /** The modified bit of a value that did not change. */
+  private static final int UNMODIFIED = ValueTuple.UNMODIFIED;
+
+  /** The arrays a and b. */
+  private static final VarInfo[] vars = {
+    Common.makeIntArrayVarInfo("a"), Common.makeIntArrayVarInfo("b")
+  };
+
+  /** The program point of the variables. */
+  private static final PptTopLevel ppt = Common.makePptTopLevel("Foo.bar():::ENTER", vars);
+
+  /** Returns a sample with the given values of a and b, and the given modified bit for a. */
+  private static ValueTuple sample(long[] a, int a_mod, long[] b) {
+    return new ValueTuple(
+        new Object[] {Intern.intern(a.clone()), Intern.intern(b.clone())},
+        new int[] {a_mod, ValueTuple.MODIFIED});
+  }
+
+  @Test
+  public void testUnary() {
+    SequenceSum sum = new SequenceSum(vars[0]);
+    long[] a = {1, 2};
+    long[] b = {9};
+    ValueAndModified first = sum.computeValueAndModified(sample(a, MODIFIED, b));
+    assertEquals(Long.valueOf(3), first.value);
+    assertSame(first, sum.computeValueAndModified(sample(a, MODIFIED, b)));
+
+    // Only the modified bit changes.
+    ValueAndModified unmodified = sum.computeValueAndModified(sample(a, UNMODIFIED, b));
+    assertNotSame(first, unmodified);
+    assertSame(first.value, unmodified.value);
+    assertEquals(UNMODIFIED, unmodified.modified);
+
+    ValueAndModified other = sum.computeValueAndModified(sample(new long[] {2, 2}, UNMODIFIED, b));
+    assertEquals(Long.valueOf(4), other.value);
+  }
+
+  @Test
+  public void testBinary() {
+    SequencesConcat concat = new SequencesConcat(vars[0], vars[1]);
+    long[] a = {1, 2};
+    long[] b = {3};
+    ValueAndModified first = concat.computeValueAndModified(sample(a, MODIFIED, b));
+    assertArrayEquals(new long[] {1, 2, 3}, (long[]) first.value);
+    assertSame(first, concat.computeValueAndModified(sample(a, MODIFIED, b)));
+
+    // Only the modified bit of one base changes.
+    ValueAndModified unmodified = concat.computeValueAndModified(sample(a, UNMODIFIED, b));
+    assertNotSame(first, unmodified);
+    assertSame(first.value, unmodified.value);
+
+    ValueAndModified other = concat.computeValueAndModified(sample(a, UNMODIFIED, new long[] {4}));
+    assertArrayEquals(new long[] {1, 2, 4}, (long[]) other.value);
+  }
+}
@@ -0,0 +1,106 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.plumelib.util.Intern;
+
+/**
+ * Tests that {@link DynamicConstants#would_change} tracks the constant and missing variables of a
+ * program point, also after the constants have been serialized.
+ */
+public class DynamicConstantsTest {
+
+  @BeforeClass
+  public static void setUpClass() {
+    FileIO.new_decl_format = true;
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    FileIO.resetNewDeclFormat();
+  }
+
+  /** The variables: x, y, and z are ints, and s is an array of strings. */
+  private static final VarInfo[] vars = {
+    Common.newIntVarInfo("x"),
+    Common.newIntVarInfo("y"),
+    Common.newIntVarInfo("z"),
+    newStringArrayVarInfo("s")
+  };
+
+  /** The program point of the variables. */
+  private static final PptTopLevel ppt = Common.makePptTopLevel("Foo.bar():::ENTER", vars);
+
+  @SuppressWarnings("interning")
+  private static VarInfo newStringArrayVarInfo(String name) {
+    return new VarInfo(
+        name,
+        ProglangType.STRING_ARRAY,
+        ProglangType.STRING_ARRAY,
+        VarComparabilityNone.it,
+        VarInfoAux.getDefault());
+  }
+
+  /**
+   * Returns a sample with the given values of x, y, z, and s; a null value is missing. The values
+   * are copied, and then interned, as when they are read from a trace.
+   */
+  private static ValueTuple sample(Long x, Long y, Long z, String... s) {
+    Object[] vals = {x, y, z, s};
+    int[] mods = new int[vals.length];
+    for (int i = 0; i < vals.length; i++) {
+      if (vals[i] == null) {
+        mods[i] = ValueTuple.MISSING_NONSENSICAL;
+      } else {
+        vals[i] =
+            (vals[i] instanceof Long)
+                ? Intern.internedLong((Long) vals[i])
+                : Intern.intern(Intern.internStrings(((String[]) vals[i]).clone()));
+        mods[i] = ValueTuple.MODIFIED;
+      }
+    }
+    return new ValueTuple(vals, mods);
+  }
+
+  /** Checks which samples would change the constants after the first sample, (1, 2, -, {a, b}). */
+  private static void checkWouldChange(DynamicConstants dc) {
+    assertTrue(dc.is_constant(vars[0]));
+    assertTrue(dc.is_constant(vars[3]));
+    assertTrue(dc.is_missing(vars[2]));
+    assertFalse(dc.would_change(sample(1L, 2L, null, "a", "b")));
+    assertTrue(dc.would_change(sample(3L, 2L, null, "a", "b")));
+    assertTrue(dc.would_change(sample(1L, null, null, "a", "b")));
+    assertTrue(dc.would_change(sample(1L, 2L, 0L, "a", "b")));
+    assertTrue(dc.would_change(sample(1L, 2L, null, "a", "c")));
+  }
+
+  @Test
+  public void testWouldChange() throws IOException, ClassNotFoundException {
+    DynamicConstants dc = new DynamicConstants(ppt);
+    assertTrue(dc.would_change(sample(1L, 2L, null, "a", "b")));
+    dc.add(sample(1L, 2L, null, "a", "b"), 1);
+    checkWouldChange(dc);
+    assertEquals(3, dc.constant_leader_cnt());
+
+    // The constants are re-interned, and the arrays that mirror them are rebuilt.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(dc);
+    }
+    try (ObjectInputStream in =
+        new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      checkWouldChange((DynamicConstants) in.readObject());
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import daikon.*;
+import daikon.derive.unary.SequenceSum;
+import daikon.inv.Equality;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.plumelib.util.Intern;
+
+/** Tests how {@link Equality#split} divides an equality set by the values of a sample. */
+public class EqualitySplitTest {
+
+  @BeforeClass
+  public static void setUpClass() {
+    FileIO.new_decl_format = true;
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    FileIO.resetNewDeclFormat();
+  }
+
+  /** Returns a sample in which each variable has the given value, or is missing if it is null. */
+  private static ValueTuple sample(Long... values) {
+    Object[] vals = new Object[values.length];
+    int[] mods = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] == null) {
+        mods[i] = ValueTuple.MISSING_NONSENSICAL;
+      } else {
+        vals[i] = Intern.internedLong(values[i]);
+        mods[i] = ValueTuple.MODIFIED;
+      }
+    }
+    return new ValueTuple(vals, mods);
+  }
+
+  @Test
+  @SuppressWarnings("interning") // special key
+  public void testSplit() {
+    VarInfo[] vars = new VarInfo[6];
+    for (int i = 0; i < vars.length; i++) {
+      vars[i] = Common.newIntVarInfo("v" + i);
+    }
+    PptTopLevel ppt = Common.makePptTopLevel("Foo.bar():::ENTER", vars);
+    SequenceSum derivation = new SequenceSum(Common.makeIntArrayVarInfo("a"));
+    vars[5].derived = derivation;
+    Equality eq = new Equality(Arrays.asList(vars), new PptSlice1(ppt, new VarInfo[] {vars[0]}));
+
+    assertNull(eq.split(sample(1L, 1L, 1L, 1L, 1L, 1L), 1));
+    assertEquals(6, eq.size());
+
+    // v5 is missing because an array index was out of bounds, so it splits off by itself.
+    derivation.missing_array_bounds = true;
+
+    Map<Object, List<VarInfo>> groups = eq.split(sample(1L, 2L, 1L, 2L, null, null), 1);
+    Map<Object, List<VarInfo>> expected = new HashMap<>();
+    expected.put(Intern.internedLong(2), Arrays.asList(vars[1], vars[3]));
+    expected.put(Equality.MISSING, Arrays.asList(vars[4]));
+    expected.put(vars[5], Arrays.asList(vars[5]));
+    assertEquals(expected, groups);
+    assertEquals(Arrays.asList(vars[0], vars[2]), Arrays.asList(eq.getVars().toArray()));
+    assertEquals(2, eq.numSamples());
+  }
+
+  /** {@link Equality#add} returns the variables of all of the groups, in index order. */
+  @Test
+  public void testAdd() {
+    VarInfo[] vars = new VarInfo[4];
+    for (int i = 0; i < vars.length; i++) {
+      vars[i] = Common.newIntVarInfo("v" + i);
+    }
+    PptTopLevel ppt = Common.makePptTopLevel("Foo.bar():::ENTER", vars);
+    Equality eq = new Equality(Arrays.asList(vars), new PptSlice1(ppt, new VarInfo[] {vars[0]}));
+    assertEquals(Arrays.asList(), eq.add(sample(5L, 5L, 5L, 5L), 1));
+    assertEquals(Arrays.asList(vars[1], vars[2], vars[3]), eq.add(sample(5L, 3L, null, 3L), 1));
+    assertEquals(1, eq.size());
+  }
+}
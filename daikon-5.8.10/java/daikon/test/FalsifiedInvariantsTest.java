@@ -0,0 +1,69 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import daikon.*;
+import daikon.inv.Invariant;
+import daikon.inv.unary.scalar.LowerBound;
+import daikon.inv.unary.scalar.UpperBound;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests how a program point records the invariants that are falsified (see {@link
+ * PptTopLevel#add_falsified}).
+ */
+public class FalsifiedInvariantsTest {
+
+  @BeforeClass
+  public static void setUpClass() {
+    FileIO.new_decl_format = true;
+  }
+
+  @AfterClass
+  public static void tearDownClass() {
+    FileIO.resetNewDeclFormat();
+  }
+
+  /** Creates an invariant of the given slice, and adds it to the slice. */
+  private static Invariant add(PptSlice slice, Invariant proto) {
+    Invariant inv = proto.instantiate(slice);
+    assertNotNull(inv);
+    slice.addInvariant(inv);
+    return inv;
+  }
+
+  @Test
+  public void testFalsifiedInvariants() {
+    VarInfo[] vars = {Common.newIntVarInfo("x"), Common.newIntVarInfo("y")};
+    PptTopLevel ppt = Common.makePptTopLevel("Foo.bar(int, int):::ENTER", vars);
+    PptSlice slice_x = new PptSlice1(ppt, new VarInfo[] {vars[0]});
+    PptSlice slice_y = new PptSlice1(ppt, new VarInfo[] {vars[1]});
+    ppt.addSlice(slice_x);
+    ppt.addSlice(slice_y);
+    Invariant lower_x = add(slice_x, LowerBound.get_proto());
+    Invariant upper_x = add(slice_x, UpperBound.get_proto());
+    Invariant lower_y = add(slice_y, LowerBound.get_proto());
+    assertEquals(Collections.emptyList(), ppt.falsified_invariants());
+
+    // Recorded once each, in the order they were falsified.
+    lower_y.falsify();
+    upper_x.falsify();
+    lower_y.falsify();
+    assertEquals(Arrays.asList(lower_y, upper_x), ppt.falsified_invariants());
+
+    // An invariant that was removed from its slice is forgotten.
+    slice_y.removeInvariant(lower_y);
+    assertEquals(Arrays.asList(upper_x), ppt.falsified_invariants());
+
+    // So is an invariant of a slice that is not one of the program point's.
+    PptSlice temporary = new PptSlice1(ppt, new VarInfo[] {vars[1]});
+    add(temporary, UpperBound.get_proto()).falsify();
+    lower_x.falsify();
+    assertEquals(Arrays.asList(upper_x, lower_x), ppt.falsified_invariants());
+  }
+}
@@ -0,0 +1,51 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests that folding consecutive identical samples (see {@link
+ * FileIO#dkconfig_fold_duplicate_samples}) gives the same invariants as adding each sample.
+ */
+public class FoldDuplicateSamplesTest extends InferenceTestCase {
+
+  /** Writes a csv file with runs of identical rows, and returns its name. */
+  private static String csv() throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("amount,risk,approved");
+    for (int i = 0; i < 60; i++) {
+      for (int j = 0; j <= i % 4; j++) {
+        lines.add((i % 9) * 100 + "," + (i % 3) + "," + (i % 3 == 0 ? 1 : 0));
+      }
+    }
+    return csv(lines);
+  }
+
+  /** Infers the invariants of the csv file with the given options, and returns them. */
+  private static List<String> run(String csv, boolean fold, int block_size) throws IOException {
+    String[] options = {
+      "daikon.FileIO.fold_duplicate_samples=" + fold,
+      "daikon.FileIO.sample_block_size=" + block_size
+    };
+    IncrementalInference.Update update = start(options, csv).update();
+    PptTopLevel ppt = update.ppts.get(FileIO.dkconfig_csv_ppt_name);
+    assertTrue(ppt != null);
+    assertEquals(150, ppt.num_samples());
+    return strings(update.invariants);
+  }
+
+  @Test
+  public void testSameInvariants() throws IOException {
+    String csv = csv();
+    List<String> unfolded = run(csv, false, 1);
+    assertTrue(unfolded.toString(), unfolded.size() > 0);
+    assertEquals(unfolded, run(csv, true, 1));
+    assertEquals(unfolded, run(csv, true, 16));
+  }
+}
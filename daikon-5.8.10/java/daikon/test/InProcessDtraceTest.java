@@ -0,0 +1,97 @@
+package daikon.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/** Tests that Daikon finds the same invariants in an in-process trace as in a text trace file. */
+public class InProcessDtraceTest extends InferenceTestCase {
+
+  /** The number of samples; more than the queue holds, so that the writer must wait. */
+  private static final int SAMPLES = InProcessDtrace.CAPACITY + 1000;
+
+  @Test
+  public void testSameAsText() throws Exception {
+    String decls =
+        String.join(
+            "\n",
+            "decl-version 2.0",
+            "var-comparability none",
+            "",
+            "ppt p.Point:::POINT",
+            "ppt-type point",
+            "variable i",
+            "  var-kind variable",
+            "  dec-type int",
+            "  rep-type int",
+            "variable d",
+            "  var-kind variable",
+            "  dec-type double",
+            "  rep-type double",
+            "variable s",
+            "  var-kind variable",
+            "  dec-type java.lang.String",
+            "  rep-type java.lang.String",
+            "",
+            "");
+    ProglangType int_type = ProglangType.rep_parse("int");
+    ProglangType double_type = ProglangType.rep_parse("double");
+    ProglangType string_type = ProglangType.rep_parse("java.lang.String");
+
+    List<String> text = new ArrayList<>();
+    text.add(decls);
+    for (int i = 0; i < SAMPLES; i++) {
+      text.add(
+          String.join(
+              "\n",
+              "p.Point:::POINT",
+              "i",
+              String.valueOf(i % 50),
+              "1",
+              "d",
+              String.valueOf((i % 50) * 0.5),
+              "1",
+              "s",
+              (i % 5 == 0) ? "null" : "\"s" + (i % 3) + "\"",
+              "1",
+              "",
+              ""));
+    }
+    File text_file = temp_file(".dtrace");
+    Files.write(text_file.toPath(), String.join("", text).getBytes(UTF_8));
+
+    InProcessDtrace.Writer writer = InProcessDtrace.open();
+    Thread front_end =
+        new Thread(
+            () -> {
+              try (PrintWriter out = new PrintWriter(writer.text_writer())) {
+                out.print(decls);
+                for (int i = 0; i < SAMPLES; i++) {
+                  writer.start_sample("p.Point:::POINT", null);
+                  writer.add_value("i", int_type, Long.valueOf(i % 50), 1);
+                  writer.add_value("d", double_type, Double.valueOf((i % 50) * 0.5), 1);
+                  writer.add_value("s", string_type, (i % 5 == 0) ? null : "s" + (i % 3), 1);
+                  writer.end_sample();
+                }
+              } catch (IOException e) {
+                throw new Error(e);
+              }
+            });
+    front_end.start();
+    String in_process = infer(NO_OPTIONS, InProcessDtrace.NAME);
+    front_end.join();
+
+    String expected = infer(NO_OPTIONS, text_file.toString());
+    assertTrue(expected, expected.contains("p.Point:::POINT"));
+    assertEquals(expected.replace(text_file.toString(), InProcessDtrace.NAME), in_process);
+  }
+}
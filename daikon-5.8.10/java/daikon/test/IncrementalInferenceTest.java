@@ -0,0 +1,85 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import daikon.config.Configuration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests that {@link IncrementalInference} finds the same invariants as reading all of the data at
+ * once, and reports how they change.
+ */
+public class IncrementalInferenceTest extends InferenceTestCase {
+
+  /** Returns a temporary copy of the given file, so that it can be named twice in one run. */
+  private static String copy(String file) throws IOException {
+    File result = temp_file(".dtrace.gz");
+    Files.copy(new File(file).toPath(), result.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    return result.toString();
+  }
+
+  @Test
+  public void testSameAsBatch() throws IOException {
+    String hanoi = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    String all_types = "daikon/test/dtracediff/AllTypes.dtrace.gz";
+    String hanoi2 = copy(hanoi);
+    List<String> batch = strings(start(NO_OPTIONS, hanoi, all_types, hanoi2).update().invariants);
+    assertTrue(batch.toString(), batch.size() > 0);
+
+    IncrementalInference inference = start(NO_OPTIONS, hanoi, all_types);
+    IncrementalInference.Update first = inference.update();
+    assertEquals(first.invariants.size(), first.justified.size());
+    inference.add(hanoi2);
+    IncrementalInference.Update second = inference.update();
+    assertEquals(batch, strings(second.invariants));
+    // Only the program points of Hanoi, and not those of AllTypes, have new samples.
+    assertTrue(second.reprocessed > 0 && second.reprocessed < first.reprocessed);
+    assertEquals(0, inference.update().reprocessed);
+  }
+
+  @Test
+  public void testDelta() throws IOException {
+    List<String> equal = new ArrayList<>();
+    List<String> unequal = new ArrayList<>();
+    equal.add("a,b,c");
+    unequal.add("a,b,c");
+    for (int i = 0; i < 30; i++) {
+      equal.add(i + "," + i + "," + (i % 7));
+      unequal.add(i + "," + (i * 3 + 1) + "," + (i % 7));
+    }
+    String change = "aprogram.point:::POINT: a == b";
+
+    IncrementalInference inference = start(NO_OPTIONS, csv(equal));
+    IncrementalInference.Update first = inference.update();
+    assertTrue(strings(first.justified).toString(), strings(first.justified).contains(change));
+    assertEquals(0, first.falsified.size());
+
+    inference.add(csv(unequal));
+    IncrementalInference.Update second = inference.update();
+    assertTrue(strings(second.falsified).toString(), strings(second.falsified).contains(change));
+    assertTrue(!strings(second.invariants).contains(change));
+    assertTrue(!strings(second.justified).contains(change));
+  }
+
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    String hanoi = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    String hanoi2 = copy(hanoi);
+    String all_types = "daikon/test/dtracediff/AllTypes.dtrace.gz";
+    List<String> batch = strings(start(NO_OPTIONS, hanoi, all_types, hanoi2).update().invariants);
+
+    File saved = temp_file(".inv.gz");
+    start(NO_OPTIONS, hanoi, all_types).save(saved);
+    Configuration.getInstance().reset();
+    IncrementalInference inference = IncrementalInference.load(saved, args(NO_OPTIONS, hanoi2));
+    assertEquals(batch, strings(inference.update().invariants));
+  }
+}
@@ -0,0 +1,55 @@
+package daikon.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import daikon.config.Configuration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+
+/** Tests that {@link InferenceServer} gives the same results for repeated requests. */
+public class InferenceServerTest {
+
+  /** Runs the server on the given arguments and returns the response. */
+  private static String run(String... args) {
+    return new String(InferenceServer.run(args), UTF_8);
+  }
+
+  @Test
+  public void testRepeatedRequests() throws IOException {
+    File file = File.createTempFile("InferenceServerTest", ".csv");
+    file.deleteOnExit();
+    List<String> lines = new ArrayList<>();
+    lines.add("a,b");
+    for (int i = 1; i < 30; i++) {
+      lines.add(i + "," + (2 * i + 1));
+    }
+    Files.write(file.toPath(), lines);
+
+    String[] args = {
+      "--nohierarchy", "--noversion", "--config_option", "daikon.Daikon.quiet=true", file.toString()
+    };
+    String first = run(args);
+    assertTrue(first, first.endsWith(InferenceServer.RESPONSE_END + "ok\n"));
+    assertTrue(first, first.contains("a < b"));
+
+    // A bad option in one request must not affect the next one.
+    String error = run("--config_option", "daikon.FileIO.csv_missing=bogus", file.toString());
+    assertTrue(error, error.contains(InferenceServer.RESPONSE_END + "error "));
+
+    assertEquals(first, run(args));
+    assertEquals("old", FileIO.dkconfig_csv_missing);
+  }
+
+  @After
+  public void tearDown() {
+    Configuration.getInstance().reset();
+  }
+}
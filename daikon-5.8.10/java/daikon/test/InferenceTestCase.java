@@ -0,0 +1,126 @@
+package daikon.test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import daikon.config.Configuration;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+
+/**
+ * A base class for tests that run Daikon in this JVM, via {@link InferenceServer#run} or {@link
+ * IncrementalInference}. It writes temporary input files, and resets Daikon's configuration after
+ * each test.
+ */
+public abstract class InferenceTestCase {
+
+  /** The options that are passed to every run. */
+  static final String[] OPTIONS = {"--noversion", "--config_option", "daikon.Daikon.quiet=true"};
+
+  /** No configuration options. */
+  static final String[] NO_OPTIONS = {};
+
+  /**
+   * Returns Daikon's command line: {@link #OPTIONS}, then the given configuration options, then
+   * the given arguments.
+   *
+   * @param options configuration options, such as {@code "daikon.FileIO.parse_threads=3"}
+   * @param args other arguments, such as the names of trace files
+   * @return the command line
+   */
+  static String[] args(String[] options, String... args) {
+    List<String> result = new ArrayList<>(Arrays.asList(OPTIONS));
+    for (String option : options) {
+      result.add("--config_option");
+      result.add(option);
+    }
+    result.addAll(Arrays.asList(args));
+    return result.toArray(new String[0]);
+  }
+
+  /**
+   * Runs Daikon and returns its output, whether or not it succeeded.
+   *
+   * @param options configuration options
+   * @param args other arguments
+   * @return the output of {@link InferenceServer#run}
+   */
+  static String run_daikon(String[] options, String... args) {
+    return new String(InferenceServer.run(args(options, args)), UTF_8);
+  }
+
+  /**
+   * Runs Daikon, checks that it succeeded, and returns its output.
+   *
+   * @param options configuration options
+   * @param args other arguments
+   * @return the output of {@link InferenceServer#run}
+   */
+  static String infer(String[] options, String... args) {
+    String result = run_daikon(options, args);
+    assertTrue(result, result.endsWith(InferenceServer.RESPONSE_END + "ok\n"));
+    return result;
+  }
+
+  /**
+   * Starts an incremental inference with the default configuration.
+   *
+   * @param options configuration options
+   * @param args other arguments
+   * @return the inference
+   */
+  static IncrementalInference start(String[] options, String... args) throws IOException {
+    Configuration.getInstance().reset();
+    return IncrementalInference.start(args(options, args));
+  }
+
+  /**
+   * Returns the given invariants as strings.
+   *
+   * @param changes invariants
+   * @return the invariants as strings
+   */
+  static List<String> strings(List<IncrementalInference.Change> changes) {
+    List<String> result = new ArrayList<>();
+    for (IncrementalInference.Change change : changes) {
+      result.add(change.toString());
+    }
+    return result;
+  }
+
+  /**
+   * Returns a new temporary file, which is deleted when the JVM exits.
+   *
+   * @param suffix the suffix of the file's name, by which Daikon recognizes its format
+   * @return the new file
+   */
+  static File temp_file(String suffix) throws IOException {
+    File file = File.createTempFile("InferenceTestCase", suffix);
+    file.deleteOnExit();
+    return file;
+  }
+
+  /**
+   * Writes the given lines to a temporary csv file.
+   *
+   * @param lines the lines of the file, starting with the names of the variables
+   * @return the name of the file
+   */
+  static String csv(List<String> lines) throws IOException {
+    File file = temp_file(".csv");
+    Files.write(file.toPath(), lines);
+    return file.toString();
+  }
+
+  @After
+  public void tearDown() {
+    Configuration.getInstance().reset();
+    FileIO.resetNewDeclFormat();
+  }
+}
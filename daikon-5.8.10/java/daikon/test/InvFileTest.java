@@ -0,0 +1,140 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import daikon.inv.Invariant;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import org.junit.Test;
+
+/** Tests reading and writing invariant files in the format described in {@link InvFile}. */
+public class InvFileTest extends InferenceTestCase {
+
+  /** Runs Daikon on the given trace file, writing the invariants to a new file. */
+  private static File infer(String dtrace) throws IOException {
+    File inv = temp_file(".inv.gz");
+    infer(NO_OPTIONS, "-o", inv.toString(), dtrace);
+    return inv;
+  }
+
+  /**
+   * Returns the invariants of a program point and its conditional program points, and its
+   * relations to other program points, as text.
+   */
+  private static List<String> describe(PptTopLevel ppt) {
+    List<String> result = new ArrayList<>();
+    result.add(ppt.name());
+    List<PptTopLevel> ppts = new ArrayList<>();
+    ppts.add(ppt);
+    ppt.cond_iterator().forEachRemaining(ppts::add);
+    for (PptTopLevel p : ppts) {
+      for (Invariant inv : p.getInvariants()) {
+        result.add(p.name() + ": " + inv.format());
+      }
+    }
+    for (PptRelation rel : ppt.parents) {
+      result.add("parent " + rel.parent.name() + " " + rel.getRelationType());
+    }
+    for (PptRelation rel : ppt.children) {
+      result.add("child " + rel.child.name() + " " + rel.getRelationType());
+    }
+    return result;
+  }
+
+  /** Returns the invariants of a program point and its conditional program points, as text. */
+  private static List<String> invariants(PptTopLevel ppt) {
+    List<String> result = describe(ppt);
+    result.removeIf(s -> s.startsWith("parent ") || s.startsWith("child "));
+    return result;
+  }
+
+  /** Returns the invariants of all program points in a map, as text. */
+  private static List<String> describe(PptMap map) {
+    List<String> result = new ArrayList<>();
+    for (PptTopLevel ppt : map.pptIterable()) {
+      result.addAll(describe(ppt));
+    }
+    return result;
+  }
+
+  /** Writes a map to a new file and reads it back, and checks that nothing changed. */
+  private static void round_trip(PptMap map) throws IOException {
+    File file = temp_file(".inv.gz");
+    FileIO.write_serialized_pptmap(map, file);
+    assertTrue(InvFile.is_inv_file(file));
+    assertEquals(describe(map), describe(FileIO.read_serialized_pptmap(file, false)));
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    for (String name : new String[] {"Hanoi", "AllTypes"}) {
+      File inv = infer("daikon/test/dtracediff/" + name + ".dtrace.gz");
+      PptMap map = FileIO.read_serialized_pptmap(inv, false);
+      assertFalse(describe(map).isEmpty());
+      round_trip(map);
+    }
+  }
+
+  /** Tests that a file written by an older version of Daikon can still be read. */
+  @Test
+  public void testLegacyFile() throws IOException {
+    File legacy = new File("daikon/chicory/ChicoryTest.inv.gz");
+    assertFalse(InvFile.is_inv_file(legacy));
+    PptMap map = FileIO.read_serialized_pptmap(legacy, false);
+    assertFalse(describe(map).isEmpty());
+    round_trip(map);
+  }
+
+  @Test
+  public void testReadPpts() throws IOException {
+    File inv = infer("daikon/test/dtracediff/Hanoi.dtrace.gz");
+    PptMap map = FileIO.read_serialized_pptmap(inv, false);
+    try (InvFile.Reader reader = new InvFile.Reader(inv)) {
+      assertEquals(new ArrayList<>(map.nameStringSet()), new ArrayList<>(reader.ppt_names()));
+      for (String name : reader.ppt_names()) {
+        PptTopLevel ppt = reader.read_ppts(Collections.singleton(name)).get(name);
+        assertNotNull(name, ppt);
+        // Relations to program points that were not read are omitted, so compare only invariants.
+        assertEquals(invariants(map.get(name)), invariants(ppt));
+      }
+      assertEquals(0, reader.read_ppts(Collections.singleton("no such ppt")).size());
+    }
+  }
+
+  @Test
+  public void testReadSelected() throws IOException {
+    File inv = infer("daikon/test/dtracediff/Hanoi.dtrace.gz");
+    PptMap map = FileIO.read_serialized_pptmap(inv, false);
+    for (String regexp : new String[] {"showTowers", "EXIT[0-9]", "moveDisk.*EXIT", "OBJECT"}) {
+      Pattern pattern = Pattern.compile(regexp);
+      Predicate<String> select = name -> pattern.matcher(name).find();
+      PptMap selected = FileIO.read_serialized_pptmap(inv, false, select);
+      for (PptTopLevel ppt : map.pptIterable()) {
+        if (!select.test(ppt.name())) {
+          continue;
+        }
+        PptTopLevel read = selected.get(ppt.name());
+        assertNotNull(ppt.name(), read);
+        assertEquals(invariants(ppt), invariants(read));
+        // The ancestors are read too, so the relations to them are intact.
+        List<String> parents = describe(ppt);
+        parents.removeIf(s -> !s.startsWith("parent "));
+        List<String> read_parents = describe(read);
+        read_parents.removeIf(s -> !s.startsWith("parent "));
+        assertEquals(parents, read_parents);
+        for (PptRelation rel : ppt.parents) {
+          assertNotNull(rel.parent.name(), selected.get(rel.parent.name()));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.util.Arrays;
+import org.junit.Test;
+
+/** Tests that {@link ParallelInference} finds the same invariants as a single thread. */
+public class ParallelInferenceTest extends InferenceTestCase {
+
+  /** A trace with several methods, each with several program points. */
+  private static final String dtrace = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+
+  /** Runs Daikon on the trace with the given number of threads and returns its output. */
+  private static String run(int threads, String... args) {
+    String[] all_args = Arrays.copyOf(args, args.length + 1);
+    all_args[args.length] = dtrace;
+    return infer(new String[] {"daikon.FileIO.inference_threads=" + threads}, all_args);
+  }
+
+  @Test
+  public void testSameInvariants() {
+    String sequential = run(1);
+    assertTrue(sequential, sequential.contains("six170.Hanoi.moveDisk(int, int):::EXIT"));
+    assertEquals(sequential, run(4));
+  }
+
+  @Test
+  public void testSameInvariantsWithoutHierarchy() {
+    assertEquals(run(1, "--nohierarchy"), run(3, "--nohierarchy"));
+  }
+}
@@ -0,0 +1,40 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Tests that merging the program point hierarchy on several threads (see {@link
+ * Daikon#dkconfig_merge_threads}) finds the same invariants as a single thread.
+ */
+public class ParallelMergeTest extends InferenceTestCase {
+
+  /** Runs Daikon on a trace with the given number of merge threads and returns its output. */
+  private static String run(int threads, String dtrace, String... options) {
+    String[] all_options = Arrays.copyOf(options, options.length + 1);
+    all_options[options.length] = "daikon.Daikon.merge_threads=" + threads;
+    return infer(all_options, dtrace);
+  }
+
+  @Test
+  public void testSameInvariants() {
+    String dtrace = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    String sequential = run(1, dtrace);
+    assertTrue(sequential, sequential.contains("six170.Hanoi:::OBJECT"));
+    assertEquals(sequential, run(4, dtrace));
+    assertEquals(
+        run(1, dtrace, "daikon.FileIO.inference_threads=3"),
+        run(2, dtrace, "daikon.FileIO.inference_threads=3"));
+  }
+
+  /** Merges sequence invariants, whose values are interned while merging. */
+  @Test
+  public void testSameSequenceInvariants() {
+    String dtrace = "daikon/test/dtracediff/AllTypes.dtrace.gz";
+    assertEquals(run(1, dtrace), run(3, dtrace));
+  }
+}
@@ -0,0 +1,104 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+
+/**
+ * Tests that parsing a data trace file on several threads (see {@link
+ * FileIO#dkconfig_parse_threads}) gives the same result as parsing it on one.
+ */
+public class ParallelParseTest extends InferenceTestCase {
+
+  /**
+   * Runs Daikon with the given number of parse threads and returns its output, whether or not it
+   * succeeded.
+   */
+  private static String run(int threads, String... args) {
+    return run_daikon(new String[] {"daikon.FileIO.parse_threads=" + threads}, args);
+  }
+
+  /**
+   * Writes a trace file that is long enough to be parsed in many chunks: {@code copies} copies of
+   * one trace file, followed by another.
+   *
+   * @param dtrace the trace file to copy
+   * @param copies the number of copies
+   * @param last the trace file to append
+   * @param suffix the suffix of the new file; if it is ".dtrace.gz", the file is compressed
+   * @return the new file
+   */
+  private static File repeat(String dtrace, int copies, String last, String suffix)
+      throws IOException {
+    File file = temp_file(suffix);
+    byte[] contents = read_gzipped(dtrace);
+    OutputStream out = Files.newOutputStream(file.toPath());
+    if (suffix.endsWith(".gz")) {
+      out = new GZIPOutputStream(out);
+    }
+    try (OutputStream os = out) {
+      for (int i = 0; i < copies; i++) {
+        os.write(contents);
+        os.write('\n');
+      }
+      os.write(read_gzipped(last));
+    }
+    return file;
+  }
+
+  /** Returns the decompressed contents of a file. */
+  private static byte[] read_gzipped(String file) throws IOException {
+    ByteArrayOutputStream result = new ByteArrayOutputStream();
+    try (InputStream in = new GZIPInputStream(Files.newInputStream(new File(file).toPath()))) {
+      byte[] buffer = new byte[8192];
+      for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+        result.write(buffer, 0, n);
+      }
+    }
+    return result.toByteArray();
+  }
+
+  @Test
+  public void testSameInvariants() throws IOException {
+    for (String name : new String[] {"Hanoi", "AllTypes"}) {
+      String dtrace = "daikon/test/dtracediff/" + name + ".dtrace.gz";
+      for (String suffix : new String[] {".dtrace", ".dtrace.gz"}) {
+        String file = repeat(dtrace, 20, dtrace, suffix).toString();
+        String expected = run(1, file);
+        assertTrue(expected, expected.endsWith(InferenceServer.RESPONSE_END + "ok\n"));
+        assertEquals(expected, run(3, file));
+      }
+    }
+  }
+
+  @Test
+  public void testFilters() throws IOException {
+    String dtrace = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    String file = repeat(dtrace, 20, dtrace, ".dtrace").toString();
+    String[] args = {"--ppt-omit-pattern=showTowers", "--var-omit-pattern=disk", file};
+    String expected = run(1, args);
+    assertTrue(expected, expected.endsWith(InferenceServer.RESPONSE_END + "ok\n"));
+    assertEquals(expected, run(3, args));
+  }
+
+  /** Tests that errors late in a file are reported at the same line. */
+  @Test
+  public void testErrors() throws IOException {
+    String dtrace = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    for (String bad : new String[] {"badvar", "truncated"}) {
+      String last = "daikon/test/dtracediff/Hanoi-" + bad + ".dtrace.gz";
+      String file = repeat(dtrace, 20, last, ".dtrace").toString();
+      assertEquals(run(1, file), run(3, file));
+    }
+  }
+}
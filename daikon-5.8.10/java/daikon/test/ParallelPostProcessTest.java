@@ -0,0 +1,53 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import org.junit.Test;
+
+/**
+ * Tests that post-processing the program points on several threads (see {@link
+ * Daikon#dkconfig_postprocess_threads}) finds the same invariants as a single thread, and that the
+ * phases are recorded in {@link Daikon#phase_metrics}.
+ */
+public class ParallelPostProcessTest extends InferenceTestCase {
+
+  /** Runs Daikon with the given number of post-processing threads and returns its output. */
+  private static String run(int threads, String... args) {
+    return infer(new String[] {"daikon.Daikon.postprocess_threads=" + threads}, args);
+  }
+
+  /** Returns the metrics of the phase with the given name, of the most recent run. */
+  private static PhaseMetrics phase(String name) {
+    for (PhaseMetrics metrics : Daikon.phase_metrics) {
+      if (metrics.name.equals(name)) {
+        return metrics;
+      }
+    }
+    throw new AssertionError("no phase " + name + " in " + Daikon.phase_metrics);
+  }
+
+  @Test
+  public void testSameInvariants() {
+    String dtrace = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    String sequential = run(1, dtrace);
+    assertTrue(sequential, sequential.contains("six170.Hanoi:::OBJECT"));
+    assertEquals(sequential, run(4, dtrace));
+    assertEquals(run(1, "--nohierarchy", dtrace), run(3, "--nohierarchy", dtrace));
+    assertEquals(
+        run(1, "daikon/test/dtracediff/AllTypes.dtrace.gz"),
+        run(3, "daikon/test/dtracediff/AllTypes.dtrace.gz"));
+  }
+
+  @Test
+  public void testPhaseMetrics() {
+    run(2, "daikon/test/dtracediff/Hanoi.dtrace.gz");
+    assertEquals("Create Combined Exits", Daikon.phase_metrics.get(0).name);
+    assertEquals(1, phase("Init Hierarchy").threads);
+    PhaseMetrics equality = phase("Equality Post Process");
+    assertEquals(2, equality.threads);
+    assertTrue(equality.toString(), equality.ppt_count > 0 && equality.nanos >= 0);
+    assertEquals(2, phase("Adding Implications").threads);
+  }
+}
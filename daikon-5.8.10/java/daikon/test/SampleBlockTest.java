@@ -0,0 +1,55 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests that adding samples to program points in blocks (see {@link
+ * PptTopLevel#add_bottom_up_block}) finds the same invariants as adding them one at a time.
+ */
+public class SampleBlockTest extends InferenceTestCase {
+
+  /** Runs Daikon with the given block size and returns its output. */
+  private static String run(int block_size, String... args) {
+    return infer(new String[] {"daikon.FileIO.sample_block_size=" + block_size}, args);
+  }
+
+  @Test
+  public void testSameInvariants() {
+    String dtrace = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    String one_at_a_time = run(1, dtrace);
+    assertTrue(one_at_a_time, one_at_a_time.contains("six170.Hanoi.moveDisk(int, int):::EXIT"));
+    assertEquals(one_at_a_time, run(64, dtrace));
+    assertEquals(run(1, "--nohierarchy", dtrace), run(16, "--nohierarchy", dtrace));
+  }
+
+  /**
+   * Tests a trace in which, part-way through a block, a constant changes, an equality set splits,
+   * invariants that suppress others are falsified, and some values are missing.
+   */
+  @Test
+  public void testChangesWithinBlock() throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("a,b,c,d,e,f,g");
+    for (int i = 0; i < 300; i++) {
+      int c = (i < 170) ? i % 5 : -3;
+      int d = (i < 100) ? 7 : i;
+      int e = (i < 130) ? i : i + 1;
+      String f = (i % 11 == 3) ? "" : String.valueOf(i % 4 + 1);
+      int g = (i < 250) ? i * i + 1 : 0;
+      lines.add(i + "," + (2 * i + 1) + "," + c + "," + d + "," + e + "," + f + "," + g);
+    }
+
+    String[] args = {"--config_option", "daikon.FileIO.csv_missing=nonsensical", csv(lines)};
+    String one_at_a_time = run(1, args);
+    assertTrue(one_at_a_time, one_at_a_time.contains("2 * a - b + 1 == 0"));
+    assertEquals(one_at_a_time, run(64, args));
+    assertEquals(one_at_a_time, run(7, args));
+  }
+}
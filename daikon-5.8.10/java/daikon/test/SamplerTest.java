@@ -0,0 +1,78 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import daikon.chicory.Sampler;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/** Tests the sampling policies of Chicory's {@link Sampler}. */
+public class SamplerTest {
+
+  /** Returns how many of the first n calls of one method the sampler records at time now. */
+  private static int captured(Sampler sampler, int n, long now) {
+    int result = 0;
+    for (int call_cnt = 1; call_cnt <= n; call_cnt++) {
+      if (sampler.capture(call_cnt, now)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testNone() {
+    Sampler sampler = new Sampler(0, 0, 0);
+    assertFalse(sampler.enabled());
+    assertEquals(5000, captured(sampler, 5000, 0));
+  }
+
+  @Test
+  public void testBackoff() {
+    Sampler sampler = new Sampler(10, 0, 0);
+    assertTrue(sampler.enabled());
+    // All of the first 10 calls, then every 10th call up to 100, then every 100th up to 1000.
+    assertEquals(10 + 9 + 9, captured(sampler, 1000, 0));
+  }
+
+  @Test
+  public void testReservoir() {
+    Sampler sampler = new Sampler(0, 100, 0);
+    assertTrue(sampler.enabled());
+    // Expected about 100 * (1 + ln 100), or 560.
+    int result = captured(sampler, 10000, 0);
+    assertTrue(Integer.toString(result), result > 400 && result < 750);
+    assertEquals(100, captured(new Sampler(0, 100, 0), 100, 0));
+  }
+
+  @Test
+  public void testBudget() {
+    Sampler sampler = new Sampler(0, 0, 50);
+    assertTrue(sampler.enabled());
+    // Each call is two records, so 25 calls fit in each second.
+    assertEquals(25, captured(sampler, 100, 0));
+    assertEquals(0, captured(sampler, 100, 999_999_999L));
+    assertEquals(25, captured(sampler, 100, 1_000_000_000L));
+    // A budget that is not even admits only whole calls.
+    assertEquals(0, captured(new Sampler(0, 0, 1), 100, 0));
+    assertEquals(1, captured(new Sampler(0, 0, 3), 100, 0));
+  }
+
+  /** Threads that share a budget are admitted exactly as many calls as fit in it. */
+  @Test
+  public void testBudgetThreads() throws InterruptedException {
+    Sampler sampler = new Sampler(0, 0, 2000);
+    AtomicInteger total = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread(() -> total.addAndGet(captured(sampler, 1000, 5_000_000_000L)));
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(1000, total.get());
+  }
+}
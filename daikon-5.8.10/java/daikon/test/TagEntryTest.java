@@ -0,0 +1,58 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import daikon.dcomp.TagEntry;
+import org.junit.Test;
+
+/** Tests the union-find sets of {@link TagEntry}. */
+public class TagEntryTest {
+
+  /** Returns new objects, each in a set by itself. */
+  private static Object[] objects(int n) {
+    Object[] result = new Object[n];
+    for (int i = 0; i < n; i++) {
+      result[i] = new Object();
+    }
+    return result;
+  }
+
+  @Test
+  public void testSets() {
+    Object[] objs = objects(4);
+    assertSame(objs[0], TagEntry.find(objs[0]));
+    TagEntry.union(objs[0], objs[1]);
+    TagEntry.union(objs[2], objs[3]);
+    assertSame(TagEntry.find(objs[0]), TagEntry.find(objs[1]));
+    assertSame(TagEntry.find(objs[2]), TagEntry.find(objs[3]));
+    assertNotSame(TagEntry.find(objs[0]), TagEntry.find(objs[2]));
+    TagEntry.union(objs[1], objs[3]);
+    for (Object obj : objs) {
+      assertSame(TagEntry.find(objs[0]), TagEntry.find(obj));
+    }
+  }
+
+  /**
+   * Adds one object at a time to a growing set. Without union by rank, each union could hang the
+   * set's tree below the new object, and the first object would end up 1023 links deep.
+   */
+  @Test
+  public void testUnionByRank() {
+    Object[] objs = objects(1024);
+    for (int i = 1; i < objs.length; i++) {
+      TagEntry.union(objs[i], objs[i - 1]);
+    }
+    for (Object obj : objs) {
+      assertTrue(TagEntry.depth(obj) <= 10);
+    }
+    Object root = TagEntry.find(objs[0]);
+    for (Object obj : objs) {
+      assertSame(root, TagEntry.find(obj));
+      assertTrue(TagEntry.depth(obj) <= 1);
+    }
+    assertEquals(0, TagEntry.depth(root));
+  }
+}
@@ -0,0 +1,120 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import daikon.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests that deferring ternary slices until the prefilter has seen the first samples (see {@link
+ * PptTopLevel#dkconfig_ternary_prefilter_samples}) finds the same invariants, and that {@link
+ * PptTopLevel#dkconfig_max_ternary_slices} limits the ternary slices.
+ */
+public class TernaryPrefilterTest extends InferenceTestCase {
+
+  /** Runs Daikon with the prefilter collecting the given number of samples. */
+  private static String run(int samples, String... args) {
+    return infer(new String[] {"daikon.PptTopLevel.ternary_prefilter_samples=" + samples}, args);
+  }
+
+  /**
+   * Writes a csv file with numeric variables, three of which are linearly related. Variable c is
+   * constant for a while, and e is sometimes missing.
+   */
+  private static String csv() throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("a,b,c,d,e,f,g");
+    for (int i = 0; i < 200; i++) {
+      int a = (i * 37) % 101;
+      int b = (i * i) % 53;
+      int c = (i < 60) ? 4 : i % 9;
+      int d = a + 2 * b - 7;
+      String e = (i % 13 == 5) ? "" : String.valueOf((i * 11) % 29);
+      int f = (i * 7) % 31 - c;
+      int g = 3 * c - f;
+      lines.add(a + "," + b + "," + c + "," + d + "," + e + "," + f + "," + g);
+    }
+    return csv(lines);
+  }
+
+  @Test
+  public void testSameInvariants() throws IOException {
+    String dtrace = "daikon/test/dtracediff/Hanoi.dtrace.gz";
+    String all = run(0, dtrace);
+    assertEquals(all, run(5, dtrace));
+    assertEquals(all, run(100000, dtrace));
+    assertEquals(run(0, "--nohierarchy", dtrace), run(3, "--nohierarchy", dtrace));
+
+    String[] args = {"--config_option", "daikon.FileIO.csv_missing=nonsensical", csv()};
+    String csv_all = run(0, args);
+    assertTrue(csv_all, csv_all.contains("2 * b - d - 7 == 0"));
+    assertTrue(csv_all, csv_all.contains("3 * c - f - g == 0"));
+    for (int samples : new int[] {2, 10, 80, 1000}) {
+      assertEquals(csv_all, run(samples, args));
+    }
+
+    String no_constants = "daikon.DynamicConstants.use_dynamic_constant_optimization=false";
+    String prefilter = "daikon.PptTopLevel.ternary_prefilter_samples=10";
+    assertEquals(
+        infer(new String[] {no_constants}, args),
+        infer(new String[] {no_constants, prefilter}, args));
+  }
+
+  /** Writes a csv file with numeric variables, no three of which are related. */
+  private static String unrelated_csv() throws IOException {
+    List<String> lines = new ArrayList<>();
+    lines.add("a,b,c,d,e");
+    for (int i = 0; i < 100; i++) {
+      int a = (i * 37) % 101;
+      int b = (i * i) % 53;
+      int c = (i * i * i + 7) % 97;
+      int d = (i * 13 + a * b) % 41;
+      int e = (i * 29 + c) % 83;
+      lines.add(a + "," + b + "," + c + "," + d + "," + e);
+    }
+    return csv(lines);
+  }
+
+  /** Tests that the prefilter skips the triples whose values are not coplanar. */
+  @Test
+  public void testSkipsImplausibleSlices() throws IOException {
+    String csv = unrelated_csv();
+    long before = PptTopLevel.implausible_ternary_slices.get();
+    String all = run(0, csv);
+    assertEquals(before, PptTopLevel.implausible_ternary_slices.get());
+    assertEquals(all, run(20, csv));
+    assertTrue(PptTopLevel.implausible_ternary_slices.get() > before);
+  }
+
+  /** Returns the number of ternary slices of the program point of a csv file. */
+  private static int ternary_slices(String... options) throws IOException {
+    File inv = temp_file(".inv.gz");
+    infer(options, "-o", inv.toString(), csv());
+    PptMap map = FileIO.read_serialized_pptmap(inv, false);
+    int count = 0;
+    for (PptTopLevel ppt : map.pptIterable()) {
+      for (PptSlice slice : ppt.views_iterable()) {
+        if (slice instanceof PptSlice3) {
+          count++;
+        }
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testMaxTernarySlices() throws IOException {
+    assertTrue(ternary_slices() > 1);
+    assertTrue(ternary_slices("daikon.PptTopLevel.max_ternary_slices=1") <= 1);
+    assertTrue(
+        ternary_slices(
+                "daikon.PptTopLevel.max_ternary_slices=1",
+                "daikon.PptTopLevel.ternary_prefilter_samples=10")
+            <= 1);
+  }
+}
@@ -0,0 +1,73 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+
+import daikon.chicory.TraceBuffer;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.junit.Test;
+
+/** Tests the per-thread rings of {@link TraceBuffer}. */
+public class TraceBufferTest {
+
+  /** The number of threads that print records. */
+  private static final int THREADS = 4;
+
+  /** The number of records that each thread prints; more than a ring holds. */
+  private static final int RECORDS = 2000;
+
+  /**
+   * Prints records from several threads, then closes the buffer. Every record must be written, and
+   * the records of each thread must be in the order in which that thread printed them.
+   */
+  @Test
+  public void testOrderAndDelivery() throws InterruptedException {
+    StringWriter text = new StringWriter();
+    TraceBuffer buffer = new TraceBuffer(new PrintWriter(text));
+    Thread[] threads = new Thread[THREADS];
+    for (int t = 0; t < THREADS; t++) {
+      int id = t;
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < RECORDS; i++) {
+                  buffer.start().append(id).append(' ').append(i).append('\n');
+                  buffer.finish();
+                }
+              });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    buffer.close();
+
+    int[] next = new int[THREADS];
+    for (String line : text.toString().split("\n")) {
+      String[] fields = line.split(" ");
+      int id = Integer.parseInt(fields[0]);
+      assertEquals(line, next[id], Integer.parseInt(fields[1]));
+      next[id]++;
+    }
+    for (int t = 0; t < THREADS; t++) {
+      assertEquals(RECORDS, next[t]);
+    }
+    assertEquals(0, buffer.dropped());
+  }
+
+  /** Records that are completed after close are counted, and are not written. */
+  @Test
+  public void testDropped() {
+    StringWriter text = new StringWriter();
+    TraceBuffer buffer = new TraceBuffer(new PrintWriter(text));
+    buffer.start().append("before\n");
+    buffer.finish();
+    buffer.close();
+    for (int i = 0; i < 3; i++) {
+      buffer.start().append("after\n");
+      buffer.finish();
+    }
+    assertEquals("before\n", text.toString());
+    assertEquals(3, buffer.dropped());
+  }
+}
@@ -0,0 +1,40 @@
+package daikon.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import daikon.ValueTuple;
+import org.junit.Test;
+import org.plumelib.util.Intern;
+
+/** Tests the caches of interned scalars in {@link ValueTuple}. */
+public class ValueTupleTest {
+
+  @Test
+  public void testInternedLong() {
+    for (long value : new long[] {0, 1, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 40}) {
+      assertSame(Intern.internedLong(value), ValueTuple.internedLong(value));
+      assertSame(Intern.internedLong(value), ValueTuple.internedLong(value));
+    }
+  }
+
+  /**
+   * The cache returns the same object as Intern, which maps -0.0 to 0.0 and every NaN to {@link
+   * Double#NaN}, whichever of them was cached first.
+   */
+  @Test
+  public void testInternedDouble() {
+    double other_nan = Double.longBitsToDouble(0x7ff8000000000001L);
+    double[] values = {
+      0.0, -0.0, 0.0, -0.0, 1.5, -1.5, Double.MIN_VALUE, Double.NaN, other_nan, Double.NaN
+    };
+    for (double value : values) {
+      Double result = ValueTuple.internedDouble(value);
+      assertSame(Intern.internedDouble(value), result);
+      assertSame(result, ValueTuple.internedDouble(value));
+    }
+    assertEquals(0L, Double.doubleToRawLongBits(ValueTuple.internedDouble(-0.0)));
+    assertTrue(Double.isNaN(ValueTuple.internedDouble(other_nan)));
+  }
+}
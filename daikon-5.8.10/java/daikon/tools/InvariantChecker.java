@@ -31,8 +31,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.checker.nullness.qual.RequiresNonNull;
+import org.plumelib.util.RegexUtil;
 import org.plumelib.util.StringsPlume;
 
 /**
@@ -71,6 +73,8 @@ public class InvariantChecker {
           "  --" + verbose_SWITCH + " print all failing samples",
           "  --" + Daikon.config_option_SWITCH + " config_var=val",
           "      Sets the specified configuration variable.  ",
+          "  --" + Daikon.ppt_regexp_SWITCH + " pattern",
+          "      Checks only program points whose names match the regular expression",
           "  --" + Daikon.debugAll_SWITCH,
           "      Turns on all debug flags (voluminous output)",
           "  --" + Daikon.debug_SWITCH + " logger",
@@ -169,6 +173,24 @@ public class InvariantChecker {
               throw new Daikon.UserError(
                   "Error parsing track argument '" + Daikon.getOptarg(g) + "' - " + error);
             }
+          } else if (Daikon.ppt_regexp_SWITCH.equals(option_name)) {
+            if (Daikon.ppt_regexp != null) {
+              throw new Daikon.UserError(
+                  "multiple --"
+                      + Daikon.ppt_regexp_SWITCH
+                      + " regular expressions supplied on command line");
+            }
+            String regexp_string = Daikon.getOptarg(g);
+            if (!RegexUtil.isRegex(regexp_string)) {
+              throw new Daikon.UserError(
+                  "Bad regexp "
+                      + regexp_string
+                      + " for "
+                      + Daikon.ppt_regexp_SWITCH
+                      + ": "
+                      + RegexUtil.regexError(regexp_string));
+            }
+            Daikon.ppt_regexp = Pattern.compile(regexp_string);
           } else {
             throw new RuntimeException("Unknown long option received: " + option_name);
           }
@@ -295,14 +317,19 @@ public class InvariantChecker {
   }
 
   private static void checkInvariants(File inv_file) throws IOException {
-    // Read the invariant file
-    PptMap ppts = FileIO.read_serialized_pptmap(inv_file, true);
+    // Read the invariant file.  If only some ppts are checked, read just those if possible.
+    PptMap ppts =
+        FileIO.read_serialized_pptmap(
+            inv_file, true, (Daikon.ppt_regexp == null) ? null : FileIO::ppt_included);
 
     // Yoav: make sure we have unique invariants
     InvariantFilters fi = InvariantFilters.defaultFilters();
     // Set<String> allInvariantsStr = new HashSet<>();
     // Set<Invariant> allInvariants = new HashSet<>();
     for (PptTopLevel ppt : ppts.all_ppts()) {
+      if (!FileIO.ppt_included(ppt.name())) {
+        continue;
+      }
       for (PptSlice slice : ppt.views_iterable()) {
         for (Invariant inv : slice.invs) {
           if (doConf && inv.getConfidence() < Invariant.dkconfig_confidence_limit) {
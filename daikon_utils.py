@@ -1,5 +1,6 @@
 import os
 import math
+import atexit
 import shutil
 import subprocess
 from typing import Union
@@ -9,7 +10,7 @@ from operator import itemgetter
 def discover_branching_conditions(dataset) -> dict:
     """ Alternative method for discovering branching conditions, using Daikon invariant detector
 
-    It uses the existing version of Daikon, since it supports csv files (after a conversion).
+    It uses the existing version of Daikon, which reads csv files directly.
     It returns a dictionary containing the discovered rule for each branch.
     Method taken from "Discovering Branching Conditions from Business Process Execution Logs" by Massimiliano de Leoni,
     Marlon Dumas, and Luciano Garcia-Banuelos (2013). In particular, only the CD+IG+LV approach is implemented.
@@ -78,31 +79,67 @@ def discover_branching_conditions(dataset) -> dict:
 def _get_daikon_invariants(dataset) -> list:
     """ Extracting the invariants from a set of observation instances related to a branch of a decision point
 
-    After exporting the DataFrame as a csv file, a Perl script is launched to create the input files for Daikon in the
-    proper format. Then, Daikon is called to discover the invariants. Finally, the extracted invariants are cleaned
-    to be used later and returned as a list.
+    After exporting the DataFrame as a csv file, Daikon is called on it to discover the invariants. Finally, the
+    extracted invariants are cleaned to be used later and returned as a list.
     """
 
     dataset.drop(columns=['target']).to_csv(path_or_buf='dataset.csv', index=False)
-    subprocess.run(['perl', '-I/app/decision-points-analysis/daikon-5.8.10', 'daikon-5.8.10/scripts/convertcsv.pl', 'dataset.csv'])
-    subprocess.run(['java', '-cp', 'daikon-5.8.10/daikon.jar', 'daikon.Daikon', '--nohierarchy', '-o', 'invariants.inv',
-                    '--no_text_output', '--noversion', '--omit_from_output', 'r', 'dataset.dtrace', 'dataset.decls'])
-    inv = subprocess.run(['java', '-cp', 'daikon-5.8.10/daikon.jar', 'daikon.PrintInvariants',
-                          'invariants.inv'], capture_output=True, text=True)
+    output = _run_daikon(['--nohierarchy', '--noversion', '--omit_from_output', 'r',
+                          '--config_option', 'daikon.Daikon.quiet=true', os.path.abspath('dataset.csv')])
     invariants = []
-    for line in inv.stdout.splitlines():
-        if not any(x in line for x in ["===", "aprogram.point:::POINT", "one of {"]):
+    for line in output:
+        if line and not any(x in line for x in ["===", "aprogram.point:::POINT", "one of {"]):
             invariants.append(line)
 
-    for file_name in ['dataset.csv', 'dataset.dtrace', 'dataset.decls', 'invariants.inv']:
-        try:
-            os.remove(file_name)
-        except FileNotFoundError:
-            continue
+    try:
+        os.remove('dataset.csv')
+    except FileNotFoundError:
+        pass
 
     return invariants
 
 
+_daikon_server = None
+
+
+def _run_daikon(args) -> list:
+    """ Running Daikon with the given command-line arguments and returning the lines it printed
+
+    Daikon runs in a resident server process, which is started by the first call and reused by the following ones,
+    so that the JVM start-up is paid only once. An error is raised if Daikon fails, or if the server exits before
+    it has answered; in the latter case a new server is started by the next call.
+    """
+
+    global _daikon_server
+    if _daikon_server is None or _daikon_server.poll() is not None:
+        _daikon_server = subprocess.Popen(['java', '-cp', 'daikon-5.8.10/daikon.jar', 'daikon.InferenceServer'],
+                                          stdin=subprocess.PIPE, stdout=subprocess.PIPE, text=True)
+        atexit.register(_stop_daikon, _daikon_server)
+
+    _daikon_server.stdin.write('\n'.join(args) + '\n\n')
+    _daikon_server.stdin.flush()
+    lines = []
+    for line in _daikon_server.stdout:
+        line = line.rstrip('\n')
+        if line.startswith('%%END '):
+            status = line[len('%%END '):]
+            if status != 'ok':
+                raise RuntimeError('Daikon failed: ' + status + '\n' + '\n'.join(lines))
+            return lines
+        lines.append(line)
+    _daikon_server.wait()
+    raise RuntimeError('The Daikon server exited with status ' + str(_daikon_server.returncode) +
+                       ' before answering\n' + '\n'.join(lines))
+
+
+def _stop_daikon(server) -> None:
+    """ Stopping a Daikon server process by closing its input """
+
+    if server.poll() is None:
+        server.stdin.close()
+        server.wait()
+
+
 def _build_conj_expr(sets, invariants) -> Union[str, None]:
     """ Builds a conjunctive expression starting from the invariants found.
 